@@ -0,0 +1,446 @@
+package codegenerator;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.file.FileSystems;
+import java.nio.file.FileVisitOption;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import parser.ParseException;
+import parser.Parser;
+
+/**
+ * Compiles many programs in one JVM, on a fixed number of threads. Each
+ * program gets a parser, front end and backend of its own, set up from the
+ * same flags, and is written as the compiler writes one program: to its
+ * name with the extension of the backend, in the working directory. A
+ * program that does not parse or compile fails alone, with the reason
+ * kept in its result, and the rest are still compiled.
+ *
+ * Each program is written to a file of its own first, and only moved to
+ * its name once every program is compiled, going through them in the order
+ * they were given. So when two files hold programs of the same name, the
+ * first one given is written and the later one fails, however the threads
+ * happen to run.
+ *
+ * @author ken
+ */
+public class BatchCompiler
+{
+
+    /**
+     * The extension of the programs found in a directory.
+     */
+	private static final String SOURCE_EXTENSION = ".pas";
+
+    /**
+     * The name of the backend, and the flags each program is compiled with.
+     */
+	private final String backend;
+	private final String[] args;
+
+    /**
+     * The most programs compiled at once.
+     */
+	private final int jobs;
+
+    /**
+     * What compiling one file came to.
+     */
+	public static class Result
+	{
+		private final File source;
+
+        /**
+         * The file written, or null if it failed.
+         */
+		private final File output;
+
+        /**
+         * Why it failed, or what the optimizations did to it.
+         */
+		private final String error;
+		private final String report;
+
+        /**
+         * The name of the program, and the file it was written to until it
+         * is moved to its output, or null if it failed.
+         */
+		private final String program;
+		private final File written;
+
+		private Result(File source, File output, String error, String report)
+		{
+			this(source, output, error, report, null, null);
+		}
+
+		private Result(File source, File output, String error, String report, String program,
+				File written)
+		{
+			this.source = source;
+			this.output = output;
+			this.error = error;
+			this.report = report;
+			this.program = program;
+			this.written = written;
+		}
+
+        /**
+         * Get the file compiled.
+         * @return
+         */
+		public File getSource()
+		{
+			return source;
+		}
+
+        /**
+         * Get the file written, or null if it failed.
+         * @return
+         */
+		public File getOutput()
+		{
+			return output;
+		}
+
+        /**
+         * Get why it failed, or null if it compiled.
+         * @return
+         */
+		public String getError()
+		{
+			return error;
+		}
+
+        /**
+         * Get what the optimizations did to it, for -stats.
+         * @return
+         */
+		public String getReport()
+		{
+			return report;
+		}
+
+        /**
+         * Returns true if it compiled.
+         * @return
+         */
+		public boolean isCompiled()
+		{
+			return output != null;
+		}
+
+		@Override
+		public String toString()
+		{
+			return source.getPath() + (isCompiled() ? " -> " + output.getPath() : ": " + error);
+		}
+	}
+
+    /**
+     * Constructor.
+     * @param backend the name of the backend, such as mips.
+     * @param jobs the most programs compiled at once.
+     * @param args the command line flags, such as -O0.
+     */
+	public BatchCompiler(String backend, int jobs, String... args)
+	{
+		if (jobs < 1)
+		{
+			throw new IllegalArgumentException("Jobs must be at least 1: " + jobs);
+		}
+		Compiler.backend(backend);
+		this.backend = backend;
+		this.jobs = jobs;
+		this.args = args;
+	}
+
+    /**
+     * Compiles files, on up to the number of jobs at once, then moves what
+     * was written to the outputs in the order of the files.
+     * @param sources
+     * @return the result of each file, in the order of the files.
+     * @throws InterruptedIOException if interrupted while waiting.
+     */
+	public List<Result> compile(List<File> sources) throws InterruptedIOException
+	{
+		ExecutorService pool = Executors.newFixedThreadPool(Math.min(jobs, Math.max(1, sources.size())));
+		try
+		{
+			List<Future<Result>> futures = new ArrayList<Future<Result>>();
+			for (final File source : sources)
+			{
+				futures.add(pool.submit(new Callable<Result>()
+				{
+					@Override
+					public Result call()
+					{
+						return compile(source);
+					}
+				}));
+			}
+			List<Result> results = new ArrayList<Result>();
+			for (int i = 0; i < futures.size(); i++)
+			{
+				try
+				{
+					results.add(futures.get(i).get());
+				}
+				catch (ExecutionException e)
+				{
+					results.add(new Result(sources.get(i), null, e.getCause().toString(), ""));
+				}
+			}
+			HashMap<String, File> names = new HashMap<String, File>();
+			for (int i = 0; i < results.size(); i++)
+			{
+				results.set(i, move(results.get(i), names));
+			}
+			return results;
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while compiling");
+		}
+		finally
+		{
+			pool.shutdownNow();
+		}
+	}
+
+    /**
+     * Moves the file a program was written to on to its output, unless a
+     * file before it held a program of the same name.
+     * @param result
+     * @param names the file each program name was written from so far.
+     * @return the result, or a failed one if it could not be moved.
+     */
+	private Result move(Result result, HashMap<String, File> names)
+	{
+		if (!result.isCompiled())
+		{
+			return result;
+		}
+		File other = names.get(result.program);
+		if (other != null)
+		{
+			result.written.delete();
+			return new Result(result.source, null, "Program " + result.program
+					+ " is also in " + other.getPath(), "");
+		}
+		names.put(result.program, result.source);
+		try
+		{
+			Files.move(result.written.toPath(), result.output.toPath(),
+					StandardCopyOption.REPLACE_EXISTING);
+		}
+		catch (IOException e)
+		{
+			result.written.delete();
+			return new Result(result.source, null, e.toString(), "");
+		}
+		return new Result(result.source, result.output, null, result.report);
+	}
+
+    /**
+     * Compiles one file, to a file of its own next to its output.
+     * @param source
+     * @return
+     */
+	private Result compile(File source)
+	{
+		Parser parser;
+		try
+		{
+			parser = new Parser(source.getPath());
+		}
+		catch (IllegalArgumentException e)
+		{
+			// The file could not be read.
+			return new Result(source, null, e.getMessage(), "");
+		}
+		try
+		{
+			parser.setMessages(new PrintStream(new ByteArrayOutputStream()));
+			parser.setExitOnError(false);
+			FrontEnd front = new FrontEnd(parser);
+			CodeGenBackend target = Compiler.backend(backend);
+			Compiler.configure(front, target, args);
+			File output = new File(front.name() + target.getExtension()).getAbsoluteFile();
+			File written = File.createTempFile("." + front.name() + "-", target.getExtension(),
+					output.getParentFile());
+			// Left behind only if the batch is interrupted before it is moved.
+			written.deleteOnExit();
+			boolean generated = false;
+			OutputStream out = new BufferedOutputStream(new FileOutputStream(written));
+			try
+			{
+				target.generate(front, out);
+				generated = true;
+			}
+			finally
+			{
+				out.close();
+				if (!generated)
+				{
+					written.delete();
+				}
+			}
+			return new Result(source, output, null, front.report() + target.report(),
+					front.name(), written);
+		}
+		catch (ParseException e)
+		{
+			return new Result(source, null, e.getMessage(), "");
+		}
+		catch (IOException e)
+		{
+			return new Result(source, null, e.toString(), "");
+		}
+		catch (RuntimeException e)
+		{
+			return new Result(source, null, "Compiling failed: " + e, "");
+		}
+	}
+
+    /**
+     * The files named on the command line: each file, the programs in each
+     * directory and those below it, and the files matching each glob, such
+     * as src/**.pas, in order and each once.
+     * @param inputs
+     * @return
+     * @throws IOException
+     */
+	public static List<File> sources(List<String> inputs) throws IOException
+	{
+		LinkedHashSet<File> sources = new LinkedHashSet<File>();
+		for (String input : inputs)
+		{
+			File file = new File(input);
+			if (isGlob(input))
+			{
+				sources.addAll(glob(input));
+			}
+			else if (file.isDirectory())
+			{
+				sources.addAll(find(file.toPath(), Integer.MAX_VALUE,
+						FileSystems.getDefault().getPathMatcher("glob:**" + SOURCE_EXTENSION), null));
+			}
+			else
+			{
+				sources.add(file);
+			}
+		}
+		return new ArrayList<File>(sources);
+	}
+
+    /**
+     * Check whether a file named on the command line is a glob, or else a
+     * file or directory.
+     * @param input
+     * @return
+     */
+	public static boolean isGlob(String input)
+	{
+		return wildcard(input) >= 0;
+	}
+
+    /**
+     * The index of the first wildcard of a glob, or -1.
+     * @param glob
+     * @return
+     */
+	private static int wildcard(String glob)
+	{
+		for (int i = 0; i < glob.length(); i++)
+		{
+			if ("*?[{".indexOf(glob.charAt(i)) >= 0)
+			{
+				return i;
+			}
+		}
+		return -1;
+	}
+
+    /**
+     * The files matching a glob. Only the directory before the first
+     * wildcard is searched, and only as deep as the glob goes unless it has
+     * a **.
+     * @param glob
+     * @return
+     * @throws IOException
+     */
+	private static List<File> glob(String glob) throws IOException
+	{
+		int slash = glob.lastIndexOf('/', wildcard(glob));
+		Path base = Paths.get(slash < 0 ? "." : glob.substring(0, slash + 1));
+		String rest = glob.substring(slash + 1);
+		int depth = Integer.MAX_VALUE;
+		if (!rest.contains("**"))
+		{
+			depth = rest.split("/", -1).length;
+		}
+		PathMatcher matcher = FileSystems.getDefault().getPathMatcher("glob:" + glob);
+		if (!Files.isDirectory(base))
+		{
+			return new ArrayList<File>();
+		}
+		return find(base, depth, matcher, slash < 0 ? base : null);
+	}
+
+    /**
+     * The files below a directory that match, sorted.
+     * @param base
+     * @param depth how many directories down to look.
+     * @param matcher
+     * @param relative the directory paths are matched relative to, or null
+     * to match them as they are found.
+     * @return
+     * @throws IOException
+     */
+	private static List<File> find(Path base, int depth, final PathMatcher matcher,
+			final Path relative) throws IOException
+	{
+		final List<File> found = new ArrayList<File>();
+		Files.walkFileTree(base, EnumSet.noneOf(FileVisitOption.class), depth,
+				new SimpleFileVisitor<Path>()
+		{
+			@Override
+			public FileVisitResult visitFile(Path file, BasicFileAttributes attributes)
+			{
+				Path matched = relative == null ? file : relative.relativize(file);
+				if (attributes.isRegularFile() && matcher.matches(matched))
+				{
+					found.add(file.toFile());
+				}
+				return FileVisitResult.CONTINUE;
+			}
+		});
+		Collections.sort(found);
+		return found;
+	}
+}
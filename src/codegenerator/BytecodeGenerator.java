@@ -0,0 +1,1330 @@
+package codegenerator;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import jvm.ClassFile;
+import jvm.Code;
+import jvm.Label;
+import jvm.Opcode;
+import jvm.Program;
+import parser.Kind;
+import parser.SymbolTable;
+import scanner.Token;
+import syntaxtree.*;
+
+/**
+ * Generates a JVM class for a program, to be loaded and run in process by
+ * jvm.Program, instead of MIPS assembly.
+ *
+ * Globals are static fields, and each subprogram is a static method whose
+ * parameters and variables are JVM locals. A subprogram cannot reach the
+ * locals of the one it is declared in, so the variables a nested subprogram
+ * uses from the subprograms around it are passed to it as extra arguments:
+ * an array as itself, and an integer or real in an array of one element
+ * that its owner keeps it in instead of a local. The arrays passed to each
+ * subprogram are worked out from the variables it and the subprograms it
+ * calls use.
+ *
+ * The code does what the generated MIPS does, which DifferentialTest
+ * checks. The JVM checks indexes against the bounds and integer division
+ * against zero, and jvm.Program reports them as the MIPS does.
+ *
+ * @author ken
+ */
+public class BytecodeGenerator
+{
+
+    /**
+     * The package the classes are generated in.
+     */
+	private static final String PACKAGE = "pascal/";
+
+    /**
+     * Parses the program and runs the optimizations of the tree.
+     */
+	private final FrontEnd front;
+
+    /**
+     * The root of the syntax tree.
+     */
+	private final ProgramNode program;
+
+    /**
+     * The symbols. This is used to do some type checking.
+     */
+	private final SymbolTable symbols;
+
+    /**
+     * The internal name of the class.
+     */
+	private final String className;
+
+    /**
+     * The program, and the subprograms by name.
+     */
+	private Routine main;
+	private final LinkedHashMap<String, Routine> routines = new LinkedHashMap<String, Routine>();
+
+    /**
+     * The variables and arrays that hold reals, and the arrays.
+     */
+	private final HashSet<String> reals = new HashSet<String>();
+	private final HashSet<String> arrays = new HashSet<String>();
+
+    /**
+     * The variables of subprograms that nested subprograms use, which are
+     * kept in arrays of one element.
+     */
+	private final HashSet<String> captured = new HashSet<String>();
+
+    /**
+     * The class being generated, and the code and routine of the method
+     * being generated.
+     */
+	private ClassFile classFile;
+	private Code code;
+	private Routine routine;
+
+    /**
+     * True if calls of a subprogram to itself that are the last thing it
+     * does jump back to the start of its method instead, and those calls,
+     * and where the subprogram being generated starts again.
+     */
+	private boolean tailCalls = true;
+	private final HashSet<StatementNode> tails = new HashSet<StatementNode>();
+	private Label restart;
+
+    /**
+     * The program or a subprogram, and what its method needs.
+     */
+	private static class Routine
+	{
+		private final SubProgramNode sub;
+
+        /**
+         * The routine it is declared in, or null for the program.
+         */
+		private final Routine parent;
+
+        /**
+         * The variables it declares. The inliner declares the variables of
+         * a subprogram in each routine it is inlined in, so a name can be
+         * declared by more than one routine.
+         */
+		private final HashSet<String> declared = new HashSet<String>();
+
+        /**
+         * The variables it uses and the subprograms it calls.
+         */
+		private final HashSet<String> uses = new HashSet<String>();
+		private final HashSet<String> calls = new HashSet<String>();
+
+        /**
+         * The variables of the subprograms around it that are passed to it,
+         * in the order they are passed.
+         */
+		private final LinkedHashSet<String> free = new LinkedHashSet<String>();
+
+        /**
+         * The JVM local holding each variable, or the array it is kept in.
+         */
+		private final HashMap<String, Integer> locals = new HashMap<String, Integer>();
+		private int nextLocal;
+
+        /**
+         * Locals holding the value of an element assignment while its index
+         * is worked out, or -1 until needed.
+         */
+		private int intTemp = -1;
+		private int realTemp = -1;
+
+		private Routine(SubProgramNode sub, Routine parent)
+		{
+			this.sub = sub;
+			this.parent = parent;
+		}
+	}
+
+    /**
+     * Constructor.
+     * @param filename
+     */
+	public BytecodeGenerator(String filename)
+	{
+		this(new FrontEnd(filename));
+	}
+
+    /**
+     * Constructor. Generates a class for a program from a front end, which
+     * runs its optimizations of the tree before the class is generated.
+     * @param front
+     */
+	public BytecodeGenerator(FrontEnd front)
+	{
+		this.front = front;
+		program = front.getProgram();
+		symbols = front.getSymbols();
+		className = PACKAGE + program.getName();
+	}
+
+    /**
+     * Get the name of the program.
+     * @return
+     */
+	public String name()
+	{
+		return program.getName();
+	}
+
+    /**
+     * Get the internal name of the class generated, such as
+     * pascal/happyPath.
+     * @return
+     */
+	public String getClassName()
+	{
+		return className;
+	}
+
+    /**
+     * Set whether tail calls of a subprogram to itself are jumps.
+     * @param tailCalls
+     */
+	public void setTailCalls(boolean tailCalls)
+	{
+		this.tailCalls = tailCalls;
+	}
+
+    /**
+     * Generate the class file, after the optimizations of the front end.
+     * @return
+     */
+	public byte[] generate()
+	{
+		front.optimize();
+		classFile = new ClassFile(className);
+		routines.clear();
+		tails.clear();
+		main = new Routine(null, null);
+		declare(program.getVariables().getVars(), main);
+		declare(program.getFunctions(), main);
+		uses(program.getMain(), main);
+		free();
+		classFile.field(Program.CONSOLE, Program.CONSOLE_DESCRIPTOR);
+		for (VariableNode var : program.getVariables().getVars())
+		{
+			classFile.field(var.getName(), type(var.getName()));
+		}
+		mainMethod();
+		for (Routine sub : routines.values())
+		{
+			subprogram(sub);
+		}
+		return classFile.toByteArray();
+	}
+
+    /**
+     * Records the subprograms declared in a program or subprogram, and the
+     * variables they use.
+     * @param functions
+     * @param parent the routine they are declared in.
+     */
+	private void declare(SubProgramDeclarationsNode functions, Routine parent)
+	{
+		if (functions == null)
+		{
+			return;
+		}
+		for (SubProgramNode sub : functions.getSubPrograms())
+		{
+			Routine current = new Routine(sub, parent);
+			routines.put(sub.getName(), current);
+			declare(sub.getParameters(), current);
+			declare(sub.getDeclarations().getVars(), current);
+			if (sub.getResult() != null)
+			{
+				ArrayList<VariableNode> result = new ArrayList<VariableNode>();
+				result.add(sub.getResult());
+				declare(result, current);
+			}
+			uses(sub.getBody(), current);
+			declare(sub.getSubDeclarations(), current);
+		}
+	}
+
+    /**
+     * Records who variables belong to, and their types.
+     * @param vars
+     * @param owner
+     */
+	private void declare(ArrayList<VariableNode> vars, Routine owner)
+	{
+		for (VariableNode var : vars)
+		{
+			owner.declared.add(var.getName());
+			if (var.getType() == Token.REAL)
+			{
+				reals.add(var.getName());
+			}
+			if (symbols.getKind(var.getName()) == Kind.ARRAY)
+			{
+				arrays.add(var.getName());
+			}
+		}
+	}
+
+    /**
+     * Records the variables a statement uses and the subprograms it calls.
+     * @param stmt
+     * @param current
+     */
+	private void uses(StatementNode stmt, Routine current)
+	{
+		if (stmt instanceof AssignmentStatementNode)
+		{
+			uses(((AssignmentStatementNode) stmt).getLvalue(), current);
+			uses(((AssignmentStatementNode) stmt).getExpression(), current);
+		}
+		else if (stmt instanceof ReadNode)
+		{
+			uses(((ReadNode) stmt).getInput(), current);
+		}
+		else if (stmt instanceof WriteNode)
+		{
+			uses(((WriteNode) stmt).getOutput(), current);
+		}
+		else if (stmt instanceof ProcedureStatementNode)
+		{
+			ProcedureStatementNode call = (ProcedureStatementNode) stmt;
+			current.calls.add(call.getName());
+			for (ExpressionNode arg : call.getArguments())
+			{
+				uses(arg, current);
+			}
+		}
+		else if (stmt instanceof CompoundStatementNode)
+		{
+			for (StatementNode inner : ((CompoundStatementNode) stmt).getStatements())
+			{
+				uses(inner, current);
+			}
+		}
+		else if (stmt instanceof IfStatementNode)
+		{
+			IfStatementNode ifNode = (IfStatementNode) stmt;
+			uses(ifNode.getCondition(), current);
+			uses(ifNode.getStatement(), current);
+			uses(ifNode.getElseStatement(), current);
+		}
+		else if (stmt instanceof WhileStatementNode)
+		{
+			uses(((WhileStatementNode) stmt).getCondition(), current);
+			uses(((WhileStatementNode) stmt).getStatement(), current);
+		}
+	}
+
+    /**
+     * Records the variables an expression uses and the subprograms it calls.
+     * @param exp
+     * @param current
+     */
+	private void uses(ExpressionNode exp, Routine current)
+	{
+		if (exp instanceof OperationNode)
+		{
+			uses(((OperationNode) exp).getLeft(), current);
+			uses(((OperationNode) exp).getRight(), current);
+		}
+		else if (exp instanceof FunctionCallNode)
+		{
+			FunctionCallNode call = (FunctionCallNode) exp;
+			current.calls.add(call.getName());
+			for (ExpressionNode arg : call.getArguments())
+			{
+				uses(arg, current);
+			}
+		}
+		else if (exp instanceof VariableNode)
+		{
+			current.uses.add(((VariableNode) exp).getName());
+			if (exp instanceof ArrayNode)
+			{
+				uses(((ArrayNode) exp).getIndex(), current);
+			}
+		}
+	}
+
+    /**
+     * Works out the variables passed to each subprogram: those it uses that
+     * are neither its own nor globals, and those the subprograms it calls
+     * are passed that are not its own, until nothing changes.
+     */
+	private void free()
+	{
+		boolean changed = true;
+		while (changed)
+		{
+			changed = false;
+			for (Routine current : routines.values())
+			{
+				for (String name : current.uses)
+				{
+					changed |= addFree(current, name);
+				}
+				for (String name : current.calls)
+				{
+					for (String passed : routines.get(name).free.toArray(new String[0]))
+					{
+						changed |= addFree(current, passed);
+					}
+				}
+			}
+		}
+		captured.clear();
+		for (Routine current : routines.values())
+		{
+			captured.addAll(current.free);
+		}
+	}
+
+    /**
+     * Adds a variable to those passed to a subprogram, unless it is its own
+     * or a global.
+     * @param current
+     * @param name
+     * @return true if it was added.
+     */
+	private boolean addFree(Routine current, String name)
+	{
+		Routine owner = owner(name, current);
+		if (owner == main || owner == current)
+		{
+			return false;
+		}
+		return current.free.add(name);
+	}
+
+    /**
+     * The routine a variable belongs to: the innermost of a routine and
+     * those it is nested in that declares it.
+     * @param name
+     * @param current
+     * @return
+     */
+	private Routine owner(String name, Routine current)
+	{
+		Routine owner = current;
+		while (owner != null && !owner.declared.contains(name))
+		{
+			owner = owner.parent;
+		}
+		return owner;
+	}
+
+    /**
+     * Generate the method that runs the program. It sets the globals to
+     * zero, so the program can be run again.
+     */
+	private void mainMethod()
+	{
+		code = new Code();
+		routine = main;
+		for (VariableNode var : program.getVariables().getVars())
+		{
+			String name = var.getName();
+			if (arrays.contains(name))
+			{
+				newArray(name);
+			}
+			else
+			{
+				code.emit(reals.contains(name) ? Opcode.FCONST_0 : Opcode.ICONST_0);
+			}
+			code.emit(Opcode.PUTSTATIC, classFile.fieldRef(className, name, type(name)));
+		}
+		statement(program.getMain());
+		code.emit(Opcode.RETURN);
+		classFile.method(Program.MAIN, "()V", code);
+	}
+
+    /**
+     * Generate the method of a subprogram. The locals are its parameters,
+     * then the variables passed to it, then its own variables and result,
+     * each set to zero. A tail call stores its arguments in the parameters
+     * and starts again from the cells of the parameters nested subprograms
+     * use, so each call has cells of its own.
+     * @param sub
+     */
+	private void subprogram(Routine sub)
+	{
+		code = new Code();
+		routine = sub;
+		for (VariableNode param : sub.sub.getParameters())
+		{
+			sub.locals.put(param.getName(), local());
+		}
+		for (String name : sub.free)
+		{
+			sub.locals.put(name, local());
+		}
+		if (tailCalls)
+		{
+			TailCalls.find(sub.sub, sub.sub.getBody(), tails);
+		}
+		restart = new Label();
+		code.label(restart);
+		for (VariableNode param : sub.sub.getParameters())
+		{
+			String name = param.getName();
+			if (captured.contains(name))
+			{
+				boolean real = reals.contains(name);
+				code.emit(Opcode.ICONST_1);
+				code.emit(Opcode.NEWARRAY, real ? Opcode.T_FLOAT : Opcode.T_INT);
+				code.emit(Opcode.DUP);
+				code.emit(Opcode.ICONST_0);
+				code.emit(real ? Opcode.FLOAD : Opcode.ILOAD, sub.locals.get(name));
+				code.emit(real ? Opcode.FASTORE : Opcode.IASTORE);
+				int cell = local();
+				code.emit(Opcode.ASTORE, cell);
+				sub.locals.put(name, cell);
+			}
+		}
+		ArrayList<VariableNode> vars = new ArrayList<VariableNode>(
+				sub.sub.getDeclarations().getVars());
+		if (sub.sub.getResult() != null)
+		{
+			vars.add(sub.sub.getResult());
+		}
+		for (VariableNode var : vars)
+		{
+			String name = var.getName();
+			int local = local();
+			sub.locals.put(name, local);
+			if (arrays.contains(name))
+			{
+				newArray(name);
+				code.emit(Opcode.ASTORE, local);
+			}
+			else if (captured.contains(name))
+			{
+				code.emit(Opcode.ICONST_1);
+				code.emit(Opcode.NEWARRAY, reals.contains(name) ? Opcode.T_FLOAT : Opcode.T_INT);
+				code.emit(Opcode.ASTORE, local);
+			}
+			else if (reals.contains(name))
+			{
+				code.emit(Opcode.FCONST_0);
+				code.emit(Opcode.FSTORE, local);
+			}
+			else
+			{
+				code.emit(Opcode.ICONST_0);
+				code.emit(Opcode.ISTORE, local);
+			}
+		}
+		statement(sub.sub.getBody());
+		if (sub.sub.getResult() == null)
+		{
+			code.emit(Opcode.RETURN);
+		}
+		else
+		{
+			String result = sub.sub.getResult().getName();
+			load(result);
+			code.emit(reals.contains(result) ? Opcode.FRETURN : Opcode.IRETURN);
+		}
+		classFile.method(sub.sub.getName(), descriptor(sub), code);
+	}
+
+    /**
+     * The next local of the routine being generated.
+     * @return
+     */
+	private int local()
+	{
+		int local = routine.nextLocal++;
+		code.local(local);
+		return local;
+	}
+
+    /**
+     * The descriptor of the method of a subprogram.
+     * @param sub
+     * @return
+     */
+	private String descriptor(Routine sub)
+	{
+		StringBuilder descriptor = new StringBuilder("(");
+		for (VariableNode param : sub.sub.getParameters())
+		{
+			descriptor.append(reals.contains(param.getName()) ? "F" : "I");
+		}
+		for (String name : sub.free)
+		{
+			descriptor.append(reals.contains(name) ? "[F" : "[I");
+		}
+		descriptor.append(")");
+		if (sub.sub.getResult() == null)
+		{
+			descriptor.append("V");
+		}
+		else
+		{
+			descriptor.append(reals.contains(sub.sub.getResult().getName()) ? "F" : "I");
+		}
+		return descriptor.toString();
+	}
+
+    /**
+     * The descriptor of a global.
+     * @param name
+     * @return
+     */
+	private String type(String name)
+	{
+		String type = reals.contains(name) ? "F" : "I";
+		return arrays.contains(name) ? "[" + type : type;
+	}
+
+    /**
+     * Generate code making a new array for an array variable, set to zero.
+     * @param name
+     */
+	private void newArray(String name)
+	{
+		pushInt(Math.max(0, symbols.getEnd(name) - symbols.getStart(name) + 1));
+		code.emit(Opcode.NEWARRAY, reals.contains(name) ? Opcode.T_FLOAT : Opcode.T_INT);
+	}
+
+    /**
+     * Check whether a variable is kept in an array of one element in the
+     * routine being generated.
+     * @param name
+     * @return
+     */
+	private boolean inCell(String name)
+	{
+		return owner(name, routine) != main && captured.contains(name) && !arrays.contains(name);
+	}
+
+    /**
+     * Generate code pushing the value of a variable.
+     * @param name
+     */
+	private void load(String name)
+	{
+		boolean real = reals.contains(name);
+		if (owner(name, routine) == main)
+		{
+			code.emit(Opcode.GETSTATIC, classFile.fieldRef(className, name, type(name)));
+		}
+		else if (inCell(name))
+		{
+			code.emit(Opcode.ALOAD, routine.locals.get(name));
+			code.emit(Opcode.ICONST_0);
+			code.emit(real ? Opcode.FALOAD : Opcode.IALOAD);
+		}
+		else
+		{
+			code.emit(real ? Opcode.FLOAD : Opcode.ILOAD, routine.locals.get(name));
+		}
+	}
+
+    /**
+     * Generate the code that comes before the value stored in a variable.
+     * @param name
+     */
+	private void beginStore(String name)
+	{
+		if (inCell(name))
+		{
+			code.emit(Opcode.ALOAD, routine.locals.get(name));
+			code.emit(Opcode.ICONST_0);
+		}
+	}
+
+    /**
+     * Generate the code that stores the value pushed in a variable.
+     * @param name
+     */
+	private void endStore(String name)
+	{
+		boolean real = reals.contains(name);
+		if (owner(name, routine) == main)
+		{
+			code.emit(Opcode.PUTSTATIC, classFile.fieldRef(className, name, type(name)));
+		}
+		else if (inCell(name))
+		{
+			code.emit(real ? Opcode.FASTORE : Opcode.IASTORE);
+		}
+		else
+		{
+			code.emit(real ? Opcode.FSTORE : Opcode.ISTORE, routine.locals.get(name));
+		}
+	}
+
+    /**
+     * Generate code pushing an array.
+     * @param name
+     */
+	private void loadArray(String name)
+	{
+		if (owner(name, routine) == main)
+		{
+			code.emit(Opcode.GETSTATIC, classFile.fieldRef(className, name, type(name)));
+		}
+		else
+		{
+			code.emit(Opcode.ALOAD, routine.locals.get(name));
+		}
+	}
+
+    /**
+     * Generate code pushing the index in its array of an element. A scaled
+     * index, the offset in bytes, is divided by 4 with a shift.
+     * @param element
+     */
+	private void index(ArrayNode element)
+	{
+		int start = symbols.getStart(element.getName());
+		if (element.getIndex() instanceof ValueNode)
+		{
+			int index = constant((ValueNode) element.getIndex());
+			pushInt(element.isScaled() ? index >> 2 : index - start);
+			return;
+		}
+		integer(element.getIndex());
+		if (element.isScaled())
+		{
+			pushInt(2);
+			code.emit(Opcode.ISHR);
+		}
+		else if (start != 0)
+		{
+			pushInt(start);
+			code.emit(Opcode.ISUB);
+		}
+	}
+
+    /**
+     * Generate the code of a statement.
+     * @param stmt
+     */
+	private void statement(StatementNode stmt)
+	{
+		if (tails.contains(stmt))
+		{
+			tailCall(stmt);
+		}
+		else if (stmt instanceof AssignmentStatementNode)
+		{
+			assignment((AssignmentStatementNode) stmt);
+		}
+		else if (stmt instanceof ReadNode)
+		{
+			String name = ((ReadNode) stmt).getInput().getName();
+			boolean real = reals.contains(name);
+			beginStore(name);
+			code.emit(Opcode.GETSTATIC, console());
+			code.invoke(Opcode.INVOKEVIRTUAL, classFile.methodRef(Program.CONSOLE_CLASS,
+					real ? "readReal" : "readInt", real ? "()F" : "()I"), real ? "()F" : "()I");
+			endStore(name);
+		}
+		else if (stmt instanceof WriteNode)
+		{
+			ExpressionNode output = ((WriteNode) stmt).getOutput();
+			boolean real = output.isReal(symbols);
+			code.emit(Opcode.GETSTATIC, console());
+			if (real)
+			{
+				real(output);
+			}
+			else
+			{
+				integer(output);
+			}
+			String descriptor = real ? "(F)V" : "(I)V";
+			code.invoke(Opcode.INVOKEVIRTUAL,
+					classFile.methodRef(Program.CONSOLE_CLASS, "write", descriptor), descriptor);
+		}
+		else if (stmt instanceof ProcedureStatementNode)
+		{
+			ProcedureStatementNode call = (ProcedureStatementNode) stmt;
+			if (call(call.getName(), call.getArguments()) != null)
+			{
+				code.emit(Opcode.POP);
+			}
+		}
+		else if (stmt instanceof CompoundStatementNode)
+		{
+			for (StatementNode inner : ((CompoundStatementNode) stmt).getStatements())
+			{
+				statement(inner);
+			}
+		}
+		else if (stmt instanceof IfStatementNode)
+		{
+			IfStatementNode ifNode = (IfStatementNode) stmt;
+			Label otherwise = new Label();
+			jump(ifNode.getCondition(), false, otherwise);
+			statement(ifNode.getStatement());
+			if (ifNode.getElseStatement() == null)
+			{
+				code.label(otherwise);
+			}
+			else
+			{
+				Label end = new Label();
+				code.branch(Opcode.GOTO, end);
+				code.label(otherwise);
+				statement(ifNode.getElseStatement());
+				code.label(end);
+			}
+		}
+		else if (stmt instanceof WhileStatementNode)
+		{
+			WhileStatementNode loop = (WhileStatementNode) stmt;
+			Label top = new Label();
+			Label end = new Label();
+			code.label(top);
+			jump(loop.getCondition(), false, end);
+			statement(loop.getStatement());
+			code.branch(Opcode.GOTO, top);
+			code.label(end);
+		}
+	}
+
+    /**
+     * Generate a tail call of the subprogram being generated to itself: its
+     * arguments, worked out as a call works them out, are stored in its
+     * parameters, and it starts again.
+     * @param stmt
+     */
+	private void tailCall(StatementNode stmt)
+	{
+		ArrayList<ExpressionNode> arguments = TailCalls.arguments(stmt);
+		ArrayList<VariableNode> params = routine.sub.getParameters();
+		for (int i = 0; i < params.size(); i++)
+		{
+			boolean real = reals.contains(params.get(i).getName());
+			if (i >= arguments.size())
+			{
+				code.emit(real ? Opcode.FCONST_0 : Opcode.ICONST_0);
+			}
+			else if (real)
+			{
+				real(arguments.get(i));
+			}
+			else
+			{
+				integer(arguments.get(i));
+			}
+		}
+		for (int i = params.size() - 1; i >= 0; i--)
+		{
+			code.emit(reals.contains(params.get(i).getName()) ? Opcode.FSTORE : Opcode.ISTORE, i);
+		}
+		code.branch(Opcode.GOTO, restart);
+	}
+
+    /**
+     * Generate the code of an assignment. The value is worked out before the
+     * index of an element, as the MIPS does.
+     * @param assign
+     */
+	private void assignment(AssignmentStatementNode assign)
+	{
+		VariableNode lvalue = assign.getLvalue();
+		String name = lvalue.getName();
+		boolean real = reals.contains(name);
+		if (lvalue instanceof ArrayNode)
+		{
+			int temp;
+			if (real)
+			{
+				real(assign.getExpression());
+				if (routine.realTemp < 0)
+				{
+					routine.realTemp = local();
+				}
+				temp = routine.realTemp;
+				code.emit(Opcode.FSTORE, temp);
+			}
+			else
+			{
+				integer(assign.getExpression());
+				if (routine.intTemp < 0)
+				{
+					routine.intTemp = local();
+				}
+				temp = routine.intTemp;
+				code.emit(Opcode.ISTORE, temp);
+			}
+			loadArray(name);
+			index((ArrayNode) lvalue);
+			code.emit(real ? Opcode.FLOAD : Opcode.ILOAD, temp);
+			code.emit(real ? Opcode.FASTORE : Opcode.IASTORE);
+			return;
+		}
+		beginStore(name);
+		if (real)
+		{
+			real(assign.getExpression());
+		}
+		else
+		{
+			integer(assign.getExpression());
+		}
+		endStore(name);
+	}
+
+    /**
+     * Generate a call of a subprogram. Parameters without an argument are
+     * zero, and arguments without a parameter are not worked out.
+     * @param name
+     * @param arguments
+     * @return the result of the subprogram, or null for a procedure.
+     */
+	private VariableNode call(String name, ArrayList<ExpressionNode> arguments)
+	{
+		Routine callee = routines.get(name);
+		ArrayList<VariableNode> params = callee.sub.getParameters();
+		for (int i = 0; i < params.size(); i++)
+		{
+			boolean real = reals.contains(params.get(i).getName());
+			if (i >= arguments.size())
+			{
+				code.emit(real ? Opcode.FCONST_0 : Opcode.ICONST_0);
+			}
+			else if (real)
+			{
+				real(arguments.get(i));
+			}
+			else
+			{
+				integer(arguments.get(i));
+			}
+		}
+		for (String passed : callee.free)
+		{
+			code.emit(Opcode.ALOAD, routine.locals.get(passed));
+		}
+		String descriptor = descriptor(callee);
+		code.invoke(Opcode.INVOKESTATIC, classFile.methodRef(className, name, descriptor),
+				descriptor);
+		return callee.sub.getResult();
+	}
+
+    /**
+     * Generate a call of a function.
+     * @param call
+     * @return true if its result is a real.
+     */
+	private boolean function(FunctionCallNode call)
+	{
+		VariableNode result = call(call.getName(), call.getArguments());
+		if (result == null)
+		{
+			throw new IllegalStateException(call.getName() + " is not a function");
+		}
+		return reals.contains(result.getName());
+	}
+
+    /**
+     * Generate a branch taken when a condition of an if or while is true, or
+     * when it is false. A not on a comparison turns it around, whatever the
+     * type of its operands.
+     * @param cond
+     * @param when
+     * @param target
+     */
+	private void jump(ExpressionNode cond, boolean when, Label target)
+	{
+		if (cond instanceof OperationNode && isComparison(((OperationNode) cond).getOperation()))
+		{
+			compare((OperationNode) cond, cond.isReal(symbols), when ^ cond.isNot(), target);
+		}
+		else if (cond.isReal(symbols))
+		{
+			real(cond);
+			code.emit(Opcode.FCONST_0);
+			code.emit(Opcode.FCMPL);
+			code.branch(when ? Opcode.IFNE : Opcode.IFEQ, target);
+		}
+		else
+		{
+			integer(cond);
+			code.branch(when ? Opcode.IFNE : Opcode.IFEQ, target);
+		}
+	}
+
+    /**
+     * Generate a branch taken when a comparison holds, or when it does not.
+     * Reals are compared so that a comparison with NaN does not hold, except
+     * for not equal, as in Java.
+     * @param op
+     * @param real true to compare the operands as reals.
+     * @param when
+     * @param target
+     */
+	private void compare(OperationNode op, boolean real, boolean when, Label target)
+	{
+		Opcode branch;
+		if (real)
+		{
+			real(op.getLeft());
+			real(op.getRight());
+			switch (op.getOperation())
+			{
+				case LESS_THAN:
+					code.emit(Opcode.FCMPG);
+					branch = Opcode.IFLT;
+					break;
+				case LESS_THAN_EQUAL:
+					code.emit(Opcode.FCMPG);
+					branch = Opcode.IFLE;
+					break;
+				case GREATER_THAN:
+					code.emit(Opcode.FCMPL);
+					branch = Opcode.IFGT;
+					break;
+				case GREATER_THAN_EQUAL:
+					code.emit(Opcode.FCMPL);
+					branch = Opcode.IFGE;
+					break;
+				case EQUALS:
+					code.emit(Opcode.FCMPL);
+					branch = Opcode.IFEQ;
+					break;
+				default:
+					code.emit(Opcode.FCMPL);
+					branch = Opcode.IFNE;
+					break;
+			}
+		}
+		else
+		{
+			integer(op.getLeft());
+			integer(op.getRight());
+			switch (op.getOperation())
+			{
+				case LESS_THAN:
+					branch = Opcode.IF_ICMPLT;
+					break;
+				case LESS_THAN_EQUAL:
+					branch = Opcode.IF_ICMPLE;
+					break;
+				case GREATER_THAN:
+					branch = Opcode.IF_ICMPGT;
+					break;
+				case GREATER_THAN_EQUAL:
+					branch = Opcode.IF_ICMPGE;
+					break;
+				case EQUALS:
+					branch = Opcode.IF_ICMPEQ;
+					break;
+				default:
+					branch = Opcode.IF_ICMPNE;
+					break;
+			}
+		}
+		code.branch(when ? branch : branch.negate(), target);
+	}
+
+    /**
+     * Generate code pushing one of two constants, depending on whether a
+     * comparison holds.
+     * @param op
+     * @param real true to compare the operands as reals.
+     * @param holds the constant when it holds.
+     * @param fails the constant when it does not.
+     */
+	private void select(OperationNode op, boolean real, Opcode holds, Opcode fails)
+	{
+		Label otherwise = new Label();
+		Label end = new Label();
+		compare(op, real, false, otherwise);
+		code.emit(holds);
+		code.branch(Opcode.GOTO, end);
+		code.label(otherwise);
+		code.emit(fails);
+		code.label(end);
+	}
+
+    /**
+     * Check whether the operation is a comparison.
+     * @param operation
+     * @return
+     */
+	private static boolean isComparison(Token operation)
+	{
+		return operation == Token.LESS_THAN || operation == Token.LESS_THAN_EQUAL
+				|| operation == Token.GREATER_THAN || operation == Token.GREATER_THAN_EQUAL
+				|| operation == Token.LESS_THAN_GREATER_THAN || operation == Token.EQUALS;
+	}
+
+    /**
+     * Generate code pushing an expression worked out as an integer. The not
+     * of an expression is applied before its sign.
+     * @param exp
+     */
+	private void integer(ExpressionNode exp)
+	{
+		if (exp instanceof ValueNode)
+		{
+			pushInt(constant((ValueNode) exp));
+			return;
+		}
+		else if (exp instanceof OperationNode && exp.isReal(symbols))
+		{
+			// Only a comparison of reals can be used as an integer.
+			real(exp);
+			code.emit(Opcode.F2I);
+			return;
+		}
+		else if (exp instanceof OperationNode)
+		{
+			OperationNode op = (OperationNode) exp;
+			if (isComparison(op.getOperation()))
+			{
+				select(op, false, Opcode.ICONST_1, Opcode.ICONST_0);
+			}
+			else
+			{
+				integer(op.getLeft());
+				integer(op.getRight());
+				switch (op.getOperation())
+				{
+					case PLUS:
+						code.emit(Opcode.IADD);
+						break;
+					case MINUS:
+						code.emit(Opcode.ISUB);
+						break;
+					case MULTIPLY:
+						code.emit(Opcode.IMUL);
+						break;
+					default:
+						code.emit(Opcode.IDIV);
+						break;
+				}
+			}
+		}
+		else if (exp instanceof FunctionCallNode)
+		{
+			if (function((FunctionCallNode) exp))
+			{
+				code.emit(Opcode.F2I);
+			}
+		}
+		else
+		{
+			VariableNode var = (VariableNode) exp;
+			if (var instanceof ArrayNode)
+			{
+				loadArray(var.getName());
+				index((ArrayNode) var);
+				code.emit(reals.contains(var.getName()) ? Opcode.FALOAD : Opcode.IALOAD);
+			}
+			else
+			{
+				load(var.getName());
+			}
+			if (reals.contains(var.getName()))
+			{
+				code.emit(Opcode.F2I);
+			}
+		}
+		if (exp.isNot())
+		{
+			Label zero = new Label();
+			Label end = new Label();
+			code.branch(Opcode.IFNE, zero);
+			code.emit(Opcode.ICONST_1);
+			code.branch(Opcode.GOTO, end);
+			code.label(zero);
+			code.emit(Opcode.ICONST_0);
+			code.label(end);
+		}
+		if (exp.getSign() == Token.MINUS)
+		{
+			code.emit(Opcode.INEG);
+		}
+	}
+
+    /**
+     * Generate code pushing an expression worked out as a real. A comparison
+     * is 1.0 when it holds and 0.0 when it does not, and so is not of zero.
+     * @param exp
+     */
+	private void real(ExpressionNode exp)
+	{
+		if (exp instanceof ValueNode)
+		{
+			float value = Float.parseFloat(((ValueNode) exp).getAttribute());
+			if (exp.isNot())
+			{
+				value = value == 0 ? 1 : 0;
+			}
+			pushReal(exp.getSign() == Token.MINUS ? -value : value);
+			return;
+		}
+		else if (exp instanceof OperationNode)
+		{
+			OperationNode op = (OperationNode) exp;
+			if (isComparison(op.getOperation()))
+			{
+				select(op, true, Opcode.FCONST_1, Opcode.FCONST_0);
+			}
+			else
+			{
+				real(op.getLeft());
+				real(op.getRight());
+				switch (op.getOperation())
+				{
+					case PLUS:
+						code.emit(Opcode.FADD);
+						break;
+					case MINUS:
+						code.emit(Opcode.FSUB);
+						break;
+					case MULTIPLY:
+						code.emit(Opcode.FMUL);
+						break;
+					default:
+						code.emit(Opcode.FDIV);
+						break;
+				}
+			}
+		}
+		else if (exp instanceof FunctionCallNode)
+		{
+			if (!function((FunctionCallNode) exp))
+			{
+				code.emit(Opcode.I2F);
+			}
+		}
+		else
+		{
+			VariableNode var = (VariableNode) exp;
+			if (var instanceof ArrayNode)
+			{
+				loadArray(var.getName());
+				index((ArrayNode) var);
+				code.emit(reals.contains(var.getName()) ? Opcode.FALOAD : Opcode.IALOAD);
+			}
+			else
+			{
+				load(var.getName());
+			}
+			if (!reals.contains(var.getName()))
+			{
+				code.emit(Opcode.I2F);
+			}
+		}
+		if (exp.isNot())
+		{
+			Label zero = new Label();
+			Label end = new Label();
+			code.emit(Opcode.FCONST_0);
+			code.emit(Opcode.FCMPL);
+			code.branch(Opcode.IFNE, zero);
+			code.emit(Opcode.FCONST_1);
+			code.branch(Opcode.GOTO, end);
+			code.label(zero);
+			code.emit(Opcode.FCONST_0);
+			code.label(end);
+		}
+		if (exp.getSign() == Token.MINUS)
+		{
+			code.emit(Opcode.FNEG);
+		}
+	}
+
+    /**
+     * The value of an integer constant, with its not and sign.
+     * @param value
+     * @return
+     */
+	private static int constant(ValueNode value)
+	{
+		String text = value.getAttribute();
+		if (!value.isNot())
+		{
+			return Integer.parseInt(value.getSign() == Token.MINUS ? "-" + text : text);
+		}
+		int result = Integer.parseInt(text) == 0 ? 1 : 0;
+		return value.getSign() == Token.MINUS ? -result : result;
+	}
+
+    /**
+     * Generate code pushing an integer constant, in the shortest way.
+     * @param value
+     */
+	private void pushInt(int value)
+	{
+		if (value >= -1 && value <= 5)
+		{
+			code.emit(Opcode.values()[Opcode.ICONST_0.ordinal() + value]);
+		}
+		else if (value >= Byte.MIN_VALUE && value <= Byte.MAX_VALUE)
+		{
+			code.emit(Opcode.BIPUSH, value & 0xff);
+		}
+		else if (value >= Short.MIN_VALUE && value <= Short.MAX_VALUE)
+		{
+			code.emit(Opcode.SIPUSH, value & 0xffff);
+		}
+		else
+		{
+			constant(classFile.integer(value));
+		}
+	}
+
+    /**
+     * Generate code pushing a real constant.
+     * @param value
+     */
+	private void pushReal(float value)
+	{
+		if (Float.floatToRawIntBits(value) == 0)
+		{
+			code.emit(Opcode.FCONST_0);
+		}
+		else if (value == 1)
+		{
+			code.emit(Opcode.FCONST_1);
+		}
+		else if (value == 2)
+		{
+			code.emit(Opcode.FCONST_2);
+		}
+		else
+		{
+			constant(classFile.real(value));
+		}
+	}
+
+    /**
+     * Generate code pushing a constant from the constant pool.
+     * @param index
+     */
+	private void constant(int index)
+	{
+		code.emit(index <= 255 ? Opcode.LDC : Opcode.LDC_W, index);
+	}
+
+    /**
+     * The index of the console field in the constant pool.
+     * @return
+     */
+	private int console()
+	{
+		return classFile.fieldRef(className, Program.CONSOLE, Program.CONSOLE_DESCRIPTOR);
+	}
+}
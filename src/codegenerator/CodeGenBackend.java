@@ -0,0 +1,70 @@
+package codegenerator;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.io.Writer;
+
+/**
+ * A target the compiler generates code for. Every backend generates code
+ * from the tree a FrontEnd has parsed and optimized, so the optimizations
+ * of the tree are shared and only what is particular to the target is here.
+ *
+ * A backend generates a whole program at once, since where variables live
+ * depends on the whole program: the frames and registers of the MIPS and
+ * x86-64, and the variables passed to each method of the JVM.
+ *
+ * @author ken
+ */
+public interface CodeGenBackend
+{
+
+    /**
+     * Get the name the backend is chosen by, such as mips.
+     * @return
+     */
+	String getName();
+
+    /**
+     * Get the extension of the file the code is written to, such as .asm.
+     * @return
+     */
+	String getExtension();
+
+    /**
+     * Sets up the backend from the command line flags, such as -O0. Flags
+     * that are not about this backend are left alone. The compiler calls it
+     * once before compiling anything, to check the flags.
+     * @param args
+     * @throws IllegalArgumentException if a flag has a bad value.
+     */
+	void configure(String... args);
+
+    /**
+     * Generates the code of a program, after the optimizations of the front
+     * end.
+     * @param front
+     * @param out where the code is written.
+     * @throws IOException
+     */
+	void generate(FrontEnd front, OutputStream out) throws IOException;
+
+    /**
+     * Generates the code of a program and runs it, in this JVM or natively.
+     * @param front
+     * @param input what the program reads.
+     * @param output where the program writes.
+     * @throws IOException
+     * @throws IllegalStateException if the program fails.
+     * @throws UnsupportedOperationException if the code cannot be run
+     * here.
+     */
+	void run(FrontEnd front, Reader input, Writer output) throws IOException;
+
+    /**
+     * Get what the backend did to the last program it generated, for
+     * -stats.
+     * @return
+     */
+	String report();
+}
@@ -1,9 +1,15 @@
 package codegenerator;
 
-import java.io.BufferedWriter;
+import java.io.BufferedOutputStream;
 import java.io.File;
-import java.io.FileWriter;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.util.ArrayList;
+import java.util.List;
+import parser.Parser;
 
 /**
  *
@@ -11,28 +17,205 @@ import java.io.IOException;
  */
 public class Compiler
 {
-	
+
 	public static void main(String[] args) throws IOException
 	{
-        if(args.length < 1)
+		List<String> inputs = new ArrayList<String>();
+		for(String arg : args)
+		{
+			if(!arg.startsWith("-"))
+			{
+				inputs.add(arg);
+			}
+		}
+        if(inputs.isEmpty())
         {
-            System.out.println("Usage: pascalc <filename>");
+            System.out.println("Usage: pascalc <file|directory|glob>... [-p] [-O0] "
+                    + "[-peephole=rule,...] [-unroll[=factor]] [-no-bounds-check] "
+                    + "[-latency=name=cycles,...] [-delay-slots] [-stats] "
+                    + "[-backend=mips|jvm|x86] [-run] [-jobs=n]");
+            System.out.println("The x86 backend writes name.s with its runtime; build it with "
+                    + "as -o name.o name.s && ld -o name name.o");
             System.exit(-1);
         }
-        String inFile = args[0];
-		Generator compiler = new Generator(inFile);
-		String progname = compiler.name();
-		String asm = compiler.generate();
-		if(args.length == 2 && args[1].equals("-p"))
-		{
-			System.out.println(compiler.getTree());
-		}
-		progname = progname + ".asm";
-		File mipsFile = new File(progname);
-		BufferedWriter asmWriter = new BufferedWriter(
-			new FileWriter(mipsFile.getAbsoluteFile()));
-		System.out.println("Writing to " + mipsFile.getAbsolutePath());
-		asmWriter.write(asm);
-		asmWriter.close();
+        String inFile = inputs.get(0);
+		CodeGenBackend backend = new MipsBackend();
+		boolean printTree = false;
+		boolean stats = false;
+		boolean run = false;
+		int jobs = Runtime.getRuntime().availableProcessors();
+		for(int i = 0; i < args.length; i++)
+		{
+			if(args[i].equals("-p"))
+			{
+				printTree = true;
+			}
+			else if(args[i].equals("-stats"))
+			{
+				stats = true;
+			}
+			else if(args[i].equals("-run"))
+			{
+				run = true;
+			}
+			else if(args[i].startsWith("-jobs="))
+			{
+				try
+				{
+					jobs = Integer.parseInt(args[i].substring("-jobs=".length()));
+				}
+				catch(NumberFormatException e)
+				{
+					jobs = 0;
+				}
+				if(jobs < 1)
+				{
+					System.out.println("Jobs must be a number at least 1: " + args[i]);
+					System.exit(-1);
+				}
+			}
+			else if(args[i].startsWith("-backend="))
+			{
+				try
+				{
+					backend = backend(args[i].substring("-backend=".length()));
+				}
+				catch(IllegalArgumentException e)
+				{
+					System.out.println(e.getMessage());
+					System.exit(-1);
+				}
+			}
+		}
+		try
+		{
+			FrontEnd.check(args);
+			backend(backend.getName()).configure(args);
+		}
+		catch(IllegalArgumentException e)
+		{
+			System.out.println(e.getMessage());
+			System.exit(-1);
+		}
+		if(inputs.size() > 1 || new File(inFile).isDirectory() || BatchCompiler.isGlob(inFile))
+		{
+			if(printTree || run)
+			{
+				System.out.println("-p and -run take a single file");
+				System.exit(-1);
+			}
+			System.exit(batch(inputs, backend, jobs, stats, args) ? 0 : 1);
+		}
+		Parser parser = null;
+		try
+		{
+			parser = new Parser(inFile);
+		}
+		catch(IllegalArgumentException e)
+		{
+			// The file could not be read.
+			System.out.println(e.getMessage());
+			System.exit(1);
+		}
+		FrontEnd front = new FrontEnd(parser);
+		configure(front, backend, args);
+		if(run)
+		{
+			backend.run(front, new InputStreamReader(System.in), new OutputStreamWriter(System.out));
+		}
+		else
+		{
+			File outFile = new File(front.name() + backend.getExtension());
+			OutputStream out = new BufferedOutputStream(
+				new FileOutputStream(outFile.getAbsoluteFile()));
+			System.out.println("Writing to " + outFile.getAbsolutePath());
+			backend.generate(front, out);
+			out.close();
+		}
+		if(printTree)
+		{
+			System.out.println(front.getTree());
+		}
+		if(stats)
+		{
+			System.out.print(front.report() + backend.report());
+		}
+	}
+
+	/**
+	 * Compiles many files at once with BatchCompiler, and writes what came
+	 * of each.
+	 * @param inputs the files, directories and globs named.
+	 * @param backend
+	 * @param jobs the most files compiled at once.
+	 * @param stats true to write what the backend did to each.
+	 * @param args
+	 * @return true if every file compiled.
+	 * @throws IOException
+	 */
+	private static boolean batch(List<String> inputs, CodeGenBackend backend, int jobs,
+			boolean stats, String... args) throws IOException
+	{
+		List<BatchCompiler.Result> results = new BatchCompiler(backend.getName(), jobs, args)
+				.compile(BatchCompiler.sources(inputs));
+		int failed = 0;
+		for(BatchCompiler.Result result : results)
+		{
+			System.out.println(result);
+			if(!result.isCompiled())
+			{
+				failed++;
+			}
+			else if(stats)
+			{
+				System.out.print(result.getReport());
+			}
+		}
+		System.out.println((results.size() - failed) + " compiled, " + failed + " failed");
+		return failed == 0;
+	}
+
+	/**
+	 * Every backend, the first being the default.
+	 * @return
+	 */
+	public static List<CodeGenBackend> allBackends()
+	{
+		List<CodeGenBackend> all = new ArrayList<CodeGenBackend>();
+		all.add(new MipsBackend());
+		all.add(new JvmBackend());
+		all.add(new X86Backend());
+		return all;
+	}
+
+	/**
+	 * Makes the named backend.
+	 * @param name such as mips, jvm or x86.
+	 * @return
+	 */
+	public static CodeGenBackend backend(String name)
+	{
+		for(CodeGenBackend backend : allBackends())
+		{
+			if(backend.getName().equals(name))
+			{
+				return backend;
+			}
+		}
+		throw new IllegalArgumentException("Unknown backend: " + name);
+	}
+
+	/**
+	 * Sets up the optimizations of the front end and of the backend from
+	 * the command line flags, such as -O0 or -unroll=8. Flags that are not
+	 * about the generated code are left alone.
+	 * @param front
+	 * @param backend
+	 * @param args
+	 */
+	public static void configure(FrontEnd front, CodeGenBackend backend, String... args)
+	{
+		front.configure(args);
+		backend.configure(args);
 	}
 }
@@ -0,0 +1,291 @@
+package codegenerator;
+
+import interpreter.FastInterpreter;
+import interpreter.Interpreter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.util.Arrays;
+import parser.Parser;
+import syntaxtree.ProgramNode;
+
+/**
+ * Checks the compiler against the interpreter. Each program is run by the
+ * interpreter, then compiled in each configuration and run by its backend,
+ * the simulator for MIPS, this JVM for a JVM class, and natively for
+ * x86-64, and what they write is compared, along with how they failed if
+ * they did. A configuration that cannot be run here is left out. The fast
+ * interpreter is checked against it the same way. The programs
+ * are those in docs/testing, then random ones.
+ *
+ * Usage: DifferentialTest [count] [seed], for count random programs from
+ * the given seed. Exits with 1 if any program runs differently.
+ *
+ * @author ken
+ */
+public class DifferentialTest
+{
+
+	/**
+	 * The programs in docs/testing that parse.
+	 */
+	private static final String[] TEST_FILES = {
+		"docs/testing/declarations.txt",
+		"docs/testing/array_declarations.txt",
+		"docs/testing/bigfile.txt",
+		"docs/testing/happy_path.pas",
+		"docs/testing/empty_pascal.txt"};
+
+	/**
+	 * The backend and the compiler flags of each configuration.
+	 */
+	private static final String[][] CONFIGURATIONS = {
+		{"mips", "-O0"},
+		{"mips"},
+		{"mips", "-unroll", "-delay-slots"},
+		{"mips", "-O0", "-delay-slots"},
+		{"jvm"},
+		{"jvm", "-O0"},
+		{"x86"},
+		{"x86", "-O0"}};
+
+	/**
+	 * The most statements the interpreter runs; a program that runs longer
+	 * is skipped.
+	 */
+	private static final long STATEMENTS = 2000000;
+
+	/**
+	 * The most instructions the simulator runs.
+	 */
+	private static final String INSTRUCTIONS = "-limit=200000000";
+
+	/**
+	 * Programs checked, skipped, and failed.
+	 */
+	private static int checked;
+	private static int skipped;
+	private static int failed;
+
+	public static void main(String[] args) throws IOException
+	{
+		int count = args.length > 0 ? Integer.parseInt(args[0]) : 100;
+		long seed = args.length > 1 ? Long.parseLong(args[1]) : 1;
+		for (String file : TEST_FILES)
+		{
+			check(file, "1 2 3 4 5 6 7 8 9 10\n");
+		}
+		File file = File.createTempFile("fuzz", ".pas");
+		file.deleteOnExit();
+		for (long i = seed; i < seed + count; i++)
+		{
+			RandomProgram program = new RandomProgram(i);
+			Writer out = new FileWriter(file);
+			out.write(program.source());
+			out.close();
+			if (!check(file.getPath(), program.input()))
+			{
+				System.out.println("Seed " + i + ":");
+				System.out.println(program.source());
+			}
+		}
+		System.out.println(checked + " programs checked, " + skipped + " skipped, "
+				+ failed + " failed");
+		System.exit(failed == 0 ? 0 : 1);
+	}
+
+	/**
+	 * Runs a program with the interpreter and compiled in each
+	 * configuration.
+	 * @param file
+	 * @param input
+	 * @return false if it ran differently compiled.
+	 */
+	private static boolean check(String file, String input)
+	{
+		PrintStream console = System.out;
+		String expected;
+		String fast;
+		try
+		{
+			// The parser reports success on standard output.
+			System.setOut(new PrintStream(new NullOutputStream()));
+			Parser parser = new Parser(file);
+			ProgramNode tree = parser.program();
+			Interpreter interpreter = new Interpreter(tree, parser.getSymbolTable());
+			interpreter.setLimit(STATEMENTS);
+			expected = interpret(interpreter, input);
+			FastInterpreter fastInterpreter = new FastInterpreter(tree, parser.getSymbolTable());
+			fastInterpreter.setLimit(STATEMENTS);
+			fast = interpret(fastInterpreter, input);
+		}
+		finally
+		{
+			System.setOut(console);
+		}
+		if (expected == null)
+		{
+			skipped++;
+			return true;
+		}
+		checked++;
+		boolean same = true;
+		if (!expected.equals(fast))
+		{
+			System.out.println(file + " differs with the fast interpreter.");
+			System.out.println("Interpreted:\n" + expected);
+			System.out.println("Fast:\n" + fast);
+			same = false;
+		}
+		for (String[] configuration : CONFIGURATIONS)
+		{
+			String[] flags = Arrays.copyOfRange(configuration, 1, configuration.length);
+			String actual;
+			try
+			{
+				System.setOut(new PrintStream(new NullOutputStream()));
+				FrontEnd front = new FrontEnd(file);
+				CodeGenBackend backend = Compiler.backend(configuration[0]);
+				Compiler.configure(front, backend, flags);
+				backend.configure(INSTRUCTIONS);
+				actual = run(backend, front, input);
+			}
+			catch (UnsupportedOperationException e)
+			{
+				continue;
+			}
+			catch (RuntimeException e)
+			{
+				actual = "Compiling failed: " + e + "\n";
+			}
+			catch (VerifyError e)
+			{
+				actual = "Compiling failed: " + e + "\n";
+			}
+			finally
+			{
+				System.setOut(console);
+			}
+			if (!actual.equals(expected))
+			{
+				System.out.println(file + " " + Arrays.toString(configuration) + " differs.");
+				System.out.println("Interpreted:\n" + expected);
+				System.out.println("Compiled:\n" + actual);
+				same = false;
+			}
+		}
+		if (!same)
+		{
+			failed++;
+		}
+		return same;
+	}
+
+	/**
+	 * Runs a program with the interpreter.
+	 * @param interpreter
+	 * @param input
+	 * @return what it wrote, followed by why it failed if it did, or null if
+	 * it ran too long.
+	 */
+	private static String interpret(Interpreter interpreter, String input)
+	{
+		StringWriter output = new StringWriter();
+		try
+		{
+			interpreter.run(new StringReader(input), output);
+		}
+		catch (IOException e)
+		{
+			throw new IllegalStateException(e);
+		}
+		catch (IllegalStateException e)
+		{
+			return failed(output, e);
+		}
+		return output.toString();
+	}
+
+	/**
+	 * Runs a program with the fast interpreter.
+	 * @param interpreter
+	 * @param input
+	 * @return what it wrote, followed by why it failed if it did, or null if
+	 * it ran too long.
+	 */
+	private static String interpret(FastInterpreter interpreter, String input)
+	{
+		StringWriter output = new StringWriter();
+		try
+		{
+			interpreter.run(new StringReader(input), output);
+		}
+		catch (IOException e)
+		{
+			throw new IllegalStateException(e);
+		}
+		catch (IllegalStateException e)
+		{
+			return failed(output, e);
+		}
+		return output.toString();
+	}
+
+	/**
+	 * What an interpreter wrote before it failed, followed by why.
+	 * @param output
+	 * @param e
+	 * @return or null if it ran too long.
+	 */
+	private static String failed(StringWriter output, IllegalStateException e)
+	{
+		if (e.getMessage() != null && e.getMessage().startsWith("Ran for more than"))
+		{
+			return null;
+		}
+		output.write("Failed: " + e.getMessage() + "\n");
+		return output.toString();
+	}
+
+	/**
+	 * Compiles a program and runs it.
+	 * @param backend
+	 * @param front
+	 * @param input
+	 * @return what it wrote, followed by why it failed if it did.
+	 */
+	private static String run(CodeGenBackend backend, FrontEnd front, String input)
+	{
+		StringWriter output = new StringWriter();
+		try
+		{
+			backend.run(front, new StringReader(input), output);
+		}
+		catch (IOException e)
+		{
+			throw new IllegalStateException(e);
+		}
+		catch (IllegalStateException e)
+		{
+			// Without where it failed, which the interpreter does not say.
+			output.write("Failed: " + e.getMessage().split(" at ")[0] + "\n");
+		}
+		return output.toString();
+	}
+
+	/**
+	 * Throws away what is written.
+	 */
+	private static class NullOutputStream extends OutputStream
+	{
+		@Override
+		public void write(int b)
+		{
+		}
+	}
+}
@@ -0,0 +1,350 @@
+package codegenerator;
+
+import java.util.ArrayList;
+import optimizer.CommonSubexpressions;
+import optimizer.ConstantFolder;
+import optimizer.DeadCodeEliminator;
+import optimizer.InductionVariables;
+import optimizer.Inliner;
+import optimizer.LoopInvariants;
+import optimizer.LoopUnroller;
+import optimizer.RangeAnalysis;
+import parser.Parser;
+import parser.SymbolTable;
+import syntaxtree.ProgramNode;
+import syntaxtree.VariableNode;
+
+/**
+ * Parses a program and runs the optimizations of its syntax tree that do
+ * not depend on the target, so every backend generates code from the same
+ * tree. The optimizations add the temporaries they need to the
+ * declarations and the symbol table, so the tree is still a program. Range
+ * analysis only marks the elements a backend need not check against the
+ * bounds. It runs before strength reduction, which turns only the indexes
+ * of those elements in to offsets in bytes, since an offset that wraps
+ * around could pass a check its index would fail.
+ *
+ * @author ken
+ */
+public class FrontEnd
+{
+
+    /**
+     * Copies of the loop body made by -unroll without a factor.
+     */
+	private static final int DEFAULT_UNROLL_FACTOR = 4;
+
+    /**
+     * The root of the syntax tree.
+     */
+	private final ProgramNode program;
+
+    /**
+     * The symbols of the program.
+     */
+	private final SymbolTable symbols;
+
+    /**
+     * True for each optimization that is run.
+     */
+	private boolean inlining = true;
+	private boolean inductionVariables = true;
+	private boolean loopInvariants = true;
+	private boolean commonSubexpressions = true;
+	private boolean deadCode = true;
+
+    /**
+     * Unrolls while loops with a known trip count, or null to leave them.
+     */
+	private LoopUnroller unroller;
+
+    /**
+     * Marks the elements whose index is always in the bounds of the array,
+     * so backends do not check them, or null to check them all.
+     */
+	private RangeAnalysis ranges;
+
+    /**
+     * True if the backends check indexes against the bounds of arrays.
+     */
+	private boolean boundsCheck = true;
+
+    /**
+     * The temporaries made by strength reduction, loop invariant hoisting
+     * and common subexpression elimination, in the order they were made.
+     */
+	private final ArrayList<VariableNode> temporaries = new ArrayList<VariableNode>();
+
+    /**
+     * True once the optimizations have run.
+     */
+	private boolean optimized;
+
+    /**
+     * Constructor. Parses the program and folds its constants.
+     * @param filename
+     */
+	public FrontEnd(String filename)
+	{
+		this(new Parser(filename));
+	}
+
+    /**
+     * Constructor. Parses the program with a parser set up by the caller,
+     * such as one that throws on errors, and folds its constants.
+     * @param parser
+     */
+	public FrontEnd(Parser parser)
+	{
+		program = parser.program();
+		symbols = parser.getSymbolTable();
+		new ConstantFolder(symbols).fold(program);
+		ranges = new RangeAnalysis(symbols);
+	}
+
+    /**
+     * Constructor of a front end without a program, which only checks flags.
+     */
+	private FrontEnd()
+	{
+		program = null;
+		symbols = null;
+	}
+
+    /**
+     * Get the name of the program.
+     * @return
+     */
+	public String name()
+	{
+		return program.getName();
+	}
+
+    /**
+     * Get the syntax tree.
+     * @return
+     */
+	public ProgramNode getProgram()
+	{
+		return program;
+	}
+
+    /**
+     * Get the symbol table.
+     * @return
+     */
+	public SymbolTable getSymbols()
+	{
+		return symbols;
+	}
+
+    /**
+     * Get the string representation of the tree, as it is after the
+     * optimizations if they have run.
+     * @return
+     */
+	public String getTree()
+	{
+		return program.indentedToString(0);
+	}
+
+    /**
+     * Turns inlining of calls to small functions and procedures on or off.
+     * @param on
+     */
+	public void setInlining(boolean on)
+	{
+		inlining = on;
+	}
+
+    /**
+     * Turns unrolling of while loops with a known trip count on or off.
+     * Loops too big to unroll fully get their body copied factor times.
+     * @param factor the number of copies, or 0 to turn unrolling off.
+     */
+	public void setLoopUnrolling(int factor)
+	{
+		unroller = factor > 0 ? new LoopUnroller(factor) : null;
+	}
+
+    /**
+     * Turns strength reduction of induction variables on or off.
+     * @param on
+     */
+	public void setInductionVariables(boolean on)
+	{
+		inductionVariables = on;
+	}
+
+    /**
+     * Turns hoisting loop invariant expressions in to temporaries set before
+     * their loops on or off.
+     * @param on
+     */
+	public void setLoopInvariants(boolean on)
+	{
+		loopInvariants = on;
+	}
+
+    /**
+     * Turns common subexpression elimination on or off.
+     * @param on
+     */
+	public void setCommonSubexpressionElimination(boolean on)
+	{
+		commonSubexpressions = on;
+	}
+
+    /**
+     * Turns removal of dead stores, unreachable code and unused variables on
+     * or off.
+     * @param on
+     */
+	public void setDeadCodeElimination(boolean on)
+	{
+		deadCode = on;
+	}
+
+    /**
+     * Turns marking the elements that range analysis proves always in the
+     * bounds of their arrays on or off.
+     * @param on
+     */
+	public void setRangeAnalysis(boolean on)
+	{
+		ranges = on ? new RangeAnalysis(symbols) : null;
+	}
+
+    /**
+     * Get the range analysis, to report how many bounds checks it removed.
+     * Null if it is turned off.
+     * @return
+     */
+	public RangeAnalysis getRangeAnalysis()
+	{
+		return ranges;
+	}
+
+    /**
+     * Sets up the optimizations from the command line flags -O0, -unroll,
+     * -unroll=factor and -no-bounds-check, which leaves no checks for range
+     * analysis to remove. Other flags are left alone.
+     * @param args
+     * @throws IllegalArgumentException if a flag has a bad value.
+     */
+	public void configure(String... args)
+	{
+		for (String arg : args)
+		{
+			if (arg.equals("-O0"))
+			{
+				inlining = false;
+				inductionVariables = false;
+				loopInvariants = false;
+				commonSubexpressions = false;
+				deadCode = false;
+				unroller = null;
+				ranges = null;
+			}
+			else if (arg.equals("-no-bounds-check"))
+			{
+				boundsCheck = false;
+				ranges = null;
+			}
+			else if (arg.equals("-unroll"))
+			{
+				setLoopUnrolling(DEFAULT_UNROLL_FACTOR);
+			}
+			else if (arg.startsWith("-unroll="))
+			{
+				int factor;
+				try
+				{
+					factor = Integer.parseInt(arg.substring("-unroll=".length()));
+				}
+				catch (NumberFormatException e)
+				{
+					factor = -1;
+				}
+				if (factor < 0)
+				{
+					throw new IllegalArgumentException("Unroll factor must be a number at least 0: " + arg);
+				}
+				setLoopUnrolling(factor);
+			}
+		}
+	}
+
+    /**
+     * Checks the command line flags configure reads, before any program is
+     * parsed.
+     * @param args
+     * @throws IllegalArgumentException if a flag has a bad value.
+     */
+	public static void check(String... args)
+	{
+		new FrontEnd().configure(args);
+	}
+
+    /**
+     * Runs the optimizations that are on, the first time it is called.
+     */
+	public void optimize()
+	{
+		if (optimized)
+		{
+			return;
+		}
+		optimized = true;
+		if (inlining)
+		{
+			new Inliner(symbols).inline(program);
+			new ConstantFolder(symbols).fold(program);
+		}
+		if (unroller != null)
+		{
+			unroller.unroll(program);
+		}
+		if (ranges != null)
+		{
+			ranges.analyze(program);
+		}
+		if (inductionVariables)
+		{
+			InductionVariables reducer = new InductionVariables(symbols);
+			reducer.setBoundsCheck(boundsCheck);
+			temporaries.addAll(reducer.reduce(program));
+		}
+		if (loopInvariants)
+		{
+			temporaries.addAll(new LoopInvariants(symbols).hoist(program));
+		}
+		if (commonSubexpressions)
+		{
+			temporaries.addAll(new CommonSubexpressions(symbols).eliminate(program));
+		}
+		if (deadCode)
+		{
+			new DeadCodeEliminator().eliminate(program);
+		}
+	}
+
+    /**
+     * A report of what the optimizations did, for -stats.
+     * @return
+     */
+	public String report()
+	{
+		return ranges == null ? "" : ranges.report();
+	}
+
+    /**
+     * Get the temporaries made by the optimizations, which a backend may
+     * keep in registers.
+     * @return
+     */
+	public ArrayList<VariableNode> getTemporaries()
+	{
+		return temporaries;
+	}
+}
@@ -1,12 +1,37 @@
 package codegenerator;
 
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.Writer;
 import java.util.ArrayList;
-import parser.Parser;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import mips.Address;
+import mips.Code;
+import mips.Immediate;
+import mips.Instruction;
+import mips.Label;
+import mips.Opcode;
+import mips.PeepholeOptimizer;
+import mips.RealImmediate;
+import mips.Register;
+import mips.Scheduler;
+import optimizer.Expressions;
+import optimizer.LoopInvariants;
+import parser.Kind;
 import parser.SymbolTable;
 import scanner.Token;
 import syntaxtree.*;
 
 /**
+ * Generates MIPS assembly from the syntax tree. The code is written out a
+ * routine at a time, but each routine, main included, is built whole before
+ * it is written: its prologue saves the registers its body turns out to
+ * use, and the peephole optimizer and the scheduler run over all of it. So
+ * memory grows with the largest routine, which is main for most programs,
+ * not with the program as a whole.
  *
  * @author ken
  */
@@ -20,14 +45,9 @@ public class Generator
 	private ProgramNode program;
 
     /**
-     * The global StringBuilder that holds the generated code.
+     * Parses the program and runs the optimizations of the tree.
      */
-	private StringBuilder asm;
-
-    /**
-     * The parser used to build the syntax tree.
-     */
-	private Parser parser;
+	private FrontEnd front;
 
     /**
      * Number of if branches needed.
@@ -41,440 +61,1652 @@ public class Generator
 	private int numWhile;
 
     /**
-     * Number of branches needed.
+     * Number of integer registers available for expressions, $t0 - $t8.
+     */
+	private static final int INT_REGISTERS = 9;
+
+    /**
+     * Integer register kept free to reload a spilled operand.
+     */
+	private static final int INT_SCRATCH = 9;
+
+    /**
+     * Number of real registers available for expressions, $f0 - $f11.
+     */
+	private static final int REAL_REGISTERS = 12;
+
+    /**
+     * Real register kept free to reload a spilled operand. $f12 is left
+     * alone since it is used to write reals.
+     */
+	private static final int REAL_SCRATCH = 13;
+
+    /**
+     * Number of saved registers, $s0 - $s7, that can hold loop invariants.
      */
-	private int numBranch;
+	private static final int SAVED_INT_REGISTERS = 8;
 
     /**
-     * A flag used to check if the code has been generated yet.
+     * Number of saved real registers, $f20 - $f30 even, that can hold loop
+     * invariants.
      */
-	private boolean generated;
+	private static final int SAVED_REAL_REGISTERS = 6;
+
+    /**
+     * Most saved registers given to induction variable and common
+     * subexpression temporaries for the whole program, taken from the top:
+     * $s7 down, and $f30 down.
+     */
+	private static final int PROMOTED_INT_REGISTERS = 4;
+	private static final int PROMOTED_REAL_REGISTERS = 3;
+
+    /**
+     * The registers the first four words of arguments are passed in. The
+     * caller also reserves a word on the stack for each of them, which the
+     * callee may store them in.
+     */
+	private static final Register[] ARGUMENT_REGISTERS = {
+		Register.A0, Register.A1, Register.A2, Register.A3};
+
+    /**
+     * Offset from $fp of the static link in the frame of a nested function
+     * or procedure: the $fp of the frame of the subprogram it is declared in.
+     * The caller passes it in $v1.
+     */
+	private static final int STATIC_LINK = -12;
+
+    /**
+     * Real registers a leaf subprogram without a frame can keep its variables
+     * in, besides $f12 and $f14 when no argument is passed in them. These are
+     * not saved across calls, and not used for expressions.
+     */
+	private static final Register[] LEAF_REAL_REGISTERS = {Register.F16, Register.F18};
+
+    /**
+     * The label of the code that stops the program when an index is out of
+     * the bounds of its array.
+     */
+	private static final String BOUNDS_ERROR = "_bounds";
+
+    /**
+     * The stack frame of a function or procedure. $fp points at the top of
+     * the frame, which is where the caller's $sp was: the arguments are
+     * above it, at 0($fp), 4($fp) and so on. Below it are $ra, the caller's
+     * $fp, the static link of a nested subprogram, the variables, and at the
+     * bottom, from 0($sp), the saved registers used for loop invariants.
+     *
+     * A leaf, which calls nothing, does not save $ra. A leaf that does no
+     * input or output and whose variables fit in spare argument and result
+     * registers has no frame at all, and keeps its variables in them.
+     */
+	private static class Frame
+	{
+		private SubProgramNode sub;
+
+		/**
+		 * 1 for a subprogram of the program, one more for each level of
+		 * nesting.
+		 */
+		private int level;
+
+		/**
+		 * The frame of the subprogram this one is nested in, or null.
+		 */
+		private Frame parent;
+
+		/**
+		 * True if the subprogram calls nothing.
+		 */
+		private boolean leaf;
+
+		/**
+		 * Offsets from $fp of the parameters and variables.
+		 */
+		private HashMap<String, Integer> offsets = new HashMap<String, Integer>();
+
+		/**
+		 * The registers holding the parameters and variables, or null if the
+		 * subprogram has a frame.
+		 */
+		private HashMap<String, Register> registers;
+
+		/**
+		 * Bytes from $fp down to the last variable.
+		 */
+		private int size;
+	}
+
+    /**
+     * True if a function or procedure calling itself as the last thing it
+     * does jumps back to its start instead.
+     */
+	private boolean tailCalls;
+
+    /**
+     * The calls of subprograms to themselves that are the last thing they
+     * do, and are generated as jumps.
+     */
+	private HashSet<StatementNode> tails = new HashSet<StatementNode>();
+
+    /**
+     * True if the index of an array element is checked against the bounds of
+     * the array when the program runs.
+     */
+	private boolean boundsCheck;
+
+    /**
+     * True once a bounds check has been generated, so the code that stops
+     * the program is needed.
+     */
+	private boolean boundsChecked;
+
+    /**
+     * The frames of the functions and procedures, by name, in the order they
+     * are declared.
+     */
+	private LinkedHashMap<String, Frame> frames;
+
+    /**
+     * The frame of the subprogram being generated, or null in main.
+     */
+	private Frame frame;
+
+    /**
+     * Number of saved registers holding temporaries.
+     */
+	private int promotedInt;
+	private int promotedReal;
+
+    /**
+     * The names of the temporaries held in saved registers.
+     */
+	private HashSet<String> promoted;
+
+    /**
+     * Finds the loop invariant expressions of while loops, or null to leave
+     * loops as they are.
+     */
+	private LoopInvariants invariants;
+
+    /**
+     * The saved registers holding loop invariants, by expression key.
+     */
+	private HashMap<String, Register> held;
+
+    /**
+     * Number of $s registers and saved real registers in use.
+     */
+	private int savedInt;
+	private int savedReal;
+
+    /**
+     * Most $s registers and saved real registers in use at once, which main
+     * saves and restores.
+     */
+	private int maxSavedInt;
+	private int maxSavedReal;
 
     /**
      * The symbols. This is used to do some type checking.
      */
 	private SymbolTable symbols;
 
+    /**
+     * The peephole optimizer run over the .text section, or null to skip it.
+     */
+	private PeepholeOptimizer peephole;
+
+    /**
+     * Schedules the instructions of each routine after the peephole pass,
+     * or null to leave them in order.
+     */
+	private Scheduler scheduler;
+
     /**
      * Constructor.
      * @param filename 
      */
 	public Generator(String filename)
 	{
-		asm = new StringBuilder();
-		parser = new Parser(filename);
-		program = parser.program();
-		symbols = parser.getSymbolTable();
-		generated = false;
+		this(new FrontEnd(filename));
+	}
+
+    /**
+     * Constructor. Generates code for a program from a front end, which runs
+     * its optimizations of the tree before the code is generated.
+     * @param front 
+     */
+	public Generator(FrontEnd front)
+	{
+		this.front = front;
+		program = front.getProgram();
+		symbols = front.getSymbols();
+		peephole = new PeepholeOptimizer();
+		scheduler = new Scheduler();
+		invariants = new LoopInvariants(symbols);
+		held = new HashMap<String, Register>();
+		tailCalls = true;
+		boundsCheck = true;
+		promoted = new HashSet<String>();
 		numIf = 0;
 		numWhile = 0;
-		numBranch = 0;
 	}
 
     /**
-     * Gets the string representation of the tree. If the file
-     * has not yet been parsed, returns a string stating that.
+     * Get the name of the program.
+     * @return 
+     */
+	public String name()
+	{
+		return program.getName();
+	}
+
+    /**
+     * Set the peephole optimizer run over the generated code. Null turns
+     * the peephole pass off.
+     * @param peephole 
+     */
+	public void setPeephole(PeepholeOptimizer peephole)
+	{
+		this.peephole = peephole;
+	}
+
+    /**
+     * Set the scheduler run over the generated code. Null turns scheduling
+     * off.
+     * @param scheduler 
+     */
+	public void setScheduler(Scheduler scheduler)
+	{
+		this.scheduler = scheduler;
+	}
+
+    /**
+     * Get the scheduler, to report the stalls it saved. Null if it is turned
+     * off.
      * @return 
      */
-	public String getTree()
+	public Scheduler getScheduler()
 	{
-		if (generated)
+		return scheduler;
+	}
+
+    /**
+     * Turns moving loop invariant code out of while loops on or off.
+     * @param on 
+     */
+	public void setLoopInvariantMotion(boolean on)
+	{
+		invariants = on ? new LoopInvariants(symbols) : null;
+	}
+
+    /**
+     * Turns generating calls of subprograms to themselves, that are the last
+     * thing they do, as jumps on or off.
+     * @param on 
+     */
+	public void setTailCalls(boolean on)
+	{
+		tailCalls = on;
+	}
+
+    /**
+     * Turns checking the indexes of arrays against their bounds, when the
+     * program runs, on or off.
+     * @param on 
+     */
+	public void setBoundsCheck(boolean on)
+	{
+		boundsCheck = on;
+	}
+
+    /**
+     * Get the peephole optimizer, to report which rules fired.
+     * @return 
+     */
+	public PeepholeOptimizer getPeephole()
+	{
+		return peephole;
+	}
+
+    /**
+     * Generate the code in to a string.
+     * @return 
+     */
+	public String generate()
+	{
+		StringWriter out = new StringWriter();
+		try
+		{
+			generate(out);
+		}
+		catch (IOException e)
+		{
+			// A StringWriter does not throw.
+			throw new IllegalStateException(e);
+		}
+		return out.toString();
+	}
+
+    /**
+     * Generate the code. Runs the optimizations of the front end, then calls
+     * data, and text to generate the respective sections of MIPS. The code
+     * is written out a routine at a time, so only the largest routine, not
+     * the whole program, is held in memory at once.
+     * @param out
+     * @throws IOException 
+     */
+	public void generate(Writer out) throws IOException
+	{
+		front.optimize();
+		promote(front.getTemporaries());
+		out.write(data());
+		text(out);
+		out.flush();
+	}
+
+    /**
+     * Keeps the temporaries made by induction variable strength reduction and
+     * common subexpression elimination in saved registers instead of memory,
+     * for as many as there are registers for.
+     * Loop invariant code motion uses the saved registers that are left.
+     * @param temporaries 
+     */
+	private void promote(ArrayList<VariableNode> temporaries)
+	{
+		for (VariableNode temp : temporaries)
+		{
+			Register register = null;
+			if (temp.isReal(symbols) && promotedReal < PROMOTED_REAL_REGISTERS)
+			{
+				register = Register.f(20 + 2 * (SAVED_REAL_REGISTERS - 1 - promotedReal++));
+			}
+			else if (!temp.isReal(symbols) && promotedInt < PROMOTED_INT_REGISTERS)
+			{
+				register = Register.s(SAVED_INT_REGISTERS - 1 - promotedInt++);
+			}
+			if (register != null)
+			{
+				held.put(Expressions.key(temp, temp.isReal(symbols)), register);
+				promoted.add(temp.getName());
+			}
+		}
+	}
+
+    /**
+     * Generate the .text portion of the assembly code, writing out main and
+     * then each subprogram as soon as it is generated.
+     * @param out
+     * @throws IOException 
+     */
+	private void text(Writer out) throws IOException
+	{
+		out.write("\n.text\n");
+		if (scheduler != null && scheduler.hasDelaySlots())
+		{
+			out.write(".set noreorder\n");
+		}
+		frames = new LinkedHashMap<String, Frame>();
+		frames(program.getFunctions(), null);
+		emit(main(), out);
+		for (Frame current : frames.values())
+		{
+			emit(subprogram(current), out);
+		}
+		if (boundsChecked)
+		{
+			Code bounds = new Code();
+			bounds.label(BOUNDS_ERROR);
+			bounds.emit(Opcode.LA, Register.A0, new Label(BOUNDS_ERROR + "message"));
+			bounds.emit(Opcode.LI, Register.V0, new Immediate(4));
+			bounds.emit(Opcode.SYSCALL);
+			bounds.emit(Opcode.LI, Register.V0, new Immediate(10));
+			bounds.emit(Opcode.SYSCALL);
+			emit(bounds, out);
+		}
+	}
+
+    /**
+     * Writes out the code of one routine, after the peephole optimizer and
+     * the scheduler have run over it. A routine is only entered at its label, and nothing
+     * branches between routines, so each is optimized on its own. This is
+     * the only place instructions are turned in to text.
+     * @param routine
+     * @param out
+     * @throws IOException 
+     */
+	private void emit(Code routine, Writer out) throws IOException
+	{
+		if (peephole != null)
+		{
+			peephole.optimize(routine);
+		}
+		if (scheduler != null)
+		{
+			scheduler.schedule(routine);
+		}
+		for (Instruction instr : routine)
+		{
+			out.write(instr.isLabel() ? "" : " ");
+			out.write(instr.toString());
+			out.write("\n");
+		}
+	}
+
+    /**
+     * Generate the main compound statement code. Save $ra register and any
+     * saved registers used for loop invariants, evaluate the compound
+     * statement, then reload them and jr to $ra.
+     * @return 
+     */
+	private Code main()
+	{
+		Code body = new Code();
+		compoundStatement(program.getMain(), body);
+
+		int frame = 4 * (1 + maxSavedInt + maxSavedReal + promotedInt + promotedReal);
+		Code mainSection = new Code();
+		mainSection.label("main");
+		mainSection.emit(Opcode.ADDI, Register.SP, Register.SP, new Immediate(-frame));
+		mainSection.emit(Opcode.SW, Register.RA, Address.of(0, Register.SP));
+		saveRegisters(Opcode.SW, Opcode.SWC1, 4, mainSection);
+		mainSection.addAll(body);
+		saveRegisters(Opcode.LW, Opcode.LWC1, 4, mainSection);
+		mainSection.emit(Opcode.LW, Register.RA, Address.of(0, Register.SP));
+		mainSection.emit(Opcode.ADDI, Register.SP, Register.SP, new Immediate(frame));
+		mainSection.emit(Opcode.JR, Register.RA);
+
+		return mainSection;
+	}
+
+    /**
+     * Stores or loads the saved registers used by main or a subprogram, in
+     * its stack frame from offset($sp) up.
+     * @param intInstruction
+     * @param realInstruction
+     * @param offset
+     * @param assembly 
+     */
+	private void saveRegisters(Opcode intInstruction, Opcode realInstruction, int offset,
+			Code assembly)
+	{
+		for (int i = 0; i < SAVED_INT_REGISTERS; i++)
+		{
+			if (i < maxSavedInt || i >= SAVED_INT_REGISTERS - promotedInt)
+			{
+				assembly.emit(intInstruction, Register.s(i), Address.of(offset, Register.SP));
+				offset += 4;
+			}
+		}
+		for (int i = 0; i < SAVED_REAL_REGISTERS; i++)
+		{
+			if (i < maxSavedReal || i >= SAVED_REAL_REGISTERS - promotedReal)
+			{
+				assembly.emit(realInstruction, Register.f(20 + 2 * i),
+						Address.of(offset, Register.SP));
+				offset += 4;
+			}
+		}
+	}
+
+    /**
+     * Lays out the frames of a list of functions and procedures, and the ones
+     * nested in them.
+     * @param functions
+     * @param parent the frame they are nested in, or null.
+     */
+	private void frames(SubProgramDeclarationsNode functions, Frame parent)
+	{
+		if (functions == null)
+		{
+			return;
+		}
+		for (SubProgramNode sub : functions.getSubPrograms())
+		{
+			Frame current = new Frame();
+			current.sub = sub;
+			current.parent = parent;
+			current.level = parent == null ? 1 : parent.level + 1;
+			if (tailCalls)
+			{
+				TailCalls.find(sub, sub.getBody(), tails);
+			}
+			current.leaf = !callsOut(sub.getBody());
+			ArrayList<VariableNode> vars = new ArrayList<VariableNode>();
+			if (sub.getResult() != null)
+			{
+				vars.add(sub.getResult());
+			}
+			vars.addAll(sub.getDeclarations().getVars());
+			current.registers = registers(current, vars);
+			if (current.registers == null)
+			{
+				ArrayList<VariableNode> params = sub.getParameters();
+				for (int i = 0; i < params.size(); i++)
+				{
+					current.offsets.put(params.get(i).getName(), 4 * i);
+				}
+				int offset = current.level > 1 ? STATIC_LINK : STATIC_LINK + 4;
+				for (VariableNode var : vars)
+				{
+					offset -= 4 * words(var.getName());
+					current.offsets.put(var.getName(), offset);
+				}
+				current.size = -offset;
+			}
+			frames.put(sub.getName(), current);
+			frames(sub.getSubDeclarations(), current);
+		}
+	}
+
+    /**
+     * Picks a register for each parameter and variable of a leaf subprogram,
+     * so it needs no frame. Parameters stay in the registers they are passed
+     * in, unless a real is passed in an $a register. An integer result is
+     * kept in $v0. Returns null if the subprogram needs a frame.
+     * @param leaf
+     * @param vars the result and the variables.
+     * @return 
+     */
+	private HashMap<String, Register> registers(Frame leaf, ArrayList<VariableNode> vars)
+	{
+		SubProgramNode sub = leaf.sub;
+		ArrayList<VariableNode> params = sub.getParameters();
+		if (!leaf.leaf || hasInputOutput(sub.getBody())
+				|| params.size() > ARGUMENT_REGISTERS.length
+				|| !sub.getSubDeclarations().getSubPrograms().isEmpty())
+		{
+			return null;
+		}
+		for (VariableNode var : vars)
+		{
+			if (words(var.getName()) > 1)
+			{
+				return null;
+			}
+		}
+		HashMap<String, Register> registers = new HashMap<String, Register>();
+		ArrayList<Register> ints = new ArrayList<Register>();
+		ArrayList<Register> reals = new ArrayList<Register>();
+		for (int i = 0; i < ARGUMENT_REGISTERS.length; i++)
+		{
+			if (i >= params.size() || params.get(i).getType() == Token.REAL)
+			{
+				ints.add(ARGUMENT_REGISTERS[i]);
+			}
+		}
+		if (leaf.level == 1)
+		{
+			// A nested leaf keeps the static link in $v1.
+			ints.add(Register.V1);
+		}
+		for (int i = 0; i < 2; i++)
+		{
+			if (i >= params.size() || argumentRegister(params, i) != Register.f(12 + 2 * i))
+			{
+				reals.add(Register.f(12 + 2 * i));
+			}
+		}
+		reals.addAll(Arrays.asList(LEAF_REAL_REGISTERS));
+		for (int i = 0; i < params.size(); i++)
+		{
+			VariableNode param = params.get(i);
+			Register register = argumentRegister(params, i);
+			if (param.getType() == Token.REAL && !register.isReal())
+			{
+				if (reals.isEmpty())
+				{
+					return null;
+				}
+				register = reals.remove(0);
+			}
+			registers.put(param.getName(), register);
+		}
+		VariableNode result = sub.getResult();
+		if (result == null || result.getType() == Token.REAL)
+		{
+			ints.add(Register.V0);
+		}
+		for (VariableNode var : vars)
+		{
+			Register register;
+			if (var == result && var.getType() == Token.INTEGER)
+			{
+				register = Register.V0;
+			}
+			else
+			{
+				ArrayList<Register> pool = var.getType() == Token.REAL ? reals : ints;
+				if (pool.isEmpty())
+				{
+					return null;
+				}
+				register = pool.remove(0);
+			}
+			registers.put(var.getName(), register);
+		}
+		return registers;
+	}
+
+    /**
+     * Check whether a statement reads or writes anything. Those use $a0, $v0
+     * and $f12 for the system calls.
+     * @param stmt
+     * @return 
+     */
+	private boolean hasInputOutput(StatementNode stmt)
+	{
+		if (stmt instanceof ReadNode || stmt instanceof WriteNode)
+		{
+			return true;
+		}
+		if (stmt instanceof CompoundStatementNode)
+		{
+			for (StatementNode current : ((CompoundStatementNode) stmt).getStatements())
+			{
+				if (hasInputOutput(current))
+				{
+					return true;
+				}
+			}
+		}
+		else if (stmt instanceof IfStatementNode)
+		{
+			return hasInputOutput(((IfStatementNode) stmt).getStatement())
+					|| hasInputOutput(((IfStatementNode) stmt).getElseStatement());
+		}
+		else if (stmt instanceof WhileStatementNode)
+		{
+			return hasInputOutput(((WhileStatementNode) stmt).getStatement());
+		}
+		return false;
+	}
+
+    /**
+     * Check whether a statement makes a call that returns to it, which is
+     * any call but a tail call, or one in the arguments of a tail call.
+     * @param stmt
+     * @return 
+     */
+	private boolean callsOut(StatementNode stmt)
+	{
+		if (tails.contains(stmt))
+		{
+			for (ExpressionNode arg : TailCalls.arguments(stmt))
+			{
+				if (Expressions.hasCall(arg))
+				{
+					return true;
+				}
+			}
+			return false;
+		}
+		if (stmt instanceof CompoundStatementNode)
+		{
+			for (StatementNode current : ((CompoundStatementNode) stmt).getStatements())
+			{
+				if (callsOut(current))
+				{
+					return true;
+				}
+			}
+			return false;
+		}
+		if (stmt instanceof IfStatementNode)
+		{
+			IfStatementNode ifNode = (IfStatementNode) stmt;
+			return Expressions.hasCall(ifNode.getCondition()) || callsOut(ifNode.getStatement())
+					|| callsOut(ifNode.getElseStatement());
+		}
+		if (stmt instanceof WhileStatementNode)
+		{
+			WhileStatementNode loop = (WhileStatementNode) stmt;
+			return Expressions.hasCall(loop.getCondition()) || callsOut(loop.getStatement());
+		}
+		return stmt != null && Expressions.hasCall(stmt);
+	}
+
+    /**
+     * Generates a tail call as a jump back to the start of the body, reusing
+     * the frame. The arguments are all evaluated before any parameter is
+     * changed, since they may read the parameters: in to registers, one pool
+     * for each type, or on to the stack if one of several makes a call. An
+     * argument that is the parameter it is passed to is left where it is.
+     * @param stmt
+     * @param assembly 
+     */
+	private void tailCall(StatementNode stmt, Code assembly)
+	{
+		ArrayList<VariableNode> params = frame.sub.getParameters();
+		ArrayList<ExpressionNode> arguments = TailCalls.arguments(stmt);
+		boolean calls = false;
+		ArrayList<Integer> passed = new ArrayList<Integer>();
+		for (int i = 0; i < params.size() && i < arguments.size(); i++)
+		{
+			ExpressionNode arg = arguments.get(i);
+			calls |= Expressions.hasCall(arg);
+			if (!(arg instanceof VariableNode) || arg.isNot() || arg.getSign() == Token.MINUS
+					|| !((VariableNode) arg).getName().equals(params.get(i).getName()))
+			{
+				passed.add(i);
+			}
+		}
+		int ints = 0;
+		int reals = 0;
+		boolean stack = passed.size() > 1 && calls
+				|| passed.size() > Math.min(INT_REGISTERS, REAL_REGISTERS);
+		int[] registers = new int[params.size()];
+		for (int i : passed)
+		{
+			boolean real = params.get(i).getType() == Token.REAL;
+			registers[i] = stack ? 0 : real ? reals++ : ints++;
+			right(arguments.get(i), registers[i], assembly, real);
+			if (stack)
+			{
+				spill(0, assembly, real);
+			}
+		}
+		for (int j = passed.size() - 1; j >= 0; j--)
+		{
+			int i = passed.get(j);
+			boolean real = params.get(i).getType() == Token.REAL;
+			if (stack)
+			{
+				reload(0, assembly, real);
+			}
+			Register home = home(params.get(i).getName());
+			if (home != null)
+			{
+				move(home, register(registers[i], real), assembly);
+			}
+			else
+			{
+				assembly.emit(real ? Opcode.SWC1 : Opcode.SW, register(registers[i], real),
+						Address.of(frame.offsets.get(params.get(i).getName()), Register.FP));
+			}
+		}
+		assembly.emit(Opcode.J, new Label(frame.sub.getName() + "_tail"));
+	}
+
+    /**
+     * The register an argument is passed in, or null if it is passed on the
+     * stack. Following o32, a real among the first two arguments, with only
+     * reals before it, is passed in $f12 or $f14. Any other argument in the
+     * first four words is passed in an $a register, a real as its bits.
+     * @param params
+     * @param index
+     * @return 
+     */
+	private Register argumentRegister(ArrayList<VariableNode> params, int index)
+	{
+		boolean reals = true;
+		for (int i = 0; i <= index; i++)
+		{
+			reals &= params.get(i).getType() == Token.REAL;
+		}
+		if (reals && index < 2)
+		{
+			return Register.f(12 + 2 * index);
+		}
+		return index < ARGUMENT_REGISTERS.length ? ARGUMENT_REGISTERS[index] : null;
+	}
+
+    /**
+     * Generates a function or procedure. The body is generated first, so the
+     * prologue knows how many saved registers it uses for loop invariants.
+     * The prologue sets up the frame and stores the register arguments in
+     * the words the caller reserved for them, the epilogue loads the result
+     * in to $v0 or $f0. A tail call jumps to the label between the prologue
+     * and the body.
+     * @param current
+     * @return 
+     */
+	private Code subprogram(Frame current)
+	{
+		frame = current;
+		held = new HashMap<String, Register>();
+		savedInt = 0;
+		savedReal = 0;
+		maxSavedInt = 0;
+		maxSavedReal = 0;
+		promotedInt = 0;
+		promotedReal = 0;
+		LoopInvariants loopInvariants = invariants;
+		if (current.registers != null)
+		{
+			// No frame to save registers in.
+			invariants = null;
+		}
+		Code body = new Code();
+		compoundStatement(current.sub.getBody(), body);
+		invariants = loopInvariants;
+
+		Code code = new Code();
+		code.label(current.sub.getName());
+		ArrayList<VariableNode> params = current.sub.getParameters();
+		VariableNode result = current.sub.getResult();
+		if (current.registers != null)
+		{
+			for (int i = 0; i < params.size(); i++)
+			{
+				Register home = current.registers.get(params.get(i).getName());
+				if (home != argumentRegister(params, i))
+				{
+					code.emit(Opcode.MTC1, argumentRegister(params, i), home);
+				}
+			}
+			code.label(current.sub.getName() + "_tail");
+			code.addAll(body);
+			if (result != null && result.getType() == Token.REAL)
+			{
+				code.emit(Opcode.MOV_S, Register.F0, current.registers.get(result.getName()));
+			}
+			code.emit(Opcode.JR, Register.RA);
+			frame = null;
+			return code;
+		}
+
+		int size = current.size + 4 * (maxSavedInt + maxSavedReal);
+		size = (size + 7) / 8 * 8;
+		code.emit(Opcode.ADDI, Register.SP, Register.SP, new Immediate(-size));
+		if (!current.leaf)
+		{
+			code.emit(Opcode.SW, Register.RA, Address.of(size - 4, Register.SP));
+		}
+		code.emit(Opcode.SW, Register.FP, Address.of(size - 8, Register.SP));
+		code.emit(Opcode.ADDI, Register.FP, Register.SP, new Immediate(size));
+		if (current.level > 1)
+		{
+			code.emit(Opcode.SW, Register.V1, Address.of(STATIC_LINK, Register.FP));
+		}
+		for (int i = 0; i < params.size() && i < ARGUMENT_REGISTERS.length; i++)
+		{
+			Register register = argumentRegister(params, i);
+			code.emit(register.isReal() ? Opcode.SWC1 : Opcode.SW, register,
+					Address.of(4 * i, Register.FP));
+		}
+		saveRegisters(Opcode.SW, Opcode.SWC1, 0, code);
+		code.label(current.sub.getName() + "_tail");
+		code.addAll(body);
+		if (result != null)
+		{
+			boolean real = result.getType() == Token.REAL;
+			code.emit(real ? Opcode.LWC1 : Opcode.LW, real ? Register.F0 : Register.V0,
+					Address.of(current.offsets.get(result.getName()), Register.FP));
+		}
+		saveRegisters(Opcode.LW, Opcode.LWC1, 0, code);
+		if (!current.leaf)
+		{
+			code.emit(Opcode.LW, Register.RA, Address.of(size - 4, Register.SP));
+		}
+		code.emit(Opcode.LW, Register.FP, Address.of(size - 8, Register.SP));
+		code.emit(Opcode.ADDI, Register.SP, Register.SP, new Immediate(size));
+		code.emit(Opcode.JR, Register.RA);
+		frame = null;
+		return code;
+	}
+
+    /**
+     * The register a variable is kept in, by a subprogram without a frame,
+     * or null if it is in memory.
+     * @param name
+     * @return 
+     */
+	private Register home(String name)
+	{
+		if (frame == null || frame.registers == null)
+		{
+			return null;
+		}
+		return frame.registers.get(name);
+	}
+
+    /**
+     * The frame a parameter or variable is in: that of the subprogram being
+     * generated or of one it is nested in, whichever declares it first, or
+     * null for a global. A subprogram inlined in more than one place has its
+     * variables declared in each.
+     * @param name
+     * @return 
+     */
+	private Frame owner(String name)
+	{
+		for (Frame owner = frame; owner != null; owner = owner.parent)
+		{
+			if (owner.offsets.containsKey(name)
+					|| owner.registers != null && owner.registers.containsKey(name))
+			{
+				return owner;
+			}
+		}
+		return null;
+	}
+
+    /**
+     * The address of a variable in memory. A global is its label, and a
+     * variable of the subprogram being generated is an offset from $fp. A
+     * variable of a subprogram this one is nested in is found by following
+     * static links in to the scratch register, which is loaded here.
+     * @param name
+     * @param assembly
+     * @return 
+     */
+	private Address address(String name, Code assembly)
+	{
+		Frame owner = owner(name);
+		if (owner == null)
+		{
+			return Address.of(name);
+		}
+		return Address.of(owner.offsets.get(name), base(owner, assembly));
+	}
+
+    /**
+     * The register holding the $fp of a frame, which is $fp itself for the
+     * subprogram being generated, or the scratch register loaded by
+     * following static links.
+     * @param owner
+     * @param assembly
+     * @return 
+     */
+	private Register base(Frame owner, Code assembly)
+	{
+		Register base = Register.FP;
+		int links = frame.level - owner.level;
+		if (frame.registers != null && links > 0)
+		{
+			// The static link is still in $v1.
+			base = Register.V1;
+			links--;
+		}
+		for (int i = 0; i < links; i++)
+		{
+			assembly.emit(Opcode.LW, Register.t(INT_SCRATCH), Address.of(STATIC_LINK, base));
+			base = Register.t(INT_SCRATCH);
+		}
+		return base;
+	}
+
+    /**
+     * The number of words a variable takes: the number of elements of an
+     * array, or one.
+     * @param name
+     * @return 
+     */
+	private int words(String name)
+	{
+		if (symbols.getKind(name) != Kind.ARRAY)
+		{
+			return 1;
+		}
+		return symbols.getEnd(name) - symbols.getStart(name) + 1;
+	}
+
+    /**
+     * The address of an element of an array. The element is at base + (index
+     * - start) * 4. The index is evaluated in to integer register reg, which
+     * then holds the address, and is checked against the bounds unless that
+     * is turned off. A constant index needs no register, and no check when
+     * it is in the bounds. A scaled index is already (index - start) * 4, so
+     * it is checked against the length in bytes and needs no shift.
+     * @param element
+     * @param reg
+     * @param assembly
+     * @return 
+     */
+	private Address element(ArrayNode element, int reg, Code assembly)
+	{
+		String name = element.getName();
+		boolean scaled = element.isScaled();
+		int start = scaled ? 0 : symbols.getStart(name);
+		int length = scaled ? 4 * words(name) : words(name);
+		boolean check = boundsCheck && element.isChecked();
+		Frame owner = owner(name);
+		Integer constant = Expressions.intConstant(element.getIndex());
+		if (constant != null && constant >= start && constant - start < length
+				&& (!scaled || constant % 4 == 0))
+		{
+			int offset = scaled ? constant : 4 * (constant - start);
+			if (owner == null)
+			{
+				return new Address(name, offset, null);
+			}
+			return Address.of(owner.offsets.get(name) + offset, base(owner, assembly));
+		}
+		right(element.getIndex(), reg, assembly, false);
+		Register index = Register.t(reg);
+		if (start != 0 && (check || owner == null))
+		{
+			assembly.emit(Opcode.ADDI, index, index, new Immediate(-start));
+		}
+		if (check)
+		{
+			// Below the start wraps around to a large unsigned number.
+			Register scratch = Register.t(INT_SCRATCH);
+			if (length < 1 << 15)
+			{
+				assembly.emit(Opcode.SLTIU, scratch, index, new Immediate(length));
+			}
+			else
+			{
+				assembly.emit(Opcode.LI, scratch, new Immediate(length));
+				assembly.emit(Opcode.SLTU, scratch, index, scratch);
+			}
+			assembly.emit(Opcode.BEQ, scratch, Register.ZERO, new Label(BOUNDS_ERROR));
+			boundsChecked = true;
+		}
+		if (!scaled)
+		{
+			assembly.emit(Opcode.SLL, index, index, new Immediate(2));
+		}
+		if (owner == null)
+		{
+			return new Address(name, 0, index);
+		}
+		int offset = owner.offsets.get(name) - (check ? 0 : 4 * start);
+		assembly.emit(Opcode.ADDU, index, index, base(owner, assembly));
+		return Address.of(offset, index);
+	}
+
+    /**
+     * Loads an element of an array in to register reg. When evaluating a
+     * real, the index goes in the integer register of the same number if
+     * there is one. Otherwise $t0 is pushed and used, and when the index
+     * makes a call, the real registers in use are pushed around it.
+     * @param element
+     * @param reg
+     * @param assembly
+     * @param real 
+     */
+	private void loadElement(ArrayNode element, int reg, Code assembly, boolean real)
+	{
+		boolean calls = real && Expressions.hasCall(element.getIndex());
+		int index = reg < INT_REGISTERS && !calls ? reg : 0;
+		if (calls)
+		{
+			for (int i = 0; i < reg; i++)
+			{
+				spill(i, assembly, true);
+			}
+		}
+		else if (index != reg)
+		{
+			spill(0, assembly, false);
+		}
+		Address address = element(element, index, assembly);
+		assembly.emit(real ? Opcode.LWC1 : Opcode.LW, register(reg, real), address);
+		if (calls)
+		{
+			for (int i = reg - 1; i >= 0; i--)
+			{
+				reload(i, assembly, true);
+			}
+		}
+		else if (index != reg)
 		{
-			return program.indentedToString(0);
+			reload(0, assembly, false);
 		}
-		return "File has not yet been parsed.";
-	}
-
-    /**
-     * Get the name of the program.
-     * @return 
-     */
-	public String name()
-	{
-		return program.getName();
 	}
 
     /**
-     * Generate the code. Calls data, and text to generate the respective 
-     * sections of MIPS.
-     * @return 
+     * Generates a call. The registers below reg that hold parts of the
+     * expression being evaluated are pushed, then space for the arguments is
+     * reserved, at least the four words o32 asks for. Each argument is
+     * evaluated and stored in its word, and the first four words are loaded
+     * in to the argument registers. A nested subprogram gets its static link
+     * in $v1. After the call, the result is moved from $v0 or $f0 in to reg,
+     * and the pushed registers are popped.
+     * @param name
+     * @param arguments
+     * @param reg
+     * @param assembly
+     * @param real true if the result is used as a real.
      */
-	public String generate()
+	private void call(String name, ArrayList<ExpressionNode> arguments, int reg,
+			Code assembly, boolean real)
 	{
-		asm.append(data());
-		asm.append(text());
-		generated = true;
-		return asm.toString();
+		Frame callee = frames.get(name);
+		ArrayList<VariableNode> params = callee.sub.getParameters();
+		for (int i = 0; i < reg; i++)
+		{
+			spill(i, assembly, real);
+		}
+		int words = Math.max(ARGUMENT_REGISTERS.length, params.size());
+		assembly.emit(Opcode.ADDI, Register.SP, Register.SP, new Immediate(-4 * words));
+		for (int i = 0; i < params.size() && i < arguments.size(); i++)
+		{
+			boolean realParam = params.get(i).getType() == Token.REAL;
+			right(arguments.get(i), 0, assembly, realParam);
+			assembly.emit(realParam ? Opcode.SWC1 : Opcode.SW, register(0, realParam),
+					Address.of(4 * i, Register.SP));
+		}
+		for (int i = 0; i < params.size() && i < ARGUMENT_REGISTERS.length; i++)
+		{
+			Register register = argumentRegister(params, i);
+			assembly.emit(register.isReal() ? Opcode.LWC1 : Opcode.LW, register,
+					Address.of(4 * i, Register.SP));
+		}
+		if (callee.level > 1)
+		{
+			int links = (frame == null ? 0 : frame.level) - (callee.level - 1);
+			if (links == 0)
+			{
+				move(Register.V1, Register.FP, assembly);
+			}
+			else
+			{
+				assembly.emit(Opcode.LW, Register.V1, Address.of(STATIC_LINK, Register.FP));
+				for (int i = 1; i < links; i++)
+				{
+					assembly.emit(Opcode.LW, Register.V1, Address.of(STATIC_LINK, Register.V1));
+				}
+			}
+		}
+		assembly.emit(Opcode.JAL, new Label(name));
+		assembly.emit(Opcode.ADDI, Register.SP, Register.SP, new Immediate(4 * words));
+		VariableNode result = callee.sub.getResult();
+		if (result != null && reg >= 0)
+		{
+			if (result.getType() == Token.REAL)
+			{
+				if (!real)
+				{
+					assembly.emit(Opcode.CVT_W_S, Register.F0, Register.F0);
+					assembly.emit(Opcode.MFC1, Register.t(reg), Register.F0);
+				}
+				else if (reg != 0)
+				{
+					move(Register.f(reg), Register.F0, assembly);
+				}
+			}
+			else if (real)
+			{
+				assembly.emit(Opcode.MTC1, Register.V0, Register.f(reg));
+				assembly.emit(Opcode.CVT_S_W, Register.f(reg), Register.f(reg));
+			}
+			else
+			{
+				move(Register.t(reg), Register.V0, assembly);
+			}
+		}
+		for (int i = reg - 1; i >= 0; i--)
+		{
+			reload(i, assembly, real);
+		}
 	}
 
     /**
-     * Generate the .text portion of the assembly code.
-     * @return 
+     * Generate the code for an if statement. The condition branches to the
+     * false label when it does not hold, then the true code is written,
+     * followed by a jump to the end, the false label and the false code.
+     * An empty branch is left out, along with the jump around it.
+     * @param currentNode
+     * @param assembly 
      */
-	private String text()
+	private void ifStatement(IfStatementNode currentNode, Code assembly)
 	{
-		StringBuilder dottext = new StringBuilder();
-		dottext.append("\n.text\n");
-		dottext.append(main());
-		return dottext.toString();
+		int label = numIf++;
+		if (isEmpty(currentNode.getElseStatement()))
+		{
+			branch(currentNode.getCondition(), "if" + label + "end", false, assembly);
+			statement(currentNode.getStatement(), assembly);
+		}
+		else if (isEmpty(currentNode.getStatement()))
+		{
+			branch(currentNode.getCondition(), "if" + label + "end", true, assembly);
+			statement(currentNode.getElseStatement(), assembly);
+		}
+		else
+		{
+			branch(currentNode.getCondition(), "if" + label + "false", false, assembly);
+			statement(currentNode.getStatement(), assembly);
+			assembly.emit(Opcode.J, new Label("if" + label + "end"));
+			assembly.label("if" + label + "false");
+			statement(currentNode.getElseStatement(), assembly);
+		}
+		assembly.label("if" + label + "end");
 	}
 
     /**
-     * Generate the main compound statement code. Save $ra register,
-     * evaluate the compound statement, then reload $ra and jr to it.
+     * Check whether a statement generates no code.
+     * @param stmt
      * @return 
      */
-	private String main()
+	private boolean isEmpty(StatementNode stmt)
 	{
-		StringBuilder mainSection = new StringBuilder();
-		mainSection.append("main:\n ");
-		mainSection.append("addi $sp, $sp, -4\n sw $ra, 0($sp)\n ");
-
-		compoundStatement(program.getMain(), mainSection);
-
-		mainSection.append("lw $ra, 0($sp)\n addi $sp, $sp, 4\n jr $ra\n ");
-
-		return mainSection.toString();
+		if (stmt instanceof CompoundStatementNode)
+		{
+			for (StatementNode current : ((CompoundStatementNode) stmt).getStatements())
+			{
+				if (!isEmpty(current))
+				{
+					return false;
+				}
+			}
+			return true;
+		}
+		return stmt == null;
 	}
 
     /**
-     * Generate the code for an if statement. Checks whether the condition is real or not,
-     * then generates the code for evaluating the condition. The true code is
-     * then written, then a label to false. Next is the false code, and an 
-     * end label.
-     * @param currentNode
+     * Generates code for a while statement. The condition is evaluated at the
+     * beginning label and branches to the end when it does not hold. Then the
+     * body of the loop is generated, followed by a jump to the beginning, and
+     * a label for the end.
+     * @param statement
      * @param assembly 
      */
-	private void ifStatement(IfStatementNode currentNode, StringBuilder assembly)
+	private void whileStatement(WhileStatementNode statement, Code assembly)
 	{
-
-		ExpressionNode cond = currentNode.getCondition();
-		StatementNode trueStmt = currentNode.getStatement();
-		StatementNode falseStmt = currentNode.getElseStatement();
-
-		if (cond.isReal(symbols))
+		int label = numWhile++;
+		ArrayList<String> hoisted = hoist(statement, assembly);
+		assembly.label("while" + label + "begin");
+		branch(statement.getCondition(), "while" + label + "end", false, assembly);
+		statement(statement.getStatement(), assembly);
+		assembly.emit(Opcode.J, new Label("while" + label + "begin"));
+		assembly.label("while" + label + "end");
+		for (String key : hoisted)
 		{
-			if (cond instanceof syntaxtree.VariableNode)
-			{
-				assembly.append("lwc1 $f0\n mtc1 $zero, $f1\n ");
-				assembly.append("c.eq.s $f0, $f1\n bclt if").append(numIf);
-				assembly.append("false\n ");
-			}
-			else if (cond instanceof syntaxtree.ValueNode)
+			if (held.remove(key).isReal())
 			{
-				assembly.append("li.s $f0, ").append(((ValueNode) cond).getAttribute());
-				assembly.append("\n mtc1 $zero, $f1\n ");
-				assembly.append("c.eq.s $f0, $f1\n bclt if").append(numIf);
-				assembly.append("false\n ");
+				savedReal--;
 			}
-			else if (cond instanceof syntaxtree.OperationNode)
+			else
 			{
-				OperationNode opCond = (OperationNode) cond;
-				left(opCond.getLeft(), 0, assembly, true);
-				right(opCond.getRight(), 1, assembly, true);
-				if (opCond.getOperation() == Token.LESS_THAN)
-				{
-					assembly.append("c.lt.s $f").append(0).append(", $f");
-					assembly.append(1).append("\n bc1f if");
-				}
-				else if (opCond.getOperation() == Token.LESS_THAN_EQUAL)
-				{
-					assembly.append("c.le.s $f").append(0).append(", $f");
-					assembly.append(1).append("\n bc1f if");
-				}
-				else if (opCond.getOperation() == Token.GREATER_THAN)
-				{
-					assembly.append("c.lt.s $f").append(1).append(", $f");
-					assembly.append(0).append("\n bc1f if");
-
-				}
-				else if (opCond.getOperation() == Token.GREATER_THAN_EQUAL)
-				{
-					assembly.append("c.le.s $f").append(1).append(", $f");
-					assembly.append(0).append("\n bc1f if");
-				}
-				else if (opCond.getOperation() == Token.LESS_THAN_GREATER_THAN)
-				{
-					assembly.append("c.eq.s $f").append(0).append(", $f");
-					assembly.append(1).append("\n bc1t if");
-				}
-                else if (opCond.getOperation() == Token.EQUALS)
-				{
-					assembly.append("c.eq.s $f").append(0).append(", $f");
-					assembly.append(1).append("\n bc1f if");
-				}
+				savedInt--;
 			}
 		}
+	}
 
-		else
+    /**
+     * Generates the preheader of a while loop. Each loop invariant expression
+     * that is not held already is evaluated once, in to a saved register
+     * that the loop uses instead, until the saved registers run out.
+     * @param loop
+     * @param assembly
+     * @return the keys of the expressions hoisted for this loop.
+     */
+	private ArrayList<String> hoist(WhileStatementNode loop, Code assembly)
+	{
+		ArrayList<String> hoisted = new ArrayList<String>();
+		if (invariants == null)
 		{
-
-			if (cond instanceof syntaxtree.VariableNode
-					|| cond instanceof syntaxtree.ValueNode)
+			return hoisted;
+		}
+		for (LoopInvariants.Invariant invariant : invariants.find(loop))
+		{
+			String key = invariant.getKey();
+			Register register;
+			if (held.containsKey(key))
 			{
-				if (cond instanceof syntaxtree.VariableNode)
-				{
-					assembly.append("lw $t0, ");
-					assembly.append(((VariableNode) cond).getName());
-				}
-				else
-				{
-					assembly.append("li $t0, ");
-					assembly.append(((ValueNode) cond).getAttribute());
-				}
-				if (cond.isNot())
-				{
-					assembly.append("\n bne $t0, $zero, if");
-				}
-				else
-				{
-					assembly.append("\n beq $t0, $zero, if");
-				}
+				continue;
 			}
-			if (cond instanceof syntaxtree.OperationNode)
+			if (invariant.isReal())
 			{
-				evalOp((OperationNode) cond, 0, assembly, false);
-				if (((OperationNode) cond).getLeft().isNot())
+				if (savedReal == SAVED_REAL_REGISTERS - promotedReal)
 				{
-					assembly.append("bne $t0, $zero, if");
+					continue;
 				}
-				else
+				register = Register.f(20 + 2 * savedReal++);
+				maxSavedReal = Math.max(maxSavedReal, savedReal);
+				right(invariant.getExpression(), 0, assembly, true);
+				move(register, Register.F0, assembly);
+			}
+			else
+			{
+				if (savedInt == SAVED_INT_REGISTERS - promotedInt)
 				{
-					assembly.append("beq $t0, $zero, if");
+					continue;
 				}
-
+				register = Register.s(savedInt++);
+				maxSavedInt = Math.max(maxSavedInt, savedInt);
+				right(invariant.getExpression(), 0, assembly, false);
+				move(register, Register.T0, assembly);
 			}
-
+			held.put(key, register);
+			hoisted.add(key);
 		}
-		assembly.append(numIf).append("false\n ");
-		if (trueStmt instanceof syntaxtree.AssignmentStatementNode)
-		{
-			assignment((AssignmentStatementNode) trueStmt, assembly);
+		return hoisted;
+	}
 
-		}
-		else if (trueStmt instanceof syntaxtree.CompoundStatementNode)
-		{
-			compoundStatement(trueStmt, assembly);
-		}
-		else if (trueStmt instanceof syntaxtree.WriteNode)
-		{
-			write((WriteNode) trueStmt, assembly);
-		}
-		else if (trueStmt instanceof syntaxtree.ReadNode)
+    /**
+     * The saved register holding the value of an expression, or null if it
+     * is not held in one.
+     * @param exp
+     * @param real
+     * @return 
+     */
+	private Register heldRegister(ExpressionNode exp, boolean real)
+	{
+		return held.get(Expressions.key(exp, real || exp.isReal(symbols)));
+	}
+
+    /**
+     * Generates code for a compound statement. Iterates through each statement
+     * and generates its code.
+     * @param trueStmt
+     * @param assembly 
+     */
+	private void compoundStatement(StatementNode trueStmt, Code assembly)
+	{
+		ArrayList<StatementNode> statements = ((CompoundStatementNode) trueStmt).getStatements();
+		for (StatementNode current : statements)
 		{
-			read((ReadNode) trueStmt, assembly);
+			statement(current, assembly);
 		}
-		else if (trueStmt instanceof syntaxtree.IfStatementNode)
+	}
+
+    /**
+     * Generates code for a single statement. Checks what kind of statement
+     * it is, and calls the function that generates the corresponding code.
+     * @param current
+     * @param assembly 
+     */
+	private void statement(StatementNode current, Code assembly)
+	{
+		if (frame != null && tails.contains(current))
 		{
-			ifStatement((IfStatementNode) trueStmt, assembly);
+			tailCall(current, assembly);
 		}
-		else if (trueStmt instanceof syntaxtree.WhileStatementNode)
+		else if (current instanceof syntaxtree.AssignmentStatementNode)
 		{
-			whileStatement((WhileStatementNode) trueStmt, assembly);
+			assignment((AssignmentStatementNode) current, assembly);
 		}
-		assembly.append("j if");
-		assembly.append(numIf);
-		assembly.append("end\n ");
-		assembly.append("if");
-		assembly.append(numIf);
-		assembly.append("false:\n ");
-		if (falseStmt instanceof syntaxtree.AssignmentStatementNode)
+		else if (current instanceof syntaxtree.CompoundStatementNode)
 		{
-			assignment((AssignmentStatementNode) falseStmt, assembly);
+			compoundStatement(current, assembly);
 		}
-		else if (falseStmt instanceof syntaxtree.CompoundStatementNode)
+		else if (current instanceof syntaxtree.ReadNode)
 		{
-			compoundStatement(falseStmt, assembly);
+			read((ReadNode) current, assembly);
 		}
-		else if (falseStmt instanceof syntaxtree.WriteNode)
+		else if (current instanceof syntaxtree.WriteNode)
 		{
-			write((WriteNode) falseStmt, assembly);
+			write((WriteNode) current, assembly);
 		}
-		else if (falseStmt instanceof syntaxtree.ReadNode)
+		else if (current instanceof syntaxtree.IfStatementNode)
 		{
-			read((ReadNode) falseStmt, assembly);
+			ifStatement((IfStatementNode) current, assembly);
 		}
-		else if (falseStmt instanceof syntaxtree.IfStatementNode)
+		else if (current instanceof syntaxtree.WhileStatementNode)
 		{
-			ifStatement((IfStatementNode) falseStmt, assembly);
+			whileStatement((WhileStatementNode) current, assembly);
 		}
-		else if (falseStmt instanceof syntaxtree.WhileStatementNode)
+		else if (current instanceof syntaxtree.ProcedureStatementNode)
 		{
-			whileStatement((WhileStatementNode) falseStmt, assembly);
+			ProcedureStatementNode call = (ProcedureStatementNode) current;
+			call(call.getName(), call.getArguments(), -1, assembly, false);
 		}
-		assembly.append("if");
-		assembly.append(numIf++);
-		assembly.append("end:\n ");
 	}
 
     /**
-     * Generates code for a while statement. Checks whether the condition is real or not.
-     * Next generates the code for evaluating the condition, and a jump to the
-     * end if it is false. Then the body of the loop is generated, followed by a
-     * jump to the beginning, and a label for the end.
-     * @param statement
+     * Generates a branch to label that is taken when the condition is true,
+     * or when it is false if onTrue is false. Comparisons branch directly on
+     * the compared registers or the FPU condition flag, a constant becomes a
+     * jump or nothing, and anything else is compared against zero.
+     * @param cond
+     * @param label
+     * @param onTrue
      * @param assembly 
      */
-	private void whileStatement(WhileStatementNode statement, StringBuilder assembly)
+	private void branch(ExpressionNode cond, String label, boolean onTrue, Code assembly)
 	{
-		ExpressionNode cond = statement.getCondition();
-		StatementNode body = statement.getStatement();
-
-		if (cond.isReal(symbols))
+		boolean real = cond.isReal(symbols);
+		if (cond instanceof syntaxtree.OperationNode
+				&& isComparison(((OperationNode) cond).getOperation()))
 		{
-			if (cond instanceof syntaxtree.VariableNode)
+			OperationNode op = (OperationNode) cond;
+			if (real)
 			{
-				assembly.append("lwc1 $f0\n mtc1 $zero, $f1\n ");
-				assembly.append("c.eq.s $f0, $f1\n bclt if").append(numIf);
-				assembly.append("false\n ");
+				realCompareAndBranch(op, label, onTrue ^ op.isNot(), assembly);
 			}
-			else if (cond instanceof syntaxtree.ValueNode)
-			{
-				assembly.append("li.s $f0, ").append(((ValueNode) cond).getAttribute());
-				assembly.append("\n mtc1 $zero, $f1\n ");
-				assembly.append("c.eq.s $f0, $f1\n bclt if").append(numIf);
-				assembly.append("false\n ");
-			}
-			else if (cond instanceof syntaxtree.OperationNode)
+			else
 			{
-				OperationNode opCond = (OperationNode) cond;
-				left(opCond.getLeft(), 0, assembly, true);
-				right(opCond.getRight(), 1, assembly, true);
-				if (opCond.getOperation() == Token.LESS_THAN)
-				{
-					assembly.append("c.lt.s $f").append(0).append(", $f");
-					assembly.append(1).append("\n bc1f if");
-				}
-				else if (opCond.getOperation() == Token.LESS_THAN_EQUAL)
-				{
-					assembly.append("c.le.s $f").append(0).append(", $f");
-					assembly.append(1).append("\n bc1f if");
-				}
-				else if (opCond.getOperation() == Token.GREATER_THAN)
-				{
-					assembly.append("c.lt.s $f").append(1).append(", $f");
-					assembly.append(0).append("\n bc1f if");
-
-				}
-				else if (opCond.getOperation() == Token.GREATER_THAN_EQUAL)
-				{
-					assembly.append("c.le.s $f").append(1).append(", $f");
-					assembly.append(0).append("\n bc1f if");
-				}
-				else if (opCond.getOperation() == Token.LESS_THAN_GREATER_THAN)
-				{
-					assembly.append("c.eq.s $f").append(0).append(", $f");
-					assembly.append(1).append("\n bc1f if");
-				}
-				else
-				{
-					evalOp(opCond, 0, assembly, true);
-					assembly.append("mtc1 $zero, $f1\n bclt if");
-				}
+				compareAndBranch(op.getOperation(), op.getLeft(), op.getRight(),
+						label, onTrue ^ op.isNot(), assembly);
 			}
 		}
-
-		else
+		else if (real)
 		{
-			if (cond instanceof syntaxtree.ValueNode)
-			{
-				assembly.append("li $t7, ");
-				assembly.append(((ValueNode) cond).getAttribute());
-				assembly.append("\n while");
-				assembly.append(numWhile);
-				assembly.append("begin:\n ");
-			}
-			else if (cond instanceof syntaxtree.VariableNode)
-			{
-				assembly.append("while");
-				assembly.append(numWhile);
-				assembly.append("begin:\n ");
-				assembly.append("lw, $t7, ");
-				assembly.append(((VariableNode) cond).getName());
-			}
-			else if (cond instanceof syntaxtree.OperationNode)
+			right(cond, 0, assembly, true);
+			assembly.emit(Opcode.MTC1, Register.ZERO, Register.f(REAL_SCRATCH));
+			assembly.emit(Opcode.C_EQ_S, Register.F0, Register.f(REAL_SCRATCH));
+			assembly.emit(onTrue ? Opcode.BC1F : Opcode.BC1T, new Label(label));
+		}
+		else if (intConstant(cond) != null)
+		{
+			if ((intConstant(cond) != 0) == onTrue)
 			{
-				assembly.append("while");
-				assembly.append(numWhile);
-				assembly.append("begin:\n ");
-				evalOp((OperationNode) cond, 7, assembly, false);
+				assembly.emit(Opcode.J, new Label(label));
 			}
-
-			if (cond.isNot())
+		}
+		else if (cond instanceof syntaxtree.VariableNode && !(cond instanceof ArrayNode))
+		{
+			VariableNode var = (VariableNode) cond;
+			Register register = held.get(Expressions.key(new VariableNode(var.getName()), false));
+			if (register == null)
 			{
-				assembly.append("bne $t7, $zero, while");
+				register = home(var.getName());
 			}
-			else
+			if (register == null)
 			{
-				assembly.append("beq $t7, $zero, while");
+				Address address = address(var.getName(), assembly);
+				register = Register.T0;
+				assembly.emit(Opcode.LW, Register.T0, address);
 			}
-			assembly.append(numWhile);
-			assembly.append("end\n ");
+			assembly.emit(onTrue ^ cond.isNot() ? Opcode.BNE : Opcode.BEQ, register, Register.ZERO,
+					new Label(label));
+		}
+		else
+		{
+			right(cond, 0, assembly, false);
+			assembly.emit(onTrue ? Opcode.BNE : Opcode.BEQ, Register.T0, Register.ZERO,
+					new Label(label));
+		}
+	}
 
-			if (body instanceof syntaxtree.AssignmentStatementNode)
-			{
-				assignment((AssignmentStatementNode) body, assembly);
-			}
-			else if (body instanceof syntaxtree.CompoundStatementNode)
-			{
-				compoundStatement((CompoundStatementNode) body, assembly);
-			}
-			else if (body instanceof syntaxtree.IfStatementNode)
+    /**
+     * Generates an integer comparison that branches to label when it holds,
+     * or when it does not hold if onTrue is false. Comparisons against zero
+     * use the single compare-with-zero branches, small constants use slti,
+     * anything else slt followed by beq or bne.
+     * @param operation
+     * @param left
+     * @param right
+     * @param label
+     * @param onTrue
+     * @param assembly 
+     */
+	private void compareAndBranch(Token operation, ExpressionNode left, ExpressionNode right,
+			String label, boolean onTrue, Code assembly)
+	{
+		if (intConstant(left) != null && intConstant(right) == null)
+		{
+			compareAndBranch(mirror(operation), right, left, label, onTrue, assembly);
+			return;
+		}
+		Token relation = onTrue ? operation : negate(operation);
+		Label target = new Label(label);
+		Register scratch = Register.t(INT_SCRATCH);
+		Integer constant = intConstant(right);
+		if (constant != null && constant == 0)
+		{
+			right(left, 0, assembly, false);
+			switch (relation)
 			{
-				ifStatement((IfStatementNode) body, assembly);
+				case LESS_THAN:
+					assembly.emit(Opcode.BLTZ, Register.T0, target);
+					break;
+				case LESS_THAN_EQUAL:
+					assembly.emit(Opcode.BLEZ, Register.T0, target);
+					break;
+				case GREATER_THAN:
+					assembly.emit(Opcode.BGTZ, Register.T0, target);
+					break;
+				case GREATER_THAN_EQUAL:
+					assembly.emit(Opcode.BGEZ, Register.T0, target);
+					break;
+				case EQUALS:
+					assembly.emit(Opcode.BEQ, Register.T0, Register.ZERO, target);
+					break;
+				default:
+					assembly.emit(Opcode.BNE, Register.T0, Register.ZERO, target);
+					break;
 			}
-			else if (body instanceof syntaxtree.WriteNode)
+			return;
+		}
+		if (constant != null && constant > Short.MIN_VALUE && constant < Short.MAX_VALUE)
+		{
+			right(left, 0, assembly, false);
+			int bound = constant;
+			if (relation == Token.LESS_THAN_EQUAL || relation == Token.GREATER_THAN)
 			{
-				write((WriteNode) body, assembly);
+				// x <= c is x < c + 1
+				bound++;
 			}
-			else if (body instanceof syntaxtree.ReadNode)
+			if (relation == Token.EQUALS || relation == Token.LESS_THAN_GREATER_THAN)
 			{
-				read((ReadNode) body, assembly);
+				assembly.emit(Opcode.LI, scratch, new Immediate(bound));
+				assembly.emit(relation == Token.EQUALS ? Opcode.BEQ : Opcode.BNE,
+						Register.T0, scratch, target);
 			}
-			else if (body instanceof syntaxtree.WhileStatementNode)
+			else
 			{
-				whileStatement((WhileStatementNode) body, assembly);
+				assembly.emit(Opcode.SLTI, scratch, Register.T0, new Immediate(bound));
+				boolean less = relation == Token.LESS_THAN || relation == Token.LESS_THAN_EQUAL;
+				assembly.emit(less ? Opcode.BNE : Opcode.BEQ, scratch, Register.ZERO, target);
 			}
+			return;
+		}
+
+		int[] regs = operands(new OperationNode(operation, left, right), 0, assembly, false);
+		Register l = Register.t(regs[0]);
+		Register r = Register.t(regs[1]);
+		switch (relation)
+		{
+			case EQUALS:
+				assembly.emit(Opcode.BEQ, l, r, target);
+				break;
+			case LESS_THAN_GREATER_THAN:
+				assembly.emit(Opcode.BNE, l, r, target);
+				break;
+			case LESS_THAN:
+			case GREATER_THAN_EQUAL:
+				assembly.emit(Opcode.SLT, scratch, l, r);
+				assembly.emit(relation == Token.LESS_THAN ? Opcode.BNE : Opcode.BEQ,
+						scratch, Register.ZERO, target);
+				break;
+			default:
+				assembly.emit(Opcode.SLT, scratch, r, l);
+				assembly.emit(relation == Token.GREATER_THAN ? Opcode.BNE : Opcode.BEQ,
+						scratch, Register.ZERO, target);
+				break;
 		}
-		assembly.append("j while");
-		assembly.append(numWhile);
-		assembly.append("begin\n while");
-		assembly.append(numWhile);
-		assembly.append("end:\n ");
-		numWhile++;
 	}
 
     /**
-     * Generates code for a compound statement. Iterates through each statement and
-     * calls a function to generate the corresponding type of code.
-     * @param trueStmt
+     * Generates a real comparison that branches to label on the FPU condition
+     * flag when it holds, or when it does not hold if onTrue is false.
+     * @param op
+     * @param label
+     * @param onTrue
      * @param assembly 
      */
-	private void compoundStatement(StatementNode trueStmt, StringBuilder assembly)
+	private void realCompareAndBranch(OperationNode op, String label, boolean onTrue, Code assembly)
 	{
-		ArrayList<StatementNode> statements = ((CompoundStatementNode) trueStmt).getStatements();
-		for (StatementNode current : statements)
+		int[] regs = operands(op, 0, assembly, true);
+		boolean flagHolds = realCompare(op.getOperation(), regs[0], regs[1], assembly);
+		assembly.emit(onTrue == flagHolds ? Opcode.BC1T : Opcode.BC1F, new Label(label));
+	}
+
+    /**
+     * Sets the FPU condition flag by comparing two real registers. Returns
+     * true if the flag is set when the comparison holds, and false if it is
+     * set when it does not hold (for <>).
+     * @param operation
+     * @param left
+     * @param right
+     * @param assembly
+     * @return 
+     */
+	private boolean realCompare(Token operation, int left, int right, Code assembly)
+	{
+		switch (operation)
 		{
-			if (current instanceof syntaxtree.AssignmentStatementNode)
-			{
-				assignment((AssignmentStatementNode) current, assembly);
-			}
-			else if (current instanceof syntaxtree.ReadNode)
-			{
-				read((ReadNode) current, assembly);
-			}
-			else if (current instanceof syntaxtree.WriteNode)
-			{
-				write((WriteNode) current, assembly);
-			}
-			else if (current instanceof syntaxtree.IfStatementNode)
-			{
-				ifStatement((IfStatementNode) current, assembly);
-			}
-			else if (current instanceof syntaxtree.WhileStatementNode)
-			{
-				whileStatement((WhileStatementNode) current, assembly);
-			}
+			case LESS_THAN:
+				assembly.emit(Opcode.C_LT_S, Register.f(left), Register.f(right));
+				break;
+			case LESS_THAN_EQUAL:
+				assembly.emit(Opcode.C_LE_S, Register.f(left), Register.f(right));
+				break;
+			case GREATER_THAN:
+				assembly.emit(Opcode.C_LT_S, Register.f(right), Register.f(left));
+				break;
+			case GREATER_THAN_EQUAL:
+				assembly.emit(Opcode.C_LE_S, Register.f(right), Register.f(left));
+				break;
+			default:
+				assembly.emit(Opcode.C_EQ_S, Register.f(left), Register.f(right));
+				break;
+		}
+		return operation != Token.LESS_THAN_GREATER_THAN;
+	}
+
+    /**
+     * Check whether the operation is a comparison.
+     * @param operation
+     * @return 
+     */
+	private boolean isComparison(Token operation)
+	{
+		return operation == Token.LESS_THAN || operation == Token.LESS_THAN_EQUAL
+				|| operation == Token.GREATER_THAN || operation == Token.GREATER_THAN_EQUAL
+				|| operation == Token.LESS_THAN_GREATER_THAN || operation == Token.EQUALS;
+	}
+
+    /**
+     * The comparison that holds exactly when the given one does not.
+     * @param operation
+     * @return 
+     */
+	private Token negate(Token operation)
+	{
+		switch (operation)
+		{
+			case LESS_THAN:
+				return Token.GREATER_THAN_EQUAL;
+			case LESS_THAN_EQUAL:
+				return Token.GREATER_THAN;
+			case GREATER_THAN:
+				return Token.LESS_THAN_EQUAL;
+			case GREATER_THAN_EQUAL:
+				return Token.LESS_THAN;
+			case EQUALS:
+				return Token.LESS_THAN_GREATER_THAN;
+			default:
+				return Token.EQUALS;
+		}
+	}
+
+    /**
+     * The comparison that holds when the operands are swapped.
+     * @param operation
+     * @return 
+     */
+	private Token mirror(Token operation)
+	{
+		switch (operation)
+		{
+			case LESS_THAN:
+				return Token.GREATER_THAN;
+			case LESS_THAN_EQUAL:
+				return Token.GREATER_THAN_EQUAL;
+			case GREATER_THAN:
+				return Token.LESS_THAN;
+			case GREATER_THAN_EQUAL:
+				return Token.LESS_THAN_EQUAL;
+			default:
+				return operation;
 		}
 	}
 
@@ -485,36 +1717,52 @@ public class Generator
      * @param currentNode
      * @param assembly 
      */
-	private void write(WriteNode currentNode, StringBuilder assembly)
+	private void write(WriteNode currentNode, Code assembly)
 	{
 		ExpressionNode out = currentNode.getOutput();
-		if (out instanceof syntaxtree.ValueNode)
+		Register register = heldRegister(out, false);
+		if (register != null)
 		{
-			assembly.append("li $a0, ");
-			assembly.append(((ValueNode) out).getAttribute());
-			assembly.append("\n li $v0, 1\n syscall\n ");
+			boolean real = out.isReal(symbols);
+			move(real ? Register.F12 : Register.A0, register, assembly);
+			assembly.emit(Opcode.LI, Register.V0, new Immediate(real ? 2 : 1));
+			assembly.emit(Opcode.SYSCALL);
 		}
-		else if (out instanceof syntaxtree.VariableNode)
+		else if (out instanceof syntaxtree.VariableNode && !(out instanceof ArrayNode)
+				&& !out.isNot() && out.getSign() != Token.MINUS
+				&& home(((VariableNode) out).getName()) == null)
 		{
+			Address address = address(((VariableNode) out).getName(), assembly);
 			if (((VariableNode) out).getType() == Token.INTEGER)
 			{
-				assembly.append("lw $a0, ");
-				assembly.append(((VariableNode) out).getName());
-				assembly.append("\n li $v0, 1\n syscall\n ");
+				assembly.emit(Opcode.LW, Register.A0, address);
+				assembly.emit(Opcode.LI, Register.V0, new Immediate(1));
+				assembly.emit(Opcode.SYSCALL);
 			}
 			else if (((VariableNode) out).getType() == Token.REAL)
 			{
-				assembly.append("lwc1 $f12, ");
-				assembly.append(((VariableNode) out).getName());
-				assembly.append("\n li $v0, 2\n syscall\n ");
+				assembly.emit(Opcode.LWC1, Register.F12, address);
+				assembly.emit(Opcode.LI, Register.V0, new Immediate(2));
+				assembly.emit(Opcode.SYSCALL);
 			}
 		}
-		else if (out instanceof syntaxtree.OperationNode)
+		else if (out.isReal(symbols))
+		{
+			right(out, 0, assembly, true);
+			move(Register.F12, Register.F0, assembly);
+			assembly.emit(Opcode.LI, Register.V0, new Immediate(2));
+			assembly.emit(Opcode.SYSCALL);
+		}
+		else
 		{
-			evalOp((OperationNode) out, 0, assembly, false);
-			assembly.append("addi $a0, $t0, 0\n li $v0, 1\n syscall\n ");
+			right(out, 0, assembly, false);
+			assembly.emit(Opcode.ADDI, Register.A0, Register.T0, new Immediate(0));
+			assembly.emit(Opcode.LI, Register.V0, new Immediate(1));
+			assembly.emit(Opcode.SYSCALL);
 		}
-		assembly.append("li $v0, 4\n la $a0, newline\n syscall\n ");
+		assembly.emit(Opcode.LI, Register.V0, new Immediate(4));
+		assembly.emit(Opcode.LA, Register.A0, new Label("newline"));
+		assembly.emit(Opcode.SYSCALL);
 	}
 
     /**
@@ -524,61 +1772,87 @@ public class Generator
      * @param currentNode
      * @param assembly 
      */
-	private void assignment(AssignmentStatementNode currentNode, StringBuilder assembly)
+	private void assignment(AssignmentStatementNode currentNode, Code assembly)
 	{
 		ExpressionNode right = currentNode.getExpression();
-		if(right.isReal(symbols))
+		VariableNode lvalue = currentNode.getLvalue();
+		Register register = held.get(Expressions.key(
+				new VariableNode(lvalue.getName(), symbols.getType(lvalue.getName())),
+				right.isReal(symbols)));
+		Register home = home(lvalue.getName());
+		if (lvalue instanceof ArrayNode)
+		{
+			element((ArrayNode) lvalue, right, assembly);
+			return;
+		}
+		if (register != null && promoted.contains(lvalue.getName()))
+		{
+			// A temporary kept in a saved register.
+			right(right, 0, assembly, right.isReal(symbols));
+			move(register, register(0, right.isReal(symbols)), assembly);
+		}
+		else if (home != null)
+		{
+			// A variable of a subprogram without a frame.
+			boolean real = lvalue.getType() == Token.REAL;
+			right(right, 0, assembly, real);
+			move(home, register(0, real), assembly);
+		}
+		else if(lvalue.getType() == Token.REAL)
 		{
 			right(right, 0, assembly, true);
-			assembly.append("swc1 $f0, ").append(currentNode.getLvalue().getName());
+			assembly.emit(Opcode.SWC1, Register.F0, address(lvalue.getName(), assembly));
 		}
 		else
 		{
 			right(right, 0, assembly, false);
-			assembly.append("sw $t0, ").append(currentNode.getLvalue().getName());
+			assembly.emit(Opcode.SW, Register.T0, address(lvalue.getName(), assembly));
 		}
-		assembly.append("\n ");
-
-
 	}
 
-    /**
-     * Generates the right hand side of an expression. Checks what kind of
-     * expression it is, then calls the corresponding function to generate
-     * the code.
-     * @param exp
-     * @param reg
-     * @param assembly
-     * @param real 
+    /**
+     * Generates an assignment to an element of an array. The value goes in
+     * register 0 and the address in register 1, unless the index makes a
+     * call: then the value is pushed while the index is evaluated in
+     * register 0, and popped in to register 1.
+     * @param element
+     * @param exp
+     * @param assembly 
      */
-	private void right(ExpressionNode exp, int reg, StringBuilder assembly, boolean real)
+	private void element(ArrayNode element, ExpressionNode exp, Code assembly)
 	{
-		if (exp instanceof ValueNode)
-		{
-			value((ValueNode) exp, reg, assembly, real);
-		}
-		else if (exp instanceof VariableNode)
+		boolean real = element.isReal(symbols);
+		right(exp, 0, assembly, real);
+		boolean calls = Expressions.hasCall(element.getIndex());
+		if (calls)
 		{
-			variable((VariableNode) exp, reg, assembly, real);
+			spill(0, assembly, real);
 		}
-		else if (exp instanceof OperationNode)
+		Address address = element(element, calls ? 0 : 1, assembly);
+		if (calls)
 		{
-			evalOp((OperationNode) exp, reg, assembly, real);
+			reload(1, assembly, real);
 		}
+		assembly.emit(real ? Opcode.SWC1 : Opcode.SW, register(calls ? 1 : 0, real), address);
 	}
 
     /**
-     * Generates the left hand side of an expression. Checks what kind of
+     * Generates the right hand side of an expression. Checks what kind of
      * expression it is, then calls the corresponding function to generate
-     * the code.
+     * the code. An expression held in a saved register is copied from it.
      * @param exp
      * @param reg
      * @param assembly
      * @param real 
      */
-	private void left(ExpressionNode exp, int reg, StringBuilder assembly, boolean real)
+	private void right(ExpressionNode exp, int reg, Code assembly, boolean real)
 	{
-		if (exp instanceof ValueNode)
+		Register register = heldRegister(exp, real);
+		if (register != null)
+		{
+			move(register(reg, real || exp.isReal(symbols)), register, assembly);
+		}
+		else if (exp instanceof ValueNode)
 		{
 			value((ValueNode) exp, reg, assembly, real);
 		}
@@ -590,6 +1864,33 @@ public class Generator
 		{
 			evalOp((OperationNode) exp, reg, assembly, real);
 		}
+		else if (exp instanceof FunctionCallNode)
+		{
+			FunctionCallNode call = (FunctionCallNode) exp;
+			call(call.getName(), call.getArguments(), reg, assembly, real);
+			if (real || exp.isReal(symbols))
+			{
+				if (exp.isNot())
+				{
+					realNot(reg, assembly);
+				}
+				if (exp.getSign() == Token.MINUS)
+				{
+					assembly.emit(Opcode.NEG_S, Register.f(reg), Register.f(reg));
+				}
+			}
+			else
+			{
+				if (exp.isNot())
+				{
+					assembly.emit(Opcode.SLTIU, Register.t(reg), Register.t(reg), new Immediate(1));
+				}
+				if (exp.getSign() == Token.MINUS)
+				{
+					assembly.emit(Opcode.SUB, Register.t(reg), Register.ZERO, Register.t(reg));
+				}
+			}
+		}
 	}
 
     /**
@@ -600,63 +1901,104 @@ public class Generator
      * @param assembly
      * @param real 
      */
-	private void value(ValueNode val, int reg, StringBuilder assembly, boolean real)
+	private void value(ValueNode val, int reg, Code assembly, boolean real)
 	{
+		String sign = val.getSign() == Token.MINUS ? "-" : "";
+		String attribute = val.getAttribute();
+		if (val.isNot())
+		{
+			attribute = Double.parseDouble(attribute) == 0 ? "1" : "0";
+		}
 		if (!real)
 		{
-			assembly.append("li $t").append(reg).append(", ");
-            if(val.getSign() == Token.MINUS)
-            {
-                assembly.append("-");
-            }
-			assembly.append(val.getAttribute()).append("\n ");
+			assembly.emit(Opcode.LI, Register.t(reg),
+					new Immediate(Integer.parseInt(sign + attribute)));
 		}
 		else
 		{
-			assembly.append("li.s $f").append(reg).append(", ");
-		    if(val.getSign() == Token.MINUS)
-            {
-                assembly.append("-");
-            }	
-            assembly.append(val.getAttribute());
+			String text = sign + attribute;
 			if(!val.isReal(symbols))
 			{
-				assembly.append(".0");
+				text += ".0";
 			}
-			assembly.append("\n ");
+			assembly.emit(Opcode.LI_S, Register.f(reg), new RealImmediate(text));
 		}
 	}
 
     /**
      * Generates the code for loading a variable. Checks for the type of variable,
      * and the sign of the variable. Uses the not+1 trick to convert sign for 
-     * integers, and the neg instruction for reals.
+     * integers, and neg.s for reals.
      * @param var
      * @param reg
      * @param assembly
      * @param real 
      */
-	private void variable(VariableNode var, int reg, StringBuilder assembly, boolean real)
+	private void variable(VariableNode var, int reg, Code assembly, boolean real)
 	{
+		Register home = home(var.getName());
+		Register held = heldRegister(var, false);
+		if (home == null && real && !var.isReal(symbols) && held != null
+				&& !(var instanceof ArrayNode))
+		{
+			// An integer kept in a saved register, with its not and sign.
+			assembly.emit(Opcode.MTC1, held, Register.f(reg));
+			assembly.emit(Opcode.CVT_S_W, Register.f(reg), Register.f(reg));
+			return;
+		}
+		if (home != null)
+		{
+			// Copied as it is, like a load from memory would.
+			if (!real && home.isReal())
+			{
+				assembly.emit(Opcode.MFC1, Register.t(reg), home);
+			}
+			else if (real && !home.isReal())
+			{
+				assembly.emit(Opcode.MTC1, home, Register.f(reg));
+			}
+			else
+			{
+				move(register(reg, real), home, assembly);
+			}
+		}
+		if (var instanceof ArrayNode)
+		{
+			loadElement((ArrayNode) var, reg, assembly, real);
+		}
 		if (!real)
 		{
-			assembly.append("lw $t").append(reg).append(", ");
-		    assembly.append(var.getName()).append("\n ");
+			if (home == null && !(var instanceof ArrayNode))
+			{
+				assembly.emit(Opcode.LW, Register.t(reg), address(var.getName(), assembly));
+			}
+            if(var.isNot())
+            {
+                assembly.emit(Opcode.SLTIU, Register.t(reg), Register.t(reg), new Immediate(1));
+            }
             if(var.getSign() == Token.MINUS)
             {
-                assembly.append("not $t").append(reg).append(", $t").append(reg);
-                assembly.append("\n addi $t").append(reg).append(", $t");
-                assembly.append(reg).append(", 1\n ");
+                assembly.emit(Opcode.NOT, Register.t(reg), Register.t(reg));
+                assembly.emit(Opcode.ADDI, Register.t(reg), Register.t(reg), new Immediate(1));
             }   
 		}
 		else 
 		{
-			assembly.append("lwc1 $f").append(reg).append(", ");
-    		assembly.append(var.getName()).append("\n ");
+			if (home == null && !(var instanceof ArrayNode))
+			{
+				assembly.emit(Opcode.LWC1, Register.f(reg), address(var.getName(), assembly));
+			}
+			if (!var.isReal(symbols))
+			{
+				assembly.emit(Opcode.CVT_S_W, Register.f(reg), Register.f(reg));
+			}
+			if (var.isNot())
+			{
+				realNot(reg, assembly);
+			}
             if(var.getSign() == Token.MINUS)
             {
-                assembly.append("neg $f").append(reg).append(", $f").append(reg);
-                assembly.append("\n ");
+                assembly.emit(Opcode.NEG_S, Register.f(reg), Register.f(reg));
             }   
 		}
 	}
@@ -664,213 +2006,479 @@ public class Generator
     /**
      * Generates the last part of an operation. Given the operation, a result
      * register, and the register numbers of two operands, this method performs
-     * the operation.
+     * the operation. Comparisons leave 1 or 0 in the result register using slt,
+     * xor, and the immediate forms, rather than the sle/sge/seq/sne
+     * pseudo-instructions.
      * @param operation
      * @param result
      * @param operand1
      * @param operand2
      * @param assembly 
      */
-	private void writeOp(Token operation, int result, int operand1, int operand2, StringBuilder assembly)
+	private void writeOp(Token operation, int result, int operand1, int operand2, Code assembly)
 	{
-
+		Register r = Register.t(result);
+		Register left = Register.t(operand1);
+		Register right = Register.t(operand2);
 		if (operation == Token.MULTIPLY)
 		{
-			assembly.append("mult $t").append(operand1).append(", $t");
-			assembly.append(operand2).append("\n mflo $t").append(result);
+			assembly.emit(Opcode.MULT, left, right);
+			assembly.emit(Opcode.MFLO, r);
 		}
 		else if (operation == Token.DIVIDE)
 		{
-			assembly.append("div $t").append(operand1).append(", $t");
-			assembly.append(operand2).append("\n mflo $t").append(result);
+			assembly.emit(Opcode.DIV, left, right);
+			assembly.emit(Opcode.MFLO, r);
 		}
 		else if (operation == Token.PLUS)
 		{
-			assembly.append("add $t").append(result).append(", $t");
-			assembly.append(operand1).append(", $t").append(operand2);
+			assembly.emit(Opcode.ADD, r, left, right);
 		}
 		else if (operation == Token.MINUS)
 		{
-			assembly.append("sub $t").append(result).append(", $t");
-			assembly.append(operand1).append(", $t").append(operand2);
+			assembly.emit(Opcode.SUB, r, left, right);
 		}
 		else if (operation == Token.LESS_THAN)
 		{
-			assembly.append("slt $t").append(result).append(", $t");
-			assembly.append(operand1).append(", $t").append(operand2);
+			assembly.emit(Opcode.SLT, r, left, right);
 		}
 		else if (operation == Token.LESS_THAN_EQUAL)
 		{
-            assembly.append("sle $t").append(result).append(", $t");
-            assembly.append(operand1).append(", $t").append(operand2);
+			assembly.emit(Opcode.SLT, r, right, left);
+			assembly.emit(Opcode.XORI, r, r, new Immediate(1));
 		}
 		else if (operation == Token.GREATER_THAN)
 		{
-			assembly.append("slt $t").append(result).append(", $t");
-			assembly.append(operand2).append(", $t").append(operand1);
+			assembly.emit(Opcode.SLT, r, right, left);
 		}
 		else if (operation == Token.GREATER_THAN_EQUAL)
 		{
-            assembly.append("sge $t").append(result).append(", $t");
-            assembly.append(operand1).append(", $t").append(operand2);
+			assembly.emit(Opcode.SLT, r, left, right);
+			assembly.emit(Opcode.XORI, r, r, new Immediate(1));
 		}
 		else if (operation == Token.LESS_THAN_GREATER_THAN)
 		{
-            assembly.append("sne $t").append(result).append(", $t");
-            assembly.append(operand1).append(", $t").append(operand2);
+			assembly.emit(Opcode.XOR, r, left, right);
+			assembly.emit(Opcode.SLTU, r, Register.ZERO, r);
 		}
         else if(operation == Token.EQUALS)
         {
-            assembly.append("seq $t").append(result).append(", $t");
-            assembly.append(operand1).append(", $t").append(operand2);
+			assembly.emit(Opcode.XOR, r, left, right);
+			assembly.emit(Opcode.SLTIU, r, r, new Immediate(1));
         }
-		assembly.append("\n ");
 	}
 
     /**
      * Generates the last part of a real operation. Given the operation, a result
      * register, and the register numbers of two operands, this method performs
-     * the operation.
-     * @param op
+     * the operation. Comparisons set the FPU condition flag, and 1.0 is moved
+     * in to the zeroed result register on that flag, without branching.
+     * @param operation
      * @param result
      * @param operand1
      * @param operand2
      * @param assembly 
      */
-	private void writeRealOp(OperationNode op, int result, int operand1, int operand2, StringBuilder assembly)
+	private void writeRealOp(Token operation, int result, int operand1, int operand2, Code assembly)
 	{
-		Token operation = op.getOperation();
-/*
-		if (!op.getLeft().isReal(symbols))
+		Register r = Register.f(result);
+		Register left = Register.f(operand1);
+		Register right = Register.f(operand2);
+		if (operation == Token.MULTIPLY)
+		{
+			assembly.emit(Opcode.MUL_S, r, left, right);
+		}
+		else if (operation == Token.DIVIDE)
 		{
-			assembly.append("mtc1 $t").append(operand1).append(", $f");
-			assembly.append(operand1).append("\n ");
+			assembly.emit(Opcode.DIV_S, r, left, right);
 		}
+		else if (operation == Token.PLUS)
+		{
+			assembly.emit(Opcode.ADD_S, r, left, right);
+		}
+		else if (operation == Token.MINUS)
+		{
+			assembly.emit(Opcode.SUB_S, r, left, right);
+		}
+		else
+		{
+			boolean flagHolds = realCompare(operation, operand1, operand2, assembly);
+			assembly.emit(Opcode.MTC1, Register.ZERO, r);
+			assembly.emit(Opcode.LI_S, Register.f(REAL_SCRATCH), new RealImmediate("1.0"));
+			assembly.emit(flagHolds ? Opcode.MOVT_S : Opcode.MOVF_S, r, Register.f(REAL_SCRATCH));
+		}
+	}
+
+	/**
+	 * Applies not to a real in register reg: 1.0 if it is zero, otherwise
+	 * 0.0, like a real comparison.
+	 * @param reg
+	 * @param assembly
+	 */
+	private void realNot(int reg, Code assembly)
+	{
+		Register r = Register.f(reg);
+		assembly.emit(Opcode.MTC1, Register.ZERO, Register.f(REAL_SCRATCH));
+		assembly.emit(Opcode.C_EQ_S, r, Register.f(REAL_SCRATCH));
+		assembly.emit(Opcode.MTC1, Register.ZERO, r);
+		assembly.emit(Opcode.LI_S, Register.f(REAL_SCRATCH), new RealImmediate("1.0"));
+		assembly.emit(Opcode.MOVT_S, r, Register.f(REAL_SCRATCH));
+	}
 
-		if (!op.getRight().isReal(symbols))
+	/**
+	 * Evaluates an operation, and leaves the result in register reg. The
+	 * operands are evaluated by operands(), unless the operation can be
+	 * strength reduced. The not and sign of the operation are applied to the
+	 * result.
+	 *
+	 * @param op
+	 * @param reg
+	 * @param operation
+	 * @param real
+	 */
+	private void evalOp(OperationNode op, int reg, Code operation, boolean real)
+	{
+		boolean isReal = op.isReal(symbols) || real;
+		if (isReal || !strengthReduce(op, reg, operation))
 		{
-			assembly.append("mtc1 $t").append(operand2).append(", $f");
-			assembly.append(operand2).append("\n ");
+			int[] regs = operands(op, reg, operation, isReal);
+			if (isReal)
+			{
+				writeRealOp(op.getOperation(), reg, regs[0], regs[1], operation);
+			}
+			else
+			{
+				writeOp(op.getOperation(), reg, regs[0], regs[1], operation);
+			}
 		}
-		*/
 
-		if (operation == Token.MULTIPLY)
+		if (isReal)
 		{
-			assembly.append("mul.s $f").append(operand1).append(", $f");
-			assembly.append(operand1).append(", $f");
-			assembly.append(operand2);
+			if (op.isNot())
+			{
+				realNot(reg, operation);
+			}
+			if (op.getSign() == Token.MINUS)
+			{
+				operation.emit(Opcode.NEG_S, Register.f(reg), Register.f(reg));
+			}
 		}
-		else if (operation == Token.DIVIDE)
+		else
 		{
-			assembly.append("div.s $f").append(operand1).append(", $f");
-			assembly.append(operand1).append(", $f");
-			assembly.append(operand2);
+			if (op.isNot())
+			{
+				operation.emit(Opcode.SLTIU, Register.t(reg), Register.t(reg), new Immediate(1));
+			}
+			if (op.getSign() == Token.MINUS)
+			{
+				operation.emit(Opcode.SUB, Register.t(reg), Register.ZERO, Register.t(reg));
+			}
 		}
-		else if (operation == Token.PLUS)
+	}
+
+    /**
+     * Evaluates both operands of an operation, starting at register reg. The
+     * side with the larger Sethi-Ullman number is evaluated first, so the
+     * other side can reuse its registers, unless either side calls a function
+     * that could change what the other reads. If the second side does not fit
+     * in the registers that are left, the first result is spilled to the stack
+     * and reloaded in to the scratch register afterwards.
+     * @param op
+     * @param reg
+     * @param assembly
+     * @param real
+     * @return the registers holding the left and the right operand.
+     */
+	private int[] operands(OperationNode op, int reg, Code assembly, boolean real)
+	{
+		boolean swapped = op.getRight().registersNeeded() > op.getLeft().registersNeeded()
+				&& !Expressions.hasCall(op.getLeft()) && !Expressions.hasCall(op.getRight());
+		ExpressionNode first = swapped ? op.getRight() : op.getLeft();
+		ExpressionNode second = swapped ? op.getLeft() : op.getRight();
+		int limit = real ? REAL_REGISTERS : INT_REGISTERS;
+
+		int firstReg;
+		int secondReg;
+		right(first, reg, assembly, real);
+		if (reg + second.registersNeeded() < limit)
 		{
-			assembly.append("add.s $f").append(result).append(", $f");
-			assembly.append(operand1).append(", $f").append(operand2);
+			right(second, reg + 1, assembly, real);
+			firstReg = reg;
+			secondReg = reg + 1;
 		}
-		else if (operation == Token.MINUS)
+		else
 		{
-			assembly.append("sub.s $f").append(result).append(", $f");
-			assembly.append(operand1).append(", $f").append(operand2);
+			spill(reg, assembly, real);
+			right(second, reg, assembly, real);
+			firstReg = real ? REAL_SCRATCH : INT_SCRATCH;
+			reload(firstReg, assembly, real);
+			secondReg = reg;
 		}
-		else if (operation == Token.LESS_THAN)
+		if (swapped)
 		{
-            assembly.append("mct1 $zero, $f16\n ");
-            assembly.append("addi $t9, $zero, 1\n mct1 $t9, $f15\n ");
-			assembly.append("c.lt.s $f").append(operand1).append(", $f");
-			assembly.append(operand2).append("\n bc1f branch").append(numBranch);
-            assembly.append("\n add.s  $f").append(result).append(", $f16, $f15");
-            assembly.append("\n j branch").append(numBranch).append("end\n ");
-            assembly.append("branch").append(numBranch).append(":\n ");
-            assembly.append("mct1 $zero, $f").append(result).append("\n ");
-            assembly.append("branch").append(numBranch++).append(":");
+			return new int[] {secondReg, firstReg};
+		}
+		return new int[] {firstReg, secondReg};
+	}
 
+    /**
+     * Generates an integer multiply or divide by a constant without using
+     * mult or div where possible. The other operand is evaluated in to reg,
+     * and the result replaces it. Returns false if the operation is not a
+     * multiply or divide by a constant, and no code was generated.
+     * @param op
+     * @param reg
+     * @param assembly
+     * @return 
+     */
+	private boolean strengthReduce(OperationNode op, int reg, Code assembly)
+	{
+		Integer constant = intConstant(op.getRight());
+		ExpressionNode other = op.getLeft();
+		if (op.getOperation() == Token.MULTIPLY && constant == null)
+		{
+			constant = intConstant(op.getLeft());
+			other = op.getRight();
 		}
-		else if (operation == Token.LESS_THAN_EQUAL)
+		if (constant == null || constant == 0 || constant == Integer.MIN_VALUE)
 		{
-            assembly.append("mct1 $zero, $f16\n ");
-            assembly.append("addi $t9, $zero, 1\n mct1 $t9, $f15\n ");
-			assembly.append("c.le.s $f").append(operand1).append(", $f");
-			assembly.append(operand2).append("\n bc1f branch").append(numBranch);
-            assembly.append("\n add.s  $f").append(result).append(", $f16, $f15");
-            assembly.append("\n j branch").append(numBranch).append("end\n ");
-            assembly.append("branch").append(numBranch).append(":\n ");
-            assembly.append("mct1 $zero, $f").append(result).append("\n ");
-            assembly.append("branch").append(numBranch++).append(":");
+			return false;
 		}
-		else if (operation == Token.GREATER_THAN)
+		int value = constant;
+		if (op.getOperation() == Token.MULTIPLY)
 		{
-            assembly.append("mct1 $zero, $f16\n ");
-            assembly.append("addi $t9, $zero, 1\n mct1 $t9, $f15\n ");
-			assembly.append("c.lt.s $f").append(operand2).append(", $f");
-			assembly.append(operand1).append("\n bc1f branch").append(numBranch);
-            assembly.append("\n add.s  $f").append(result).append(", $f16, $f15");
-            assembly.append("\n j branch").append(numBranch).append("end\n ");
-            assembly.append("branch").append(numBranch).append(":\n ");
-            assembly.append("mct1 $zero, $f").append(result).append("\n ");
-            assembly.append("branch").append(numBranch++).append(":");
+			right(other, reg, assembly, false);
+			multiplyByConstant(reg, Math.abs(value), assembly);
 		}
-		else if (operation == Token.GREATER_THAN_EQUAL)
+		else if (op.getOperation() == Token.DIVIDE && value != 0)
 		{
-            assembly.append("mct1 $zero, $f16\n ");
-            assembly.append("addi $t9, $zero, 1\n mct1 $t9, $f15\n ");
-			assembly.append("c.le.s $f").append(operand2).append(", $f");
-			assembly.append(operand1).append("\n bc1f branch").append(numBranch);
-            assembly.append("\n add.s  $f").append(result).append(", $f16, $f15");
-            assembly.append("\n j branch").append(numBranch).append("end\n ");
-            assembly.append("branch").append(numBranch).append(":\n ");
-            assembly.append("mct1 $zero, $f").append(result).append("\n ");
-            assembly.append("branch").append(numBranch++).append(":");
+			right(other, reg, assembly, false);
+			divideByConstant(reg, Math.abs(value), assembly);
 		}
-		else if (operation == Token.LESS_THAN_GREATER_THAN)
+		else
 		{
-            assembly.append("mct1 $zero, $f16\n ");
-            assembly.append("addi $t9, $zero, 1\n mct1 $t9, $f15\n ");
-			assembly.append("c.eq.s $f").append(operand1).append(", $f");
-			assembly.append(operand2).append("\n bc1t branch").append(numBranch);
-            assembly.append("\n add.s  $f").append(result).append(", $f16, $f15");
-            assembly.append("\n j branch").append(numBranch).append("end\n ");
-            assembly.append("branch").append(numBranch).append(":\n ");
-            assembly.append("mct1 $zero, $f").append(result).append("\n ");
-            assembly.append("branch").append(numBranch++).append(":");
+			return false;
 		}
-        else if(operation == Token.EQUALS)
-        {
-            assembly.append("mct1 $zero, $f16\n ");
-            assembly.append("addi $t9, $zero, 1\n mct1 $t9, $f15\n ");
-			assembly.append("c.eq.s $f").append(operand1).append(", $f");
-			assembly.append(operand2).append("\n bc1f branch").append(numBranch);
-            assembly.append("\n add.s  $f").append(result).append(", $f16, $f15");
-            assembly.append("\n j branch").append(numBranch).append("end\n ");
-            assembly.append("branch").append(numBranch).append(":\n ");
-            assembly.append("mct1 $zero, $f").append(result).append("\n ");
-            assembly.append("branch").append(numBranch++).append(":");
-        }
-		assembly.append("\n ");
+		if (value < 0)
+		{
+			assembly.emit(Opcode.SUB, Register.t(reg), Register.ZERO, Register.t(reg));
+		}
+		return true;
 	}
 
-	/**
-	 * Evaluates an operation, and leaves the result in $t0. Currently only
-	 * supports one level of depth, but this needs to be increased.
-	 *
-	 * @param op
-	 * @param reg
-	 * @return
-	 */
-	private void evalOp(OperationNode op, int reg, StringBuilder operation, boolean real)
+    /**
+     * The value of an integer constant, or null if the expression is not one.
+     * @param exp
+     * @return 
+     */
+	private Integer intConstant(ExpressionNode exp)
+	{
+		if (!(exp instanceof ValueNode) || exp.isReal(symbols) || exp.isNot())
+		{
+			return null;
+		}
+		int value = Integer.parseInt(((ValueNode) exp).getAttribute());
+		return exp.getSign() == Token.MINUS ? -value : value;
+	}
+
+    /**
+     * Multiplies register reg by a positive constant. Powers of two are a
+     * single shift, constants with two bits set or a single run of bits
+     * are two shifts and an add or subtract. Anything else uses mult.
+     * @param reg
+     * @param value
+     * @param assembly 
+     */
+	private void multiplyByConstant(int reg, int value, Code assembly)
+	{
+		Register r = Register.t(reg);
+		Register scratch = Register.t(INT_SCRATCH);
+		int low = Integer.numberOfTrailingZeros(value);
+		int rest = value - (1 << low);
+		if (rest == 0)
+		{
+			shift(Opcode.SLL, reg, reg, low, assembly);
+		}
+		else if (Integer.bitCount(rest) == 1)
+		{
+			// value = 2^high + 2^low
+			shift(Opcode.SLL, INT_SCRATCH, reg, Integer.numberOfTrailingZeros(rest), assembly);
+			shift(Opcode.SLL, reg, reg, low, assembly);
+			assembly.emit(Opcode.ADDU, r, r, scratch);
+		}
+		else if (Integer.bitCount(value + (1 << low)) == 1 && value + (1 << low) > 0)
+		{
+			// value = 2^high - 2^low
+			shift(Opcode.SLL, INT_SCRATCH, reg,
+					Integer.numberOfTrailingZeros(value + (1 << low)), assembly);
+			shift(Opcode.SLL, reg, reg, low, assembly);
+			assembly.emit(Opcode.SUBU, r, scratch, r);
+		}
+		else
+		{
+			assembly.emit(Opcode.LI, scratch, new Immediate(value));
+			assembly.emit(Opcode.MULT, r, scratch);
+			assembly.emit(Opcode.MFLO, r);
+		}
+	}
+
+    /**
+     * Divides register reg by a positive constant, rounding toward zero like
+     * div. Powers of two are shifted after adding 2^k - 1 to negative
+     * dividends. Other divisors multiply by a magic number and take the high
+     * word of the product, then add one for negative dividends.
+     * @param reg
+     * @param value
+     * @param assembly 
+     */
+	private void divideByConstant(int reg, int value, Code assembly)
+	{
+		Register r = Register.t(reg);
+		Register scratch = Register.t(INT_SCRATCH);
+		if (value == 1)
+		{
+			return;
+		}
+		if (Integer.bitCount(value) == 1)
+		{
+			int k = Integer.numberOfTrailingZeros(value);
+			if (k > 1)
+			{
+				shift(Opcode.SRA, INT_SCRATCH, reg, 31, assembly);
+				shift(Opcode.SRL, INT_SCRATCH, INT_SCRATCH, 32 - k, assembly);
+			}
+			else
+			{
+				shift(Opcode.SRL, INT_SCRATCH, reg, 31, assembly);
+			}
+			assembly.emit(Opcode.ADDU, scratch, r, scratch);
+			shift(Opcode.SRA, reg, INT_SCRATCH, k, assembly);
+			return;
+		}
+		int[] magic = magic(value);
+		assembly.emit(Opcode.LI, scratch, new Immediate(magic[0]));
+		assembly.emit(Opcode.MULT, r, scratch);
+		assembly.emit(Opcode.MFHI, scratch);
+		if (magic[0] < 0)
+		{
+			assembly.emit(Opcode.ADDU, scratch, scratch, r);
+		}
+		if (magic[1] > 0)
+		{
+			shift(Opcode.SRA, INT_SCRATCH, INT_SCRATCH, magic[1], assembly);
+		}
+		shift(Opcode.SRL, reg, reg, 31, assembly);
+		assembly.emit(Opcode.ADDU, r, scratch, r);
+	}
+
+    /**
+     * Generates a shift instruction.
+     * @param instruction sll, srl or sra.
+     * @param result
+     * @param operand
+     * @param amount
+     * @param assembly 
+     */
+	private void shift(Opcode instruction, int result, int operand, int amount, Code assembly)
+	{
+		assembly.emit(instruction, Register.t(result), Register.t(operand), new Immediate(amount));
+	}
+
+    /**
+     * Computes the magic number and shift for signed division by a constant
+     * of at least 2 (Hacker's Delight, section 10-3). The quotient of n is
+     * the high word of magic * n, plus n if magic is negative, shifted right
+     * by the shift amount, plus one if n is negative.
+     * @param divisor
+     * @return the magic number and the shift.
+     */
+	private static int[] magic(int divisor)
+	{
+		final long two31 = 0x80000000L;
+		final long mask = 0xFFFFFFFFL;
+		long ad = divisor;
+		long anc = two31 - 1 - two31 % ad;
+		int p = 31;
+		long q1 = two31 / anc;
+		long r1 = two31 - q1 * anc;
+		long q2 = two31 / ad;
+		long r2 = two31 - q2 * ad;
+		long delta;
+		do
+		{
+			p++;
+			q1 = (2 * q1) & mask;
+			r1 = (2 * r1) & mask;
+			if (r1 >= anc)
+			{
+				q1 = (q1 + 1) & mask;
+				r1 = (r1 - anc) & mask;
+			}
+			q2 = (2 * q2) & mask;
+			r2 = (2 * r2) & mask;
+			if (r2 >= ad)
+			{
+				q2 = (q2 + 1) & mask;
+				r2 = (r2 - ad) & mask;
+			}
+			delta = ad - r2;
+		} while (q1 < delta || (q1 == delta && r1 == 0));
+		return new int[] {(int) (q2 + 1), p - 32};
+	}
+
+    /**
+     * Pushes register reg on to the stack.
+     * @param reg
+     * @param assembly
+     * @param real 
+     */
+	private void spill(int reg, Code assembly, boolean real)
+	{
+		assembly.emit(Opcode.ADDI, Register.SP, Register.SP, new Immediate(-4));
+		assembly.emit(real ? Opcode.SWC1 : Opcode.SW, register(reg, real),
+				Address.of(0, Register.SP));
+	}
+
+    /**
+     * Pops the top of the stack in to register reg.
+     * @param reg
+     * @param assembly
+     * @param real 
+     */
+	private void reload(int reg, Code assembly, boolean real)
+	{
+		assembly.emit(real ? Opcode.LWC1 : Opcode.LW, register(reg, real),
+				Address.of(0, Register.SP));
+		assembly.emit(Opcode.ADDI, Register.SP, Register.SP, new Immediate(4));
+	}
+
+    /**
+     * Integer register $t reg, or real register $f reg.
+     * @param reg
+     * @param real
+     * @return 
+     */
+	private static Register register(int reg, boolean real)
 	{
-		left(op.getLeft(), reg, operation, real);
-		right(op.getRight(), reg + 1, operation, real);
-		if (op.isReal(symbols) || real)
+		return real ? Register.f(reg) : Register.t(reg);
+	}
+
+    /**
+     * Copies a register in to another of the same kind, with mov.s for reals
+     * and an addu from $zero for integers.
+     * @param destination
+     * @param source
+     * @param assembly 
+     */
+	private static void move(Register destination, Register source, Code assembly)
+	{
+		if (destination.isReal())
 		{
-			writeRealOp(op, reg, reg, reg + 1, operation);
+			assembly.emit(Opcode.MOV_S, destination, source);
 		}
 		else
 		{
-			writeOp(op.getOperation(), reg, reg, reg + 1, operation);
+			assembly.emit(Opcode.ADDU, destination, Register.ZERO, source);
 		}
 	}
 
@@ -887,9 +2495,18 @@ public class Generator
 		dotdata.append(".data\n");
 		for (VariableNode var : vars)
 		{
+			if (held.containsKey(Expressions.key(var, var.isReal(symbols))))
+			{
+				// Kept in a register.
+				continue;
+			}
 			dotdata.append(var.getName());
 			dotdata.append(": ");
-			if (var.getType() == Token.INTEGER)
+			if (symbols.getKind(var.getName()) == Kind.ARRAY)
+			{
+				dotdata.append(".space ").append(4 * words(var.getName()));
+			}
+			else if (var.getType() == Token.INTEGER)
 			{
 				dotdata.append(".word 0");
 			}
@@ -900,26 +2517,58 @@ public class Generator
 			dotdata.append("\n");
 		}
 		dotdata.append("newline: .asciiz \"\\n\"\n");
+		if (boundsCheck && hasArrays(vars, program.getFunctions()))
+		{
+			dotdata.append(BOUNDS_ERROR).append("message: .asciiz ");
+			dotdata.append("\"Array index out of bounds\\n\"\n");
+		}
 		return dotdata.toString();
 	}
 
+    /**
+     * Check whether any arrays are declared, in the program or in a
+     * subprogram.
+     * @param vars
+     * @param functions
+     * @return 
+     */
+	private boolean hasArrays(ArrayList<VariableNode> vars, SubProgramDeclarationsNode functions)
+	{
+		for (VariableNode var : vars)
+		{
+			if (symbols.getKind(var.getName()) == Kind.ARRAY)
+			{
+				return true;
+			}
+		}
+		if (functions != null)
+		{
+			for (SubProgramNode sub : functions.getSubPrograms())
+			{
+				if (hasArrays(sub.getDeclarations().getVars(), sub.getSubDeclarations()))
+				{
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+
     /**
      * Generates the code for a read statement. Determines what data type
-     * is being read, and performs the corresponding syscall, then copies the
-     * result to the given variable.
+     * is being read, and performs the corresponding syscall, then stores the
+     * result, in $v0 or $f0, in the given variable.
      * @param readNode
      * @param assembly 
      */
-	private void read(ReadNode readNode, StringBuilder assembly)
+	private void read(ReadNode readNode, Code assembly)
 	{
-		if (readNode.getInput().isReal(symbols))
-		{
-			assembly.append("addi $v0, $zero, 6\n syscall\n swcl $f0, ");
-			assembly.append(readNode.getInput().getName()).append("\n ");
-			return;
-		}
-		assembly.append("addi $v0, $zero, 5\n syscall\n addi $t0, $a0, 0\n ");
-		assembly.append("sw $t0, ").append(readNode.getInput());
+		VariableNode input = readNode.getInput();
+		boolean real = input.isReal(symbols);
+		assembly.emit(Opcode.ADDI, Register.V0, Register.ZERO, new Immediate(real ? 6 : 5));
+		assembly.emit(Opcode.SYSCALL);
+		assembly.emit(real ? Opcode.SWC1 : Opcode.SW, real ? Register.F0 : Register.V0,
+				address(input.getName(), assembly));
 	}
 
 }
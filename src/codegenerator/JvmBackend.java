@@ -0,0 +1,83 @@
+package codegenerator;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.io.Writer;
+import jvm.Program;
+
+/**
+ * Generates a JVM class with BytecodeGenerator, and runs it in this JVM
+ * with jvm.Program.
+ *
+ * @author ken
+ */
+public class JvmBackend implements CodeGenBackend
+{
+
+    /**
+     * True if tail calls of a subprogram to itself are jumps.
+     */
+	private boolean tailCalls = true;
+
+	@Override
+	public String getName()
+	{
+		return "jvm";
+	}
+
+	@Override
+	public String getExtension()
+	{
+		return ".class";
+	}
+
+    /**
+     * Sets up the generator from -O0, which makes every call a call; the JIT
+     * does the rest.
+     * @param args
+     */
+	@Override
+	public void configure(String... args)
+	{
+		for (String arg : args)
+		{
+			if (arg.equals("-O0"))
+			{
+				tailCalls = false;
+			}
+		}
+	}
+
+	@Override
+	public void generate(FrontEnd front, OutputStream out) throws IOException
+	{
+		out.write(generator(front).generate());
+		out.flush();
+	}
+
+	@Override
+	public void run(FrontEnd front, Reader input, Writer output) throws IOException
+	{
+		BytecodeGenerator generator = generator(front);
+		new Program(generator.getClassName(), generator.generate()).run(input, output);
+	}
+
+	@Override
+	public String report()
+	{
+		return "";
+	}
+
+    /**
+     * Makes a generator for a program, set up as this backend is.
+     * @param front
+     * @return
+     */
+	private BytecodeGenerator generator(FrontEnd front)
+	{
+		BytecodeGenerator generator = new BytecodeGenerator(front);
+		generator.setTailCalls(tailCalls);
+		return generator;
+	}
+}
@@ -0,0 +1,177 @@
+package codegenerator;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import mips.LatencyModel;
+import mips.PeepholeOptimizer;
+import mips.Scheduler;
+import mips.Simulator;
+
+/**
+ * Generates MIPS assembly with Generator, and runs it with the simulator.
+ *
+ * @author ken
+ */
+public class MipsBackend implements CodeGenBackend
+{
+
+    /**
+     * The peephole optimizer, or null to skip it.
+     */
+	private PeepholeOptimizer peephole = new PeepholeOptimizer();
+
+    /**
+     * True for each optimization of the generated code that is run.
+     */
+	private boolean loopInvariants = true;
+	private boolean tailCalls = true;
+	private boolean boundsCheck = true;
+
+    /**
+     * True if instructions are reordered, and if branch delay slots are
+     * filled, by the scheduler.
+     */
+	private boolean schedule = true;
+	private boolean delaySlots;
+
+    /**
+     * The cycles each instruction takes, for the scheduler and the
+     * simulator.
+     */
+	private LatencyModel latencies = new LatencyModel();
+
+    /**
+     * The most instructions the simulator runs.
+     */
+	private long limit = Long.MAX_VALUE;
+
+    /**
+     * The generator of the last program, for its report.
+     */
+	private Generator last;
+
+	@Override
+	public String getName()
+	{
+		return "mips";
+	}
+
+	@Override
+	public String getExtension()
+	{
+		return ".asm";
+	}
+
+    /**
+     * Sets up the optimizations and the scheduler from -O0,
+     * -peephole=rule,..., -no-bounds-check, -latency=name=cycles,...,
+     * -delay-slots, and the most instructions to simulate from
+     * -limit=instructions.
+     * @param args
+     * @throws IllegalArgumentException if a flag has a bad value.
+     */
+	@Override
+	public void configure(String... args)
+	{
+		for (String arg : args)
+		{
+			if (arg.equals("-O0"))
+			{
+				peephole = null;
+				loopInvariants = false;
+				tailCalls = false;
+				schedule = false;
+			}
+			else if (arg.startsWith("-peephole="))
+			{
+				peephole = PeepholeOptimizer.withRules(arg.substring("-peephole=".length()));
+			}
+			else if (arg.equals("-no-bounds-check"))
+			{
+				boundsCheck = false;
+			}
+			else if (arg.startsWith("-latency="))
+			{
+				latencies = LatencyModel.parse(arg.substring("-latency=".length()));
+			}
+			else if (arg.equals("-delay-slots"))
+			{
+				delaySlots = true;
+			}
+			else if (arg.startsWith("-limit="))
+			{
+				try
+				{
+					limit = Long.parseLong(arg.substring("-limit=".length()));
+				}
+				catch (NumberFormatException e)
+				{
+					limit = 0;
+				}
+				if (limit < 1)
+				{
+					throw new IllegalArgumentException("Limit must be a number at least 1: " + arg);
+				}
+			}
+		}
+	}
+
+	@Override
+	public void generate(FrontEnd front, OutputStream out) throws IOException
+	{
+		Writer writer = new BufferedWriter(new OutputStreamWriter(out));
+		generator(front).generate(writer);
+		writer.flush();
+	}
+
+	@Override
+	public void run(FrontEnd front, Reader input, Writer output) throws IOException
+	{
+		Simulator simulator = new Simulator(generator(front).generate(), latencies);
+		simulator.setLimit(limit);
+		simulator.run(input, output);
+	}
+
+	@Override
+	public String report()
+	{
+		if (last == null)
+		{
+			return "";
+		}
+		StringBuilder report = new StringBuilder();
+		if (last.getPeephole() != null)
+		{
+			report.append(last.getPeephole().report());
+		}
+		if (last.getScheduler() != null)
+		{
+			report.append(last.getScheduler().report());
+		}
+		return report.toString();
+	}
+
+    /**
+     * Makes a generator for a program, set up as this backend is.
+     * @param front
+     * @return
+     */
+	private Generator generator(FrontEnd front)
+	{
+		Generator generator = new Generator(front);
+		generator.setPeephole(peephole);
+		generator.setLoopInvariantMotion(loopInvariants);
+		generator.setTailCalls(tailCalls);
+		generator.setBoundsCheck(boundsCheck);
+		Scheduler scheduler = new Scheduler(latencies);
+		scheduler.setReordering(schedule);
+		scheduler.setDelaySlots(delaySlots);
+		generator.setScheduler(schedule || delaySlots ? scheduler : null);
+		last = generator;
+		return generator;
+	}
+}
@@ -0,0 +1,573 @@
+package codegenerator;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Writes a random program for differential testing, and the input it
+ * reads. Every program parses and ends: loops count down a counter that
+ * the rest of the loop may only halve, recursion is bounded by a small
+ * argument, and nothing divides by zero. Indexes may be out of bounds, which
+ * ends the program with a message. Functions do no input or output, but
+ * some change globals in the middle of an expression, so the program only
+ * means one thing when operands are evaluated from left to right.
+ *
+ * The program has five integers, two reals and three arrays as globals, a
+ * recursive function, a function that changes globals, a function of
+ * integers and one of reals that may call it, and a procedure with a local
+ * array and a nested procedure that changes them. The statements and
+ * expressions in each body are random.
+ *
+ * @author ken
+ */
+public class RandomProgram
+{
+
+	/**
+	 * Deepest that statements and expressions are nested.
+	 */
+	private static final int MAX_DEPTH = 3;
+
+	/**
+	 * Numbers in the input.
+	 */
+	private static final int INPUT_SIZE = 60;
+
+	/**
+	 * The source of random choices.
+	 */
+	private final Random random;
+
+	/**
+	 * Where the statements are written.
+	 */
+	private Scope scope;
+
+	/**
+	 * What the statements being written can use.
+	 */
+	private static class Scope
+	{
+		/**
+		 * Integer variables that can be read, and those that can be assigned.
+		 */
+		private ArrayList<String> ints = new ArrayList<String>();
+		private ArrayList<String> assignableInts = new ArrayList<String>();
+
+		/**
+		 * Real variables that can be read, and those that can be assigned.
+		 */
+		private ArrayList<String> reals = new ArrayList<String>();
+		private ArrayList<String> assignableReals = new ArrayList<String>();
+
+		/**
+		 * Integer and real arrays, as name:start:end, and whether elements
+		 * can be assigned.
+		 */
+		private ArrayList<String> intArrays = new ArrayList<String>();
+		private ArrayList<String> realArrays = new ArrayList<String>();
+		private boolean arraysAssignable;
+
+		/**
+		 * The functions that can be called, and the procedures.
+		 */
+		private ArrayList<String> functions = new ArrayList<String>();
+		private ArrayList<String> procedures = new ArrayList<String>();
+
+		/**
+		 * True if the statements can read and write.
+		 */
+		private boolean inputOutput;
+
+		/**
+		 * The prefix of the loop counters, and the counters declared.
+		 */
+		private String counter;
+		private ArrayList<String> counters = new ArrayList<String>();
+
+		/**
+		 * The counters of the loops being written, which can be read.
+		 */
+		private ArrayList<String> active = new ArrayList<String>();
+	}
+
+	/**
+	 * Constructor.
+	 * @param seed the same seed always makes the same program.
+	 */
+	public RandomProgram(long seed)
+	{
+		random = new Random(seed);
+	}
+
+	/**
+	 * Writes the program.
+	 * @return the source of the program.
+	 */
+	public String source()
+	{
+		StringBuilder text = new StringBuilder();
+		text.append("program fuzz;\n");
+		text.append("var a, b, c, d, e : integer;\n");
+		text.append("var r, s : real;\n");
+		text.append("var x : array [1:8] of integer;\n");
+		text.append("var y : array [0:5] of integer;\n");
+		text.append("var z : array [1:4] of real;\n");
+
+		StringBuilder subprograms = new StringBuilder();
+		subprograms.append("function sum(n : integer) : integer;\n");
+		subprograms.append("begin\n");
+		subprograms.append("if n <= 0 then sum := 0 else sum := n + sum(n - 1)\n");
+		subprograms.append("end;\n");
+
+		scope = procedure("f");
+		scope.ints.add("n");
+		scope.assignableInts.add("n");
+		scope.functions.clear();
+		scope.functions.add("sum");
+		scope.inputOutput = false;
+		String body = block(MAX_DEPTH - 1) + ";\nbump := " + intExpression(1);
+		subprograms.append("function bump(n : integer) : integer;\n");
+		subprograms.append("begin\n").append(body).append("\nend;\n");
+
+		scope = function("i", "n");
+		scope.functions.addAll(Arrays.asList("sum", "bump"));
+		body = block(1) + ";\nsq := " + intExpression(1);
+		subprograms.append("function sq(n : integer) : integer;\n");
+		subprograms.append(variables(scope.counters, "integer"));
+		subprograms.append("begin\n").append(body).append("\nend;\n");
+
+		scope = function("h", "n");
+		scope.reals.add("t");
+		scope.assignableReals.add("t");
+		scope.functions.addAll(Arrays.asList("sum", "bump", "sq"));
+		body = block(1) + ";\nscale := " + realExpression(1);
+		subprograms.append("function scale(t : real; n : integer) : real;\n");
+		subprograms.append(variables(scope.counters, "integer"));
+		subprograms.append("begin\n").append(body).append("\nend;\n");
+
+		Scope inner = procedure("g");
+		inner.ints.addAll(Arrays.asList("m", "v"));
+		inner.assignableInts.addAll(Arrays.asList("m", "v"));
+		inner.intArrays.add("w:1:3");
+		scope = inner;
+		String innerBody = block(1);
+		scope = procedure("j");
+		scope.ints.addAll(Arrays.asList("n", "v"));
+		scope.assignableInts.addAll(Arrays.asList("n", "v"));
+		scope.intArrays.add("w:1:3");
+		scope.procedures.add("inner");
+		body = block(0);
+		subprograms.append("procedure update(n : integer);\n");
+		subprograms.append("var v : integer;\n");
+		subprograms.append("var w : array [1:3] of integer;\n");
+		subprograms.append(variables(scope.counters, "integer"));
+		subprograms.append("  procedure inner(m : integer);\n");
+		subprograms.append(variables(inner.counters, "integer"));
+		subprograms.append("  begin\n").append(innerBody).append("\n  end;\n");
+		subprograms.append("begin\n");
+		subprograms.append("v := n;\nw[1] := n + 1;\nw[2] := n + 2;\nw[3] := n + 3;\n");
+		subprograms.append(body).append("\nend;\n");
+
+		scope = procedure("k");
+		scope.procedures.add("update");
+		body = block(0) + ";\n" + block(0);
+		text.append(variables(scope.counters, "integer"));
+		text.append(subprograms);
+		text.append("begin\n");
+		text.append("a := 1;\nb := 2;\nc := 3;\nd := 4;\ne := 5;\nr := 1.5;\ns := 0.25;\n");
+		text.append(body).append(";\n");
+		text.append("write(a);\nwrite(b);\nwrite(c);\nwrite(d);\nwrite(e);\n");
+		text.append("write(r);\nwrite(s)\n");
+		text.append("end\n.\n");
+		return text.toString();
+	}
+
+	/**
+	 * Writes the numbers the program reads.
+	 * @return
+	 */
+	public String input()
+	{
+		StringBuilder text = new StringBuilder();
+		for (int i = 0; i < INPUT_SIZE; i++)
+		{
+			text.append(random.nextInt(20)).append(i % 10 == 9 ? "\n" : " ");
+		}
+		return text.toString();
+	}
+
+	/**
+	 * The scope of a function's body: its parameters and counters, and the
+	 * globals it can read but not change.
+	 * @param counter
+	 * @param param
+	 * @return
+	 */
+	private Scope function(String counter, String param)
+	{
+		Scope function = new Scope();
+		function.counter = counter;
+		function.ints.addAll(Arrays.asList("a", "b", "c", "d", "e", param));
+		function.assignableInts.add(param);
+		function.reals.addAll(Arrays.asList("r", "s"));
+		function.intArrays.addAll(Arrays.asList("x:1:8", "y:0:5"));
+		function.realArrays.add("z:1:4");
+		return function;
+	}
+
+	/**
+	 * The scope of a procedure's body, or of the program: the globals, which
+	 * it can change, and its counters.
+	 * @param counter
+	 * @return
+	 */
+	private Scope procedure(String counter)
+	{
+		Scope procedure = new Scope();
+		procedure.counter = counter;
+		procedure.ints.addAll(Arrays.asList("a", "b", "c", "d", "e"));
+		procedure.assignableInts.addAll(procedure.ints);
+		procedure.reals.addAll(Arrays.asList("r", "s"));
+		procedure.assignableReals.addAll(procedure.reals);
+		procedure.intArrays.addAll(Arrays.asList("x:1:8", "y:0:5"));
+		procedure.realArrays.add("z:1:4");
+		procedure.arraysAssignable = true;
+		procedure.functions.addAll(Arrays.asList("sum", "bump", "sq", "scale"));
+		procedure.inputOutput = true;
+		return procedure;
+	}
+
+	/**
+	 * Declares some variables.
+	 * @param names
+	 * @param type
+	 * @return the declaration, or nothing if there are no names.
+	 */
+	private static String variables(ArrayList<String> names, String type)
+	{
+		if (names.isEmpty())
+		{
+			return "";
+		}
+		StringBuilder text = new StringBuilder("var ");
+		for (int i = 0; i < names.size(); i++)
+		{
+			text.append(i == 0 ? "" : ", ").append(names.get(i));
+		}
+		return text.append(" : ").append(type).append(";\n").toString();
+	}
+
+	/**
+	 * Writes one to five statements separated by semicolons.
+	 * @param depth
+	 * @return
+	 */
+	private String block(int depth)
+	{
+		StringBuilder text = new StringBuilder(statement(depth));
+		for (int i = random.nextInt(5); i > 0; i--)
+		{
+			text.append(";\n").append(statement(depth));
+		}
+		return text.toString();
+	}
+
+	/**
+	 * Writes a statement.
+	 * @param depth
+	 * @return
+	 */
+	private String statement(int depth)
+	{
+		int choice = random.nextInt(20);
+		if (choice == 19 && !scope.active.isEmpty())
+		{
+			// Halving a counter that is at least 1 leaves it at least 1.
+			String counter = pick(scope.active);
+			return counter + " := (" + counter + " + 1) / 2";
+		}
+		if (choice < 2 && depth < MAX_DEPTH)
+		{
+			return "if " + condition(depth) + " then\nbegin\n" + block(depth + 1)
+					+ "\nend\nelse\nbegin\n" + block(depth + 1) + "\nend";
+		}
+		if (choice < 4 && depth < MAX_DEPTH - 1)
+		{
+			String counter = scope.counter + (scope.counters.size() + 1);
+			scope.counters.add(counter);
+			scope.active.add(counter);
+			ArrayList<String> body = new ArrayList<String>();
+			for (int i = random.nextInt(4); i >= 0; i--)
+			{
+				body.add(statement(depth + 1));
+			}
+			scope.active.remove(counter);
+			body.add(random.nextInt(body.size() + 1), counter + " := " + counter + " - 1");
+			StringBuilder text = new StringBuilder();
+			text.append(counter).append(" := ").append(random.nextInt(6)).append(";\n");
+			text.append("while ").append(counter).append(" > 0 do\nbegin\n");
+			for (int i = 0; i < body.size(); i++)
+			{
+				text.append(i == 0 ? "" : ";\n").append(body.get(i));
+			}
+			return text.append("\nend").toString();
+		}
+		if (choice < 7 && scope.inputOutput)
+		{
+			return "write(" + (random.nextBoolean() ? intExpression(depth)
+					: realExpression(depth)) + ")";
+		}
+		if (choice < 8 && scope.inputOutput)
+		{
+			return "read(" + pick(random.nextBoolean() ? scope.assignableInts
+					: scope.assignableReals) + ")";
+		}
+		if (choice < 10 && !scope.procedures.isEmpty())
+		{
+			return pick(scope.procedures) + "(" + intExpression(depth + 1) + ")";
+		}
+		if (choice < 13 && scope.arraysAssignable)
+		{
+			if (random.nextInt(3) == 0)
+			{
+				return element(pick(scope.realArrays), depth) + " := " + realExpression(depth);
+			}
+			return element(pick(scope.intArrays), depth) + " := " + intExpression(depth);
+		}
+		if (choice < 16 && !scope.assignableReals.isEmpty())
+		{
+			return pick(scope.assignableReals) + " := " + realExpression(depth);
+		}
+		if (!scope.assignableInts.isEmpty())
+		{
+			return pick(scope.assignableInts) + " := " + intExpression(depth);
+		}
+		return pick(scope.assignableReals) + " := " + realExpression(depth);
+	}
+
+	/**
+	 * Writes the condition of an if or a while.
+	 * @param depth
+	 * @return
+	 */
+	private String condition(int depth)
+	{
+		int choice = random.nextInt(8);
+		if (choice == 0)
+		{
+			return "not (" + condition(depth + 1) + ")";
+		}
+		if (choice == 1)
+		{
+			return (random.nextBoolean() ? "not " : "")
+					+ pick(random.nextBoolean() ? scope.ints : scope.reals);
+		}
+		if (choice == 2)
+		{
+			// Comparing a real with an integer does not parse.
+			return real(depth + 1) + " " + relation() + " " + real(depth + 1);
+		}
+		return intExpression(depth + 1) + " " + relation() + " " + intExpression(depth + 1);
+	}
+
+	/**
+	 * Picks a comparison.
+	 * @return
+	 */
+	private String relation()
+	{
+		return pick(Arrays.asList("<", "<=", ">", ">=", "=", "<>"));
+	}
+
+	/**
+	 * Writes an integer expression.
+	 * @param depth
+	 * @return
+	 */
+	private String intExpression(int depth)
+	{
+		if (depth >= MAX_DEPTH || random.nextInt(10) < 3)
+		{
+			return intFactor(depth);
+		}
+		int choice = random.nextInt(10);
+		if (choice == 0)
+		{
+			// Division by a constant that is not zero.
+			int divisor = random.nextInt(9) + 1;
+			return intFactor(depth) + " / " + (random.nextBoolean() ? "(-" + divisor + ")"
+					: Integer.toString(divisor));
+		}
+		String left = intExpression(depth + 1);
+		String right = intExpression(depth + 1);
+		String op = pick(Arrays.asList("+", "-", "*", "+", "-"));
+		String text = left + " " + op + " " + right;
+		return random.nextInt(3) == 0 ? "(" + text + ")" : text;
+	}
+
+	/**
+	 * Writes an integer operand: a variable, a number, an element, a call,
+	 * or a parenthesized expression, comparison or negation.
+	 * @param depth
+	 * @return
+	 */
+	private String intFactor(int depth)
+	{
+		int choice = random.nextInt(20);
+		if (choice < 3 && !scope.active.isEmpty())
+		{
+			String counter = pick(scope.active);
+			return random.nextBoolean() ? counter
+					: "(" + counter + " * " + (random.nextInt(9) + 1) + " + " + pick(scope.ints) + ")";
+		}
+		if (choice < 5)
+		{
+			return element(pick(scope.intArrays), depth);
+		}
+		if (choice < 7 && depth < MAX_DEPTH && !scope.functions.isEmpty())
+		{
+			String function = pick(scope.functions);
+			if (function.equals("sum"))
+			{
+				return "sum(" + (scope.active.isEmpty() || random.nextBoolean()
+						? Integer.toString(random.nextInt(8)) : pick(scope.active)) + ")";
+			}
+			if (function.equals("sq"))
+			{
+				return "sq(" + intExpression(depth + 1) + ")";
+			}
+			if (function.equals("bump"))
+			{
+				return "bump(" + intExpression(depth + 1) + ")";
+			}
+		}
+		if (choice == 7 && depth < MAX_DEPTH)
+		{
+			return "(" + intExpression(depth + 1) + " " + relation() + " "
+					+ intExpression(depth + 1) + ")";
+		}
+		if (choice == 8)
+		{
+			return "not " + pick(scope.ints);
+		}
+		if (choice == 9)
+		{
+			return "(-" + pick(scope.ints) + ")";
+		}
+		if (choice < 14)
+		{
+			return Integer.toString(random.nextInt(21));
+		}
+		return pick(scope.ints);
+	}
+
+	/**
+	 * Writes a real expression.
+	 * @param depth
+	 * @return
+	 */
+	private String realExpression(int depth)
+	{
+		if (depth >= MAX_DEPTH || random.nextInt(10) < 3)
+		{
+			return realFactor(depth);
+		}
+		if (random.nextInt(8) == 0)
+		{
+			return realFactor(depth) + " / " + (random.nextInt(8) + 1) + ".5";
+		}
+		String left = realExpression(depth + 1);
+		String right = realExpression(depth + 1);
+		String op = pick(Arrays.asList("+", "-", "*", "+", "-"));
+		String text = left + " " + op + " " + right;
+		return random.nextInt(3) == 0 ? "(" + text + ")" : text;
+	}
+
+	/**
+	 * Writes a real expression that is not all integers.
+	 * @param depth
+	 * @return
+	 */
+	private String real(int depth)
+	{
+		return pick(scope.reals) + " " + pick(Arrays.asList("+", "-", "*"))
+				+ " " + realExpression(depth);
+	}
+
+	/**
+	 * Writes a real operand: a variable, a number, an element, a call, an
+	 * integer, or a negation.
+	 * @param depth
+	 * @return
+	 */
+	private String realFactor(int depth)
+	{
+		int choice = random.nextInt(20);
+		if (choice < 3)
+		{
+			return element(pick(scope.realArrays), depth);
+		}
+		if (choice < 5 && depth < MAX_DEPTH && scope.functions.contains("scale"))
+		{
+			return "scale(" + realExpression(depth + 1) + ", " + intExpression(depth + 1) + ")";
+		}
+		if (choice < 7)
+		{
+			return intFactor(MAX_DEPTH);
+		}
+		if (choice == 7)
+		{
+			return "(-" + pick(scope.reals) + ")";
+		}
+		if (choice < 12)
+		{
+			return random.nextInt(10) + "." + random.nextInt(100);
+		}
+		return pick(scope.reals);
+	}
+
+	/**
+	 * Writes an element of an array, usually with an index in its bounds.
+	 * @param array name:start:end.
+	 * @param depth
+	 * @return
+	 */
+	private String element(String array, int depth)
+	{
+		String[] parts = array.split(":");
+		int start = Integer.parseInt(parts[1]);
+		int end = Integer.parseInt(parts[2]);
+		int choice = random.nextInt(40);
+		String index;
+		if (choice < 12 && !scope.active.isEmpty() && end - start >= 5)
+		{
+			// Counters go from 5 down to 0.
+			index = pick(scope.active) + (start > 0 ? " + " + start : "");
+		}
+		else if (choice < 38)
+		{
+			index = Integer.toString(start + random.nextInt(end - start + 1));
+		}
+		else if (choice == 38 || depth >= MAX_DEPTH)
+		{
+			index = Integer.toString(start - 1 + random.nextInt(end - start + 3));
+		}
+		else
+		{
+			index = intExpression(depth + 1);
+		}
+		return parts[0] + "[" + index + "]";
+	}
+
+	/**
+	 * Picks one of some choices.
+	 * @param choices
+	 * @return
+	 */
+	private String pick(java.util.List<String> choices)
+	{
+		return choices.get(random.nextInt(choices.size()));
+	}
+}
@@ -0,0 +1,75 @@
+package codegenerator;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import scanner.Token;
+import syntaxtree.*;
+
+/**
+ * Finds the calls of a subprogram to itself that are the last thing it
+ * does, which the generators turn in to jumps back to the start of its body
+ * instead of calls, so deep recursion of that kind needs no stack.
+ *
+ * @author ken
+ */
+final class TailCalls
+{
+
+    /**
+     * Finds the tail calls in a statement of a subprogram and adds them to a
+     * set. That is a procedure statement, or for a function an assignment of
+     * the call to its result, at the end of the body or of an if at the end.
+     * @param sub
+     * @param stmt
+     * @param tails
+     */
+	static void find(SubProgramNode sub, StatementNode stmt, HashSet<StatementNode> tails)
+	{
+		if (stmt instanceof CompoundStatementNode)
+		{
+			ArrayList<StatementNode> list = ((CompoundStatementNode) stmt).getStatements();
+			if (!list.isEmpty())
+			{
+				find(sub, list.get(list.size() - 1), tails);
+			}
+		}
+		else if (stmt instanceof IfStatementNode)
+		{
+			find(sub, ((IfStatementNode) stmt).getStatement(), tails);
+			find(sub, ((IfStatementNode) stmt).getElseStatement(), tails);
+		}
+		else if (stmt instanceof ProcedureStatementNode)
+		{
+			if (((ProcedureStatementNode) stmt).getName().equals(sub.getName()))
+			{
+				tails.add(stmt);
+			}
+		}
+		else if (stmt instanceof AssignmentStatementNode && sub.getResult() != null)
+		{
+			AssignmentStatementNode assign = (AssignmentStatementNode) stmt;
+			ExpressionNode exp = assign.getExpression();
+			if (assign.getLvalue().getName().equals(sub.getResult().getName())
+					&& exp instanceof FunctionCallNode && !exp.isNot()
+					&& exp.getSign() != Token.MINUS
+					&& ((FunctionCallNode) exp).getName().equals(sub.getName()))
+			{
+				tails.add(stmt);
+			}
+		}
+	}
+
+    /**
+     * The arguments of a tail call.
+     * @param stmt
+     * @return
+     */
+	static ArrayList<ExpressionNode> arguments(StatementNode stmt)
+	{
+		if (stmt instanceof ProcedureStatementNode)
+		{
+			return ((ProcedureStatementNode) stmt).getArguments();
+		}
+		return ((FunctionCallNode) ((AssignmentStatementNode) stmt).getExpression()).getArguments();
+	}
+}
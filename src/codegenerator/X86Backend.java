@@ -0,0 +1,103 @@
+package codegenerator;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.io.Writer;
+import x86.Program;
+
+/**
+ * Generates x86-64 assembly with X86Generator, and runs it natively with
+ * x86.Program. The assembly written out has the runtime after the program,
+ * so it builds alone with as -o name.o name.s and ld -o name name.o.
+ *
+ * @author ken
+ */
+public class X86Backend implements CodeGenBackend
+{
+
+    /**
+     * True if temporaries are kept in registers, if indexes are checked
+     * against the bounds of their arrays, and if tail calls are jumps.
+     */
+	private boolean promotion = true;
+	private boolean boundsCheck = true;
+	private boolean tailCalls = true;
+
+	@Override
+	public String getName()
+	{
+		return "x86";
+	}
+
+	@Override
+	public String getExtension()
+	{
+		return ".s";
+	}
+
+    /**
+     * Sets up the generator from -O0, which keeps every variable in memory
+     * and makes every call a call, and -no-bounds-check.
+     * @param args
+     */
+	@Override
+	public void configure(String... args)
+	{
+		for (String arg : args)
+		{
+			if (arg.equals("-O0"))
+			{
+				promotion = false;
+				tailCalls = false;
+			}
+			else if (arg.equals("-no-bounds-check"))
+			{
+				boundsCheck = false;
+			}
+		}
+	}
+
+	@Override
+	public void generate(FrontEnd front, OutputStream out) throws IOException
+	{
+		out.write(generator(front).generate().getBytes("US-ASCII"));
+		out.write(Program.runtimeSource());
+		out.flush();
+	}
+
+	@Override
+	public void run(FrontEnd front, Reader input, Writer output) throws IOException
+	{
+		X86Generator generator = generator(front);
+		Program program = new Program(generator.name(), generator.generate());
+		try
+		{
+			program.run(input, output);
+		}
+		finally
+		{
+			program.delete();
+		}
+	}
+
+	@Override
+	public String report()
+	{
+		return "";
+	}
+
+    /**
+     * Makes a generator for a program, set up as this backend is.
+     * @param front
+     * @return
+     */
+	private X86Generator generator(FrontEnd front)
+	{
+		X86Generator generator = new X86Generator(front);
+		generator.setPromotion(promotion);
+		generator.setBoundsCheck(boundsCheck);
+		generator.setTailCalls(tailCalls);
+		return generator;
+	}
+}
@@ -0,0 +1,1781 @@
+package codegenerator;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import parser.Kind;
+import parser.SymbolTable;
+import scanner.Token;
+import syntaxtree.*;
+import x86.Code;
+import x86.Register;
+
+/**
+ * Generates x86-64 assembly for GNU as, to be linked with the runtime in
+ * x86/runtime.s and run natively on Linux, instead of MIPS assembly.
+ *
+ * Subprograms are called as the System V ABI has it: integers are passed in
+ * rdi, rsi, rdx, rcx, r8 and r9, reals in xmm0 - xmm7, and the rest on the
+ * stack, and the result comes back in eax or xmm0. A nested subprogram is
+ * also passed the frame of the subprogram it is declared in, its static
+ * link, in r10, which the ABI keeps for it. Globals are in .bss, and the
+ * parameters and variables of a subprogram are in its frame, below rbp.
+ *
+ * Expressions are worked out in registers numbered as the MIPS numbers its
+ * $t registers: number n is the n-th of rcx, rsi, rdi, r8, r9 and r11, or of
+ * xmm1 - xmm14, around again once they run out, with the register taken
+ * pushed and popped around its reuse. rax, rdx, xmm0 and xmm15 are scratch.
+ * The integer temporaries of the optimizations of the tree are kept in rbx
+ * and r12 - r15, which a routine saves, as many as there are. The ABI keeps
+ * no SSE register across calls, so real temporaries stay in memory.
+ *
+ * The code does what the generated MIPS does, which DifferentialTest checks.
+ *
+ * @author ken
+ */
+public class X86Generator
+{
+
+    /**
+     * The registers expressions are worked out in.
+     */
+	private static final Register[] INT_REGISTERS = {
+		Register.RCX, Register.RSI, Register.RDI, Register.R8, Register.R9, Register.R11};
+	private static final int REAL_REGISTERS = 14;
+
+    /**
+     * The registers the first arguments are passed in.
+     */
+	private static final Register[] INT_ARGUMENTS = {
+		Register.RDI, Register.RSI, Register.RDX, Register.RCX, Register.R8, Register.R9};
+	private static final int REAL_ARGUMENTS = 8;
+
+    /**
+     * The registers a routine saves, which temporaries are kept in.
+     */
+	private static final Register[] SAVED_REGISTERS = {
+		Register.RBX, Register.R12, Register.R13, Register.R14, Register.R15};
+
+    /**
+     * The routine of the program, and the runtime routines compiled code
+     * calls or jumps to.
+     */
+	private static final String MAIN = "pascal.main";
+	private static final String BOUNDS = "rt.bounds";
+	private static final String DIVIDE_BY_ZERO = "rt.divide_by_zero";
+
+    /**
+     * Where a nested subprogram keeps its static link in its frame.
+     */
+	private static final int STATIC_LINK = -8;
+
+    /**
+     * Parses the program and runs the optimizations of the tree.
+     */
+	private final FrontEnd front;
+
+    /**
+     * The root of the syntax tree.
+     */
+	private final ProgramNode program;
+
+    /**
+     * The symbols. This is used to do some type checking.
+     */
+	private final SymbolTable symbols;
+
+    /**
+     * True if indexes are checked against the bounds of their arrays, if
+     * temporaries are kept in registers, and if calls of a subprogram to
+     * itself that are the last it does are jumps.
+     */
+	private boolean boundsCheck = true;
+	private boolean promotion = true;
+	private boolean tailCalls = true;
+
+    /**
+     * The tail calls of the subprograms.
+     */
+	private final HashSet<StatementNode> tails = new HashSet<StatementNode>();
+
+    /**
+     * The program, and the subprograms by name.
+     */
+	private Routine main;
+	private final LinkedHashMap<String, Routine> routines = new LinkedHashMap<String, Routine>();
+
+    /**
+     * The variables and arrays that hold reals, and the arrays.
+     */
+	private final HashSet<String> reals = new HashSet<String>();
+	private final HashSet<String> arrays = new HashSet<String>();
+
+    /**
+     * The labels of the real constants, by their bits.
+     */
+	private final LinkedHashMap<Integer, String> constants = new LinkedHashMap<Integer, String>();
+
+    /**
+     * The code and routine being generated, and the number of labels made.
+     */
+	private Code code;
+	private Routine routine;
+	private int labels;
+
+    /**
+     * The numbers of the integer and real registers in use, and the bytes
+     * pushed since the frame was set up.
+     */
+	private int ints;
+	private int realsInUse;
+	private int pushed;
+
+    /**
+     * The program or a subprogram, and where its variables are.
+     */
+	private static class Routine
+	{
+		private final SubProgramNode sub;
+
+        /**
+         * The routine it is declared in, or null for the program.
+         */
+		private final Routine parent;
+
+        /**
+         * The variables it declares. The inliner declares the variables of
+         * a subprogram in each routine it is inlined in, so a name can be
+         * declared by more than one routine.
+         */
+		private final HashSet<String> declared = new HashSet<String>();
+
+        /**
+         * The variables it uses.
+         */
+		private final HashSet<String> uses = new HashSet<String>();
+
+        /**
+         * The temporaries kept in registers, and the registers.
+         */
+		private final LinkedHashMap<String, Register> held = new LinkedHashMap<String, Register>();
+
+        /**
+         * The offset from rbp of each variable in the frame, the bytes of
+         * the frame up to the variables set to zero, and the bytes of the
+         * whole frame.
+         */
+		private final HashMap<String, Integer> offsets = new HashMap<String, Integer>();
+		private int zeroed;
+		private int size;
+
+		private Routine(SubProgramNode sub, Routine parent)
+		{
+			this.sub = sub;
+			this.parent = parent;
+		}
+	}
+
+    /**
+     * Constructor.
+     * @param filename
+     */
+	public X86Generator(String filename)
+	{
+		this(new FrontEnd(filename));
+	}
+
+    /**
+     * Constructor. Generates assembly for a program from a front end, which
+     * runs its optimizations of the tree before the assembly is generated.
+     * @param front
+     */
+	public X86Generator(FrontEnd front)
+	{
+		this.front = front;
+		program = front.getProgram();
+		symbols = front.getSymbols();
+	}
+
+    /**
+     * Get the name of the program.
+     * @return
+     */
+	public String name()
+	{
+		return program.getName();
+	}
+
+    /**
+     * Sets whether indexes are checked against the bounds of their arrays.
+     * @param on
+     */
+	public void setBoundsCheck(boolean on)
+	{
+		boundsCheck = on;
+	}
+
+    /**
+     * Sets whether the temporaries of the optimizations of the tree are kept
+     * in registers.
+     * @param on
+     */
+	public void setPromotion(boolean on)
+	{
+		promotion = on;
+	}
+
+    /**
+     * Sets whether calls of a subprogram to itself that are the last it does
+     * are jumps back to the start of its body.
+     * @param on
+     */
+	public void setTailCalls(boolean on)
+	{
+		tailCalls = on;
+	}
+
+    /**
+     * Generate the assembly, after the optimizations of the front end.
+     * @return
+     */
+	public String generate()
+	{
+		front.optimize();
+		routines.clear();
+		reals.clear();
+		arrays.clear();
+		constants.clear();
+		tails.clear();
+		labels = 0;
+		main = new Routine(null, null);
+		declare(program.getVariables().getVars(), main);
+		declare(program.getFunctions(), main);
+		uses(program.getMain(), main);
+		if (promotion)
+		{
+			promote(front.getTemporaries());
+		}
+		Code out = new Code();
+		globals(out);
+		out.emit(".text");
+		out.emit(".globl", MAIN);
+		out.append(routine(main, MAIN));
+		for (Routine sub : routines.values())
+		{
+			out.append(routine(sub, "sub." + sub.sub.getName()));
+		}
+		if (!constants.isEmpty())
+		{
+			out.emit(".section", ".rodata");
+			out.emit(".align", 4);
+			for (Map.Entry<Integer, String> constant : constants.entrySet())
+			{
+				out.label(constant.getValue());
+				out.emit(".long", "0x" + Integer.toHexString(constant.getKey()));
+			}
+		}
+		out.emit(".section", ".note.GNU-stack,\"\",@progbits");
+		return out.toString();
+	}
+
+    /**
+     * Records the subprograms declared in a program or subprogram, and the
+     * variables they use.
+     * @param functions
+     * @param parent the routine they are declared in.
+     */
+	private void declare(SubProgramDeclarationsNode functions, Routine parent)
+	{
+		if (functions == null)
+		{
+			return;
+		}
+		for (SubProgramNode sub : functions.getSubPrograms())
+		{
+			Routine current = new Routine(sub, parent);
+			routines.put(sub.getName(), current);
+			declare(sub.getParameters(), current);
+			declare(sub.getDeclarations().getVars(), current);
+			if (sub.getResult() != null)
+			{
+				ArrayList<VariableNode> result = new ArrayList<VariableNode>();
+				result.add(sub.getResult());
+				declare(result, current);
+			}
+			uses(sub.getBody(), current);
+			declare(sub.getSubDeclarations(), current);
+		}
+	}
+
+    /**
+     * Records who variables belong to, and their types.
+     * @param vars
+     * @param owner
+     */
+	private void declare(ArrayList<VariableNode> vars, Routine owner)
+	{
+		for (VariableNode var : vars)
+		{
+			owner.declared.add(var.getName());
+			if (var.getType() == Token.REAL)
+			{
+				reals.add(var.getName());
+			}
+			if (symbols.getKind(var.getName()) == Kind.ARRAY)
+			{
+				arrays.add(var.getName());
+			}
+		}
+	}
+
+    /**
+     * Records the variables a statement uses.
+     * @param stmt
+     * @param current
+     */
+	private void uses(StatementNode stmt, Routine current)
+	{
+		if (stmt instanceof AssignmentStatementNode)
+		{
+			uses(((AssignmentStatementNode) stmt).getLvalue(), current);
+			uses(((AssignmentStatementNode) stmt).getExpression(), current);
+		}
+		else if (stmt instanceof ReadNode)
+		{
+			uses(((ReadNode) stmt).getInput(), current);
+		}
+		else if (stmt instanceof WriteNode)
+		{
+			uses(((WriteNode) stmt).getOutput(), current);
+		}
+		else if (stmt instanceof ProcedureStatementNode)
+		{
+			for (ExpressionNode arg : ((ProcedureStatementNode) stmt).getArguments())
+			{
+				uses(arg, current);
+			}
+		}
+		else if (stmt instanceof CompoundStatementNode)
+		{
+			for (StatementNode inner : ((CompoundStatementNode) stmt).getStatements())
+			{
+				uses(inner, current);
+			}
+		}
+		else if (stmt instanceof IfStatementNode)
+		{
+			IfStatementNode ifNode = (IfStatementNode) stmt;
+			uses(ifNode.getCondition(), current);
+			uses(ifNode.getStatement(), current);
+			uses(ifNode.getElseStatement(), current);
+		}
+		else if (stmt instanceof WhileStatementNode)
+		{
+			uses(((WhileStatementNode) stmt).getCondition(), current);
+			uses(((WhileStatementNode) stmt).getStatement(), current);
+		}
+	}
+
+    /**
+     * Records the variables an expression uses.
+     * @param exp
+     * @param current
+     */
+	private void uses(ExpressionNode exp, Routine current)
+	{
+		if (exp instanceof OperationNode)
+		{
+			uses(((OperationNode) exp).getLeft(), current);
+			uses(((OperationNode) exp).getRight(), current);
+		}
+		else if (exp instanceof FunctionCallNode)
+		{
+			for (ExpressionNode arg : ((FunctionCallNode) exp).getArguments())
+			{
+				uses(arg, current);
+			}
+		}
+		else if (exp instanceof VariableNode)
+		{
+			current.uses.add(((VariableNode) exp).getName());
+			if (exp instanceof ArrayNode)
+			{
+				uses(((ArrayNode) exp).getIndex(), current);
+			}
+		}
+	}
+
+    /**
+     * The routine a variable belongs to: the innermost of a routine and
+     * those it is nested in that declares it.
+     * @param name
+     * @param current
+     * @return
+     */
+	private Routine owner(String name, Routine current)
+	{
+		Routine owner = current;
+		while (owner != null && !owner.declared.contains(name))
+		{
+			owner = owner.parent;
+		}
+		return owner;
+	}
+
+    /**
+     * Keeps integer temporaries in the registers their routines save, in the
+     * order they were made, while there are registers left. A temporary a
+     * nested subprogram uses stays in memory, where it can reach it.
+     * @param temporaries
+     */
+	private void promote(ArrayList<VariableNode> temporaries)
+	{
+		ArrayList<Routine> all = new ArrayList<Routine>(routines.values());
+		all.add(main);
+		for (VariableNode temp : temporaries)
+		{
+			String name = temp.getName();
+			if (reals.contains(name) || arrays.contains(name))
+			{
+				continue;
+			}
+			Routine owner = null;
+			boolean shared = false;
+			for (Routine current : all)
+			{
+				if (current.declared.contains(name))
+				{
+					shared |= owner != null;
+					owner = current;
+				}
+			}
+			for (Routine current : all)
+			{
+				shared |= current != owner && current.uses.contains(name)
+						&& owner(name, current) == owner;
+			}
+			if (owner != null && !shared && owner.held.size() < SAVED_REGISTERS.length)
+			{
+				owner.held.put(name, SAVED_REGISTERS[owner.held.size()]);
+			}
+		}
+	}
+
+    /**
+     * Check whether a routine is passed a static link: whether it is nested
+     * in a subprogram.
+     * @param current
+     * @return
+     */
+	private boolean isNested(Routine current)
+	{
+		return current.parent != null && current.parent != main;
+	}
+
+    /**
+     * Generate the globals, each set to zero, except the temporaries kept in
+     * registers.
+     * @param out
+     */
+	private void globals(Code out)
+	{
+		out.emit(".bss");
+		out.emit(".align", 4);
+		for (VariableNode var : program.getVariables().getVars())
+		{
+			String name = var.getName();
+			if (main.held.containsKey(name))
+			{
+				continue;
+			}
+			out.label("var." + name);
+			out.emit(".zero", arrays.contains(name) ? 4 * length(name) : 4);
+		}
+	}
+
+    /**
+     * The number of elements of an array.
+     * @param name
+     * @return
+     */
+	private int length(String name)
+	{
+		return Math.max(0, symbols.getEnd(name) - symbols.getStart(name) + 1);
+	}
+
+    /**
+     * Lays out the frame of a routine: its static link, the registers it
+     * saves, its parameters, then its own variables and result. Each
+     * integer or real takes eight bytes, and an array four bytes an element.
+     * @param current
+     */
+	private void layout(Routine current)
+	{
+		int offset = (isNested(current) ? 8 : 0) + 8 * current.held.size();
+		if (current.sub != null)
+		{
+			for (VariableNode param : current.sub.getParameters())
+			{
+				offset += 8;
+				current.offsets.put(param.getName(), -offset);
+			}
+		}
+		current.zeroed = offset;
+		if (current.sub != null)
+		{
+			ArrayList<VariableNode> vars = new ArrayList<VariableNode>(
+					current.sub.getDeclarations().getVars());
+			if (current.sub.getResult() != null)
+			{
+				vars.add(current.sub.getResult());
+			}
+			for (VariableNode var : vars)
+			{
+				String name = var.getName();
+				if (current.held.containsKey(name))
+				{
+					continue;
+				}
+				offset += arrays.contains(name) ? (4 * length(name) + 7) & ~7 : 8;
+				current.offsets.put(name, -offset);
+			}
+		}
+		current.size = offset;
+	}
+
+    /**
+     * The offset from rbp where a routine saves the n-th register it keeps a
+     * temporary in.
+     * @param current
+     * @param n
+     * @return
+     */
+	private int saved(Routine current, int n)
+	{
+		return -((isNested(current) ? 8 : 0) + 8 * (n + 1));
+	}
+
+    /**
+     * Generate the code of the program or a subprogram. Its parameters are
+     * stored in its frame, and its variables, result and temporaries are set
+     * to zero. A tail call jumps back to where they are set to zero.
+     * @param current
+     * @param label
+     * @return
+     */
+	private Code routine(Routine current, String label)
+	{
+		code = new Code();
+		routine = current;
+		ints = 0;
+		realsInUse = 0;
+		pushed = 0;
+		layout(current);
+		code.label(label);
+		code.emit("pushq", Register.RBP);
+		code.emit("movq", Register.RSP, Register.RBP);
+		int frame = (current.size + 15) & ~15;
+		if (frame > 0)
+		{
+			code.emit("subq", "$" + frame, Register.RSP);
+		}
+		if (isNested(current))
+		{
+			code.emit("movq", Register.R10, STATIC_LINK + "(%rbp)");
+		}
+		int n = 0;
+		for (Register register : current.held.values())
+		{
+			code.emit("movq", register, saved(current, n++) + "(%rbp)");
+		}
+		if (current.sub != null)
+		{
+			parameters(current);
+			if (tailCalls)
+			{
+				TailCalls.find(current.sub, current.sub.getBody(), tails);
+			}
+			code.label(label + ".tail");
+		}
+		int quads = (current.size - current.zeroed) / 8;
+		if (quads > 8)
+		{
+			code.emit("leaq", -current.size + "(%rbp)", Register.RDI);
+			code.emit("movl", "$" + quads, Register.RCX.l());
+			code.emit("xorl", Register.RAX.l(), Register.RAX.l());
+			code.emit("rep stosq");
+		}
+		else
+		{
+			for (int quad = 0; quad < quads; quad++)
+			{
+				code.emit("movq", "$0", -(current.size - 8 * quad) + "(%rbp)");
+			}
+		}
+		for (Register register : current.held.values())
+		{
+			code.emit("xorl", register.l(), register.l());
+		}
+		statement(current.sub == null ? program.getMain() : current.sub.getBody());
+		if (current.sub != null && current.sub.getResult() != null)
+		{
+			String result = current.sub.getResult().getName();
+			if (reals.contains(result))
+			{
+				code.emit("movss", place(result), Register.XMM0);
+			}
+			else
+			{
+				Register held = held(result);
+				code.emit("movl", held != null ? held.l() : place(result), Register.RAX.l());
+			}
+		}
+		n = 0;
+		for (Register register : current.held.values())
+		{
+			code.emit("movq", saved(current, n++) + "(%rbp)", register);
+		}
+		code.emit("leave");
+		code.emit("ret");
+		return code;
+	}
+
+    /**
+     * Generate the code storing the parameters of a subprogram in its frame,
+     * from the registers and the stack they are passed in.
+     * @param current
+     */
+	private void parameters(Routine current)
+	{
+		ArrayList<VariableNode> params = current.sub.getParameters();
+		int stack = 0;
+		for (int i = 0; i < params.size(); i++)
+		{
+			String name = params.get(i).getName();
+			String place = current.offsets.get(name) + "(%rbp)";
+			Register register = argument(params, i);
+			if (register == null)
+			{
+				code.emit("movl", 16 + 8 * stack++ + "(%rbp)", Register.RAX.l());
+				code.emit("movl", Register.RAX.l(), place);
+			}
+			else if (register.isReal())
+			{
+				code.emit("movss", register, place);
+			}
+			else
+			{
+				code.emit("movl", register.l(), place);
+			}
+		}
+	}
+
+    /**
+     * The register a parameter is passed in, or null if it is passed on the
+     * stack.
+     * @param params
+     * @param i
+     * @return
+     */
+	private Register argument(ArrayList<VariableNode> params, int i)
+	{
+		boolean real = reals.contains(params.get(i).getName());
+		int before = 0;
+		for (int j = 0; j < i; j++)
+		{
+			if (reals.contains(params.get(j).getName()) == real)
+			{
+				before++;
+			}
+		}
+		if (real)
+		{
+			return before < REAL_ARGUMENTS ? Register.xmm(before) : null;
+		}
+		return before < INT_ARGUMENTS.length ? INT_ARGUMENTS[before] : null;
+	}
+
+    /**
+     * The register a temporary of the routine being generated is kept in,
+     * or null.
+     * @param name
+     * @return
+     */
+	private Register held(String name)
+	{
+		Routine owner = owner(name, routine);
+		return owner == null ? null : owner.held.get(name);
+	}
+
+    /**
+     * The operand of an integer or real variable in memory. The frame of a
+     * subprogram the routine being generated is nested in is found through
+     * the static links, in to rdx.
+     * @param name
+     * @return
+     */
+	private String place(String name)
+	{
+		Routine owner = owner(name, routine);
+		if (owner == null || owner == main)
+		{
+			return "var." + name + "(%rip)";
+		}
+		if (owner == routine)
+		{
+			return owner.offsets.get(name) + "(%rbp)";
+		}
+		frame(owner);
+		return owner.offsets.get(name) + "(%rdx)";
+	}
+
+    /**
+     * Generate code finding the frame of a subprogram the routine being
+     * generated is nested in, in to rdx.
+     * @param owner
+     */
+	private void frame(Routine owner)
+	{
+		code.emit("movq", STATIC_LINK + "(%rbp)", Register.RDX);
+		for (Routine current = routine.parent; current != owner; current = current.parent)
+		{
+			code.emit("movq", STATIC_LINK + "(%rdx)", Register.RDX);
+		}
+	}
+
+    /**
+     * Generate code working out the index of an element in to an integer
+     * register, checked against the bounds of its array unless range analysis
+     * found it always in them, and return the operand of the element. The
+     * register is given back by the caller. A scaled index is already the
+     * offset in bytes, and is checked against the length in bytes.
+     * @param element
+     * @return
+     */
+	private String element(ArrayNode element)
+	{
+		String name = element.getName();
+		boolean check = boundsCheck && element.isChecked();
+		boolean scaled = element.isScaled();
+		int start = scaled ? 0 : symbols.getStart(name);
+		int length = scaled ? 4 * length(name) : length(name);
+		int size = scaled ? 1 : 4;
+		int slot = newInt();
+		Routine owner = owner(name, routine);
+		boolean global = owner == null || owner == main;
+		String base = global ? "var." + name : String.valueOf(owner.offsets.get(name));
+		if (element.getIndex() instanceof ValueNode)
+		{
+			int index = constant((ValueNode) element.getIndex()) - start;
+			if (check && (index < 0 || index >= length))
+			{
+				code.emit("jmp", BOUNDS);
+			}
+			return base + (index < 0 ? "" : "+") + size * index + "(" + pointer(owner) + ")";
+		}
+		Register index = intRegister(slot);
+		integer(element.getIndex(), slot);
+		if (start != 0)
+		{
+			code.emit("subl", "$" + start, index.l());
+		}
+		if (check)
+		{
+			code.emit("cmpl", "$" + length, index.l());
+			code.emit("jae", BOUNDS);
+		}
+		else
+		{
+			code.emit("movslq", index.l(), index);
+		}
+		if (global)
+		{
+			// An index register cannot be added to an address relative to rip.
+			code.emit("leaq", base + "(%rip)", Register.RDX);
+			return "(%rdx," + index + "," + size + ")";
+		}
+		return base + "(" + pointer(owner) + "," + index + "," + size + ")";
+	}
+
+    /**
+     * Generate code finding the frame of the routine a variable belongs to,
+     * if it is not that of the routine being generated, and return the
+     * register an address in it is relative to.
+     * @param owner
+     * @return
+     */
+	private String pointer(Routine owner)
+	{
+		if (owner == null || owner == main)
+		{
+			return "%rip";
+		}
+		if (owner == routine)
+		{
+			return "%rbp";
+		}
+		frame(owner);
+		return "%rdx";
+	}
+
+    /**
+     * Generate the code of a statement.
+     * @param stmt
+     */
+	private void statement(StatementNode stmt)
+	{
+		if (tails.contains(stmt))
+		{
+			tailCall(stmt);
+		}
+		else if (stmt instanceof AssignmentStatementNode)
+		{
+			assignment((AssignmentStatementNode) stmt);
+		}
+		else if (stmt instanceof ReadNode)
+		{
+			String name = ((ReadNode) stmt).getInput().getName();
+			boolean real = reals.contains(name);
+			runtime(real ? "rt.read_real" : "rt.read_int");
+			store(name, real ? Register.XMM0 : Register.RAX);
+		}
+		else if (stmt instanceof WriteNode)
+		{
+			ExpressionNode output = ((WriteNode) stmt).getOutput();
+			if (output.isReal(symbols))
+			{
+				int slot = newReal();
+				real(output, slot);
+				code.emit("movaps", realRegister(slot), Register.XMM0);
+				freeReal();
+				runtime("rt.write_real");
+			}
+			else
+			{
+				int slot = newInt();
+				integer(output, slot);
+				code.emit("movl", intRegister(slot).l(), Register.RDI.l());
+				freeInt();
+				runtime("rt.write_int");
+			}
+		}
+		else if (stmt instanceof ProcedureStatementNode)
+		{
+			ProcedureStatementNode call = (ProcedureStatementNode) stmt;
+			call(call.getName(), call.getArguments(), null);
+		}
+		else if (stmt instanceof CompoundStatementNode)
+		{
+			for (StatementNode inner : ((CompoundStatementNode) stmt).getStatements())
+			{
+				statement(inner);
+			}
+		}
+		else if (stmt instanceof IfStatementNode)
+		{
+			IfStatementNode ifNode = (IfStatementNode) stmt;
+			String otherwise = newLabel();
+			jump(ifNode.getCondition(), false, otherwise);
+			statement(ifNode.getStatement());
+			if (ifNode.getElseStatement() == null)
+			{
+				code.label(otherwise);
+			}
+			else
+			{
+				String end = newLabel();
+				code.emit("jmp", end);
+				code.label(otherwise);
+				statement(ifNode.getElseStatement());
+				code.label(end);
+			}
+		}
+		else if (stmt instanceof WhileStatementNode)
+		{
+			WhileStatementNode loop = (WhileStatementNode) stmt;
+			String top = newLabel();
+			String end = newLabel();
+			code.label(top);
+			jump(loop.getCondition(), false, end);
+			statement(loop.getStatement());
+			code.emit("jmp", top);
+			code.label(end);
+		}
+	}
+
+    /**
+     * Generate the code of an assignment. The value is worked out before the
+     * index of an element, as the MIPS does.
+     * @param assign
+     */
+	private void assignment(AssignmentStatementNode assign)
+	{
+		VariableNode lvalue = assign.getLvalue();
+		String name = lvalue.getName();
+		boolean real = reals.contains(name);
+		int slot = real ? newReal() : newInt();
+		Register value = real ? realRegister(slot) : intRegister(slot);
+		if (real)
+		{
+			real(assign.getExpression(), slot);
+		}
+		else
+		{
+			integer(assign.getExpression(), slot);
+		}
+		if (lvalue instanceof ArrayNode)
+		{
+			String element = element((ArrayNode) lvalue);
+			code.emit(real ? "movss" : "movl", real ? value : value.l(), element);
+			freeInt();
+		}
+		else
+		{
+			store(name, value);
+		}
+		if (real)
+		{
+			freeReal();
+		}
+		else
+		{
+			freeInt();
+		}
+	}
+
+    /**
+     * Generate a tail call as a jump back to the start of the body of the
+     * subprogram being generated. The arguments are all worked out and
+     * pushed before any parameter is changed, since they may read the
+     * parameters, then popped in to them. Parameters without an argument
+     * are zero.
+     * @param stmt
+     */
+	private void tailCall(StatementNode stmt)
+	{
+		ArrayList<VariableNode> params = routine.sub.getParameters();
+		ArrayList<ExpressionNode> arguments = TailCalls.arguments(stmt);
+		for (int i = 0; i < params.size(); i++)
+		{
+			if (i >= arguments.size())
+			{
+				code.emit("pushq", "$0");
+				pushed += 8;
+			}
+			else if (reals.contains(params.get(i).getName()))
+			{
+				int slot = newReal();
+				real(arguments.get(i), slot);
+				push(realRegister(slot));
+				freeReal();
+			}
+			else
+			{
+				int slot = newInt();
+				integer(arguments.get(i), slot);
+				push(intRegister(slot));
+				freeInt();
+			}
+		}
+		for (int i = params.size() - 1; i >= 0; i--)
+		{
+			Register value = reals.contains(params.get(i).getName()) ? Register.XMM0 : Register.RAX;
+			pop(value);
+			store(params.get(i).getName(), value);
+		}
+		code.emit("jmp", "sub." + routine.sub.getName() + ".tail");
+	}
+
+    /**
+     * Generate code storing a register in a variable.
+     * @param name
+     * @param value
+     */
+	private void store(String name, Register value)
+	{
+		Register held = held(name);
+		if (held != null)
+		{
+			code.emit("movl", value.l(), held.l());
+		}
+		else if (value.isReal())
+		{
+			code.emit("movss", value, place(name));
+		}
+		else
+		{
+			code.emit("movl", value.l(), place(name));
+		}
+	}
+
+    /**
+     * Generate a call of a runtime routine, with the stack aligned as the
+     * ABI has it.
+     * @param name
+     */
+	private void runtime(String name)
+	{
+		boolean pad = pushed % 16 != 0;
+		if (pad)
+		{
+			code.emit("subq", "$8", Register.RSP);
+		}
+		code.emit("call", name);
+		if (pad)
+		{
+			code.emit("addq", "$8", Register.RSP);
+		}
+	}
+
+    /**
+     * Generate a call of a subprogram, leaving its result in eax or xmm0. The
+     * registers in use, except the one the result goes to, are pushed
+     * around it. The arguments are worked out and pushed in order, then
+     * moved to where the ABI passes them. Parameters without an argument are
+     * zero, and arguments without a parameter are not worked out.
+     * @param name
+     * @param arguments
+     * @param result the register the caller moves the result to, or null.
+     * @return the result of the subprogram, or null for a procedure.
+     */
+	private VariableNode call(String name, ArrayList<ExpressionNode> arguments, Register result)
+	{
+		Routine callee = routines.get(name);
+		ArrayList<VariableNode> params = callee.sub.getParameters();
+		ArrayList<Register> live = new ArrayList<Register>();
+		for (int slot = Math.max(0, ints - INT_REGISTERS.length); slot < ints; slot++)
+		{
+			live.add(intRegister(slot));
+		}
+		for (int slot = Math.max(0, realsInUse - REAL_REGISTERS); slot < realsInUse; slot++)
+		{
+			live.add(realRegister(slot));
+		}
+		live.remove(result);
+		for (Register register : live)
+		{
+			push(register);
+		}
+		int intsBefore = ints;
+		int realsBefore = realsInUse;
+		ints = 0;
+		realsInUse = 0;
+		int stack = 0;
+		for (int i = 0; i < params.size(); i++)
+		{
+			boolean real = reals.contains(params.get(i).getName());
+			if (i >= arguments.size())
+			{
+				code.emit("pushq", "$0");
+				pushed += 8;
+			}
+			else if (real)
+			{
+				real(arguments.get(i), newReal());
+				push(realRegister(0));
+				freeReal();
+			}
+			else
+			{
+				integer(arguments.get(i), newInt());
+				push(intRegister(0));
+				freeInt();
+			}
+			if (argument(params, i) == null)
+			{
+				stack++;
+			}
+		}
+		int extra = 8 * stack;
+		if ((pushed + extra) % 16 != 0)
+		{
+			extra += 8;
+		}
+		if (extra > 0)
+		{
+			code.emit("subq", "$" + extra, Register.RSP);
+			pushed += extra;
+		}
+		stack = 0;
+		for (int i = 0; i < params.size(); i++)
+		{
+			String pushedAt = extra + 8 * (params.size() - 1 - i) + "(%rsp)";
+			Register register = argument(params, i);
+			if (register == null)
+			{
+				code.emit("movq", pushedAt, Register.RAX);
+				code.emit("movq", Register.RAX, 8 * stack++ + "(%rsp)");
+			}
+			else if (register.isReal())
+			{
+				code.emit("movss", pushedAt, register);
+			}
+			else
+			{
+				code.emit("movl", pushedAt, register.l());
+			}
+		}
+		if (isNested(callee))
+		{
+			if (callee.parent == routine)
+			{
+				code.emit("movq", Register.RBP, Register.R10);
+			}
+			else
+			{
+				code.emit("movq", STATIC_LINK + "(%rbp)", Register.R10);
+				for (Routine current = routine.parent; current != callee.parent;
+						current = current.parent)
+				{
+					code.emit("movq", STATIC_LINK + "(%r10)", Register.R10);
+				}
+			}
+		}
+		code.emit("call", "sub." + name);
+		int popped = extra + 8 * params.size();
+		if (popped > 0)
+		{
+			code.emit("addq", "$" + popped, Register.RSP);
+			pushed -= popped;
+		}
+		ints = intsBefore;
+		realsInUse = realsBefore;
+		for (int i = live.size() - 1; i >= 0; i--)
+		{
+			pop(live.get(i));
+		}
+		return callee.sub.getResult();
+	}
+
+    /**
+     * Generate a call of a function.
+     * @param call
+     * @param result the register the caller moves the result to.
+     * @return true if its result is a real, in xmm0, and false if it is an
+     * integer, in eax.
+     */
+	private boolean function(FunctionCallNode call, Register result)
+	{
+		VariableNode variable = call(call.getName(), call.getArguments(), result);
+		if (variable == null)
+		{
+			throw new IllegalStateException(call.getName() + " is not a function");
+		}
+		return reals.contains(variable.getName());
+	}
+
+    /**
+     * Generate a branch taken when a condition of an if or while is true, or
+     * when it is false. A not on a comparison turns it around, whatever the
+     * type of its operands.
+     * @param cond
+     * @param when
+     * @param target
+     */
+	private void jump(ExpressionNode cond, boolean when, String target)
+	{
+		if (cond instanceof OperationNode && isComparison(((OperationNode) cond).getOperation()))
+		{
+			compare((OperationNode) cond, cond.isReal(symbols), when ^ cond.isNot(), target);
+		}
+		else if (cond.isReal(symbols))
+		{
+			// A real is true unless it is zero; NaN is true.
+			int slot = newReal();
+			real(cond, slot);
+			code.emit("xorps", Register.XMM15, Register.XMM15);
+			code.emit("ucomiss", Register.XMM15, realRegister(slot));
+			freeReal();
+			if (when)
+			{
+				code.emit("jp", target);
+				code.emit("jne", target);
+			}
+			else
+			{
+				String skip = newLabel();
+				code.emit("jp", skip);
+				code.emit("je", target);
+				code.label(skip);
+			}
+		}
+		else
+		{
+			int slot = newInt();
+			integer(cond, slot);
+			code.emit("testl", intRegister(slot).l(), intRegister(slot).l());
+			freeInt();
+			code.emit(when ? "jne" : "je", target);
+		}
+	}
+
+    /**
+     * Generate a branch taken when a comparison holds, or when it does not.
+     * Reals are compared so that a comparison with NaN does not hold, except
+     * for not equal, as in Java.
+     * @param op
+     * @param real true to compare the operands as reals.
+     * @param when
+     * @param target
+     */
+	private void compare(OperationNode op, boolean real, boolean when, String target)
+	{
+		Token operation = op.getOperation();
+		if (!real)
+		{
+			int left = newInt();
+			integer(op.getLeft(), left);
+			int right = newInt();
+			code.emit("cmpl", operand(op.getRight(), right), intRegister(left).l());
+			freeInt();
+			freeInt();
+			String condition = condition(operation);
+			code.emit("j" + (when ? condition : negate(condition)), target);
+			return;
+		}
+		int left = newReal();
+		real(op.getLeft(), left);
+		int right = newReal();
+		real(op.getRight(), right);
+		// Above and above or equal are false when unordered, so less than
+		// compares the operands the other way around.
+		boolean swap = operation == Token.LESS_THAN || operation == Token.LESS_THAN_EQUAL;
+		code.emit("ucomiss", swap ? realRegister(left) : realRegister(right),
+				swap ? realRegister(right) : realRegister(left));
+		freeReal();
+		freeReal();
+		if (operation == Token.EQUALS || operation == Token.LESS_THAN_GREATER_THAN)
+		{
+			if (when == (operation == Token.EQUALS))
+			{
+				String skip = newLabel();
+				code.emit("jp", skip);
+				code.emit("je", target);
+				code.label(skip);
+			}
+			else
+			{
+				code.emit("jp", target);
+				code.emit("jne", target);
+			}
+			return;
+		}
+		boolean equal = operation == Token.LESS_THAN_EQUAL
+				|| operation == Token.GREATER_THAN_EQUAL;
+		String condition = equal ? "ae" : "a";
+		code.emit("j" + (when ? condition : negate(condition)), target);
+	}
+
+    /**
+     * The condition code of a comparison of integers.
+     * @param operation
+     * @return
+     */
+	private static String condition(Token operation)
+	{
+		switch (operation)
+		{
+			case LESS_THAN:
+				return "l";
+			case LESS_THAN_EQUAL:
+				return "le";
+			case GREATER_THAN:
+				return "g";
+			case GREATER_THAN_EQUAL:
+				return "ge";
+			case EQUALS:
+				return "e";
+			default:
+				return "ne";
+		}
+	}
+
+    /**
+     * The condition code that holds when another does not.
+     * @param condition
+     * @return
+     */
+	private static String negate(String condition)
+	{
+		switch (condition)
+		{
+			case "l":
+				return "ge";
+			case "le":
+				return "g";
+			case "g":
+				return "le";
+			case "ge":
+				return "l";
+			case "e":
+				return "ne";
+			case "ne":
+				return "e";
+			case "a":
+				return "be";
+			case "ae":
+				return "b";
+			default:
+				throw new IllegalArgumentException("Unknown condition: " + condition);
+		}
+	}
+
+    /**
+     * Check whether the operation is a comparison.
+     * @param operation
+     * @return
+     */
+	private static boolean isComparison(Token operation)
+	{
+		return operation == Token.LESS_THAN || operation == Token.LESS_THAN_EQUAL
+				|| operation == Token.GREATER_THAN || operation == Token.GREATER_THAN_EQUAL
+				|| operation == Token.LESS_THAN_GREATER_THAN || operation == Token.EQUALS;
+	}
+
+    /**
+     * Generate code working out the right operand of an integer operation,
+     * and return its operand: an immediate for a constant, or else the
+     * register of a slot.
+     * @param exp
+     * @param slot
+     * @return
+     */
+	private String operand(ExpressionNode exp, int slot)
+	{
+		if (exp instanceof ValueNode)
+		{
+			return "$" + constant((ValueNode) exp);
+		}
+		integer(exp, slot);
+		return intRegister(slot).l();
+	}
+
+    /**
+     * Generate code working out an expression as an integer in to the
+     * register of a slot. The not of an expression is applied before its
+     * sign.
+     * @param exp
+     * @param slot
+     */
+	private void integer(ExpressionNode exp, int slot)
+	{
+		Register dest = intRegister(slot);
+		if (exp instanceof ValueNode)
+		{
+			int value = constant((ValueNode) exp);
+			if (value == 0)
+			{
+				code.emit("xorl", dest.l(), dest.l());
+			}
+			else
+			{
+				code.emit("movl", "$" + value, dest.l());
+			}
+			return;
+		}
+		else if (exp instanceof OperationNode && exp.isReal(symbols))
+		{
+			// Only a comparison of reals can be used as an integer.
+			int real = newReal();
+			real(exp, real);
+			truncate(realRegister(real), dest);
+			freeReal();
+			return;
+		}
+		else if (exp instanceof OperationNode)
+		{
+			OperationNode op = (OperationNode) exp;
+			integer(op.getLeft(), slot);
+			int right = newInt();
+			if (isComparison(op.getOperation()))
+			{
+				code.emit("cmpl", operand(op.getRight(), right), dest.l());
+				code.emit("set" + condition(op.getOperation()), "%al");
+				code.emit("movzbl", "%al", dest.l());
+			}
+			else if (op.getOperation() == Token.PLUS)
+			{
+				code.emit("addl", operand(op.getRight(), right), dest.l());
+			}
+			else if (op.getOperation() == Token.MINUS)
+			{
+				code.emit("subl", operand(op.getRight(), right), dest.l());
+			}
+			else if (op.getOperation() == Token.MULTIPLY)
+			{
+				code.emit("imull", operand(op.getRight(), right), dest.l());
+			}
+			else
+			{
+				integer(op.getRight(), right);
+				divide(dest, intRegister(right));
+			}
+			freeInt();
+		}
+		else if (exp instanceof FunctionCallNode)
+		{
+			if (function((FunctionCallNode) exp, dest))
+			{
+				truncate(Register.XMM0, dest);
+			}
+			else
+			{
+				code.emit("movl", Register.RAX.l(), dest.l());
+			}
+		}
+		else
+		{
+			VariableNode var = (VariableNode) exp;
+			String name = var.getName();
+			boolean real = reals.contains(name);
+			Register held = held(name);
+			if (var instanceof ArrayNode)
+			{
+				String element = element((ArrayNode) var);
+				code.emit(real ? "movss" : "movl", element, real ? Register.XMM0 : dest.l());
+				freeInt();
+			}
+			else if (held != null)
+			{
+				code.emit("movl", held.l(), dest.l());
+			}
+			else
+			{
+				code.emit(real ? "movss" : "movl", place(name), real ? Register.XMM0 : dest.l());
+			}
+			if (real)
+			{
+				truncate(Register.XMM0, dest);
+			}
+		}
+		if (exp.isNot())
+		{
+			code.emit("testl", dest.l(), dest.l());
+			code.emit("sete", "%al");
+			code.emit("movzbl", "%al", dest.l());
+		}
+		if (exp.getSign() == Token.MINUS)
+		{
+			code.emit("negl", dest.l());
+		}
+	}
+
+    /**
+     * Generate an integer division, which stops the program if the divisor
+     * is zero. A division by -1 is a negation, so the smallest integer
+     * divided by -1 is itself, as in Java, where idiv would trap.
+     * @param dest the dividend, and where the quotient goes.
+     * @param divisor
+     */
+	private void divide(Register dest, Register divisor)
+	{
+		String negate = newLabel();
+		String end = newLabel();
+		code.emit("testl", divisor.l(), divisor.l());
+		code.emit("je", DIVIDE_BY_ZERO);
+		code.emit("cmpl", "$-1", divisor.l());
+		code.emit("je", negate);
+		code.emit("movl", dest.l(), Register.RAX.l());
+		code.emit("cltd");
+		code.emit("idivl", divisor.l());
+		code.emit("movl", Register.RAX.l(), dest.l());
+		code.emit("jmp", end);
+		code.label(negate);
+		code.emit("negl", dest.l());
+		code.label(end);
+	}
+
+    /**
+     * Generate code truncating a real to an integer as Java does: NaN is
+     * zero, and reals too large either way are the largest or smallest
+     * integer. cvttss2si makes the smallest integer of all three.
+     * @param real
+     * @param dest
+     */
+	private void truncate(Register real, Register dest)
+	{
+		String nan = newLabel();
+		String end = newLabel();
+		code.emit("cvttss2si", real, dest.l());
+		code.emit("cmpl", "$-2147483648", dest.l());
+		code.emit("jne", end);
+		code.emit("xorps", Register.XMM15, Register.XMM15);
+		code.emit("ucomiss", Register.XMM15, real);
+		code.emit("jp", nan);
+		code.emit("jbe", end);
+		code.emit("decl", dest.l());
+		code.emit("jmp", end);
+		code.label(nan);
+		code.emit("xorl", dest.l(), dest.l());
+		code.label(end);
+	}
+
+    /**
+     * Generate code working out an expression as a real in to the register
+     * of a slot. A comparison is 1.0 when it holds and 0.0 when it does not,
+     * and so is not of zero.
+     * @param exp
+     * @param slot
+     */
+	private void real(ExpressionNode exp, int slot)
+	{
+		Register dest = realRegister(slot);
+		if (exp instanceof ValueNode)
+		{
+			float value = Float.parseFloat(((ValueNode) exp).getAttribute());
+			if (exp.isNot())
+			{
+				value = value == 0 ? 1 : 0;
+			}
+			loadReal(exp.getSign() == Token.MINUS ? -value : value, dest);
+			return;
+		}
+		else if (exp instanceof OperationNode)
+		{
+			OperationNode op = (OperationNode) exp;
+			if (isComparison(op.getOperation()))
+			{
+				String otherwise = newLabel();
+				String end = newLabel();
+				compare(op, true, false, otherwise);
+				loadReal(1, dest);
+				code.emit("jmp", end);
+				code.label(otherwise);
+				loadReal(0, dest);
+				code.label(end);
+			}
+			else
+			{
+				real(op.getLeft(), slot);
+				int right = newReal();
+				real(op.getRight(), right);
+				switch (op.getOperation())
+				{
+					case PLUS:
+						code.emit("addss", realRegister(right), dest);
+						break;
+					case MINUS:
+						code.emit("subss", realRegister(right), dest);
+						break;
+					case MULTIPLY:
+						code.emit("mulss", realRegister(right), dest);
+						break;
+					default:
+						code.emit("divss", realRegister(right), dest);
+						break;
+				}
+				freeReal();
+			}
+		}
+		else if (exp instanceof FunctionCallNode)
+		{
+			if (function((FunctionCallNode) exp, dest))
+			{
+				code.emit("movaps", Register.XMM0, dest);
+			}
+			else
+			{
+				code.emit("cvtsi2ssl", Register.RAX.l(), dest);
+			}
+		}
+		else
+		{
+			VariableNode var = (VariableNode) exp;
+			String name = var.getName();
+			String convert = reals.contains(name) ? "movss" : "cvtsi2ssl";
+			Register held = held(name);
+			if (var instanceof ArrayNode)
+			{
+				code.emit(convert, element((ArrayNode) var), dest);
+				freeInt();
+			}
+			else if (held != null)
+			{
+				code.emit(convert, held.l(), dest);
+			}
+			else
+			{
+				code.emit(convert, place(name), dest);
+			}
+		}
+		if (exp.isNot())
+		{
+			// Zero is 1.0, and anything else, NaN too, is 0.0.
+			code.emit("xorps", Register.XMM15, Register.XMM15);
+			code.emit("ucomiss", Register.XMM15, dest);
+			code.emit("setnp", "%al");
+			code.emit("sete", "%dl");
+			code.emit("andb", "%dl", "%al");
+			code.emit("movzbl", "%al", Register.RAX.l());
+			code.emit("cvtsi2ssl", Register.RAX.l(), dest);
+		}
+		if (exp.getSign() == Token.MINUS)
+		{
+			code.emit("movd", dest, Register.RAX.l());
+			code.emit("xorl", "$0x80000000", Register.RAX.l());
+			code.emit("movd", Register.RAX.l(), dest);
+		}
+	}
+
+    /**
+     * The value of an integer constant, with its not and sign.
+     * @param value
+     * @return
+     */
+	private static int constant(ValueNode value)
+	{
+		String text = value.getAttribute();
+		if (!value.isNot())
+		{
+			return Integer.parseInt(value.getSign() == Token.MINUS ? "-" + text : text);
+		}
+		int result = Integer.parseInt(text) == 0 ? 1 : 0;
+		return value.getSign() == Token.MINUS ? -result : result;
+	}
+
+    /**
+     * Generate code loading a real constant, from .rodata unless it is 0.0.
+     * @param value
+     * @param dest
+     */
+	private void loadReal(float value, Register dest)
+	{
+		int bits = Float.floatToRawIntBits(value);
+		if (bits == 0)
+		{
+			code.emit("xorps", dest, dest);
+			return;
+		}
+		String label = constants.get(bits);
+		if (label == null)
+		{
+			label = ".LC" + constants.size();
+			constants.put(bits, label);
+		}
+		code.emit("movss", label + "(%rip)", dest);
+	}
+
+    /**
+     * A new label for a branch.
+     * @return
+     */
+	private String newLabel()
+	{
+		return ".L" + labels++;
+	}
+
+    /**
+     * The register of an integer slot.
+     * @param slot
+     * @return
+     */
+	private static Register intRegister(int slot)
+	{
+		return INT_REGISTERS[slot % INT_REGISTERS.length];
+	}
+
+    /**
+     * The register of a real slot.
+     * @param slot
+     * @return
+     */
+	private static Register realRegister(int slot)
+	{
+		return Register.xmm(1 + slot % REAL_REGISTERS);
+	}
+
+    /**
+     * Takes the next integer slot, pushing its register if an outer slot
+     * has it.
+     * @return
+     */
+	private int newInt()
+	{
+		int slot = ints++;
+		if (slot >= INT_REGISTERS.length)
+		{
+			push(intRegister(slot));
+		}
+		return slot;
+	}
+
+    /**
+     * Gives back the last integer slot taken, popping its register if an
+     * outer slot has it.
+     */
+	private void freeInt()
+	{
+		int slot = --ints;
+		if (slot >= INT_REGISTERS.length)
+		{
+			pop(intRegister(slot));
+		}
+	}
+
+    /**
+     * Takes the next real slot, pushing its register if an outer slot has
+     * it.
+     * @return
+     */
+	private int newReal()
+	{
+		int slot = realsInUse++;
+		if (slot >= REAL_REGISTERS)
+		{
+			push(realRegister(slot));
+		}
+		return slot;
+	}
+
+    /**
+     * Gives back the last real slot taken, popping its register if an outer
+     * slot has it.
+     */
+	private void freeReal()
+	{
+		int slot = --realsInUse;
+		if (slot >= REAL_REGISTERS)
+		{
+			pop(realRegister(slot));
+		}
+	}
+
+    /**
+     * Generate code pushing a register. Neither a push nor a pop changes the
+     * flags, so slots can be given back between a compare and its branch.
+     * @param register
+     */
+	private void push(Register register)
+	{
+		if (register.isReal())
+		{
+			code.emit("leaq", "-8(%rsp)", Register.RSP);
+			code.emit("movss", register, "(%rsp)");
+		}
+		else
+		{
+			code.emit("pushq", register);
+		}
+		pushed += 8;
+	}
+
+    /**
+     * Generate code popping a register.
+     * @param register
+     */
+	private void pop(Register register)
+	{
+		if (register.isReal())
+		{
+			code.emit("movss", "(%rsp)", register);
+			code.emit("leaq", "8(%rsp)", Register.RSP);
+		}
+		else
+		{
+			code.emit("popq", register);
+		}
+		pushed -= 8;
+	}
+}
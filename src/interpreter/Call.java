@@ -0,0 +1,95 @@
+package interpreter;
+
+/**
+ * A call of a subprogram, shared by the nodes that call a function or a
+ * procedure.
+ *
+ * @author ken
+ */
+final class Call
+{
+
+	private final Routine routine;
+
+	/**
+	 * How many links lead from the caller's frame to the frame of the
+	 * subprogram the callee is declared in.
+	 */
+	private final int hops;
+
+	private final Argument[] arguments;
+
+	/**
+	 * Sets a parameter of the callee from an argument worked out in the
+	 * caller.
+	 */
+	abstract static class Argument
+	{
+		abstract void pass(Frame caller, Frame callee);
+	}
+
+	static final class IntArgument extends Argument
+	{
+		private final int slot;
+		private final IntNode value;
+
+		IntArgument(int slot, IntNode value)
+		{
+			this.slot = slot;
+			this.value = value;
+		}
+
+		@Override
+		void pass(Frame caller, Frame callee)
+		{
+			callee.ints[slot] = value.execute(caller);
+		}
+	}
+
+	static final class RealArgument extends Argument
+	{
+		private final int slot;
+		private final RealNode value;
+
+		RealArgument(int slot, RealNode value)
+		{
+			this.slot = slot;
+			this.value = value;
+		}
+
+		@Override
+		void pass(Frame caller, Frame callee)
+		{
+			callee.reals[slot] = value.execute(caller);
+		}
+	}
+
+	/**
+	 * Constructor.
+	 * @param routine
+	 * @param hops
+	 * @param arguments
+	 */
+	Call(Routine routine, int hops, Argument[] arguments)
+	{
+		this.routine = routine;
+		this.hops = hops;
+		this.arguments = arguments;
+	}
+
+	/**
+	 * Makes the call.
+	 * @param caller
+	 * @return the frame of the callee, holding the result of a function.
+	 */
+	Frame invoke(Frame caller)
+	{
+		Frame callee = new Frame(routine, caller.up(hops));
+		for (Argument argument : arguments)
+		{
+			argument.pass(caller, callee);
+		}
+		routine.body().execute(callee);
+		return callee;
+	}
+}
@@ -0,0 +1,286 @@
+package interpreter;
+
+/**
+ * The condition of an if or while, or a comparison, worked out as a
+ * boolean. Each comparison of integers and of reals has its own node.
+ *
+ * @author ken
+ */
+abstract class Condition
+{
+
+	abstract boolean execute(Frame frame);
+
+	static final class IntLess extends Condition
+	{
+		private final IntNode left;
+		private final IntNode right;
+
+		IntLess(IntNode left, IntNode right)
+		{
+			this.left = left;
+			this.right = right;
+		}
+
+		@Override
+		boolean execute(Frame frame)
+		{
+			return left.execute(frame) < right.execute(frame);
+		}
+	}
+
+	static final class IntLessEqual extends Condition
+	{
+		private final IntNode left;
+		private final IntNode right;
+
+		IntLessEqual(IntNode left, IntNode right)
+		{
+			this.left = left;
+			this.right = right;
+		}
+
+		@Override
+		boolean execute(Frame frame)
+		{
+			return left.execute(frame) <= right.execute(frame);
+		}
+	}
+
+	static final class IntGreater extends Condition
+	{
+		private final IntNode left;
+		private final IntNode right;
+
+		IntGreater(IntNode left, IntNode right)
+		{
+			this.left = left;
+			this.right = right;
+		}
+
+		@Override
+		boolean execute(Frame frame)
+		{
+			return left.execute(frame) > right.execute(frame);
+		}
+	}
+
+	static final class IntGreaterEqual extends Condition
+	{
+		private final IntNode left;
+		private final IntNode right;
+
+		IntGreaterEqual(IntNode left, IntNode right)
+		{
+			this.left = left;
+			this.right = right;
+		}
+
+		@Override
+		boolean execute(Frame frame)
+		{
+			return left.execute(frame) >= right.execute(frame);
+		}
+	}
+
+	static final class IntEqual extends Condition
+	{
+		private final IntNode left;
+		private final IntNode right;
+
+		IntEqual(IntNode left, IntNode right)
+		{
+			this.left = left;
+			this.right = right;
+		}
+
+		@Override
+		boolean execute(Frame frame)
+		{
+			return left.execute(frame) == right.execute(frame);
+		}
+	}
+
+	static final class IntNotEqual extends Condition
+	{
+		private final IntNode left;
+		private final IntNode right;
+
+		IntNotEqual(IntNode left, IntNode right)
+		{
+			this.left = left;
+			this.right = right;
+		}
+
+		@Override
+		boolean execute(Frame frame)
+		{
+			return left.execute(frame) != right.execute(frame);
+		}
+	}
+
+	static final class RealLess extends Condition
+	{
+		private final RealNode left;
+		private final RealNode right;
+
+		RealLess(RealNode left, RealNode right)
+		{
+			this.left = left;
+			this.right = right;
+		}
+
+		@Override
+		boolean execute(Frame frame)
+		{
+			return left.execute(frame) < right.execute(frame);
+		}
+	}
+
+	static final class RealLessEqual extends Condition
+	{
+		private final RealNode left;
+		private final RealNode right;
+
+		RealLessEqual(RealNode left, RealNode right)
+		{
+			this.left = left;
+			this.right = right;
+		}
+
+		@Override
+		boolean execute(Frame frame)
+		{
+			return left.execute(frame) <= right.execute(frame);
+		}
+	}
+
+	static final class RealGreater extends Condition
+	{
+		private final RealNode left;
+		private final RealNode right;
+
+		RealGreater(RealNode left, RealNode right)
+		{
+			this.left = left;
+			this.right = right;
+		}
+
+		@Override
+		boolean execute(Frame frame)
+		{
+			return left.execute(frame) > right.execute(frame);
+		}
+	}
+
+	static final class RealGreaterEqual extends Condition
+	{
+		private final RealNode left;
+		private final RealNode right;
+
+		RealGreaterEqual(RealNode left, RealNode right)
+		{
+			this.left = left;
+			this.right = right;
+		}
+
+		@Override
+		boolean execute(Frame frame)
+		{
+			return left.execute(frame) >= right.execute(frame);
+		}
+	}
+
+	static final class RealEqual extends Condition
+	{
+		private final RealNode left;
+		private final RealNode right;
+
+		RealEqual(RealNode left, RealNode right)
+		{
+			this.left = left;
+			this.right = right;
+		}
+
+		@Override
+		boolean execute(Frame frame)
+		{
+			return left.execute(frame) == right.execute(frame);
+		}
+	}
+
+	static final class RealNotEqual extends Condition
+	{
+		private final RealNode left;
+		private final RealNode right;
+
+		RealNotEqual(RealNode left, RealNode right)
+		{
+			this.left = left;
+			this.right = right;
+		}
+
+		@Override
+		boolean execute(Frame frame)
+		{
+			return left.execute(frame) != right.execute(frame);
+		}
+	}
+
+	/**
+	 * A comparison turned around by a not.
+	 */
+	static final class Invert extends Condition
+	{
+		private final Condition condition;
+
+		Invert(Condition condition)
+		{
+			this.condition = condition;
+		}
+
+		@Override
+		boolean execute(Frame frame)
+		{
+			return !condition.execute(frame);
+		}
+	}
+
+	/**
+	 * An integer used as a condition.
+	 */
+	static final class IntNonZero extends Condition
+	{
+		private final IntNode value;
+
+		IntNonZero(IntNode value)
+		{
+			this.value = value;
+		}
+
+		@Override
+		boolean execute(Frame frame)
+		{
+			return value.execute(frame) != 0;
+		}
+	}
+
+	/**
+	 * A real used as a condition.
+	 */
+	static final class RealNonZero extends Condition
+	{
+		private final RealNode value;
+
+		RealNonZero(RealNode value)
+		{
+			this.value = value;
+		}
+
+		@Override
+		boolean execute(Frame frame)
+		{
+			return value.execute(frame) != 0;
+		}
+	}
+}
@@ -0,0 +1,677 @@
+package interpreter;
+
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import parser.Kind;
+import parser.Parser;
+import parser.SymbolTable;
+import scanner.Token;
+import syntaxtree.*;
+
+/**
+ * Runs a program by translating its syntax tree into specialized nodes and
+ * running those, for when the answer is wanted rather than a check of the
+ * compiler. It does what Interpreter does, which DifferentialTest checks.
+ *
+ * Whether each operation works in integers or reals is settled once, when
+ * it is translated, rather than by asking the tree each time it runs.
+ * Variables are given slots in frames of ints and floats, so a variable is
+ * found by index rather than by name and no value is boxed. The body of a
+ * subprogram is translated the first time it is called.
+ *
+ * @author ken
+ */
+public class FastInterpreter
+{
+
+	/**
+	 * The program to run.
+	 */
+	private final ProgramNode program;
+
+	/**
+	 * The symbol table of the program.
+	 */
+	private final SymbolTable symbols;
+
+	/**
+	 * The program as a routine, whose frame holds the globals.
+	 */
+	private final Routine main;
+
+	/**
+	 * The subprograms, by name.
+	 */
+	private final HashMap<String, Routine> routines = new HashMap<String, Routine>();
+
+	/**
+	 * The routine each variable belongs to.
+	 */
+	private final HashMap<String, Routine> owners = new HashMap<String, Routine>();
+
+	private final Machine machine = new Machine();
+
+	/**
+	 * Constructor.
+	 * @param program
+	 * @param symbols
+	 */
+	public FastInterpreter(ProgramNode program, SymbolTable symbols)
+	{
+		this.program = program;
+		this.symbols = symbols;
+		main = new Routine(this, null, 0);
+		allocate(program.getVariables().getVars(), main);
+		declare(program.getFunctions(), 1);
+	}
+
+	/**
+	 * Makes routines of the subprograms declared in a program or
+	 * subprogram, and gives their variables slots.
+	 * @param functions
+	 * @param level
+	 */
+	private void declare(SubProgramDeclarationsNode functions, int level)
+	{
+		if (functions == null)
+		{
+			return;
+		}
+		for (SubProgramNode sub : functions.getSubPrograms())
+		{
+			Routine routine = new Routine(this, sub, level);
+			routines.put(sub.getName(), routine);
+			allocate(sub.getParameters(), routine);
+			allocate(sub.getDeclarations().getVars(), routine);
+			if (sub.getResult() != null)
+			{
+				ArrayList<VariableNode> result = new ArrayList<VariableNode>();
+				result.add(sub.getResult());
+				allocate(result, routine);
+			}
+			declare(sub.getSubDeclarations(), level + 1);
+		}
+	}
+
+	/**
+	 * Gives variables and arrays slots in a routine.
+	 * @param vars
+	 * @param routine
+	 */
+	private void allocate(ArrayList<VariableNode> vars, Routine routine)
+	{
+		for (VariableNode var : vars)
+		{
+			String name = var.getName();
+			int length = -1;
+			if (symbols.getKind(name) == Kind.ARRAY)
+			{
+				length = Math.max(0, symbols.getEnd(name) - symbols.getStart(name) + 1);
+			}
+			routine.allocate(name, var.getType() == Token.REAL, length);
+			owners.put(name, routine);
+		}
+	}
+
+	/**
+	 * Sets the most statements to run before giving up, to stop a program
+	 * that never ends.
+	 * @param limit
+	 */
+	public void setLimit(long limit)
+	{
+		machine.limit = limit;
+	}
+
+	/**
+	 * Runs the program on some input.
+	 * @param input
+	 * @return what the program wrote.
+	 * @throws IllegalStateException if the program fails, or runs for more
+	 * than the limit.
+	 */
+	public String run(String input)
+	{
+		StringWriter output = new StringWriter();
+		try
+		{
+			run(new StringReader(input), output);
+		}
+		catch (IOException e)
+		{
+			// A StringReader and StringWriter do not throw.
+			throw new IllegalStateException(e);
+		}
+		return output.toString();
+	}
+
+	/**
+	 * Runs the program.
+	 * @param input what the program reads.
+	 * @param output where the program writes.
+	 * @throws IOException
+	 * @throws IllegalStateException if the program fails, or runs for more
+	 * than the limit.
+	 */
+	public void run(Reader input, Writer output) throws IOException
+	{
+		machine.start(input, output);
+		try
+		{
+			main.body().execute(new Frame(main, null));
+		}
+		catch (Machine.Exit e)
+		{
+			// The program ended early.
+		}
+		catch (UncheckedIOException e)
+		{
+			throw e.getCause();
+		}
+		output.flush();
+	}
+
+	/**
+	 * Translates the body of a routine.
+	 * @param routine
+	 * @return
+	 */
+	Statement translate(Routine routine)
+	{
+		return statement(routine.sub == null ? program.getMain() : routine.sub.getBody(), routine);
+	}
+
+	/**
+	 * Translates a statement.
+	 * @param stmt
+	 * @param routine the routine it is in.
+	 * @return
+	 */
+	private Statement statement(StatementNode stmt, Routine routine)
+	{
+		if (stmt instanceof AssignmentStatementNode)
+		{
+			AssignmentStatementNode assign = (AssignmentStatementNode) stmt;
+			VariableNode lvalue = assign.getLvalue();
+			String name = lvalue.getName();
+			Routine owner = owners.get(name);
+			int hops = routine.level - owner.level;
+			int slot = owner.slots.get(name);
+			boolean real = symbols.getType(name) == Token.REAL;
+			if (lvalue instanceof ArrayNode)
+			{
+				IntNode index = integer(((ArrayNode) lvalue).getIndex(), routine);
+				int start = symbols.getStart(name);
+				if (real)
+				{
+					return new Statement.SetRealElement(machine, hops, slot, index, start,
+							real(assign.getExpression(), routine));
+				}
+				return new Statement.SetIntElement(machine, hops, slot, index, start,
+						integer(assign.getExpression(), routine));
+			}
+			if (real)
+			{
+				return new Statement.SetReal(machine, hops, slot, real(assign.getExpression(), routine));
+			}
+			return new Statement.SetInt(machine, hops, slot, integer(assign.getExpression(), routine));
+		}
+		if (stmt instanceof ReadNode)
+		{
+			VariableNode input = ((ReadNode) stmt).getInput();
+			Routine owner = owners.get(input.getName());
+			int hops = routine.level - owner.level;
+			int slot = owner.slots.get(input.getName());
+			if (input.getType() == Token.REAL)
+			{
+				return new Statement.ReadReal(machine, hops, slot);
+			}
+			return new Statement.ReadInt(machine, hops, slot);
+		}
+		if (stmt instanceof WriteNode)
+		{
+			ExpressionNode output = ((WriteNode) stmt).getOutput();
+			if (output.isReal(symbols))
+			{
+				return new Statement.WriteReal(machine, real(output, routine));
+			}
+			return new Statement.WriteInt(machine, integer(output, routine));
+		}
+		if (stmt instanceof ProcedureStatementNode)
+		{
+			ProcedureStatementNode call = (ProcedureStatementNode) stmt;
+			return new Statement.Procedure(machine,
+					call(call.getName(), call.getArguments(), routine));
+		}
+		if (stmt instanceof CompoundStatementNode)
+		{
+			ArrayList<StatementNode> inner = ((CompoundStatementNode) stmt).getStatements();
+			Statement[] statements = new Statement[inner.size()];
+			for (int i = 0; i < statements.length; i++)
+			{
+				statements[i] = statement(inner.get(i), routine);
+			}
+			return new Statement.Block(machine, statements);
+		}
+		if (stmt instanceof IfStatementNode)
+		{
+			IfStatementNode ifNode = (IfStatementNode) stmt;
+			return new Statement.If(machine, condition(ifNode.getCondition(), routine),
+					branch(ifNode.getStatement(), routine),
+					branch(ifNode.getElseStatement(), routine));
+		}
+		if (stmt instanceof WhileStatementNode)
+		{
+			WhileStatementNode loop = (WhileStatementNode) stmt;
+			return new Statement.While(machine, condition(loop.getCondition(), routine),
+					branch(loop.getStatement(), routine));
+		}
+		return new Statement.Empty(machine);
+	}
+
+	/**
+	 * Translates the branch of an if or the body of a while, which may be
+	 * missing.
+	 * @param stmt
+	 * @param routine
+	 * @return the statement, or null if it is missing.
+	 */
+	private Statement branch(StatementNode stmt, Routine routine)
+	{
+		return stmt == null ? null : statement(stmt, routine);
+	}
+
+	/**
+	 * Translates a call of a subprogram.
+	 * @param name
+	 * @param arguments
+	 * @param routine the routine it is in.
+	 * @return
+	 */
+	private Call call(String name, ArrayList<ExpressionNode> arguments, Routine routine)
+	{
+		Routine callee = routines.get(name);
+		ArrayList<VariableNode> params = callee.sub.getParameters();
+		Call.Argument[] passed = new Call.Argument[Math.min(params.size(), arguments.size())];
+		for (int i = 0; i < passed.length; i++)
+		{
+			VariableNode param = params.get(i);
+			int slot = callee.slots.get(param.getName());
+			if (param.getType() == Token.REAL)
+			{
+				passed[i] = new Call.RealArgument(slot, real(arguments.get(i), routine));
+			}
+			else
+			{
+				passed[i] = new Call.IntArgument(slot, integer(arguments.get(i), routine));
+			}
+		}
+		// The callee is linked to the frame of the routine it is declared in.
+		return new Call(callee, routine.level - callee.level + 1, passed);
+	}
+
+	/**
+	 * Translates the condition of an if or while. A not on a comparison
+	 * turns it around, whatever the type of its operands.
+	 * @param cond
+	 * @param routine
+	 * @return
+	 */
+	private Condition condition(ExpressionNode cond, Routine routine)
+	{
+		if (cond instanceof OperationNode && isComparison(((OperationNode) cond).getOperation()))
+		{
+			Condition compare = compare((OperationNode) cond, cond.isReal(symbols), routine);
+			return cond.isNot() ? new Condition.Invert(compare) : compare;
+		}
+		if (cond.isReal(symbols))
+		{
+			return new Condition.RealNonZero(real(cond, routine));
+		}
+		return new Condition.IntNonZero(integer(cond, routine));
+	}
+
+	/**
+	 * Translates a comparison.
+	 * @param op
+	 * @param real true to compare the operands as reals.
+	 * @param routine
+	 * @return
+	 */
+	private Condition compare(OperationNode op, boolean real, Routine routine)
+	{
+		if (real)
+		{
+			RealNode left = real(op.getLeft(), routine);
+			RealNode right = real(op.getRight(), routine);
+			switch (op.getOperation())
+			{
+				case LESS_THAN:
+					return new Condition.RealLess(left, right);
+				case LESS_THAN_EQUAL:
+					return new Condition.RealLessEqual(left, right);
+				case GREATER_THAN:
+					return new Condition.RealGreater(left, right);
+				case GREATER_THAN_EQUAL:
+					return new Condition.RealGreaterEqual(left, right);
+				case EQUALS:
+					return new Condition.RealEqual(left, right);
+				default:
+					return new Condition.RealNotEqual(left, right);
+			}
+		}
+		IntNode left = integer(op.getLeft(), routine);
+		IntNode right = integer(op.getRight(), routine);
+		switch (op.getOperation())
+		{
+			case LESS_THAN:
+				return new Condition.IntLess(left, right);
+			case LESS_THAN_EQUAL:
+				return new Condition.IntLessEqual(left, right);
+			case GREATER_THAN:
+				return new Condition.IntGreater(left, right);
+			case GREATER_THAN_EQUAL:
+				return new Condition.IntGreaterEqual(left, right);
+			case EQUALS:
+				return new Condition.IntEqual(left, right);
+			default:
+				return new Condition.IntNotEqual(left, right);
+		}
+	}
+
+	/**
+	 * Check whether the operation is a comparison.
+	 * @param operation
+	 * @return
+	 */
+	private static boolean isComparison(Token operation)
+	{
+		return operation == Token.LESS_THAN || operation == Token.LESS_THAN_EQUAL
+				|| operation == Token.GREATER_THAN || operation == Token.GREATER_THAN_EQUAL
+				|| operation == Token.LESS_THAN_GREATER_THAN || operation == Token.EQUALS;
+	}
+
+	/**
+	 * Translates an expression to be worked out as an integer. The not of
+	 * an expression is applied before its sign, and a constant is worked
+	 * out here.
+	 * @param exp
+	 * @param routine
+	 * @return
+	 */
+	private IntNode integer(ExpressionNode exp, Routine routine)
+	{
+		IntNode node;
+		if (exp instanceof ValueNode)
+		{
+			String text = ((ValueNode) exp).getAttribute();
+			if (!exp.isNot())
+			{
+				return new IntNode.Constant(Integer.parseInt(
+						exp.getSign() == Token.MINUS ? "-" + text : text));
+			}
+			int value = Integer.parseInt(text) == 0 ? 1 : 0;
+			return new IntNode.Constant(exp.getSign() == Token.MINUS ? -value : value);
+		}
+		else if (exp instanceof OperationNode && exp.isReal(symbols))
+		{
+			// Only a comparison of reals can be used as an integer.
+			return new IntNode.Truncate(real(exp, routine));
+		}
+		else if (exp instanceof OperationNode)
+		{
+			OperationNode op = (OperationNode) exp;
+			if (isComparison(op.getOperation()))
+			{
+				node = new IntNode.Compare(compare(op, false, routine));
+			}
+			else
+			{
+				IntNode left = integer(op.getLeft(), routine);
+				IntNode right = integer(op.getRight(), routine);
+				switch (op.getOperation())
+				{
+					case PLUS:
+						node = new IntNode.Add(left, right);
+						break;
+					case MINUS:
+						node = new IntNode.Subtract(left, right);
+						break;
+					case MULTIPLY:
+						node = new IntNode.Multiply(left, right);
+						break;
+					default:
+						node = new IntNode.Divide(left, right);
+						break;
+				}
+			}
+		}
+		else if (exp instanceof FunctionCallNode)
+		{
+			FunctionCallNode call = (FunctionCallNode) exp;
+			Routine callee = routines.get(call.getName());
+			String result = result(callee).getName();
+			Call made = call(call.getName(), call.getArguments(), routine);
+			if (callee.realNames.contains(result))
+			{
+				node = new IntNode.Truncate(new RealNode.Result(made, callee.slots.get(result)));
+			}
+			else
+			{
+				node = new IntNode.Result(made, callee.slots.get(result));
+			}
+		}
+		else
+		{
+			String name = ((VariableNode) exp).getName();
+			Routine owner = owners.get(name);
+			if (owner.realNames.contains(name))
+			{
+				node = new IntNode.Truncate(variable((VariableNode) exp, owner, routine));
+			}
+			else
+			{
+				int hops = routine.level - owner.level;
+				int slot = owner.slots.get(name);
+				if (exp instanceof ArrayNode)
+				{
+					node = new IntNode.Element(hops, slot,
+							integer(((ArrayNode) exp).getIndex(), routine),
+							symbols.getStart(name), machine);
+				}
+				else
+				{
+					node = hops == 0 ? new IntNode.Local(slot) : new IntNode.Nonlocal(hops, slot);
+				}
+			}
+		}
+		if (exp.isNot())
+		{
+			node = new IntNode.Not(node);
+		}
+		return exp.getSign() == Token.MINUS ? new IntNode.Negate(node) : node;
+	}
+
+	/**
+	 * Translates an expression to be worked out as a real. A comparison is
+	 * 1.0 when it holds and 0.0 when it does not, and so is not of zero.
+	 * @param exp
+	 * @param routine
+	 * @return
+	 */
+	private RealNode real(ExpressionNode exp, Routine routine)
+	{
+		RealNode node;
+		if (exp instanceof ValueNode)
+		{
+			float value = Float.parseFloat(((ValueNode) exp).getAttribute());
+			if (exp.isNot())
+			{
+				value = value == 0 ? 1 : 0;
+			}
+			return new RealNode.Constant(exp.getSign() == Token.MINUS ? -value : value);
+		}
+		else if (exp instanceof OperationNode)
+		{
+			OperationNode op = (OperationNode) exp;
+			if (isComparison(op.getOperation()))
+			{
+				node = new RealNode.Compare(compare(op, true, routine));
+			}
+			else
+			{
+				RealNode left = real(op.getLeft(), routine);
+				RealNode right = real(op.getRight(), routine);
+				switch (op.getOperation())
+				{
+					case PLUS:
+						node = new RealNode.Add(left, right);
+						break;
+					case MINUS:
+						node = new RealNode.Subtract(left, right);
+						break;
+					case MULTIPLY:
+						node = new RealNode.Multiply(left, right);
+						break;
+					default:
+						node = new RealNode.Divide(left, right);
+						break;
+				}
+			}
+		}
+		else if (exp instanceof FunctionCallNode)
+		{
+			FunctionCallNode call = (FunctionCallNode) exp;
+			Routine callee = routines.get(call.getName());
+			String result = result(callee).getName();
+			Call made = call(call.getName(), call.getArguments(), routine);
+			if (callee.realNames.contains(result))
+			{
+				node = new RealNode.Result(made, callee.slots.get(result));
+			}
+			else
+			{
+				node = new RealNode.Convert(new IntNode.Result(made, callee.slots.get(result)));
+			}
+		}
+		else
+		{
+			String name = ((VariableNode) exp).getName();
+			Routine owner = owners.get(name);
+			if (owner.realNames.contains(name))
+			{
+				node = variable((VariableNode) exp, owner, routine);
+			}
+			else
+			{
+				int hops = routine.level - owner.level;
+				int slot = owner.slots.get(name);
+				if (exp instanceof ArrayNode)
+				{
+					node = new RealNode.Convert(new IntNode.Element(hops, slot,
+							integer(((ArrayNode) exp).getIndex(), routine),
+							symbols.getStart(name), machine));
+				}
+				else
+				{
+					node = new RealNode.Convert(hops == 0 ? new IntNode.Local(slot)
+							: new IntNode.Nonlocal(hops, slot));
+				}
+			}
+		}
+		if (exp.isNot())
+		{
+			node = new RealNode.Not(node);
+		}
+		return exp.getSign() == Token.MINUS ? new RealNode.Negate(node) : node;
+	}
+
+	/**
+	 * Translates a real variable or element, without its sign or not.
+	 * @param var
+	 * @param owner the routine it belongs to.
+	 * @param routine the routine it is used in.
+	 * @return
+	 */
+	private RealNode variable(VariableNode var, Routine owner, Routine routine)
+	{
+		int hops = routine.level - owner.level;
+		int slot = owner.slots.get(var.getName());
+		if (var instanceof ArrayNode)
+		{
+			return new RealNode.Element(hops, slot, integer(((ArrayNode) var).getIndex(), routine),
+					symbols.getStart(var.getName()), machine);
+		}
+		return hops == 0 ? new RealNode.Local(slot) : new RealNode.Nonlocal(hops, slot);
+	}
+
+	/**
+	 * The result of a function.
+	 * @param callee
+	 * @return
+	 * @throws IllegalStateException if it is a procedure.
+	 */
+	private static VariableNode result(Routine callee)
+	{
+		if (callee.sub.getResult() == null)
+		{
+			throw new IllegalStateException(callee.sub.getName() + " is not a function");
+		}
+		return callee.sub.getResult();
+	}
+
+	/**
+	 * Runs a program on standard input and output.
+	 * @param args the file, and optionally -limit=statements.
+	 * @throws IOException
+	 */
+	public static void main(String[] args) throws IOException
+	{
+		if (args.length < 1)
+		{
+			System.out.println("Usage: fastinterp <filename> [-limit=statements]");
+			System.exit(-1);
+		}
+		long limit = Long.MAX_VALUE;
+		for (int i = 1; i < args.length; i++)
+		{
+			if (args[i].startsWith("-limit="))
+			{
+				limit = Long.parseLong(args[i].substring("-limit=".length()));
+			}
+		}
+		// The parser reports success on standard output, which is the
+		// program's.
+		PrintStream console = System.out;
+		Parser parser;
+		ProgramNode tree;
+		try
+		{
+			System.setOut(new PrintStream(new OutputStream()
+			{
+				@Override
+				public void write(int b)
+				{
+				}
+			}));
+			parser = new Parser(args[0]);
+			tree = parser.program();
+		}
+		finally
+		{
+			System.setOut(console);
+		}
+		FastInterpreter interpreter = new FastInterpreter(tree, parser.getSymbolTable());
+		interpreter.setLimit(limit);
+		interpreter.run(new InputStreamReader(System.in), new OutputStreamWriter(System.out));
+	}
+}
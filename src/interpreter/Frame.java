@@ -0,0 +1,61 @@
+package interpreter;
+
+/**
+ * The variables of one call of a subprogram, or of the program, kept
+ * unboxed in arrays indexed by the slots the routine gives them.
+ *
+ * Integers are ints and reals floats, so they wrap and round as the
+ * generated code does.
+ *
+ * @author ken
+ */
+final class Frame
+{
+
+	/**
+	 * The frame of the subprogram this one is declared in.
+	 */
+	final Frame link;
+
+	final int[] ints;
+	final float[] reals;
+	final int[][] intArrays;
+	final float[][] realArrays;
+
+	/**
+	 * Makes a frame with every variable and element set to zero.
+	 * @param routine
+	 * @param link
+	 */
+	Frame(Routine routine, Frame link)
+	{
+		this.link = link;
+		ints = new int[routine.ints];
+		reals = new float[routine.reals];
+		intArrays = new int[routine.intArrays.size()][];
+		for (int i = 0; i < intArrays.length; i++)
+		{
+			intArrays[i] = new int[routine.intArrays.get(i)];
+		}
+		realArrays = new float[routine.realArrays.size()][];
+		for (int i = 0; i < realArrays.length; i++)
+		{
+			realArrays[i] = new float[routine.realArrays.get(i)];
+		}
+	}
+
+	/**
+	 * The frame some levels out.
+	 * @param hops
+	 * @return
+	 */
+	Frame up(int hops)
+	{
+		Frame frame = this;
+		for (int i = 0; i < hops; i++)
+		{
+			frame = frame.link;
+		}
+		return frame;
+	}
+}
@@ -0,0 +1,269 @@
+package interpreter;
+
+/**
+ * An expression worked out as an integer. Each operation has its own node,
+ * chosen once when the tree is translated, so running it never looks at a
+ * type or boxes a value.
+ *
+ * @author ken
+ */
+abstract class IntNode
+{
+
+	abstract int execute(Frame frame);
+
+	static final class Constant extends IntNode
+	{
+		private final int value;
+
+		Constant(int value)
+		{
+			this.value = value;
+		}
+
+		@Override
+		int execute(Frame frame)
+		{
+			return value;
+		}
+	}
+
+	/**
+	 * A variable of the routine running.
+	 */
+	static final class Local extends IntNode
+	{
+		private final int slot;
+
+		Local(int slot)
+		{
+			this.slot = slot;
+		}
+
+		@Override
+		int execute(Frame frame)
+		{
+			return frame.ints[slot];
+		}
+	}
+
+	/**
+	 * A variable of a routine it is declared in.
+	 */
+	static final class Nonlocal extends IntNode
+	{
+		private final int hops;
+		private final int slot;
+
+		Nonlocal(int hops, int slot)
+		{
+			this.hops = hops;
+			this.slot = slot;
+		}
+
+		@Override
+		int execute(Frame frame)
+		{
+			return frame.up(hops).ints[slot];
+		}
+	}
+
+	static final class Element extends IntNode
+	{
+		private final int hops;
+		private final int slot;
+		private final IntNode index;
+		private final int start;
+		private final Machine machine;
+
+		Element(int hops, int slot, IntNode index, int start, Machine machine)
+		{
+			this.hops = hops;
+			this.slot = slot;
+			this.index = index;
+			this.start = start;
+			this.machine = machine;
+		}
+
+		@Override
+		int execute(Frame frame)
+		{
+			int[] array = frame.up(hops).intArrays[slot];
+			int i = index.execute(frame) - start;
+			if (i < 0 || i >= array.length)
+			{
+				machine.outOfBounds();
+			}
+			return array[i];
+		}
+	}
+
+	static final class Add extends IntNode
+	{
+		private final IntNode left;
+		private final IntNode right;
+
+		Add(IntNode left, IntNode right)
+		{
+			this.left = left;
+			this.right = right;
+		}
+
+		@Override
+		int execute(Frame frame)
+		{
+			return left.execute(frame) + right.execute(frame);
+		}
+	}
+
+	static final class Subtract extends IntNode
+	{
+		private final IntNode left;
+		private final IntNode right;
+
+		Subtract(IntNode left, IntNode right)
+		{
+			this.left = left;
+			this.right = right;
+		}
+
+		@Override
+		int execute(Frame frame)
+		{
+			return left.execute(frame) - right.execute(frame);
+		}
+	}
+
+	static final class Multiply extends IntNode
+	{
+		private final IntNode left;
+		private final IntNode right;
+
+		Multiply(IntNode left, IntNode right)
+		{
+			this.left = left;
+			this.right = right;
+		}
+
+		@Override
+		int execute(Frame frame)
+		{
+			return left.execute(frame) * right.execute(frame);
+		}
+	}
+
+	static final class Divide extends IntNode
+	{
+		private final IntNode left;
+		private final IntNode right;
+
+		Divide(IntNode left, IntNode right)
+		{
+			this.left = left;
+			this.right = right;
+		}
+
+		@Override
+		int execute(Frame frame)
+		{
+			int dividend = left.execute(frame);
+			int divisor = right.execute(frame);
+			if (divisor == 0)
+			{
+				throw new IllegalStateException("Division by zero");
+			}
+			return dividend / divisor;
+		}
+	}
+
+	static final class Not extends IntNode
+	{
+		private final IntNode operand;
+
+		Not(IntNode operand)
+		{
+			this.operand = operand;
+		}
+
+		@Override
+		int execute(Frame frame)
+		{
+			return operand.execute(frame) == 0 ? 1 : 0;
+		}
+	}
+
+	static final class Negate extends IntNode
+	{
+		private final IntNode operand;
+
+		Negate(IntNode operand)
+		{
+			this.operand = operand;
+		}
+
+		@Override
+		int execute(Frame frame)
+		{
+			return -operand.execute(frame);
+		}
+	}
+
+	/**
+	 * A real where an integer is expected.
+	 */
+	static final class Truncate extends IntNode
+	{
+		private final RealNode operand;
+
+		Truncate(RealNode operand)
+		{
+			this.operand = operand;
+		}
+
+		@Override
+		int execute(Frame frame)
+		{
+			return (int) operand.execute(frame);
+		}
+	}
+
+	/**
+	 * A comparison, 1 when it holds and 0 when it does not.
+	 */
+	static final class Compare extends IntNode
+	{
+		private final Condition test;
+
+		Compare(Condition test)
+		{
+			this.test = test;
+		}
+
+		@Override
+		int execute(Frame frame)
+		{
+			return test.execute(frame) ? 1 : 0;
+		}
+	}
+
+	/**
+	 * A call of a function whose result is an integer.
+	 */
+	static final class Result extends IntNode
+	{
+		private final Call call;
+		private final int slot;
+
+		Result(Call call, int slot)
+		{
+			this.call = call;
+			this.slot = slot;
+		}
+
+		@Override
+		int execute(Frame frame)
+		{
+			return call.invoke(frame).ints[slot];
+		}
+	}
+}
@@ -0,0 +1,713 @@
+package interpreter;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.StringTokenizer;
+import parser.Kind;
+import parser.SymbolTable;
+import scanner.Token;
+import syntaxtree.*;
+
+/**
+ * Runs a program by walking its syntax tree, as the reference the compiled
+ * code is checked against. It is kept as simple as it can be, with no
+ * optimization, so it can be trusted.
+ *
+ * It does what the generated code does: reals are single precision and
+ * printed with eight decimal places, integers wrap around, integer division
+ * truncates, and an index out of bounds prints the same message and ends
+ * the program. An expression whose type is real is worked out entirely in
+ * reals, and an integer is converted where a real is expected, as Pascal
+ * does. Operands are evaluated left to right, so a program whose functions
+ * change variables or do input and output may run differently compiled.
+ *
+ * Each call makes an activation holding the parameters, variables and
+ * result of the subprogram, linked to the activation of the subprogram it
+ * is declared in.
+ *
+ * @author ken
+ */
+public class Interpreter
+{
+
+	/**
+	 * What is written when an index is out of bounds.
+	 */
+	public static final String BOUNDS_MESSAGE = "Array index out of bounds\n";
+
+	/**
+	 * The program to run.
+	 */
+	private final ProgramNode program;
+
+	/**
+	 * The symbol table of the program.
+	 */
+	private final SymbolTable symbols;
+
+	/**
+	 * The subprograms, by name.
+	 */
+	private final HashMap<String, SubProgramNode> subprograms
+			= new HashMap<String, SubProgramNode>();
+
+	/**
+	 * The subprogram each subprogram is declared in, or null for one
+	 * declared in the program.
+	 */
+	private final HashMap<SubProgramNode, SubProgramNode> parents
+			= new HashMap<SubProgramNode, SubProgramNode>();
+
+	/**
+	 * The subprogram each variable belongs to, or null for a global.
+	 */
+	private final HashMap<String, SubProgramNode> owners = new HashMap<String, SubProgramNode>();
+
+	/**
+	 * The activation of the subprogram running, and of the program.
+	 */
+	private Activation current;
+	private Activation globals;
+
+	/**
+	 * The input, and the rest of the line being read.
+	 */
+	private BufferedReader in;
+	private StringTokenizer tokens;
+
+	/**
+	 * Where the program writes.
+	 */
+	private Writer out;
+
+	/**
+	 * Statements run, and the most to run before giving up.
+	 */
+	private long steps;
+	private long limit = Long.MAX_VALUE;
+
+	/**
+	 * The variables of one call of a subprogram, or of the program. A
+	 * variable holds an Integer or a Float, and an array an int[] or a
+	 * float[].
+	 */
+	private static class Activation
+	{
+		private SubProgramNode sub;
+
+		/**
+		 * The activation of the subprogram this one is declared in.
+		 */
+		private Activation link;
+
+		private HashMap<String, Object> values = new HashMap<String, Object>();
+	}
+
+	/**
+	 * Thrown to end the program, as syscall 10 does.
+	 */
+	private static class Exit extends RuntimeException
+	{
+		private static final long serialVersionUID = 1L;
+	}
+
+	/**
+	 * Constructor.
+	 * @param program
+	 * @param symbols
+	 */
+	public Interpreter(ProgramNode program, SymbolTable symbols)
+	{
+		this.program = program;
+		this.symbols = symbols;
+		for (VariableNode var : program.getVariables().getVars())
+		{
+			owners.put(var.getName(), null);
+		}
+		declare(program.getFunctions(), null);
+	}
+
+	/**
+	 * Records the subprograms declared in a program or subprogram, and who
+	 * their variables belong to.
+	 * @param functions
+	 * @param parent
+	 */
+	private void declare(SubProgramDeclarationsNode functions, SubProgramNode parent)
+	{
+		if (functions == null)
+		{
+			return;
+		}
+		for (SubProgramNode sub : functions.getSubPrograms())
+		{
+			subprograms.put(sub.getName(), sub);
+			parents.put(sub, parent);
+			for (VariableNode param : sub.getParameters())
+			{
+				owners.put(param.getName(), sub);
+			}
+			for (VariableNode var : sub.getDeclarations().getVars())
+			{
+				owners.put(var.getName(), sub);
+			}
+			if (sub.getResult() != null)
+			{
+				owners.put(sub.getResult().getName(), sub);
+			}
+			declare(sub.getSubDeclarations(), sub);
+		}
+	}
+
+	/**
+	 * Sets the most statements to run before giving up, to stop a program
+	 * that never ends.
+	 * @param limit
+	 */
+	public void setLimit(long limit)
+	{
+		this.limit = limit;
+	}
+
+	/**
+	 * Runs the program on some input.
+	 * @param input
+	 * @return what the program wrote.
+	 * @throws IllegalStateException if the program fails, or runs for more
+	 * than the limit.
+	 */
+	public String run(String input)
+	{
+		StringWriter output = new StringWriter();
+		try
+		{
+			run(new StringReader(input), output);
+		}
+		catch (IOException e)
+		{
+			// A StringReader and StringWriter do not throw.
+			throw new IllegalStateException(e);
+		}
+		return output.toString();
+	}
+
+	/**
+	 * Runs the program.
+	 * @param input what the program reads.
+	 * @param output where the program writes.
+	 * @throws IOException
+	 * @throws IllegalStateException if the program fails, or runs for more
+	 * than the limit.
+	 */
+	public void run(Reader input, Writer output) throws IOException
+	{
+		in = new BufferedReader(input);
+		tokens = new StringTokenizer("");
+		out = output;
+		steps = 0;
+		globals = new Activation();
+		for (VariableNode var : program.getVariables().getVars())
+		{
+			allocate(var, globals);
+		}
+		current = globals;
+		try
+		{
+			statement(program.getMain());
+		}
+		catch (Exit e)
+		{
+			// The program ended early.
+		}
+		catch (UncheckedIOException e)
+		{
+			throw e.getCause();
+		}
+		out.flush();
+	}
+
+	/**
+	 * Makes a variable or array, set to zero.
+	 * @param var
+	 * @param activation
+	 */
+	private void allocate(VariableNode var, Activation activation)
+	{
+		String name = var.getName();
+		boolean real = var.getType() == Token.REAL;
+		if (symbols.getKind(name) == Kind.ARRAY)
+		{
+			int length = Math.max(0, symbols.getEnd(name) - symbols.getStart(name) + 1);
+			activation.values.put(name, real ? new float[length] : new int[length]);
+		}
+		else
+		{
+			activation.values.put(name, real ? (Object) 0.0f : (Object) 0);
+		}
+	}
+
+	/**
+	 * Runs a statement.
+	 * @param stmt
+	 */
+	private void statement(StatementNode stmt)
+	{
+		if (++steps > limit)
+		{
+			throw new IllegalStateException("Ran for more than " + limit + " statements");
+		}
+		if (stmt instanceof AssignmentStatementNode)
+		{
+			AssignmentStatementNode assign = (AssignmentStatementNode) stmt;
+			VariableNode lvalue = assign.getLvalue();
+			boolean real = symbols.getType(lvalue.getName()) == Token.REAL;
+			Object value = real ? (Object) real(assign.getExpression())
+					: (Object) integer(assign.getExpression());
+			if (lvalue instanceof ArrayNode)
+			{
+				Object array = find(lvalue.getName()).values.get(lvalue.getName());
+				int index = index((ArrayNode) lvalue);
+				if (real)
+				{
+					((float[]) array)[index] = (Float) value;
+				}
+				else
+				{
+					((int[]) array)[index] = (Integer) value;
+				}
+			}
+			else
+			{
+				find(lvalue.getName()).values.put(lvalue.getName(), value);
+			}
+		}
+		else if (stmt instanceof ReadNode)
+		{
+			VariableNode input = ((ReadNode) stmt).getInput();
+			String token = token();
+			Object value = input.getType() == Token.REAL ? (Object) Float.parseFloat(token)
+					: (Object) Integer.parseInt(token);
+			find(input.getName()).values.put(input.getName(), value);
+		}
+		else if (stmt instanceof WriteNode)
+		{
+			ExpressionNode output = ((WriteNode) stmt).getOutput();
+			if (output.isReal(symbols))
+			{
+				write(format(real(output)));
+			}
+			else
+			{
+				write(Integer.toString(integer(output)));
+			}
+			write("\n");
+		}
+		else if (stmt instanceof ProcedureStatementNode)
+		{
+			ProcedureStatementNode call = (ProcedureStatementNode) stmt;
+			call(call.getName(), call.getArguments());
+		}
+		else if (stmt instanceof CompoundStatementNode)
+		{
+			for (StatementNode inner : ((CompoundStatementNode) stmt).getStatements())
+			{
+				statement(inner);
+			}
+		}
+		else if (stmt instanceof IfStatementNode)
+		{
+			IfStatementNode ifNode = (IfStatementNode) stmt;
+			StatementNode branch = condition(ifNode.getCondition()) ? ifNode.getStatement()
+					: ifNode.getElseStatement();
+			if (branch != null)
+			{
+				statement(branch);
+			}
+		}
+		else if (stmt instanceof WhileStatementNode)
+		{
+			WhileStatementNode loop = (WhileStatementNode) stmt;
+			while (condition(loop.getCondition()))
+			{
+				if (loop.getStatement() != null)
+				{
+					statement(loop.getStatement());
+				}
+				else if (++steps > limit)
+				{
+					throw new IllegalStateException("Ran for more than " + limit + " statements");
+				}
+			}
+		}
+	}
+
+	/**
+	 * Calls a subprogram.
+	 * @param name
+	 * @param arguments
+	 * @return the result of a function, or null for a procedure.
+	 */
+	private Object call(String name, ArrayList<ExpressionNode> arguments)
+	{
+		SubProgramNode sub = subprograms.get(name);
+		Activation callee = new Activation();
+		callee.sub = sub;
+		callee.link = globals;
+		SubProgramNode parent = parents.get(sub);
+		if (parent != null)
+		{
+			callee.link = current;
+			while (callee.link.sub != parent)
+			{
+				callee.link = callee.link.link;
+			}
+		}
+		for (int i = 0; i < sub.getParameters().size(); i++)
+		{
+			VariableNode param = sub.getParameters().get(i);
+			allocate(param, callee);
+			if (i < arguments.size())
+			{
+				callee.values.put(param.getName(), param.getType() == Token.REAL
+						? (Object) real(arguments.get(i)) : (Object) integer(arguments.get(i)));
+			}
+		}
+		for (VariableNode var : sub.getDeclarations().getVars())
+		{
+			allocate(var, callee);
+		}
+		if (sub.getResult() != null)
+		{
+			allocate(sub.getResult(), callee);
+		}
+		Activation caller = current;
+		current = callee;
+		try
+		{
+			statement(sub.getBody());
+		}
+		finally
+		{
+			current = caller;
+		}
+		return sub.getResult() == null ? null : callee.values.get(sub.getResult().getName());
+	}
+
+	/**
+	 * Finds the activation that holds a variable.
+	 * @param name
+	 * @return
+	 */
+	private Activation find(String name)
+	{
+		SubProgramNode owner = owners.get(name);
+		if (owner == null)
+		{
+			return globals;
+		}
+		Activation activation = current;
+		while (activation.sub != owner)
+		{
+			activation = activation.link;
+		}
+		return activation;
+	}
+
+	/**
+	 * Works out the index of an element in its array, ending the program if
+	 * it is out of bounds.
+	 * @param element
+	 * @return
+	 */
+	private int index(ArrayNode element)
+	{
+		String name = element.getName();
+		int index = integer(element.getIndex()) - symbols.getStart(name);
+		if (index < 0 || index > symbols.getEnd(name) - symbols.getStart(name))
+		{
+			write(BOUNDS_MESSAGE);
+			throw new Exit();
+		}
+		return index;
+	}
+
+	/**
+	 * Check whether the condition of an if or while holds. A not on a
+	 * comparison turns it around, whatever the type of its operands.
+	 * @param cond
+	 * @return
+	 */
+	private boolean condition(ExpressionNode cond)
+	{
+		if (cond instanceof OperationNode && isComparison(((OperationNode) cond).getOperation()))
+		{
+			return compare((OperationNode) cond, cond.isReal(symbols)) ^ cond.isNot();
+		}
+		if (cond.isReal(symbols))
+		{
+			return real(cond) != 0;
+		}
+		return integer(cond) != 0;
+	}
+
+	/**
+	 * Works out a comparison.
+	 * @param op
+	 * @param real true to compare the operands as reals.
+	 * @return
+	 */
+	private boolean compare(OperationNode op, boolean real)
+	{
+		if (real)
+		{
+			float left = real(op.getLeft());
+			float right = real(op.getRight());
+			switch (op.getOperation())
+			{
+				case LESS_THAN:
+					return left < right;
+				case LESS_THAN_EQUAL:
+					return left <= right;
+				case GREATER_THAN:
+					return left > right;
+				case GREATER_THAN_EQUAL:
+					return left >= right;
+				case EQUALS:
+					return left == right;
+				default:
+					return left != right;
+			}
+		}
+		int left = integer(op.getLeft());
+		int right = integer(op.getRight());
+		switch (op.getOperation())
+		{
+			case LESS_THAN:
+				return left < right;
+			case LESS_THAN_EQUAL:
+				return left <= right;
+			case GREATER_THAN:
+				return left > right;
+			case GREATER_THAN_EQUAL:
+				return left >= right;
+			case EQUALS:
+				return left == right;
+			default:
+				return left != right;
+		}
+	}
+
+	/**
+	 * Check whether the operation is a comparison.
+	 * @param operation
+	 * @return
+	 */
+	private static boolean isComparison(Token operation)
+	{
+		return operation == Token.LESS_THAN || operation == Token.LESS_THAN_EQUAL
+				|| operation == Token.GREATER_THAN || operation == Token.GREATER_THAN_EQUAL
+				|| operation == Token.LESS_THAN_GREATER_THAN || operation == Token.EQUALS;
+	}
+
+	/**
+	 * Evaluates an expression as an integer. The not of an expression is
+	 * applied before its sign.
+	 * @param exp
+	 * @return
+	 */
+	private int integer(ExpressionNode exp)
+	{
+		int value;
+		if (exp instanceof ValueNode)
+		{
+			String text = ((ValueNode) exp).getAttribute();
+			if (!exp.isNot())
+			{
+				return Integer.parseInt(exp.getSign() == Token.MINUS ? "-" + text : text);
+			}
+			value = Integer.parseInt(text);
+		}
+		else if (exp instanceof OperationNode && exp.isReal(symbols))
+		{
+			// Only a comparison of reals can be used as an integer.
+			return (int) real(exp);
+		}
+		else if (exp instanceof OperationNode)
+		{
+			OperationNode op = (OperationNode) exp;
+			if (isComparison(op.getOperation()))
+			{
+				value = compare(op, false) ? 1 : 0;
+			}
+			else
+			{
+				int left = integer(op.getLeft());
+				int right = integer(op.getRight());
+				switch (op.getOperation())
+				{
+					case PLUS:
+						value = left + right;
+						break;
+					case MINUS:
+						value = left - right;
+						break;
+					case MULTIPLY:
+						value = left * right;
+						break;
+					default:
+						if (right == 0)
+						{
+							throw new IllegalStateException("Division by zero");
+						}
+						value = left / right;
+						break;
+				}
+			}
+		}
+		else
+		{
+			Object result = value(exp);
+			value = result instanceof Float ? (int) (float) (Float) result : (Integer) result;
+		}
+		if (exp.isNot())
+		{
+			value = value == 0 ? 1 : 0;
+		}
+		return exp.getSign() == Token.MINUS ? -value : value;
+	}
+
+	/**
+	 * Evaluates an expression as a real. A comparison is 1.0 when it holds
+	 * and 0.0 when it does not, and so is not of zero.
+	 * @param exp
+	 * @return
+	 */
+	private float real(ExpressionNode exp)
+	{
+		float value;
+		if (exp instanceof ValueNode)
+		{
+			value = Float.parseFloat(((ValueNode) exp).getAttribute());
+		}
+		else if (exp instanceof OperationNode)
+		{
+			OperationNode op = (OperationNode) exp;
+			if (isComparison(op.getOperation()))
+			{
+				value = compare(op, true) ? 1 : 0;
+			}
+			else
+			{
+				float left = real(op.getLeft());
+				float right = real(op.getRight());
+				switch (op.getOperation())
+				{
+					case PLUS:
+						value = left + right;
+						break;
+					case MINUS:
+						value = left - right;
+						break;
+					case MULTIPLY:
+						value = left * right;
+						break;
+					default:
+						value = left / right;
+						break;
+				}
+			}
+		}
+		else
+		{
+			Object result = value(exp);
+			value = result instanceof Float ? (Float) result : (float) (Integer) result;
+		}
+		if (exp.isNot())
+		{
+			value = value == 0 ? 1 : 0;
+		}
+		return exp.getSign() == Token.MINUS ? -value : value;
+	}
+
+	/**
+	 * The value of a variable, an element of an array or a call, without
+	 * its sign or not.
+	 * @param exp
+	 * @return an Integer or a Float.
+	 */
+	private Object value(ExpressionNode exp)
+	{
+		if (exp instanceof FunctionCallNode)
+		{
+			FunctionCallNode call = (FunctionCallNode) exp;
+			return call(call.getName(), call.getArguments());
+		}
+		String name = ((VariableNode) exp).getName();
+		Object value = find(name).values.get(name);
+		if (exp instanceof ArrayNode)
+		{
+			int index = index((ArrayNode) exp);
+			return value instanceof float[] ? (Object) ((float[]) value)[index]
+					: (Object) ((int[]) value)[index];
+		}
+		return value;
+	}
+
+	/**
+	 * The next number in the input.
+	 * @return
+	 */
+	private String token()
+	{
+		try
+		{
+			while (!tokens.hasMoreTokens())
+			{
+				String line = in.readLine();
+				if (line == null)
+				{
+					throw new IllegalStateException("Read past the end of the input");
+				}
+				tokens = new StringTokenizer(line);
+			}
+		}
+		catch (IOException e)
+		{
+			throw new UncheckedIOException(e);
+		}
+		return tokens.nextToken();
+	}
+
+	/**
+	 * Writes some text.
+	 * @param text
+	 */
+	private void write(String text)
+	{
+		try
+		{
+			out.write(text);
+		}
+		catch (IOException e)
+		{
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	/**
+	 * A real as the generated code prints it.
+	 * @param value
+	 * @return
+	 */
+	public static String format(float value)
+	{
+		return String.format(Locale.ROOT, "%.8f", value);
+	}
+}
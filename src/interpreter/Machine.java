@@ -0,0 +1,123 @@
+package interpreter;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.util.StringTokenizer;
+
+/**
+ * What the specialized nodes share while a program runs: the input, the
+ * output, and the count of statements against the limit.
+ *
+ * @author ken
+ */
+final class Machine
+{
+
+	/**
+	 * The input, and the rest of the line being read.
+	 */
+	private BufferedReader in;
+	private StringTokenizer tokens;
+
+	/**
+	 * Where the program writes.
+	 */
+	private Writer out;
+
+	/**
+	 * Statements run, and the most to run before giving up.
+	 */
+	private long steps;
+	long limit = Long.MAX_VALUE;
+
+	/**
+	 * Thrown to end the program, as syscall 10 does.
+	 */
+	static final class Exit extends RuntimeException
+	{
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		public Throwable fillInStackTrace()
+		{
+			return this;
+		}
+	}
+
+	/**
+	 * Starts a run.
+	 * @param input
+	 * @param output
+	 */
+	void start(Reader input, Writer output)
+	{
+		in = new BufferedReader(input);
+		tokens = new StringTokenizer("");
+		out = output;
+		steps = 0;
+	}
+
+	/**
+	 * Counts a statement, as the reference interpreter does.
+	 * @throws IllegalStateException past the limit.
+	 */
+	void count()
+	{
+		if (++steps > limit)
+		{
+			throw new IllegalStateException("Ran for more than " + limit + " statements");
+		}
+	}
+
+	/**
+	 * The next number in the input.
+	 * @return
+	 */
+	String token()
+	{
+		try
+		{
+			while (!tokens.hasMoreTokens())
+			{
+				String line = in.readLine();
+				if (line == null)
+				{
+					throw new IllegalStateException("Read past the end of the input");
+				}
+				tokens = new StringTokenizer(line);
+			}
+		}
+		catch (IOException e)
+		{
+			throw new UncheckedIOException(e);
+		}
+		return tokens.nextToken();
+	}
+
+	/**
+	 * Writes some text.
+	 * @param text
+	 */
+	void write(String text)
+	{
+		try
+		{
+			out.write(text);
+		}
+		catch (IOException e)
+		{
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	/**
+	 * Writes the message for an index out of bounds, and ends the program.
+	 */
+	void outOfBounds()
+	{
+		write(Interpreter.BOUNDS_MESSAGE);
+		throw new Exit();
+	}
+}
@@ -0,0 +1,262 @@
+package interpreter;
+
+/**
+ * An expression worked out as a real, with a node for each operation as
+ * IntNode has.
+ *
+ * @author ken
+ */
+abstract class RealNode
+{
+
+	abstract float execute(Frame frame);
+
+	static final class Constant extends RealNode
+	{
+		private final float value;
+
+		Constant(float value)
+		{
+			this.value = value;
+		}
+
+		@Override
+		float execute(Frame frame)
+		{
+			return value;
+		}
+	}
+
+	/**
+	 * A variable of the routine running.
+	 */
+	static final class Local extends RealNode
+	{
+		private final int slot;
+
+		Local(int slot)
+		{
+			this.slot = slot;
+		}
+
+		@Override
+		float execute(Frame frame)
+		{
+			return frame.reals[slot];
+		}
+	}
+
+	/**
+	 * A variable of a routine it is declared in.
+	 */
+	static final class Nonlocal extends RealNode
+	{
+		private final int hops;
+		private final int slot;
+
+		Nonlocal(int hops, int slot)
+		{
+			this.hops = hops;
+			this.slot = slot;
+		}
+
+		@Override
+		float execute(Frame frame)
+		{
+			return frame.up(hops).reals[slot];
+		}
+	}
+
+	static final class Element extends RealNode
+	{
+		private final int hops;
+		private final int slot;
+		private final IntNode index;
+		private final int start;
+		private final Machine machine;
+
+		Element(int hops, int slot, IntNode index, int start, Machine machine)
+		{
+			this.hops = hops;
+			this.slot = slot;
+			this.index = index;
+			this.start = start;
+			this.machine = machine;
+		}
+
+		@Override
+		float execute(Frame frame)
+		{
+			float[] array = frame.up(hops).realArrays[slot];
+			int i = index.execute(frame) - start;
+			if (i < 0 || i >= array.length)
+			{
+				machine.outOfBounds();
+			}
+			return array[i];
+		}
+	}
+
+	static final class Add extends RealNode
+	{
+		private final RealNode left;
+		private final RealNode right;
+
+		Add(RealNode left, RealNode right)
+		{
+			this.left = left;
+			this.right = right;
+		}
+
+		@Override
+		float execute(Frame frame)
+		{
+			return left.execute(frame) + right.execute(frame);
+		}
+	}
+
+	static final class Subtract extends RealNode
+	{
+		private final RealNode left;
+		private final RealNode right;
+
+		Subtract(RealNode left, RealNode right)
+		{
+			this.left = left;
+			this.right = right;
+		}
+
+		@Override
+		float execute(Frame frame)
+		{
+			return left.execute(frame) - right.execute(frame);
+		}
+	}
+
+	static final class Multiply extends RealNode
+	{
+		private final RealNode left;
+		private final RealNode right;
+
+		Multiply(RealNode left, RealNode right)
+		{
+			this.left = left;
+			this.right = right;
+		}
+
+		@Override
+		float execute(Frame frame)
+		{
+			return left.execute(frame) * right.execute(frame);
+		}
+	}
+
+	static final class Divide extends RealNode
+	{
+		private final RealNode left;
+		private final RealNode right;
+
+		Divide(RealNode left, RealNode right)
+		{
+			this.left = left;
+			this.right = right;
+		}
+
+		@Override
+		float execute(Frame frame)
+		{
+			return left.execute(frame) / right.execute(frame);
+		}
+	}
+
+	static final class Not extends RealNode
+	{
+		private final RealNode operand;
+
+		Not(RealNode operand)
+		{
+			this.operand = operand;
+		}
+
+		@Override
+		float execute(Frame frame)
+		{
+			return operand.execute(frame) == 0 ? 1 : 0;
+		}
+	}
+
+	static final class Negate extends RealNode
+	{
+		private final RealNode operand;
+
+		Negate(RealNode operand)
+		{
+			this.operand = operand;
+		}
+
+		@Override
+		float execute(Frame frame)
+		{
+			return -operand.execute(frame);
+		}
+	}
+
+	/**
+	 * An integer where a real is expected.
+	 */
+	static final class Convert extends RealNode
+	{
+		private final IntNode operand;
+
+		Convert(IntNode operand)
+		{
+			this.operand = operand;
+		}
+
+		@Override
+		float execute(Frame frame)
+		{
+			return operand.execute(frame);
+		}
+	}
+
+	/**
+	 * A comparison, 1.0 when it holds and 0.0 when it does not.
+	 */
+	static final class Compare extends RealNode
+	{
+		private final Condition test;
+
+		Compare(Condition test)
+		{
+			this.test = test;
+		}
+
+		@Override
+		float execute(Frame frame)
+		{
+			return test.execute(frame) ? 1 : 0;
+		}
+	}
+
+	/**
+	 * A call of a function whose result is a real.
+	 */
+	static final class Result extends RealNode
+	{
+		private final Call call;
+		private final int slot;
+
+		Result(Call call, int slot)
+		{
+			this.call = call;
+			this.slot = slot;
+		}
+
+		@Override
+		float execute(Frame frame)
+		{
+			return call.invoke(frame).reals[slot];
+		}
+	}
+}
@@ -0,0 +1,106 @@
+package interpreter;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import syntaxtree.SubProgramNode;
+
+/**
+ * A subprogram, or the program, as the fast interpreter runs it: where each
+ * of its variables lives in a frame, and its body once translated.
+ *
+ * The body is translated into specialized nodes the first time it is
+ * called, so a subprogram that is never called is never translated.
+ *
+ * @author ken
+ */
+final class Routine
+{
+
+	/**
+	 * How deeply it is nested: 0 for the program, 1 for a subprogram
+	 * declared in the program, and so on.
+	 */
+	final int level;
+
+	/**
+	 * The subprogram, or null for the program.
+	 */
+	final SubProgramNode sub;
+
+	/**
+	 * The number of integers and reals in a frame, and the length of each
+	 * array.
+	 */
+	int ints;
+	int reals;
+	final ArrayList<Integer> intArrays = new ArrayList<Integer>();
+	final ArrayList<Integer> realArrays = new ArrayList<Integer>();
+
+	/**
+	 * The slot of each variable, by name.
+	 */
+	final HashMap<String, Integer> slots = new HashMap<String, Integer>();
+
+	/**
+	 * The names of the variables and arrays that hold reals.
+	 */
+	final HashSet<String> realNames = new HashSet<String>();
+
+	/**
+	 * What translates the body.
+	 */
+	private final FastInterpreter interpreter;
+
+	private Statement body;
+
+	/**
+	 * Constructor.
+	 * @param interpreter
+	 * @param sub
+	 * @param level
+	 */
+	Routine(FastInterpreter interpreter, SubProgramNode sub, int level)
+	{
+		this.interpreter = interpreter;
+		this.sub = sub;
+		this.level = level;
+	}
+
+	/**
+	 * Gives a variable the next slot of its kind.
+	 * @param name
+	 * @param real
+	 * @param length the length of an array, or -1 for a variable.
+	 */
+	void allocate(String name, boolean real, int length)
+	{
+		if (real)
+		{
+			realNames.add(name);
+		}
+		if (length >= 0)
+		{
+			ArrayList<Integer> arrays = real ? realArrays : intArrays;
+			slots.put(name, arrays.size());
+			arrays.add(length);
+		}
+		else
+		{
+			slots.put(name, real ? reals++ : ints++);
+		}
+	}
+
+	/**
+	 * The body, translated the first time it is asked for.
+	 * @return
+	 */
+	Statement body()
+	{
+		if (body == null)
+		{
+			body = interpreter.translate(this);
+		}
+		return body;
+	}
+}
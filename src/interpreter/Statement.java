@@ -0,0 +1,329 @@
+package interpreter;
+
+/**
+ * A statement, with a node for each kind of statement and of variable it
+ * sets. Each counts itself against the limit as it runs, as the reference
+ * interpreter does, so both give up on the same programs.
+ *
+ * @author ken
+ */
+abstract class Statement
+{
+
+	final Machine machine;
+
+	Statement(Machine machine)
+	{
+		this.machine = machine;
+	}
+
+	abstract void execute(Frame frame);
+
+	/**
+	 * A missing statement, which still counts.
+	 */
+	static final class Empty extends Statement
+	{
+		Empty(Machine machine)
+		{
+			super(machine);
+		}
+
+		@Override
+		void execute(Frame frame)
+		{
+			machine.count();
+		}
+	}
+
+	static final class SetInt extends Statement
+	{
+		private final int hops;
+		private final int slot;
+		private final IntNode value;
+
+		SetInt(Machine machine, int hops, int slot, IntNode value)
+		{
+			super(machine);
+			this.hops = hops;
+			this.slot = slot;
+			this.value = value;
+		}
+
+		@Override
+		void execute(Frame frame)
+		{
+			machine.count();
+			int result = value.execute(frame);
+			frame.up(hops).ints[slot] = result;
+		}
+	}
+
+	static final class SetReal extends Statement
+	{
+		private final int hops;
+		private final int slot;
+		private final RealNode value;
+
+		SetReal(Machine machine, int hops, int slot, RealNode value)
+		{
+			super(machine);
+			this.hops = hops;
+			this.slot = slot;
+			this.value = value;
+		}
+
+		@Override
+		void execute(Frame frame)
+		{
+			machine.count();
+			float result = value.execute(frame);
+			frame.up(hops).reals[slot] = result;
+		}
+	}
+
+	/**
+	 * Sets an element of an array of integers. The value is worked out
+	 * before the index.
+	 */
+	static final class SetIntElement extends Statement
+	{
+		private final int hops;
+		private final int slot;
+		private final IntNode index;
+		private final int start;
+		private final IntNode value;
+
+		SetIntElement(Machine machine, int hops, int slot, IntNode index, int start,
+				IntNode value)
+		{
+			super(machine);
+			this.hops = hops;
+			this.slot = slot;
+			this.index = index;
+			this.start = start;
+			this.value = value;
+		}
+
+		@Override
+		void execute(Frame frame)
+		{
+			machine.count();
+			int result = value.execute(frame);
+			int[] array = frame.up(hops).intArrays[slot];
+			int i = index.execute(frame) - start;
+			if (i < 0 || i >= array.length)
+			{
+				machine.outOfBounds();
+			}
+			array[i] = result;
+		}
+	}
+
+	/**
+	 * Sets an element of an array of reals.
+	 */
+	static final class SetRealElement extends Statement
+	{
+		private final int hops;
+		private final int slot;
+		private final IntNode index;
+		private final int start;
+		private final RealNode value;
+
+		SetRealElement(Machine machine, int hops, int slot, IntNode index, int start,
+				RealNode value)
+		{
+			super(machine);
+			this.hops = hops;
+			this.slot = slot;
+			this.index = index;
+			this.start = start;
+			this.value = value;
+		}
+
+		@Override
+		void execute(Frame frame)
+		{
+			machine.count();
+			float result = value.execute(frame);
+			float[] array = frame.up(hops).realArrays[slot];
+			int i = index.execute(frame) - start;
+			if (i < 0 || i >= array.length)
+			{
+				machine.outOfBounds();
+			}
+			array[i] = result;
+		}
+	}
+
+	static final class ReadInt extends Statement
+	{
+		private final int hops;
+		private final int slot;
+
+		ReadInt(Machine machine, int hops, int slot)
+		{
+			super(machine);
+			this.hops = hops;
+			this.slot = slot;
+		}
+
+		@Override
+		void execute(Frame frame)
+		{
+			machine.count();
+			frame.up(hops).ints[slot] = Integer.parseInt(machine.token());
+		}
+	}
+
+	static final class ReadReal extends Statement
+	{
+		private final int hops;
+		private final int slot;
+
+		ReadReal(Machine machine, int hops, int slot)
+		{
+			super(machine);
+			this.hops = hops;
+			this.slot = slot;
+		}
+
+		@Override
+		void execute(Frame frame)
+		{
+			machine.count();
+			frame.up(hops).reals[slot] = Float.parseFloat(machine.token());
+		}
+	}
+
+	static final class WriteInt extends Statement
+	{
+		private final IntNode output;
+
+		WriteInt(Machine machine, IntNode output)
+		{
+			super(machine);
+			this.output = output;
+		}
+
+		@Override
+		void execute(Frame frame)
+		{
+			machine.count();
+			machine.write(output.execute(frame) + "\n");
+		}
+	}
+
+	static final class WriteReal extends Statement
+	{
+		private final RealNode output;
+
+		WriteReal(Machine machine, RealNode output)
+		{
+			super(machine);
+			this.output = output;
+		}
+
+		@Override
+		void execute(Frame frame)
+		{
+			machine.count();
+			machine.write(Interpreter.format(output.execute(frame)) + "\n");
+		}
+	}
+
+	static final class Procedure extends Statement
+	{
+		private final Call call;
+
+		Procedure(Machine machine, Call call)
+		{
+			super(machine);
+			this.call = call;
+		}
+
+		@Override
+		void execute(Frame frame)
+		{
+			machine.count();
+			call.invoke(frame);
+		}
+	}
+
+	static final class Block extends Statement
+	{
+		private final Statement[] statements;
+
+		Block(Machine machine, Statement[] statements)
+		{
+			super(machine);
+			this.statements = statements;
+		}
+
+		@Override
+		void execute(Frame frame)
+		{
+			machine.count();
+			for (Statement statement : statements)
+			{
+				statement.execute(frame);
+			}
+		}
+	}
+
+	/**
+	 * An if, either of whose branches may be missing.
+	 */
+	static final class If extends Statement
+	{
+		private final Condition condition;
+		private final Statement then;
+		private final Statement otherwise;
+
+		If(Machine machine, Condition condition, Statement then, Statement otherwise)
+		{
+			super(machine);
+			this.condition = condition;
+			this.then = then;
+			this.otherwise = otherwise;
+		}
+
+		@Override
+		void execute(Frame frame)
+		{
+			machine.count();
+			Statement branch = condition.execute(frame) ? then : otherwise;
+			if (branch != null)
+			{
+				branch.execute(frame);
+			}
+		}
+	}
+
+	/**
+	 * A while. A missing body counts each time around.
+	 */
+	static final class While extends Statement
+	{
+		private final Condition condition;
+		private final Statement body;
+
+		While(Machine machine, Condition condition, Statement body)
+		{
+			super(machine);
+			this.condition = condition;
+			this.body = body == null ? new Empty(machine) : body;
+		}
+
+		@Override
+		void execute(Frame frame)
+		{
+			machine.count();
+			while (condition.execute(frame))
+			{
+				body.execute(frame);
+			}
+		}
+	}
+}
@@ -0,0 +1,30 @@
+package interpreter;
+
+import java.io.IOException;
+
+/**
+ * Wraps an IOException so it can be thrown where an IOException can not,
+ * from deep in the tree a program is run from, or from compiled code.
+ *
+ * @author ken
+ */
+public final class UncheckedIOException extends RuntimeException
+{
+
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * Constructor.
+	 * @param cause
+	 */
+	public UncheckedIOException(IOException cause)
+	{
+		super(cause);
+	}
+
+	@Override
+	public IOException getCause()
+	{
+		return (IOException) super.getCause();
+	}
+}
@@ -0,0 +1,357 @@
+package jvm;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+
+/**
+ * A class of public static fields and methods, written out as a class file.
+ *
+ * The class file is version 49, so the JVM verifies it by inferring the
+ * types of the locals and the stack, and no stack map frames are needed.
+ *
+ * @author ken
+ */
+public class ClassFile
+{
+
+	private static final int VERSION = 49;
+
+	private static final int ACC_PUBLIC = 0x0001;
+	private static final int ACC_STATIC = 0x0008;
+	private static final int ACC_SUPER = 0x0020;
+
+	private static final int CONSTANT_UTF8 = 1;
+	private static final int CONSTANT_INTEGER = 3;
+	private static final int CONSTANT_FLOAT = 4;
+	private static final int CONSTANT_CLASS = 7;
+	private static final int CONSTANT_FIELDREF = 9;
+	private static final int CONSTANT_METHODREF = 10;
+	private static final int CONSTANT_NAME_AND_TYPE = 12;
+
+	/**
+	 * The most bytes of code a method may have.
+	 */
+	private static final int MAX_CODE = 65535;
+
+	/**
+	 * The internal name of the class, such as pascal/happyPath.
+	 */
+	private final String name;
+
+	/**
+	 * The constant pool, written out as it is added to, and the index of
+	 * each constant in it.
+	 */
+	private final ByteArrayOutputStream pool = new ByteArrayOutputStream();
+	private final DataOutputStream poolOut = new DataOutputStream(pool);
+	private final HashMap<String, Integer> constants = new HashMap<String, Integer>();
+	private int poolCount = 1;
+
+	/**
+	 * The fields and methods, written out.
+	 */
+	private final ArrayList<byte[]> fields = new ArrayList<byte[]>();
+	private final ArrayList<byte[]> methods = new ArrayList<byte[]>();
+
+	/**
+	 * Constructor.
+	 * @param name the internal name of the class.
+	 */
+	public ClassFile(String name)
+	{
+		this.name = name;
+	}
+
+	/**
+	 * Get the internal name of the class.
+	 * @return
+	 */
+	public String getName()
+	{
+		return name;
+	}
+
+	/**
+	 * Adds a public static field.
+	 * @param field
+	 * @param descriptor
+	 */
+	public void field(String field, String descriptor)
+	{
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(bytes);
+		try
+		{
+			out.writeShort(ACC_PUBLIC | ACC_STATIC);
+			out.writeShort(utf8(field));
+			out.writeShort(utf8(descriptor));
+			out.writeShort(0);
+		}
+		catch (IOException e)
+		{
+			// A ByteArrayOutputStream does not throw.
+			throw new IllegalStateException(e);
+		}
+		fields.add(bytes.toByteArray());
+	}
+
+	/**
+	 * Adds a public static method.
+	 * @param method
+	 * @param descriptor
+	 * @param code
+	 */
+	public void method(String method, String descriptor, Code code)
+	{
+		byte[] bytecode = code.getBytes();
+		if (bytecode.length > MAX_CODE)
+		{
+			throw new IllegalStateException("Method " + method + " is too large");
+		}
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(bytes);
+		try
+		{
+			out.writeShort(ACC_PUBLIC | ACC_STATIC);
+			out.writeShort(utf8(method));
+			out.writeShort(utf8(descriptor));
+			out.writeShort(1);
+			out.writeShort(utf8("Code"));
+			out.writeInt(12 + bytecode.length);
+			out.writeShort(code.getMaxStack());
+			out.writeShort(code.getMaxLocals());
+			out.writeInt(bytecode.length);
+			out.write(bytecode);
+			// No exception table and no attributes.
+			out.writeShort(0);
+			out.writeShort(0);
+		}
+		catch (IOException e)
+		{
+			throw new IllegalStateException(e);
+		}
+		methods.add(bytes.toByteArray());
+	}
+
+	/**
+	 * The index of a field in the constant pool.
+	 * @param owner
+	 * @param field
+	 * @param descriptor
+	 * @return
+	 */
+	public int fieldRef(String owner, String field, String descriptor)
+	{
+		return member(CONSTANT_FIELDREF, owner, field, descriptor);
+	}
+
+	/**
+	 * The index of a method in the constant pool.
+	 * @param owner
+	 * @param method
+	 * @param descriptor
+	 * @return
+	 */
+	public int methodRef(String owner, String method, String descriptor)
+	{
+		return member(CONSTANT_METHODREF, owner, method, descriptor);
+	}
+
+	/**
+	 * The index of an int in the constant pool.
+	 * @param value
+	 * @return
+	 */
+	public int integer(int value)
+	{
+		String key = CONSTANT_INTEGER + ":" + value;
+		Integer index = constants.get(key);
+		if (index == null)
+		{
+			try
+			{
+				poolOut.writeByte(CONSTANT_INTEGER);
+				poolOut.writeInt(value);
+			}
+			catch (IOException e)
+			{
+				throw new IllegalStateException(e);
+			}
+			index = add(key);
+		}
+		return index;
+	}
+
+	/**
+	 * The index of a float in the constant pool.
+	 * @param value
+	 * @return
+	 */
+	public int real(float value)
+	{
+		int bits = Float.floatToRawIntBits(value);
+		String key = CONSTANT_FLOAT + ":" + bits;
+		Integer index = constants.get(key);
+		if (index == null)
+		{
+			try
+			{
+				poolOut.writeByte(CONSTANT_FLOAT);
+				poolOut.writeInt(bits);
+			}
+			catch (IOException e)
+			{
+				throw new IllegalStateException(e);
+			}
+			index = add(key);
+		}
+		return index;
+	}
+
+	/**
+	 * Writes out the class file.
+	 * @return
+	 */
+	public byte[] toByteArray()
+	{
+		int thisClass = classRef(name);
+		int superClass = classRef("java/lang/Object");
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(bytes);
+		try
+		{
+			out.writeInt(0xCAFEBABE);
+			out.writeShort(0);
+			out.writeShort(VERSION);
+			out.writeShort(poolCount);
+			poolOut.flush();
+			out.write(pool.toByteArray());
+			out.writeShort(ACC_PUBLIC | ACC_SUPER);
+			out.writeShort(thisClass);
+			out.writeShort(superClass);
+			out.writeShort(0);
+			out.writeShort(fields.size());
+			for (byte[] field : fields)
+			{
+				out.write(field);
+			}
+			out.writeShort(methods.size());
+			for (byte[] method : methods)
+			{
+				out.write(method);
+			}
+			out.writeShort(0);
+		}
+		catch (IOException e)
+		{
+			throw new IllegalStateException(e);
+		}
+		return bytes.toByteArray();
+	}
+
+	private int member(int tag, String owner, String member, String descriptor)
+	{
+		String key = tag + ":" + owner + "." + member + ":" + descriptor;
+		Integer index = constants.get(key);
+		if (index == null)
+		{
+			int ownerIndex = classRef(owner);
+			int nameAndType = nameAndType(member, descriptor);
+			try
+			{
+				poolOut.writeByte(tag);
+				poolOut.writeShort(ownerIndex);
+				poolOut.writeShort(nameAndType);
+			}
+			catch (IOException e)
+			{
+				throw new IllegalStateException(e);
+			}
+			index = add(key);
+		}
+		return index;
+	}
+
+	private int nameAndType(String member, String descriptor)
+	{
+		String key = CONSTANT_NAME_AND_TYPE + ":" + member + ":" + descriptor;
+		Integer index = constants.get(key);
+		if (index == null)
+		{
+			int nameIndex = utf8(member);
+			int descriptorIndex = utf8(descriptor);
+			try
+			{
+				poolOut.writeByte(CONSTANT_NAME_AND_TYPE);
+				poolOut.writeShort(nameIndex);
+				poolOut.writeShort(descriptorIndex);
+			}
+			catch (IOException e)
+			{
+				throw new IllegalStateException(e);
+			}
+			index = add(key);
+		}
+		return index;
+	}
+
+	private int classRef(String className)
+	{
+		String key = CONSTANT_CLASS + ":" + className;
+		Integer index = constants.get(key);
+		if (index == null)
+		{
+			int nameIndex = utf8(className);
+			try
+			{
+				poolOut.writeByte(CONSTANT_CLASS);
+				poolOut.writeShort(nameIndex);
+			}
+			catch (IOException e)
+			{
+				throw new IllegalStateException(e);
+			}
+			index = add(key);
+		}
+		return index;
+	}
+
+	private int utf8(String text)
+	{
+		String key = CONSTANT_UTF8 + ":" + text;
+		Integer index = constants.get(key);
+		if (index == null)
+		{
+			try
+			{
+				poolOut.writeByte(CONSTANT_UTF8);
+				poolOut.writeUTF(text);
+			}
+			catch (IOException e)
+			{
+				throw new IllegalStateException(e);
+			}
+			index = add(key);
+		}
+		return index;
+	}
+
+	/**
+	 * Records a constant just written to the pool.
+	 * @param key
+	 * @return its index.
+	 */
+	private int add(String key)
+	{
+		if (poolCount == 65535)
+		{
+			throw new IllegalStateException("Too many constants in " + name);
+		}
+		int index = poolCount++;
+		constants.put(key, index);
+		return index;
+	}
+}
@@ -0,0 +1,224 @@
+package jvm;
+
+import java.util.Arrays;
+
+/**
+ * The bytecode of a method, emitted in to in order. It keeps track of the
+ * depth of the operand stack and the locals used, for the max_stack and
+ * max_locals of the class file.
+ *
+ * @author ken
+ */
+public class Code
+{
+
+	private byte[] bytes = new byte[64];
+	private int length;
+
+	/**
+	 * The depth of the operand stack after the last instruction, and the
+	 * deepest it gets.
+	 */
+	private int depth;
+	private int maxStack;
+
+	/**
+	 * One more than the highest local used.
+	 */
+	private int maxLocals;
+
+	/**
+	 * Adds an instruction without operands.
+	 * @param opcode
+	 */
+	public void emit(Opcode opcode)
+	{
+		if (opcode.getOperandBytes() != 0 || opcode.isBranch())
+		{
+			throw new IllegalArgumentException(opcode + " takes an operand");
+		}
+		add(opcode.getCode());
+		stack(opcode.getStack());
+	}
+
+	/**
+	 * Adds an instruction with an operand: a constant, a local, or an index
+	 * in the constant pool.
+	 * @param opcode
+	 * @param operand
+	 */
+	public void emit(Opcode opcode, int operand)
+	{
+		if (opcode.getOperandBytes() == 0 || opcode.isBranch())
+		{
+			throw new IllegalArgumentException(opcode + " does not take an operand");
+		}
+		switch (opcode)
+		{
+			case ILOAD:
+			case FLOAD:
+			case ALOAD:
+			case ISTORE:
+			case FSTORE:
+			case ASTORE:
+				if (operand > 255)
+				{
+					throw new IllegalStateException("Too many locals in a method");
+				}
+				maxLocals = Math.max(maxLocals, operand + 1);
+				break;
+			default:
+				break;
+		}
+		add(opcode.getCode());
+		if (opcode.getOperandBytes() == 2)
+		{
+			add(operand >> 8);
+		}
+		add(operand);
+		stack(opcode.getStack());
+	}
+
+	/**
+	 * Adds a call.
+	 * @param opcode invokestatic or invokevirtual.
+	 * @param method the index of the method in the constant pool.
+	 * @param descriptor the descriptor of the method.
+	 */
+	public void invoke(Opcode opcode, int method, String descriptor)
+	{
+		add(opcode.getCode());
+		add(method >> 8);
+		add(method);
+		int change = opcode == Opcode.INVOKESTATIC ? 0 : -1;
+		int end = descriptor.indexOf(')');
+		for (int i = 1; i < end; i++)
+		{
+			// Only ints, floats and arrays of them are passed.
+			if (descriptor.charAt(i) == '[')
+			{
+				i++;
+			}
+			change--;
+		}
+		if (descriptor.charAt(end + 1) != 'V')
+		{
+			change++;
+		}
+		stack(change);
+	}
+
+	/**
+	 * Adds a branch or goto.
+	 * @param opcode
+	 * @param target
+	 */
+	public void branch(Opcode opcode, Label target)
+	{
+		if (!opcode.isBranch())
+		{
+			throw new IllegalArgumentException(opcode + " is not a branch");
+		}
+		int at = length;
+		add(opcode.getCode());
+		add(0);
+		add(0);
+		stack(opcode.getStack());
+		target.depth = depth;
+		if (target.position >= 0)
+		{
+			patch(at, target.position);
+		}
+		else
+		{
+			target.branches.add(at);
+		}
+	}
+
+	/**
+	 * Places a label at the next instruction.
+	 * @param label
+	 */
+	public void label(Label label)
+	{
+		label.position = length;
+		if (label.depth >= 0)
+		{
+			depth = label.depth;
+		}
+		label.depth = depth;
+		for (int at : label.branches)
+		{
+			patch(at, length);
+		}
+		label.branches.clear();
+	}
+
+	/**
+	 * Notes a local used other than by a load or store, such as a
+	 * parameter.
+	 * @param index
+	 */
+	public void local(int index)
+	{
+		maxLocals = Math.max(maxLocals, index + 1);
+	}
+
+	/**
+	 * Get the bytecode.
+	 * @return
+	 */
+	public byte[] getBytes()
+	{
+		return Arrays.copyOf(bytes, length);
+	}
+
+	/**
+	 * Get the deepest the operand stack gets.
+	 * @return
+	 */
+	public int getMaxStack()
+	{
+		return maxStack;
+	}
+
+	/**
+	 * Get the number of locals used, parameters included.
+	 * @return
+	 */
+	public int getMaxLocals()
+	{
+		return maxLocals;
+	}
+
+	/**
+	 * Fills in the offset of a branch.
+	 * @param at where the branch is.
+	 * @param target where it goes.
+	 */
+	private void patch(int at, int target)
+	{
+		int offset = target - at;
+		if (offset < Short.MIN_VALUE || offset > Short.MAX_VALUE)
+		{
+			throw new IllegalStateException("Method too large to branch across");
+		}
+		bytes[at + 1] = (byte) (offset >> 8);
+		bytes[at + 2] = (byte) offset;
+	}
+
+	private void stack(int change)
+	{
+		depth += change;
+		maxStack = Math.max(maxStack, depth);
+	}
+
+	private void add(int b)
+	{
+		if (length == bytes.length)
+		{
+			bytes = Arrays.copyOf(bytes, 2 * length);
+		}
+		bytes[length++] = (byte) b;
+	}
+}
@@ -0,0 +1,113 @@
+package jvm;
+
+import interpreter.Interpreter;
+import interpreter.UncheckedIOException;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.util.StringTokenizer;
+
+/**
+ * The reads and writes of a compiled program, buffered. The generated code
+ * calls these for read and write, through the console its class is given.
+ * Numbers are read and written as the generated MIPS reads and writes them.
+ *
+ * @author ken
+ */
+public final class Console
+{
+
+	/**
+	 * The input, and the rest of the line being read.
+	 */
+	private final BufferedReader in;
+	private StringTokenizer tokens = new StringTokenizer("");
+
+	/**
+	 * Where the program writes.
+	 */
+	private final BufferedWriter out;
+
+	/**
+	 * Constructor.
+	 * @param input
+	 * @param output
+	 */
+	Console(Reader input, Writer output)
+	{
+		in = new BufferedReader(input);
+		out = new BufferedWriter(output);
+	}
+
+	public int readInt()
+	{
+		return Integer.parseInt(token());
+	}
+
+	public float readReal()
+	{
+		return Float.parseFloat(token());
+	}
+
+	public void write(int value)
+	{
+		write(value + "\n");
+	}
+
+	public void write(float value)
+	{
+		write(Interpreter.format(value) + "\n");
+	}
+
+	/**
+	 * Writes some text.
+	 * @param text
+	 */
+	void write(String text)
+	{
+		try
+		{
+			out.write(text);
+		}
+		catch (IOException e)
+		{
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	/**
+	 * Writes out what is buffered.
+	 * @throws IOException
+	 */
+	void flush() throws IOException
+	{
+		out.flush();
+	}
+
+	/**
+	 * The next number in the input.
+	 * @return
+	 */
+	private String token()
+	{
+		try
+		{
+			while (!tokens.hasMoreTokens())
+			{
+				String line = in.readLine();
+				if (line == null)
+				{
+					throw new IllegalStateException("Read past the end of the input");
+				}
+				tokens = new StringTokenizer(line);
+			}
+		}
+		catch (IOException e)
+		{
+			throw new UncheckedIOException(e);
+		}
+		return tokens.nextToken();
+	}
+}
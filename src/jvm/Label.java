@@ -0,0 +1,29 @@
+package jvm;
+
+import java.util.ArrayList;
+
+/**
+ * A place in the code of a method that branches go to. Branches to it
+ * before it is placed are filled in when it is.
+ *
+ * @author ken
+ */
+public class Label
+{
+
+	/**
+	 * Where it is in the code, or -1 until it is placed.
+	 */
+	int position = -1;
+
+	/**
+	 * The depth of the operand stack at it, or -1 until a branch to it or
+	 * its placing says.
+	 */
+	int depth = -1;
+
+	/**
+	 * Where each branch to it before it was placed is in the code.
+	 */
+	final ArrayList<Integer> branches = new ArrayList<Integer>();
+}
@@ -0,0 +1,165 @@
+package jvm;
+
+/**
+ * The JVM opcodes the bytecode generator emits, with the bytes of their
+ * operands and how much they change the depth of the operand stack. The
+ * depth an invoke changes it by depends on the method, so Code works it
+ * out from the descriptor.
+ *
+ * @author ken
+ */
+public enum Opcode
+{
+	ICONST_M1(0x02, 0, 1),
+	ICONST_0(0x03, 0, 1),
+	ICONST_1(0x04, 0, 1),
+	ICONST_2(0x05, 0, 1),
+	ICONST_3(0x06, 0, 1),
+	ICONST_4(0x07, 0, 1),
+	ICONST_5(0x08, 0, 1),
+	FCONST_0(0x0b, 0, 1),
+	FCONST_1(0x0c, 0, 1),
+	FCONST_2(0x0d, 0, 1),
+	BIPUSH(0x10, 1, 1),
+	SIPUSH(0x11, 2, 1),
+	LDC(0x12, 1, 1),
+	LDC_W(0x13, 2, 1),
+	ILOAD(0x15, 1, 1),
+	FLOAD(0x17, 1, 1),
+	ALOAD(0x19, 1, 1),
+	IALOAD(0x2e, 0, -1),
+	FALOAD(0x30, 0, -1),
+	ISTORE(0x36, 1, -1),
+	FSTORE(0x38, 1, -1),
+	ASTORE(0x3a, 1, -1),
+	IASTORE(0x4f, 0, -3),
+	FASTORE(0x51, 0, -3),
+	POP(0x57, 0, -1),
+	DUP(0x59, 0, 1),
+	IADD(0x60, 0, -1),
+	FADD(0x62, 0, -1),
+	ISUB(0x64, 0, -1),
+	FSUB(0x66, 0, -1),
+	IMUL(0x68, 0, -1),
+	FMUL(0x6a, 0, -1),
+	IDIV(0x6c, 0, -1),
+	FDIV(0x6e, 0, -1),
+	INEG(0x74, 0, 0),
+	FNEG(0x76, 0, 0),
+	ISHR(0x7a, 0, -1),
+	I2F(0x86, 0, 0),
+	F2I(0x8b, 0, 0),
+	FCMPL(0x95, 0, -1),
+	FCMPG(0x96, 0, -1),
+	IFEQ(0x99, 2, -1),
+	IFNE(0x9a, 2, -1),
+	IFLT(0x9b, 2, -1),
+	IFGE(0x9c, 2, -1),
+	IFGT(0x9d, 2, -1),
+	IFLE(0x9e, 2, -1),
+	IF_ICMPEQ(0x9f, 2, -2),
+	IF_ICMPNE(0xa0, 2, -2),
+	IF_ICMPLT(0xa1, 2, -2),
+	IF_ICMPGE(0xa2, 2, -2),
+	IF_ICMPGT(0xa3, 2, -2),
+	IF_ICMPLE(0xa4, 2, -2),
+	GOTO(0xa7, 2, 0),
+	IRETURN(0xac, 0, -1),
+	FRETURN(0xae, 0, -1),
+	RETURN(0xb1, 0, 0),
+	GETSTATIC(0xb2, 2, 1),
+	PUTSTATIC(0xb3, 2, -1),
+	INVOKEVIRTUAL(0xb6, 2, 0),
+	INVOKESTATIC(0xb8, 2, 0),
+	NEWARRAY(0xbc, 1, 0);
+
+	/**
+	 * The type operand of newarray for an array of ints and of floats.
+	 */
+	public static final int T_FLOAT = 6;
+	public static final int T_INT = 10;
+
+	private final int code;
+	private final int operandBytes;
+	private final int stack;
+
+	private Opcode(int code, int operandBytes, int stack)
+	{
+		this.code = code;
+		this.operandBytes = operandBytes;
+		this.stack = stack;
+	}
+
+	/**
+	 * Get the byte of the opcode.
+	 * @return
+	 */
+	public int getCode()
+	{
+		return code;
+	}
+
+	/**
+	 * Get the number of bytes of operand after the opcode.
+	 * @return
+	 */
+	public int getOperandBytes()
+	{
+		return operandBytes;
+	}
+
+	/**
+	 * Get how much it changes the depth of the operand stack.
+	 * @return
+	 */
+	public int getStack()
+	{
+		return stack;
+	}
+
+	/**
+	 * Check whether it is a branch or goto.
+	 * @return
+	 */
+	public boolean isBranch()
+	{
+		return code >= IFEQ.code && code <= GOTO.code;
+	}
+
+	/**
+	 * The branch taken when this one is not, for a conditional branch.
+	 * @return
+	 */
+	public Opcode negate()
+	{
+		switch (this)
+		{
+			case IFEQ:
+				return IFNE;
+			case IFNE:
+				return IFEQ;
+			case IFLT:
+				return IFGE;
+			case IFGE:
+				return IFLT;
+			case IFGT:
+				return IFLE;
+			case IFLE:
+				return IFGT;
+			case IF_ICMPEQ:
+				return IF_ICMPNE;
+			case IF_ICMPNE:
+				return IF_ICMPEQ;
+			case IF_ICMPLT:
+				return IF_ICMPGE;
+			case IF_ICMPGE:
+				return IF_ICMPLT;
+			case IF_ICMPGT:
+				return IF_ICMPLE;
+			case IF_ICMPLE:
+				return IF_ICMPGT;
+			default:
+				throw new IllegalArgumentException(this + " is not a conditional branch");
+		}
+	}
+}
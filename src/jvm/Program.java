@@ -0,0 +1,154 @@
+package jvm;
+
+import interpreter.Interpreter;
+import interpreter.UncheckedIOException;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+
+/**
+ * A compiled program, loaded in to this JVM through a class loader of its
+ * own and run in process, so HotSpot compiles it as it would Java.
+ *
+ * The class has a static field CONSOLE, which is set to the console to read
+ * and write with, and a static method MAIN, which runs the program. An
+ * index out of bounds or a division by zero throws in the compiled code as
+ * in Java, and is reported here as the generated MIPS reports it.
+ *
+ * @author ken
+ */
+public class Program
+{
+
+	/**
+	 * The names of the field holding the console, and of the method that
+	 * runs the program. Neither can be the name of a Pascal variable or
+	 * subprogram.
+	 */
+	public static final String CONSOLE = "$io";
+	public static final String MAIN = "$main";
+
+	/**
+	 * The descriptor of the console field, and its class.
+	 */
+	public static final String CONSOLE_DESCRIPTOR = "Ljvm/Console;";
+	public static final String CONSOLE_CLASS = "jvm/Console";
+
+	/**
+	 * The loaded class.
+	 */
+	private final Class<?> loaded;
+
+	/**
+	 * Loads a class in to a class loader of its own.
+	 */
+	private static class Loader extends ClassLoader
+	{
+		private Loader()
+		{
+			super(Program.class.getClassLoader());
+		}
+
+		private Class<?> define(String name, byte[] bytes)
+		{
+			return defineClass(name, bytes, 0, bytes.length);
+		}
+	}
+
+	/**
+	 * Loads a compiled program.
+	 * @param name the internal name of the class.
+	 * @param bytes the class file.
+	 */
+	public Program(String name, byte[] bytes)
+	{
+		loaded = new Loader().define(name.replace('/', '.'), bytes);
+	}
+
+	/**
+	 * Runs the program on some input.
+	 * @param input
+	 * @return what the program wrote.
+	 * @throws IllegalStateException if the program fails.
+	 */
+	public String run(String input)
+	{
+		StringWriter output = new StringWriter();
+		try
+		{
+			run(new StringReader(input), output);
+		}
+		catch (IOException e)
+		{
+			// A StringReader and StringWriter do not throw.
+			throw new IllegalStateException(e);
+		}
+		return output.toString();
+	}
+
+	/**
+	 * Runs the program.
+	 * @param input what the program reads.
+	 * @param output where the program writes.
+	 * @throws IOException
+	 * @throws IllegalStateException if the program fails.
+	 */
+	public void run(Reader input, Writer output) throws IOException
+	{
+		Console console = new Console(input, output);
+		Method main;
+		try
+		{
+			loaded.getField(CONSOLE).set(null, console);
+			main = loaded.getMethod(MAIN);
+		}
+		catch (ReflectiveOperationException e)
+		{
+			throw new IllegalStateException("Not a compiled program: " + loaded.getName(), e);
+		}
+		try
+		{
+			main.invoke(null);
+		}
+		catch (IllegalAccessException e)
+		{
+			throw new IllegalStateException(e);
+		}
+		catch (InvocationTargetException e)
+		{
+			Throwable cause = e.getCause();
+			if (cause instanceof ArrayIndexOutOfBoundsException)
+			{
+				// Only the arrays of the program are indexed by compiled code.
+				console.write(Interpreter.BOUNDS_MESSAGE);
+			}
+			else if (cause instanceof ArithmeticException)
+			{
+				console.flush();
+				throw new IllegalStateException("Division by zero");
+			}
+			else if (cause instanceof UncheckedIOException)
+			{
+				throw ((UncheckedIOException) cause).getCause();
+			}
+			else if (cause instanceof RuntimeException)
+			{
+				console.flush();
+				throw (RuntimeException) cause;
+			}
+			else if (cause instanceof Error)
+			{
+				throw (Error) cause;
+			}
+			else
+			{
+				throw new IllegalStateException(cause);
+			}
+		}
+		console.flush();
+	}
+}
@@ -0,0 +1,163 @@
+package mips;
+
+/**
+ * A memory operand of a load or store: a label plus an offset, an offset
+ * from a base register, or both, as in foo, foo+8, -12($fp) and foo($t1).
+ *
+ * @author ken
+ */
+public class Address implements Operand
+{
+
+	/**
+	 * The label, or null for an offset from the base register alone.
+	 */
+	private final String label;
+
+	/**
+	 * The offset in bytes.
+	 */
+	private final int offset;
+
+	/**
+	 * The base register, or null for a label alone.
+	 */
+	private final Register base;
+
+	/**
+	 * Constructor.
+	 * @param label
+	 * @param offset
+	 * @param base
+	 */
+	public Address(String label, int offset, Register base)
+	{
+		if (label == null && base == null)
+		{
+			throw new IllegalArgumentException("An address needs a label or a base register");
+		}
+		if (base != null && !base.isInteger())
+		{
+			throw new IllegalArgumentException("Not a base register: " + base);
+		}
+		this.label = label;
+		this.offset = offset;
+		this.base = base;
+	}
+
+	/**
+	 * The address of a label.
+	 * @param label
+	 * @return
+	 */
+	public static Address of(String label)
+	{
+		return new Address(label, 0, null);
+	}
+
+	/**
+	 * An offset from a base register.
+	 * @param offset
+	 * @param base
+	 * @return
+	 */
+	public static Address of(int offset, Register base)
+	{
+		return new Address(null, offset, base);
+	}
+
+	/**
+	 * Parses an address such as foo, foo+8, -12($fp) or foo($t1).
+	 * @param text
+	 * @return
+	 */
+	public static Address parse(String text)
+	{
+		Register base = null;
+		int paren = text.indexOf('(');
+		if (paren >= 0)
+		{
+			base = Register.named(text.substring(paren + 1, text.length() - 1));
+			text = text.substring(0, paren);
+		}
+		String label = null;
+		int offset = 0;
+		int plus = text.indexOf('+');
+		if (plus >= 0)
+		{
+			label = text.substring(0, plus);
+			offset = Integer.parseInt(text.substring(plus + 1));
+		}
+		else if (!text.isEmpty() && (Character.isDigit(text.charAt(0)) || text.charAt(0) == '-'))
+		{
+			offset = Integer.parseInt(text);
+		}
+		else if (!text.isEmpty())
+		{
+			label = text;
+		}
+		return new Address(label, offset, base);
+	}
+
+	/**
+	 * Get the label, or null.
+	 * @return
+	 */
+	public String getLabel()
+	{
+		return label;
+	}
+
+	/**
+	 * Get the offset.
+	 * @return
+	 */
+	public int getOffset()
+	{
+		return offset;
+	}
+
+	/**
+	 * Get the base register, or null.
+	 * @return
+	 */
+	public Register getBase()
+	{
+		return base;
+	}
+
+	@Override
+	public boolean equals(Object other)
+	{
+		return other instanceof Address && other.toString().equals(toString());
+	}
+
+	@Override
+	public int hashCode()
+	{
+		return toString().hashCode();
+	}
+
+	@Override
+	public String toString()
+	{
+		StringBuilder text = new StringBuilder();
+		if (label != null)
+		{
+			text.append(label);
+			if (offset != 0)
+			{
+				text.append('+').append(offset);
+			}
+		}
+		else
+		{
+			text.append(offset);
+		}
+		if (base != null)
+		{
+			text.append('(').append(base).append(')');
+		}
+		return text.toString();
+	}
+}
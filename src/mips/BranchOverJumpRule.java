@@ -0,0 +1,78 @@
+package mips;
+
+import java.util.List;
+
+/**
+ * Replaces a conditional branch over a jump with a single branch on the
+ * opposite condition. For example
+ *
+ *  beq $t0, $zero, if0false
+ *  j if0end
+ * if0false:
+ *
+ * becomes bne $t0, $zero, if0end, which is what an if with an empty then
+ * branch generates.
+ *
+ * @author ken
+ */
+public class BranchOverJumpRule extends PeepholeRule
+{
+
+	/**
+	 * Branches and the branch with the opposite condition.
+	 */
+	private static final Opcode[][] OPPOSITES = {
+		{Opcode.BEQ, Opcode.BNE}, {Opcode.BLTZ, Opcode.BGEZ}, {Opcode.BLEZ, Opcode.BGTZ},
+		{Opcode.BC1T, Opcode.BC1F}};
+
+	/**
+	 * Constructor.
+	 */
+	public BranchOverJumpRule()
+	{
+		super("branch-over-jump", 3);
+	}
+
+	@Override
+	public boolean apply(List<Instruction> code, int index)
+	{
+		if (index + 2 >= code.size())
+		{
+			return false;
+		}
+		Instruction branch = code.get(index);
+		Instruction jump = code.get(index + 1);
+		Instruction label = code.get(index + 2);
+		if (!branch.isBranch() || !jump.is(Opcode.J) || !label.isLabel()
+				|| !label.getLabel().equals(branch.getTarget()))
+		{
+			return false;
+		}
+		Instruction inverted = branch.withOpcode(opposite(branch.getOpcode()))
+				.withOperand(branch.operandCount() - 1, jump.getOperand(0));
+		code.set(index, inverted);
+		code.remove(index + 1);
+		return true;
+	}
+
+	/**
+	 * The branch with the opposite condition.
+	 * @param opcode
+	 * @return
+	 */
+	private static Opcode opposite(Opcode opcode)
+	{
+		for (Opcode[] pair : OPPOSITES)
+		{
+			if (pair[0] == opcode)
+			{
+				return pair[1];
+			}
+			if (pair[1] == opcode)
+			{
+				return pair[0];
+			}
+		}
+		throw new IllegalArgumentException("Not a branch: " + opcode);
+	}
+}
@@ -0,0 +1,34 @@
+package mips;
+
+import java.util.ArrayList;
+
+/**
+ * A list of instructions the generator emits in to, in order.
+ *
+ * @author ken
+ */
+public class Code extends ArrayList<Instruction>
+{
+
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * Adds an instruction.
+	 * @param opcode
+	 * @param operands
+	 */
+	public void emit(Opcode opcode, Operand... operands)
+	{
+		add(new Instruction(opcode, operands));
+	}
+
+	/**
+	 * Adds a label.
+	 * @param name
+	 */
+	public void label(String name)
+	{
+		add(Instruction.label(name));
+	}
+
+}
@@ -0,0 +1,142 @@
+package mips;
+
+import java.util.List;
+
+/**
+ * Removes a register move by writing the moved value straight in to its
+ * destination. For example
+ *
+ *  lw $t0, foo
+ *  addi $a0, $t0, 0
+ *
+ * becomes lw $a0, foo, as long as $t0 is not used afterwards. A move whose
+ * destination is only read by the next instruction is removed by reading
+ * the source there instead, so
+ *
+ *  addu $t1, $zero, $s0
+ *  add $t0, $t0, $t1
+ *
+ * becomes add $t0, $t0, $s0.
+ *
+ * @author ken
+ */
+public class CopyPropagationRule extends PeepholeRule
+{
+
+	/**
+	 * How many instructions after a move to look for the one reading it.
+	 */
+	private static final int FORWARD = 4;
+
+	/**
+	 * Constructor.
+	 */
+	public CopyPropagationRule()
+	{
+		super("copy-propagation", FORWARD + 1);
+	}
+
+	@Override
+	public boolean apply(List<Instruction> code, int index)
+	{
+		if (index + 1 >= code.size())
+		{
+			return false;
+		}
+		return backward(code, index) || forward(code, index);
+	}
+
+	/**
+	 * Writes the result of an instruction straight in to the destination of
+	 * the move after it.
+	 * @param code
+	 * @param index
+	 * @return
+	 */
+	private boolean backward(List<Instruction> code, int index)
+	{
+		Instruction def = code.get(index);
+		Instruction move = code.get(index + 1);
+		Register source = source(move);
+		if (source == null || def.is(Opcode.MOVT_S, Opcode.MOVF_S)
+				|| source != def.getDestination() || def.is(Opcode.MTC1)
+				|| !def.getOpcode().accepts(0, move.getOperand(0))
+				|| !isDeadAfter(code, index + 2, source))
+		{
+			return false;
+		}
+		code.set(index, def.withOperand(0, move.getOperand(0)));
+		code.remove(index + 1);
+		return true;
+	}
+
+	/**
+	 * Makes the first instruction that reads the destination of a move, in
+	 * the next few instructions, read the source of the move instead.
+	 * @param code
+	 * @param index
+	 * @return
+	 */
+	private boolean forward(List<Instruction> code, int index)
+	{
+		Instruction move = code.get(index);
+		Register source = source(move);
+		if (source == null)
+		{
+			return false;
+		}
+		Register destination = move.getRegister(0);
+		for (int i = index + 1; i < code.size() && i <= index + FORWARD; i++)
+		{
+			Instruction use = code.get(i);
+			if (use.reads(destination))
+			{
+				Instruction replaced = use.withSourceReplaced(destination, source);
+				if (replaced == null || !(use.writes(destination)
+						|| isDeadAfter(code, i + 1, destination)))
+				{
+					return false;
+				}
+				code.set(i, replaced);
+				code.remove(index);
+				return true;
+			}
+			if (use.isLabel() || use.isBranch() || use.isJump()
+					|| use.writes(destination) || use.writes(source))
+			{
+				return false;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * The register copied by a move instruction, or null if the instruction
+	 * is not a move.
+	 * @param move
+	 * @return
+	 */
+	static Register source(Instruction move)
+	{
+		if (move.is(Opcode.MOV_S, Opcode.MOVE))
+		{
+			return move.getRegister(1);
+		}
+		if (move.is(Opcode.ADDI, Opcode.ADDIU) && move.getOperand(2).equals(new Immediate(0)))
+		{
+			return move.getRegister(1);
+		}
+		if (move.is(Opcode.ADDU, Opcode.ADD, Opcode.OR))
+		{
+			if (move.getOperand(1) == Register.ZERO)
+			{
+				return move.getRegister(2);
+			}
+			if (move.getOperand(2) == Register.ZERO)
+			{
+				return move.getRegister(1);
+			}
+		}
+		return null;
+	}
+}
@@ -0,0 +1,51 @@
+package mips;
+
+/**
+ * An integer constant operand.
+ *
+ * @author ken
+ */
+public class Immediate implements Operand
+{
+
+	/**
+	 * The value.
+	 */
+	private final int value;
+
+	/**
+	 * Constructor.
+	 * @param value
+	 */
+	public Immediate(int value)
+	{
+		this.value = value;
+	}
+
+	/**
+	 * Get the value.
+	 * @return
+	 */
+	public int getValue()
+	{
+		return value;
+	}
+
+	@Override
+	public boolean equals(Object other)
+	{
+		return other instanceof Immediate && ((Immediate) other).value == value;
+	}
+
+	@Override
+	public int hashCode()
+	{
+		return value;
+	}
+
+	@Override
+	public String toString()
+	{
+		return Integer.toString(value);
+	}
+}
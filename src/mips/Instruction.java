@@ -0,0 +1,431 @@
+package mips;
+
+import java.util.Arrays;
+
+/**
+ * A single line of MIPS assembly in the .text section: either a label, or an
+ * opcode with its operands. The operands are checked against the kinds the
+ * opcode takes, so an instruction that could not be assembled cannot be
+ * made. Knows which registers an instruction reads and writes, so passes
+ * over the instruction list can reason about them.
+ *
+ * @author ken
+ */
+public class Instruction
+{
+
+	/**
+	 * The label, if this is a label line.
+	 */
+	private String label;
+
+	/**
+	 * The opcode, if this is an instruction.
+	 */
+	private Opcode opcode;
+
+	/**
+	 * The operands of the instruction.
+	 */
+	private Operand[] operands;
+
+	/**
+	 * Constructor for an instruction.
+	 * @param opcode
+	 * @param operands
+	 * @throws IllegalArgumentException if the operands are not those the
+	 * opcode takes.
+	 */
+	public Instruction(Opcode opcode, Operand... operands)
+	{
+		this.opcode = opcode;
+		this.operands = operands;
+		if (operands.length != opcode.operandCount())
+		{
+			throw new IllegalArgumentException(opcode + " takes " + opcode.operandCount()
+					+ " operands: " + this);
+		}
+		for (int i = 0; i < operands.length; i++)
+		{
+			if (!opcode.accepts(i, operands[i]))
+			{
+				throw new IllegalArgumentException("Operand " + (i + 1) + " of " + opcode
+						+ " must be " + opcode.getKind(i).toString().toLowerCase() + ": " + this);
+			}
+		}
+	}
+
+	/**
+	 * Constructor for a label.
+	 * @param label
+	 */
+	private Instruction(String label)
+	{
+		this.label = label;
+		operands = new Operand[0];
+	}
+
+	/**
+	 * Creates a label.
+	 * @param name
+	 * @return
+	 */
+	public static Instruction label(String name)
+	{
+		return new Instruction(name);
+	}
+
+	/**
+	 * Parses a single line of assembly, such as "lw $t0, foo" or "if0end:".
+	 * @param line
+	 * @return
+	 * @throws IllegalArgumentException if the line is not a valid instruction.
+	 */
+	public static Instruction parse(String line)
+	{
+		line = line.trim();
+		if (line.endsWith(":"))
+		{
+			return label(line.substring(0, line.length() - 1));
+		}
+		int space = line.indexOf(' ');
+		if (space < 0)
+		{
+			return new Instruction(Opcode.named(line));
+		}
+		Opcode opcode = Opcode.named(line.substring(0, space));
+		String[] text = line.substring(space + 1).split(",");
+		if (text.length != opcode.operandCount())
+		{
+			throw new IllegalArgumentException(opcode + " takes " + opcode.operandCount()
+					+ " operands: " + line);
+		}
+		Operand[] ops = new Operand[text.length];
+		for (int i = 0; i < ops.length; i++)
+		{
+			ops[i] = opcode.parse(i, text[i].trim());
+		}
+		return new Instruction(opcode, ops);
+	}
+
+	/**
+	 * Returns true if this is a label.
+	 * @return
+	 */
+	public boolean isLabel()
+	{
+		return label != null;
+	}
+
+	/**
+	 * Get the name of the label.
+	 * @return
+	 */
+	public String getLabel()
+	{
+		return label;
+	}
+
+	/**
+	 * Get the opcode.
+	 * @return
+	 */
+	public Opcode getOpcode()
+	{
+		return opcode;
+	}
+
+	/**
+	 * Get the number of operands.
+	 * @return
+	 */
+	public int operandCount()
+	{
+		return operands.length;
+	}
+
+	/**
+	 * Get an operand.
+	 * @param index
+	 * @return
+	 */
+	public Operand getOperand(int index)
+	{
+		return operands[index];
+	}
+
+	/**
+	 * Get an operand that is a register.
+	 * @param index
+	 * @return
+	 */
+	public Register getRegister(int index)
+	{
+		return (Register) operands[index];
+	}
+
+	/**
+	 * Returns a copy of this instruction with one operand replaced.
+	 * @param index
+	 * @param operand
+	 * @return
+	 */
+	public Instruction withOperand(int index, Operand operand)
+	{
+		Operand[] ops = Arrays.copyOf(operands, operands.length);
+		ops[index] = operand;
+		return new Instruction(opcode, ops);
+	}
+
+	/**
+	 * Returns a copy of this instruction that reads another register in
+	 * place of the given one. Returns null if the register is not one of the
+	 * operands it reads, for example when it is only read implicitly, or the
+	 * replacement is not a register the instruction can read there.
+	 * @param register
+	 * @param replacement
+	 * @return
+	 */
+	public Instruction withSourceReplaced(Register register, Register replacement)
+	{
+		if (isLabel() || isBarrier() || is(Opcode.SYSCALL, Opcode.MOVT_S, Opcode.MOVF_S))
+		{
+			return null;
+		}
+		Operand[] ops = Arrays.copyOf(operands, operands.length);
+		int first = isDefinition() ? 1 : 0;
+		int last = isBranch() || is(Opcode.J, Opcode.MTC1) ? operandCount() - 1 : operandCount();
+		boolean replaced = false;
+		for (int i = first; i < last; i++)
+		{
+			if (ops[i].equals(register))
+			{
+				if (!opcode.accepts(i, replacement))
+				{
+					return null;
+				}
+				ops[i] = replacement;
+				replaced = true;
+			}
+		}
+		if (!replaced)
+		{
+			return null;
+		}
+		Instruction result = new Instruction(opcode, ops);
+		return !result.reads(register) ? result : null;
+	}
+
+	/**
+	 * Returns a copy of this instruction with a different opcode.
+	 * @param newOpcode
+	 * @return
+	 */
+	public Instruction withOpcode(Opcode newOpcode)
+	{
+		return new Instruction(newOpcode, operands);
+	}
+
+	/**
+	 * Check whether the opcode is one of the given opcodes.
+	 * @param opcodes
+	 * @return
+	 */
+	public boolean is(Opcode... opcodes)
+	{
+		for (Opcode op : opcodes)
+		{
+			if (opcode == op)
+			{
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Returns true if this is a conditional branch.
+	 * @return
+	 */
+	public boolean isBranch()
+	{
+		return !isLabel() && opcode.getRole() == Opcode.Role.BRANCH;
+	}
+
+	/**
+	 * Returns true if this is an unconditional jump, after which execution
+	 * does not fall through to the next instruction.
+	 * @return
+	 */
+	public boolean isJump()
+	{
+		return is(Opcode.J, Opcode.JR);
+	}
+
+	/**
+	 * Returns true if nothing is known about the registers this instruction
+	 * uses, such as a call. Passes should not move anything past it.
+	 * @return
+	 */
+	public boolean isBarrier()
+	{
+		return !isLabel() && opcode.getRole() == Opcode.Role.CALL;
+	}
+
+	/**
+	 * Returns true if the first operand is the register this instruction
+	 * writes.
+	 * @return
+	 */
+	private boolean isDefinition()
+	{
+		return !isLabel() && opcode.getRole() == Opcode.Role.DEFINE;
+	}
+
+	/**
+	 * The target label of a branch or jump.
+	 * @return
+	 */
+	public String getTarget()
+	{
+		if (isBranch() || is(Opcode.J))
+		{
+			return operands[operands.length - 1].toString();
+		}
+		return null;
+	}
+
+	/**
+	 * The register this instruction writes, other than HI/LO or the FPU flag.
+	 * Null if it writes none.
+	 * @return
+	 */
+	public Register getDestination()
+	{
+		if (isDefinition())
+		{
+			return (Register) operands[0];
+		}
+		if (is(Opcode.MTC1))
+		{
+			return (Register) operands[1];
+		}
+		return null;
+	}
+
+	/**
+	 * Check whether this instruction writes a register, including HI, LO and
+	 * the FPU condition flag.
+	 * @param register
+	 * @return
+	 */
+	public boolean writes(Register register)
+	{
+		if (isLabel())
+		{
+			return false;
+		}
+		if (isBarrier())
+		{
+			return true;
+		}
+		if (register == getDestination())
+		{
+			return true;
+		}
+		if (is(Opcode.MULT, Opcode.DIV))
+		{
+			return register == Register.HI || register == Register.LO;
+		}
+		if (is(Opcode.C_LT_S, Opcode.C_LE_S, Opcode.C_EQ_S))
+		{
+			return register == Register.FCC;
+		}
+		if (is(Opcode.SYSCALL))
+		{
+			return register == Register.V0 || register == Register.F0;
+		}
+		return false;
+	}
+
+	/**
+	 * Check whether this instruction reads a register, including the base
+	 * register of an address like 0($sp).
+	 * @param register
+	 * @return
+	 */
+	public boolean reads(Register register)
+	{
+		if (isLabel())
+		{
+			return false;
+		}
+		if (isBarrier())
+		{
+			return true;
+		}
+		if (is(Opcode.MFLO))
+		{
+			return register == Register.LO;
+		}
+		if (is(Opcode.MFHI))
+		{
+			return register == Register.HI;
+		}
+		if (is(Opcode.BC1T, Opcode.BC1F, Opcode.MOVT_S, Opcode.MOVF_S)
+				&& register == Register.FCC)
+		{
+			return true;
+		}
+		if (is(Opcode.SYSCALL))
+		{
+			return register == Register.V0 || register == Register.A0
+					|| register == Register.F12;
+		}
+		int first = isDefinition() && !is(Opcode.MOVT_S, Opcode.MOVF_S) ? 1 : 0;
+		for (int i = first; i < operandCount(); i++)
+		{
+			if (operands[i] == register || operands[i] instanceof Address
+					&& ((Address) operands[i]).getBase() == register)
+			{
+				return true;
+			}
+		}
+		return false;
+	}
+
+	@Override
+	public boolean equals(Object other)
+	{
+		if (!(other instanceof Instruction))
+		{
+			return false;
+		}
+		return toString().equals(other.toString());
+	}
+
+	@Override
+	public int hashCode()
+	{
+		return toString().hashCode();
+	}
+
+	/**
+	 * The assembly text of the instruction.
+	 * @return
+	 */
+	@Override
+	public String toString()
+	{
+		if (isLabel())
+		{
+			return label + ":";
+		}
+		StringBuilder line = new StringBuilder(opcode.toString());
+		for (int i = 0; i < operandCount(); i++)
+		{
+			line.append(i == 0 ? " " : ", ").append(operands[i]);
+		}
+		return line.toString();
+	}
+}
@@ -0,0 +1,45 @@
+package mips;
+
+import java.util.List;
+
+/**
+ * Removes a jump to a label that directly follows it, like the jump over an
+ * empty else branch.
+ *
+ * @author ken
+ */
+public class JumpToNextRule extends PeepholeRule
+{
+
+	/**
+	 * Constructor. Looks past at most a few labels in a row.
+	 */
+	public JumpToNextRule()
+	{
+		super("jump-to-next", 4);
+	}
+
+	@Override
+	public boolean apply(List<Instruction> code, int index)
+	{
+		Instruction jump = code.get(index);
+		if (!jump.is(Opcode.J))
+		{
+			return false;
+		}
+		for (int i = index + 1; i < code.size() && i < index + getWindow(); i++)
+		{
+			Instruction next = code.get(i);
+			if (!next.isLabel())
+			{
+				return false;
+			}
+			if (next.getLabel().equals(jump.getTarget()))
+			{
+				code.remove(index);
+				return true;
+			}
+		}
+		return false;
+	}
+}
@@ -0,0 +1,52 @@
+package mips;
+
+/**
+ * A label operand: the target of a branch, jump or call, or the address
+ * loaded by la.
+ *
+ * @author ken
+ */
+public class Label implements Operand
+{
+
+	/**
+	 * The name of the label.
+	 */
+	private final String name;
+
+	/**
+	 * Constructor.
+	 * @param name
+	 */
+	public Label(String name)
+	{
+		this.name = name;
+	}
+
+	/**
+	 * Get the name.
+	 * @return
+	 */
+	public String getName()
+	{
+		return name;
+	}
+
+	@Override
+	public boolean equals(Object other)
+	{
+		return other instanceof Label && ((Label) other).name.equals(name);
+	}
+
+	@Override
+	public int hashCode()
+	{
+		return name.hashCode();
+	}
+
+	@Override
+	public String toString()
+	{
+		return name;
+	}
+}
@@ -0,0 +1,153 @@
+package mips;
+
+/**
+ * How many cycles after an instruction issues its result can be used by
+ * the next instruction, on a single-issue MIPS pipeline. An instruction
+ * that uses the result sooner stalls until it is ready. The defaults are
+ * those of the R3000: a load's result is one cycle late, HI and LO are
+ * ready 12 cycles after mult and 35 after div, and the FPU takes 2 cycles
+ * to add, 4 to multiply and 12 to divide. Everything else is ready for the
+ * next instruction.
+ *
+ * @author ken
+ */
+public class LatencyModel
+{
+
+	/**
+	 * Cycles until a loaded value can be used.
+	 */
+	private int load = 2;
+
+	/**
+	 * Cycles until HI and LO hold the result of mult.
+	 */
+	private int multiply = 12;
+
+	/**
+	 * Cycles until HI and LO hold the result of div.
+	 */
+	private int divide = 35;
+
+	/**
+	 * Cycles of add.s, sub.s and the conversions.
+	 */
+	private int realAdd = 2;
+
+	/**
+	 * Cycles of mul.s.
+	 */
+	private int realMultiply = 4;
+
+	/**
+	 * Cycles of div.s.
+	 */
+	private int realDivide = 12;
+
+	/**
+	 * Creates a model from a comma separated list of latencies, such as
+	 * "load=3,mult=5". The names are load, mult, div, add.s, mul.s and
+	 * div.s, and any not given keep their default.
+	 * @param spec
+	 * @return
+	 */
+	public static LatencyModel parse(String spec)
+	{
+		LatencyModel model = new LatencyModel();
+		for (String entry : spec.split(","))
+		{
+			String[] pair = entry.split("=");
+			if (pair.length != 2)
+			{
+				throw new IllegalArgumentException("Expected name=cycles: " + entry);
+			}
+			int cycles;
+			try
+			{
+				cycles = Integer.parseInt(pair[1].trim());
+			}
+			catch (NumberFormatException e)
+			{
+				throw new IllegalArgumentException("Expected name=cycles: " + entry);
+			}
+			model.set(pair[0].trim(), cycles);
+		}
+		return model;
+	}
+
+	/**
+	 * Sets the latency of a kind of instruction.
+	 * @param name load, mult, div, add.s, mul.s or div.s.
+	 * @param cycles at least 1.
+	 */
+	public void set(String name, int cycles)
+	{
+		if (cycles < 1)
+		{
+			throw new IllegalArgumentException("Latency must be at least 1: " + name);
+		}
+		if (name.equals("load"))
+		{
+			load = cycles;
+		}
+		else if (name.equals("mult"))
+		{
+			multiply = cycles;
+		}
+		else if (name.equals("div"))
+		{
+			divide = cycles;
+		}
+		else if (name.equals("add.s"))
+		{
+			realAdd = cycles;
+		}
+		else if (name.equals("mul.s"))
+		{
+			realMultiply = cycles;
+		}
+		else if (name.equals("div.s"))
+		{
+			realDivide = cycles;
+		}
+		else
+		{
+			throw new IllegalArgumentException("Unknown latency: " + name);
+		}
+	}
+
+	/**
+	 * Cycles after an instruction issues until the registers it writes can
+	 * be read.
+	 * @param instr
+	 * @return
+	 */
+	public int latency(Instruction instr)
+	{
+		if (instr.is(Opcode.LW, Opcode.LWC1))
+		{
+			return load;
+		}
+		if (instr.is(Opcode.MULT))
+		{
+			return multiply;
+		}
+		if (instr.is(Opcode.DIV))
+		{
+			return divide;
+		}
+		if (instr.is(Opcode.ADD_S, Opcode.SUB_S, Opcode.CVT_S_W, Opcode.CVT_W_S))
+		{
+			return realAdd;
+		}
+		if (instr.is(Opcode.MUL_S))
+		{
+			return realMultiply;
+		}
+		if (instr.is(Opcode.DIV_S))
+		{
+			return realDivide;
+		}
+		return 1;
+	}
+}
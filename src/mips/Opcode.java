@@ -0,0 +1,226 @@
+package mips;
+
+/**
+ * The MIPS opcodes the compiler emits, with the kinds of their operands and
+ * how they use them. An instruction can only be made with operands of the
+ * kinds its opcode takes.
+ *
+ * @author ken
+ */
+public enum Opcode
+{
+	LI("li", Role.DEFINE, Kind.INT, Kind.IMMEDIATE),
+	LA("la", Role.DEFINE, Kind.INT, Kind.LABEL),
+	LUI("lui", Role.DEFINE, Kind.INT, Kind.IMMEDIATE),
+	LW("lw", Role.DEFINE, Kind.INT, Kind.ADDRESS),
+	SW("sw", Role.USE, Kind.INT, Kind.ADDRESS),
+	ADD("add", Role.DEFINE, Kind.INT, Kind.INT, Kind.INT),
+	ADDU("addu", Role.DEFINE, Kind.INT, Kind.INT, Kind.INT),
+	ADDI("addi", Role.DEFINE, Kind.INT, Kind.INT, Kind.IMMEDIATE),
+	ADDIU("addiu", Role.DEFINE, Kind.INT, Kind.INT, Kind.IMMEDIATE),
+	SUB("sub", Role.DEFINE, Kind.INT, Kind.INT, Kind.INT),
+	SUBU("subu", Role.DEFINE, Kind.INT, Kind.INT, Kind.INT),
+	AND("and", Role.DEFINE, Kind.INT, Kind.INT, Kind.INT),
+	OR("or", Role.DEFINE, Kind.INT, Kind.INT, Kind.INT),
+	XOR("xor", Role.DEFINE, Kind.INT, Kind.INT, Kind.INT),
+	NOR("nor", Role.DEFINE, Kind.INT, Kind.INT, Kind.INT),
+	ANDI("andi", Role.DEFINE, Kind.INT, Kind.INT, Kind.IMMEDIATE),
+	ORI("ori", Role.DEFINE, Kind.INT, Kind.INT, Kind.IMMEDIATE),
+	XORI("xori", Role.DEFINE, Kind.INT, Kind.INT, Kind.IMMEDIATE),
+	NOT("not", Role.DEFINE, Kind.INT, Kind.INT),
+	NEG("neg", Role.DEFINE, Kind.INT, Kind.INT),
+	MOVE("move", Role.DEFINE, Kind.INT, Kind.INT),
+	SLT("slt", Role.DEFINE, Kind.INT, Kind.INT, Kind.INT),
+	SLTU("sltu", Role.DEFINE, Kind.INT, Kind.INT, Kind.INT),
+	SLTI("slti", Role.DEFINE, Kind.INT, Kind.INT, Kind.IMMEDIATE),
+	SLTIU("sltiu", Role.DEFINE, Kind.INT, Kind.INT, Kind.IMMEDIATE),
+	SLL("sll", Role.DEFINE, Kind.INT, Kind.INT, Kind.IMMEDIATE),
+	SRL("srl", Role.DEFINE, Kind.INT, Kind.INT, Kind.IMMEDIATE),
+	SRA("sra", Role.DEFINE, Kind.INT, Kind.INT, Kind.IMMEDIATE),
+	MULT("mult", Role.USE, Kind.INT, Kind.INT),
+	DIV("div", Role.USE, Kind.INT, Kind.INT),
+	MFLO("mflo", Role.DEFINE, Kind.INT),
+	MFHI("mfhi", Role.DEFINE, Kind.INT),
+	BEQ("beq", Role.BRANCH, Kind.INT, Kind.INT, Kind.LABEL),
+	BNE("bne", Role.BRANCH, Kind.INT, Kind.INT, Kind.LABEL),
+	BLTZ("bltz", Role.BRANCH, Kind.INT, Kind.LABEL),
+	BLEZ("blez", Role.BRANCH, Kind.INT, Kind.LABEL),
+	BGTZ("bgtz", Role.BRANCH, Kind.INT, Kind.LABEL),
+	BGEZ("bgez", Role.BRANCH, Kind.INT, Kind.LABEL),
+	J("j", Role.USE, Kind.LABEL),
+	JAL("jal", Role.CALL, Kind.LABEL),
+	JR("jr", Role.USE, Kind.INT),
+	SYSCALL("syscall", Role.USE),
+	NOP("nop", Role.USE),
+	LWC1("lwc1", Role.DEFINE, Kind.REAL, Kind.ADDRESS),
+	SWC1("swc1", Role.USE, Kind.REAL, Kind.ADDRESS),
+	LI_S("li.s", Role.DEFINE, Kind.REAL, Kind.REAL_IMMEDIATE),
+	ADD_S("add.s", Role.DEFINE, Kind.REAL, Kind.REAL, Kind.REAL),
+	SUB_S("sub.s", Role.DEFINE, Kind.REAL, Kind.REAL, Kind.REAL),
+	MUL_S("mul.s", Role.DEFINE, Kind.REAL, Kind.REAL, Kind.REAL),
+	DIV_S("div.s", Role.DEFINE, Kind.REAL, Kind.REAL, Kind.REAL),
+	NEG_S("neg.s", Role.DEFINE, Kind.REAL, Kind.REAL),
+	MOV_S("mov.s", Role.DEFINE, Kind.REAL, Kind.REAL),
+	MOVT_S("movt.s", Role.DEFINE, Kind.REAL, Kind.REAL),
+	MOVF_S("movf.s", Role.DEFINE, Kind.REAL, Kind.REAL),
+	CVT_S_W("cvt.s.w", Role.DEFINE, Kind.REAL, Kind.REAL),
+	CVT_W_S("cvt.w.s", Role.DEFINE, Kind.REAL, Kind.REAL),
+	MFC1("mfc1", Role.DEFINE, Kind.INT, Kind.REAL),
+	MTC1("mtc1", Role.USE, Kind.INT, Kind.REAL),
+	C_LT_S("c.lt.s", Role.USE, Kind.REAL, Kind.REAL),
+	C_LE_S("c.le.s", Role.USE, Kind.REAL, Kind.REAL),
+	C_EQ_S("c.eq.s", Role.USE, Kind.REAL, Kind.REAL),
+	BC1T("bc1t", Role.BRANCH, Kind.LABEL),
+	BC1F("bc1f", Role.BRANCH, Kind.LABEL);
+
+	/**
+	 * How an instruction uses its operands.
+	 */
+	public enum Role
+	{
+		/** The first operand is the register written. */
+		DEFINE,
+		/** A conditional branch, whose last operand is the target. */
+		BRANCH,
+		/** Only reads its operands. */
+		USE,
+		/** Nothing is known about the registers it uses. */
+		CALL
+	}
+
+	/**
+	 * The kinds of operand.
+	 */
+	public enum Kind
+	{
+		INT, REAL, IMMEDIATE, REAL_IMMEDIATE, LABEL, ADDRESS
+	}
+
+	/**
+	 * The opcode as written in assembly.
+	 */
+	private final String mnemonic;
+
+	/**
+	 * How the operands are used.
+	 */
+	private final Role role;
+
+	/**
+	 * The kinds of the operands, in order.
+	 */
+	private final Kind[] operands;
+
+	/**
+	 * Constructor.
+	 * @param mnemonic
+	 * @param role
+	 * @param operands
+	 */
+	private Opcode(String mnemonic, Role role, Kind... operands)
+	{
+		this.mnemonic = mnemonic;
+		this.role = role;
+		this.operands = operands;
+	}
+
+	/**
+	 * The opcode written as a mnemonic, such as add.s.
+	 * @param mnemonic
+	 * @return
+	 */
+	public static Opcode named(String mnemonic)
+	{
+		for (Opcode opcode : values())
+		{
+			if (opcode.mnemonic.equals(mnemonic))
+			{
+				return opcode;
+			}
+		}
+		throw new IllegalArgumentException("Unknown opcode: " + mnemonic);
+	}
+
+	/**
+	 * Get the role.
+	 * @return
+	 */
+	public Role getRole()
+	{
+		return role;
+	}
+
+	/**
+	 * Get the number of operands.
+	 * @return
+	 */
+	public int operandCount()
+	{
+		return operands.length;
+	}
+
+	/**
+	 * Get the kind of an operand.
+	 * @param index
+	 * @return
+	 */
+	public Kind getKind(int index)
+	{
+		return operands[index];
+	}
+
+	/**
+	 * Check whether an operand is of the kind this opcode takes.
+	 * @param index
+	 * @param operand
+	 * @return
+	 */
+	public boolean accepts(int index, Operand operand)
+	{
+		switch (operands[index])
+		{
+			case INT:
+				return operand instanceof Register && ((Register) operand).isInteger();
+			case REAL:
+				return operand instanceof Register && ((Register) operand).isReal();
+			case IMMEDIATE:
+				return operand instanceof Immediate;
+			case REAL_IMMEDIATE:
+				return operand instanceof RealImmediate;
+			case LABEL:
+				return operand instanceof Label;
+			default:
+				return operand instanceof Address;
+		}
+	}
+
+	/**
+	 * Parses an operand of the kind this opcode takes.
+	 * @param index
+	 * @param text
+	 * @return
+	 */
+	public Operand parse(int index, String text)
+	{
+		switch (operands[index])
+		{
+			case INT:
+			case REAL:
+				return Register.named(text);
+			case IMMEDIATE:
+				return new Immediate(Integer.parseInt(text));
+			case REAL_IMMEDIATE:
+				return new RealImmediate(text);
+			case LABEL:
+				return new Label(text);
+			default:
+				return Address.parse(text);
+		}
+	}
+
+	@Override
+	public String toString()
+	{
+		return mnemonic;
+	}
+}
@@ -0,0 +1,12 @@
+package mips;
+
+/**
+ * An operand of an instruction: a register, an immediate, a label or an
+ * address. Operands are values, so two operands that print the same are
+ * equal.
+ *
+ * @author ken
+ */
+public interface Operand
+{
+}
@@ -0,0 +1,146 @@
+package mips;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Slides a window over a list of instructions and applies each enabled rule
+ * at every position, until no rule changes anything. Counts how many times
+ * each rule fired, so it can be seen which patterns are removed from real
+ * programs.
+ *
+ * @author ken
+ */
+public class PeepholeOptimizer
+{
+
+	/**
+	 * The rules to apply, in order.
+	 */
+	private List<PeepholeRule> rules;
+
+	/**
+	 * Number of times each rule fired, by rule name.
+	 */
+	private Map<String, Integer> hits;
+
+	/**
+	 * Constructor that applies every rule.
+	 */
+	public PeepholeOptimizer()
+	{
+		this(allRules());
+	}
+
+	/**
+	 * Constructor.
+	 * @param rules the rules to apply, in order.
+	 */
+	public PeepholeOptimizer(List<PeepholeRule> rules)
+	{
+		this.rules = rules;
+		hits = new LinkedHashMap<String, Integer>();
+		for (PeepholeRule rule : rules)
+		{
+			hits.put(rule.getName(), 0);
+		}
+	}
+
+	/**
+	 * Creates an optimizer that applies only the named rules.
+	 * @param names a comma separated list of rule names.
+	 * @return
+	 */
+	public static PeepholeOptimizer withRules(String names)
+	{
+		List<PeepholeRule> selected = new ArrayList<PeepholeRule>();
+		for (String name : names.split(","))
+		{
+			PeepholeRule found = null;
+			for (PeepholeRule rule : allRules())
+			{
+				if (rule.getName().equals(name.trim()))
+				{
+					found = rule;
+				}
+			}
+			if (found == null)
+			{
+				throw new IllegalArgumentException("Unknown peephole rule: " + name);
+			}
+			selected.add(found);
+		}
+		return new PeepholeOptimizer(selected);
+	}
+
+	/**
+	 * Every available rule.
+	 * @return
+	 */
+	public static List<PeepholeRule> allRules()
+	{
+		List<PeepholeRule> all = new ArrayList<PeepholeRule>();
+		all.add(new StoreLoadRule());
+		all.add(new CopyPropagationRule());
+		all.add(new UselessMoveRule());
+		all.add(new RedundantLoadRule());
+		all.add(new JumpToNextRule());
+		all.add(new BranchOverJumpRule());
+		all.add(new UnreachableCodeRule());
+		return all;
+	}
+
+	/**
+	 * Optimizes the list of instructions in place. After a rule fires the
+	 * window moves back far enough to see any new pattern the change made.
+	 * @param code
+	 */
+	public void optimize(List<Instruction> code)
+	{
+		int back = 0;
+		for (PeepholeRule rule : rules)
+		{
+			back = Math.max(back, rule.getWindow());
+		}
+		int index = 0;
+		while (index < code.size())
+		{
+			boolean changed = false;
+			for (PeepholeRule rule : rules)
+			{
+				if (index < code.size() && rule.apply(code, index))
+				{
+					hits.put(rule.getName(), hits.get(rule.getName()) + 1);
+					changed = true;
+				}
+			}
+			index = changed ? Math.max(0, index - back) : index + 1;
+		}
+	}
+
+	/**
+	 * Get the number of times each rule fired, by rule name.
+	 * @return
+	 */
+	public Map<String, Integer> getHits()
+	{
+		return hits;
+	}
+
+	/**
+	 * A report of how many times each rule fired.
+	 * @return
+	 */
+	public String report()
+	{
+		StringBuilder report = new StringBuilder("Peephole rules:\n");
+		for (Map.Entry<String, Integer> entry : hits.entrySet())
+		{
+			report.append("  ").append(entry.getKey()).append(": ")
+					.append(entry.getValue()).append("\n");
+		}
+		return report.toString();
+	}
+}
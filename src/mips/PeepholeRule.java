@@ -0,0 +1,105 @@
+package mips;
+
+import java.util.List;
+
+/**
+ * A rewrite applied by the PeepholeOptimizer to a small window of the
+ * instruction list. Each rule has a name, used to configure which rules run
+ * and to report how many times each rule fired.
+ *
+ * @author ken
+ */
+public abstract class PeepholeRule
+{
+
+	/**
+	 * The name of the rule.
+	 */
+	private final String name;
+
+	/**
+	 * The number of instructions the rule may look at.
+	 */
+	private final int window;
+
+	/**
+	 * Constructor.
+	 * @param name
+	 * @param window
+	 */
+	protected PeepholeRule(String name, int window)
+	{
+		this.name = name;
+		this.window = window;
+	}
+
+	/**
+	 * Get the name of the rule.
+	 * @return
+	 */
+	public String getName()
+	{
+		return name;
+	}
+
+	/**
+	 * Get the number of instructions the rule may look at, starting at the
+	 * index it is applied to.
+	 * @return
+	 */
+	public int getWindow()
+	{
+		return window;
+	}
+
+	/**
+	 * Tries to rewrite the instructions starting at index. The rule must only
+	 * change instructions inside its window.
+	 * @param code
+	 * @param index
+	 * @return true if the code was changed.
+	 */
+	public abstract boolean apply(List<Instruction> code, int index);
+
+	/**
+	 * Check whether a temporary register is dead after the given index, that
+	 * is written before it is read. The generator never keeps a temporary
+	 * live across a label or an unconditional jump, so reaching one of those
+	 * also means the register is dead.
+	 * @param code
+	 * @param index the first instruction to look at.
+	 * @param register
+	 * @return
+	 */
+	protected static boolean isDeadAfter(List<Instruction> code, int index, Register register)
+	{
+		if (!register.isTemporary() && !isRealTemporary(register))
+		{
+			return false;
+		}
+		for (int i = index; i < code.size(); i++)
+		{
+			Instruction instr = code.get(i);
+			if (instr.reads(register))
+			{
+				return false;
+			}
+			if (instr.writes(register) || instr.isLabel() || instr.isJump())
+			{
+				return true;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Check whether a register is one of the real registers used for
+	 * expressions, $f0 - $f11 and the scratch register $f13.
+	 * @param register
+	 * @return
+	 */
+	private static boolean isRealTemporary(Register register)
+	{
+		return register.isReal() && (register.number() <= 11 || register.number() == 13);
+	}
+}
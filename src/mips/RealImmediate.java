@@ -0,0 +1,53 @@
+package mips;
+
+/**
+ * A real constant operand of li.s, kept as it is written so it prints the
+ * same.
+ *
+ * @author ken
+ */
+public class RealImmediate implements Operand
+{
+
+	/**
+	 * The constant as written, such as 1.0 or -2.5E3.
+	 */
+	private final String text;
+
+	/**
+	 * Constructor.
+	 * @param text
+	 */
+	public RealImmediate(String text)
+	{
+		Double.parseDouble(text);
+		this.text = text;
+	}
+
+	/**
+	 * Get the value.
+	 * @return
+	 */
+	public float getValue()
+	{
+		return Float.parseFloat(text);
+	}
+
+	@Override
+	public boolean equals(Object other)
+	{
+		return other instanceof RealImmediate && ((RealImmediate) other).text.equals(text);
+	}
+
+	@Override
+	public int hashCode()
+	{
+		return text.hashCode();
+	}
+
+	@Override
+	public String toString()
+	{
+		return text;
+	}
+}
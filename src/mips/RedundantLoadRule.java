@@ -0,0 +1,88 @@
+package mips;
+
+import java.util.List;
+
+/**
+ * Removes a load in to a register that already holds the loaded value: a
+ * constant or address loaded with li or la, or a variable loaded with lw or
+ * lwc1 that has not been stored to since. Writing several reals in a row,
+ * for example, loads the address of the newline string in to $a0 each time,
+ * though printing a real does not change $a0, and a while condition loads
+ * its counter again at the start of the body.
+ *
+ * Only a label can bring another path in, so the search goes on past
+ * conditional branches but stops at labels and jumps.
+ *
+ * @author ken
+ */
+public class RedundantLoadRule extends PeepholeRule
+{
+
+	/**
+	 * Constructor.
+	 * @param window how many instructions to look ahead for the same load.
+	 */
+	public RedundantLoadRule(int window)
+	{
+		super("redundant-load", window);
+	}
+
+	/**
+	 * Constructor with a window that covers a write statement.
+	 */
+	public RedundantLoadRule()
+	{
+		this(8);
+	}
+
+	@Override
+	public boolean apply(List<Instruction> code, int index)
+	{
+		Instruction load = code.get(index);
+		boolean memory = load.is(Opcode.LW, Opcode.LWC1);
+		if (!load.is(Opcode.LI, Opcode.LA, Opcode.LUI)
+				&& !(memory && isVariable(load.getOperand(1))))
+		{
+			return false;
+		}
+		Register register = load.getRegister(0);
+		for (int i = index + 1; i < code.size() && i < index + getWindow(); i++)
+		{
+			Instruction next = code.get(i);
+			if (next.equals(load))
+			{
+				code.remove(i);
+				return true;
+			}
+			if (next.isLabel() || next.isJump() || next.writes(register)
+					|| memory && next.is(Opcode.SW, Opcode.SWC1) && !isOtherVariable(next, load))
+			{
+				return false;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Check whether an address is a variable, and not an offset from a
+	 * register.
+	 * @param address
+	 * @return
+	 */
+	private static boolean isVariable(Operand address)
+	{
+		return ((Address) address).getBase() == null;
+	}
+
+	/**
+	 * Check whether a store is to a different variable than a load.
+	 * @param store
+	 * @param load
+	 * @return
+	 */
+	private static boolean isOtherVariable(Instruction store, Instruction load)
+	{
+		Operand address = store.getOperand(1);
+		return isVariable(address) && !address.equals(load.getOperand(1));
+	}
+}
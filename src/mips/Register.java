@@ -0,0 +1,148 @@
+package mips;
+
+/**
+ * The MIPS registers, and the special registers HI, LO and the FPU
+ * condition flag, which instructions read and write but which are never
+ * named as operands.
+ *
+ * @author ken
+ */
+public enum Register implements Operand
+{
+	ZERO("$zero"), V0("$v0"), V1("$v1"),
+	A0("$a0"), A1("$a1"), A2("$a2"), A3("$a3"),
+	T0("$t0"), T1("$t1"), T2("$t2"), T3("$t3"), T4("$t4"),
+	T5("$t5"), T6("$t6"), T7("$t7"), T8("$t8"), T9("$t9"),
+	S0("$s0"), S1("$s1"), S2("$s2"), S3("$s3"),
+	S4("$s4"), S5("$s5"), S6("$s6"), S7("$s7"),
+	SP("$sp"), FP("$fp"), RA("$ra"),
+	F0("$f0"), F1("$f1"), F2("$f2"), F3("$f3"), F4("$f4"), F5("$f5"),
+	F6("$f6"), F7("$f7"), F8("$f8"), F9("$f9"), F10("$f10"), F11("$f11"),
+	F12("$f12"), F13("$f13"), F14("$f14"), F15("$f15"), F16("$f16"),
+	F17("$f17"), F18("$f18"), F19("$f19"), F20("$f20"), F21("$f21"),
+	F22("$f22"), F23("$f23"), F24("$f24"), F25("$f25"), F26("$f26"),
+	F27("$f27"), F28("$f28"), F29("$f29"), F30("$f30"), F31("$f31"),
+	HI("hi"), LO("lo"), FCC("fcc");
+
+	/**
+	 * The name in assembly.
+	 */
+	private final String name;
+
+	/**
+	 * Constructor.
+	 * @param name
+	 */
+	private Register(String name)
+	{
+		this.name = name;
+	}
+
+	/**
+	 * Temporary register $tn.
+	 * @param n
+	 * @return
+	 */
+	public static Register t(int n)
+	{
+		return valueOf("T" + n);
+	}
+
+	/**
+	 * Saved register $sn.
+	 * @param n
+	 * @return
+	 */
+	public static Register s(int n)
+	{
+		return valueOf("S" + n);
+	}
+
+	/**
+	 * Argument register $an.
+	 * @param n
+	 * @return
+	 */
+	public static Register a(int n)
+	{
+		return valueOf("A" + n);
+	}
+
+	/**
+	 * Floating point register $fn.
+	 * @param n
+	 * @return
+	 */
+	public static Register f(int n)
+	{
+		return valueOf("F" + n);
+	}
+
+	/**
+	 * The register with a name, such as $t0.
+	 * @param name
+	 * @return
+	 */
+	public static Register named(String name)
+	{
+		for (Register register : values())
+		{
+			if (register.name.equals(name) && register.isNamed())
+			{
+				return register;
+			}
+		}
+		throw new IllegalArgumentException("Unknown register: " + name);
+	}
+
+	/**
+	 * Returns true if this is a general purpose register.
+	 * @return
+	 */
+	public boolean isInteger()
+	{
+		return isNamed() && !isReal();
+	}
+
+	/**
+	 * Returns true if this is a floating point register.
+	 * @return
+	 */
+	public boolean isReal()
+	{
+		return name.startsWith("$f") && this != FP;
+	}
+
+	/**
+	 * Returns true if this is one of the $t registers.
+	 * @return
+	 */
+	public boolean isTemporary()
+	{
+		return name.startsWith("$t");
+	}
+
+	/**
+	 * The number of a floating point register.
+	 * @return
+	 */
+	public int number()
+	{
+		return Integer.parseInt(name.substring(2));
+	}
+
+	/**
+	 * Returns true if the register can be named as an operand.
+	 * @return
+	 */
+	private boolean isNamed()
+	{
+		return name.startsWith("$");
+	}
+
+	@Override
+	public String toString()
+	{
+		return name;
+	}
+}
@@ -0,0 +1,556 @@
+package mips;
+
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+
+/**
+ * Reorders the instructions of each basic block so that an instruction
+ * using the result of a load, a mult or div, or a slow FPU operation is
+ * moved away from it, and the pipeline stalls less. A basic block ends at a
+ * label, and after a branch, jump, call or syscall, which stay at the end
+ * of their block. Very long blocks are cut in to windows so scheduling
+ * stays quick.
+ *
+ * This is list scheduling: the instructions of a block form a graph of the
+ * registers and memory they depend on, and each cycle the ready instruction
+ * on the longest path to the end of the block goes next. A block is only
+ * changed if its estimated stalls go down.
+ *
+ * With delay slots turned on, the code is for an assembler running with
+ * .set noreorder, and the instruction after each branch, jump and call runs
+ * before it takes effect. The slot is filled with an instruction from
+ * before the branch that it does not depend on, or a nop. Loads are taken
+ * to interlock, as from the R4000 on, so nothing is put in load delay
+ * slots.
+ *
+ * @author ken
+ */
+public class Scheduler
+{
+
+	/**
+	 * Most instructions scheduled together.
+	 */
+	private static final int WINDOW = 64;
+
+	/**
+	 * The latencies of the pipeline.
+	 */
+	private final LatencyModel latencies;
+
+	/**
+	 * True if instructions are reordered.
+	 */
+	private boolean reorder = true;
+
+	/**
+	 * True if branch delay slots are filled.
+	 */
+	private boolean delaySlots;
+
+	/**
+	 * Estimated stall cycles before and after scheduling.
+	 */
+	private int stallsBefore;
+	private int stallsAfter;
+
+	/**
+	 * Number of delay slots, and how many were filled with something other
+	 * than a nop.
+	 */
+	private int slots;
+	private int filled;
+
+	/**
+	 * An instruction in the dependence graph of a block.
+	 */
+	private static class Node
+	{
+		private Instruction instr;
+
+		/**
+		 * Position in the block before scheduling.
+		 */
+		private int index;
+
+		private EnumSet<Register> reads = EnumSet.noneOf(Register.class);
+		private EnumSet<Register> writes = EnumSet.noneOf(Register.class);
+
+		/**
+		 * The instructions that must come after this one, and how many
+		 * cycles after it each can issue.
+		 */
+		private ArrayList<Node> successors = new ArrayList<Node>();
+		private ArrayList<Integer> delays = new ArrayList<Integer>();
+
+		/**
+		 * Number of instructions that must come before this one and are not
+		 * scheduled yet.
+		 */
+		private int waiting;
+
+		/**
+		 * The first cycle this instruction can issue without stalling.
+		 */
+		private int earliest;
+
+		/**
+		 * Cycles on the longest path from this instruction to the end of
+		 * the block.
+		 */
+		private int height;
+	}
+
+	/**
+	 * Constructor with the latencies of the R3000.
+	 */
+	public Scheduler()
+	{
+		this(new LatencyModel());
+	}
+
+	/**
+	 * Constructor.
+	 * @param latencies
+	 */
+	public Scheduler(LatencyModel latencies)
+	{
+		this.latencies = latencies;
+	}
+
+	/**
+	 * Turns reordering instructions on or off. With it off, delay slots are
+	 * filled with nops.
+	 * @param on
+	 */
+	public void setReordering(boolean on)
+	{
+		reorder = on;
+	}
+
+	/**
+	 * Turns filling branch delay slots on or off. The code must then be
+	 * assembled with .set noreorder.
+	 * @param on
+	 */
+	public void setDelaySlots(boolean on)
+	{
+		delaySlots = on;
+	}
+
+	/**
+	 * Returns true if branch delay slots are filled.
+	 * @return
+	 */
+	public boolean hasDelaySlots()
+	{
+		return delaySlots;
+	}
+
+	/**
+	 * Schedules a list of instructions in place.
+	 * @param code
+	 */
+	public void schedule(List<Instruction> code)
+	{
+		ArrayList<Instruction> result = new ArrayList<Instruction>();
+		ArrayList<Instruction> block = new ArrayList<Instruction>();
+		for (Instruction instr : code)
+		{
+			if (instr.isLabel())
+			{
+				block(block, null, result);
+				result.add(instr);
+			}
+			else if (endsBlock(instr))
+			{
+				block(block, instr, result);
+			}
+			else
+			{
+				block.add(instr);
+				if (block.size() == WINDOW)
+				{
+					block(block, null, result);
+				}
+			}
+		}
+		block(block, null, result);
+		code.clear();
+		code.addAll(result);
+	}
+
+	/**
+	 * Check whether an instruction ends a basic block.
+	 * @param instr
+	 * @return
+	 */
+	private static boolean endsBlock(Instruction instr)
+	{
+		return instr.isBranch() || instr.isJump() || instr.isBarrier()
+				|| instr.is(Opcode.SYSCALL);
+	}
+
+	/**
+	 * Check whether an instruction has a delay slot.
+	 * @param instr
+	 * @return
+	 */
+	private static boolean hasDelaySlot(Instruction instr)
+	{
+		return instr.isBranch() || instr.isJump() || instr.is(Opcode.JAL);
+	}
+
+	/**
+	 * Schedules a block and adds it to the result, then empties it.
+	 * @param block the instructions before the last.
+	 * @param last the branch, jump, call or syscall that ends the block, or
+	 * null.
+	 * @param result
+	 */
+	private void block(ArrayList<Instruction> block, Instruction last,
+			ArrayList<Instruction> result)
+	{
+		ArrayList<Instruction> original = new ArrayList<Instruction>(block);
+		if (last != null)
+		{
+			original.add(last);
+		}
+		if (original.isEmpty())
+		{
+			return;
+		}
+		ArrayList<Instruction> scheduled = original;
+		int before = stalls(original);
+		int after = before;
+		if (reorder)
+		{
+			scheduled = order(graph(original), last != null);
+			after = stalls(scheduled);
+		}
+		if (after >= before)
+		{
+			scheduled = original;
+			after = before;
+		}
+		stallsBefore += before;
+		if (delaySlots && last != null && hasDelaySlot(last))
+		{
+			scheduled.remove(scheduled.size() - 1);
+			Instruction slot = reorder ? delaySlot(scheduled, last) : null;
+			scheduled.add(last);
+			scheduled.add(slot == null ? new Instruction(Opcode.NOP) : slot);
+			slots++;
+			if (slot != null)
+			{
+				filled++;
+				after = stalls(scheduled);
+			}
+		}
+		stallsAfter += after;
+		result.addAll(scheduled);
+		block.clear();
+	}
+
+	/**
+	 * Builds the dependence graph of a block.
+	 * @param block
+	 * @return the nodes, in the order of the block.
+	 */
+	private ArrayList<Node> graph(ArrayList<Instruction> block)
+	{
+		ArrayList<Node> nodes = new ArrayList<Node>();
+		for (Instruction instr : block)
+		{
+			Node node = node(instr);
+			node.index = nodes.size();
+			for (Node earlier : nodes)
+			{
+				int delay = delay(earlier, node);
+				if (delay >= 0)
+				{
+					earlier.successors.add(node);
+					earlier.delays.add(delay);
+					node.waiting++;
+				}
+			}
+			nodes.add(node);
+		}
+		for (int i = nodes.size() - 1; i >= 0; i--)
+		{
+			Node node = nodes.get(i);
+			node.height = latencies.latency(node.instr);
+			for (int j = 0; j < node.successors.size(); j++)
+			{
+				node.height = Math.max(node.height,
+						node.delays.get(j) + node.successors.get(j).height);
+			}
+		}
+		return nodes;
+	}
+
+	/**
+	 * Makes a node for an instruction, with the registers it reads and
+	 * writes.
+	 * @param instr
+	 * @return
+	 */
+	private static Node node(Instruction instr)
+	{
+		Node node = new Node();
+		node.instr = instr;
+		for (Register register : Register.values())
+		{
+			if (instr.reads(register))
+			{
+				node.reads.add(register);
+			}
+			if (instr.writes(register))
+			{
+				node.writes.add(register);
+			}
+		}
+		return node;
+	}
+
+	/**
+	 * How many cycles after an instruction a later one can issue, or -1 if
+	 * they can be swapped. A later instruction reading the result waits for
+	 * it. One that writes what the earlier reads or writes, or that may
+	 * touch the same memory when either stores, only has to stay after it.
+	 * @param earlier
+	 * @param later
+	 * @return
+	 */
+	private int delay(Node earlier, Node later)
+	{
+		if (overlaps(earlier.writes, later.reads))
+		{
+			return latencies.latency(earlier.instr);
+		}
+		if (overlaps(earlier.reads, later.writes) || overlaps(earlier.writes, later.writes))
+		{
+			return 0;
+		}
+		boolean store = isStore(earlier.instr) || isStore(later.instr);
+		boolean memory = isMemory(earlier.instr) && isMemory(later.instr);
+		if (store && memory && mayAlias((Address) earlier.instr.getOperand(1),
+				(Address) later.instr.getOperand(1)))
+		{
+			return 0;
+		}
+		return -1;
+	}
+
+	/**
+	 * Check whether two sets of registers have one in common.
+	 * @param first
+	 * @param second
+	 * @return
+	 */
+	private static boolean overlaps(EnumSet<Register> first, EnumSet<Register> second)
+	{
+		for (Register register : first)
+		{
+			if (second.contains(register))
+			{
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Returns true for a load or a store.
+	 * @param instr
+	 * @return
+	 */
+	private static boolean isMemory(Instruction instr)
+	{
+		return instr.is(Opcode.LW, Opcode.LWC1) || isStore(instr);
+	}
+
+	/**
+	 * Returns true for a store.
+	 * @param instr
+	 * @return
+	 */
+	private static boolean isStore(Instruction instr)
+	{
+		return instr.is(Opcode.SW, Opcode.SWC1);
+	}
+
+	/**
+	 * Check whether two addresses may be the same word. Different variables
+	 * are different words, and so are different offsets from the same
+	 * register. A global never shares a word with the stack.
+	 * @param first
+	 * @param second
+	 * @return
+	 */
+	private static boolean mayAlias(Address first, Address second)
+	{
+		if (first.getBase() == second.getBase())
+		{
+			return first.equals(second);
+		}
+		return !(first.getBase() == null && isStack(second)
+				|| second.getBase() == null && isStack(first));
+	}
+
+	/**
+	 * Returns true for an address on the stack.
+	 * @param address
+	 * @return
+	 */
+	private static boolean isStack(Address address)
+	{
+		return address.getLabel() == null
+				&& (address.getBase() == Register.SP || address.getBase() == Register.FP);
+	}
+
+	/**
+	 * Orders the nodes of a block by list scheduling. Each cycle the ready
+	 * instruction with the greatest height goes next; if none is ready, the
+	 * one that is ready soonest. The last instruction of a block that ends in
+	 * a branch stays last.
+	 * @param nodes
+	 * @param pinned true if the last node must stay last.
+	 * @return
+	 */
+	private ArrayList<Instruction> order(ArrayList<Node> nodes, boolean pinned)
+	{
+		ArrayList<Node> remaining = new ArrayList<Node>(nodes);
+		ArrayList<Instruction> scheduled = new ArrayList<Instruction>();
+		Node last = pinned ? nodes.get(nodes.size() - 1) : null;
+		int cycle = 0;
+		while (!remaining.isEmpty())
+		{
+			Node best = null;
+			for (Node node : remaining)
+			{
+				if (node.waiting == 0 && (node != last || remaining.size() == 1)
+						&& (best == null || better(node, best, cycle)))
+				{
+					best = node;
+				}
+			}
+			remaining.remove(best);
+			scheduled.add(best.instr);
+			int issue = Math.max(cycle, best.earliest);
+			for (int j = 0; j < best.successors.size(); j++)
+			{
+				Node successor = best.successors.get(j);
+				successor.waiting--;
+				successor.earliest = Math.max(successor.earliest, issue + best.delays.get(j));
+			}
+			cycle = issue + 1;
+		}
+		return scheduled;
+	}
+
+	/**
+	 * Check whether one ready node should be scheduled before another.
+	 * @param node
+	 * @param best
+	 * @param cycle
+	 * @return
+	 */
+	private static boolean better(Node node, Node best, int cycle)
+	{
+		int start = Math.max(cycle, node.earliest);
+		int bestStart = Math.max(cycle, best.earliest);
+		if (start != bestStart)
+		{
+			return start < bestStart;
+		}
+		if (node.height != best.height)
+		{
+			return node.height > best.height;
+		}
+		return node.index < best.index;
+	}
+
+	/**
+	 * Picks the instruction to go in the delay slot of a branch, jump or
+	 * call, and takes it out of the block. It is the last one that nothing
+	 * after it depends on, and that the branch does not read: a call only
+	 * must not use $ra, which it sets before the slot runs.
+	 * @param block the block, without the branch.
+	 * @param branch
+	 * @return the instruction, or null if none can go there.
+	 */
+	private Instruction delaySlot(ArrayList<Instruction> block, Instruction branch)
+	{
+		ArrayList<Node> nodes = new ArrayList<Node>();
+		for (Instruction instr : block)
+		{
+			nodes.add(node(instr));
+		}
+		for (int i = nodes.size() - 1; i >= 0; i--)
+		{
+			Node candidate = nodes.get(i);
+			boolean free = true;
+			for (int j = i + 1; j < nodes.size() && free; j++)
+			{
+				free = delay(candidate, nodes.get(j)) < 0;
+			}
+			if (!free)
+			{
+				continue;
+			}
+			if (branch.is(Opcode.JAL) ? !candidate.reads.contains(Register.RA)
+					&& !candidate.writes.contains(Register.RA)
+					: !overlaps(candidate.writes, node(branch).reads))
+			{
+				return block.remove(i);
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Estimates the stall cycles of a block, issuing one instruction a cycle
+	 * in order, and waiting for the registers each reads.
+	 * @param block
+	 * @return
+	 */
+	private int stalls(List<Instruction> block)
+	{
+		int[] ready = new int[Register.values().length];
+		int cycle = -1;
+		int stalls = 0;
+		for (Instruction instr : block)
+		{
+			Node node = node(instr);
+			int issue = cycle + 1;
+			for (Register register : node.reads)
+			{
+				issue = Math.max(issue, ready[register.ordinal()]);
+			}
+			stalls += issue - cycle - 1;
+			for (Register register : node.writes)
+			{
+				ready[register.ordinal()] = issue + latencies.latency(instr);
+			}
+			cycle = issue;
+		}
+		return stalls;
+	}
+
+	/**
+	 * A report of the estimated stall cycles, and of the delay slots filled.
+	 * @return
+	 */
+	public String report()
+	{
+		String report = "Stall cycles: " + stallsAfter + ", " + stallsBefore
+				+ " before scheduling\n";
+		if (delaySlots)
+		{
+			report += "Delay slots filled: " + filled + " of " + slots + "\n";
+		}
+		return report;
+	}
+}
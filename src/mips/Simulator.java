@@ -0,0 +1,1045 @@
+package mips;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.StringTokenizer;
+
+/**
+ * Runs the assembly the compiler generates, so the code can be checked and
+ * measured without SPIM. The .data section is laid out from 0x10010000 and
+ * the stack grows down from 0x7fffeffc, as in SPIM. Execution starts at
+ * main, and ends when main returns or at syscall 10.
+ *
+ * The syscalls are those the generated code makes: 1 and 2 print an
+ * integer or a float, 4 prints a string, 5 and 6 read an integer or a
+ * float, and 10 exits. Floats are printed as SPIM prints them, with eight
+ * decimal places. Reads take the next number from the input, which may be
+ * several to a line.
+ *
+ * Integer arithmetic wraps around instead of trapping on overflow, and
+ * dividing by zero is an error, as are loads and stores outside the data
+ * section and the stack.
+ *
+ * While it runs it counts the instructions, loads, stores and branches, and
+ * estimates the cycles on a single-issue pipeline: each instruction issues
+ * a cycle after the one before, or later if it reads a result that is not
+ * ready yet under the latency model. Without .set noreorder the assembler
+ * would put a nop in each delay slot, which costs a cycle per branch and
+ * jump. With it, the instruction after a branch or jump runs before the
+ * branch takes effect.
+ *
+ * @author ken
+ */
+public class Simulator
+{
+
+	/**
+	 * Address of the start of the .data section.
+	 */
+	private static final int DATA = 0x10010000;
+
+	/**
+	 * Address of the word at the top of the stack.
+	 */
+	private static final int STACK = 0x7fffeffc;
+
+	/**
+	 * Words of stack.
+	 */
+	private static final int STACK_WORDS = 1 << 20;
+
+	/**
+	 * Address of the word at the bottom of the stack.
+	 */
+	private static final int BOTTOM = STACK - 4 * (STACK_WORDS - 1);
+
+	/**
+	 * The instructions, without their labels.
+	 */
+	private final ArrayList<Instruction> text = new ArrayList<Instruction>();
+
+	/**
+	 * The index in the text of each label in the .text section.
+	 */
+	private final HashMap<String, Integer> labels = new HashMap<String, Integer>();
+
+	/**
+	 * The address of each label in the .data section.
+	 */
+	private final HashMap<String, Integer> symbols = new HashMap<String, Integer>();
+
+	/**
+	 * The .data section as it was loaded, so it can be run again.
+	 */
+	private int[] initial;
+
+	/**
+	 * True if the code was written for .set noreorder.
+	 */
+	private boolean noreorder;
+
+	/**
+	 * The instructions decoded for running: the opcode, the ordinals of the
+	 * registers in the first three operands, or -1, and the value of an
+	 * immediate, a label or the constant part of an address. A branch's
+	 * constant is the index of its target.
+	 */
+	private Opcode[] opcodes;
+	private int[] first;
+	private int[] second;
+	private int[] third;
+	private int[] constants;
+
+	/**
+	 * The ordinals of the registers each instruction reads and writes, and
+	 * the cycles until what it writes is ready.
+	 */
+	private int[][] reads;
+	private int[][] writes;
+	private int[] latencies;
+
+	/**
+	 * The registers, by ordinal. Floats are kept as their bits, and the FPU
+	 * condition flag as 0 or 1.
+	 */
+	private int[] registers;
+
+	/**
+	 * The .data section and the stack.
+	 */
+	private int[] data;
+	private int[] stack;
+
+	/**
+	 * The input of the program being run, and the rest of the line being
+	 * read.
+	 */
+	private BufferedReader in;
+	private StringTokenizer tokens;
+
+	/**
+	 * Most instructions to run before giving up.
+	 */
+	private long limit = Long.MAX_VALUE;
+
+	/**
+	 * Counts from the last run.
+	 */
+	private long instructions;
+	private long loads;
+	private long stores;
+	private long branches;
+	private long taken;
+	private long cycles;
+	private long stalls;
+
+	/**
+	 * Constructor with the latencies of the R3000.
+	 * @param assembly
+	 * @throws IllegalArgumentException if the assembly has a line that is
+	 * not understood, or uses a label that is not defined.
+	 */
+	public Simulator(String assembly)
+	{
+		this(assembly, new LatencyModel());
+	}
+
+	/**
+	 * Constructor.
+	 * @param assembly
+	 * @param model the latencies to estimate cycles with.
+	 * @throws IllegalArgumentException if the assembly has a line that is
+	 * not understood, or uses a label that is not defined.
+	 */
+	public Simulator(String assembly, LatencyModel model)
+	{
+		ArrayList<Integer> words = new ArrayList<Integer>();
+		boolean inData = false;
+		for (String line : assembly.split("\n"))
+		{
+			line = line.trim();
+			if (line.isEmpty() || line.startsWith("#"))
+			{
+				continue;
+			}
+			if (line.equals(".data") || line.equals(".text"))
+			{
+				inData = line.equals(".data");
+			}
+			else if (line.startsWith(".set"))
+			{
+				noreorder |= line.endsWith("noreorder");
+			}
+			else if (line.startsWith(".globl"))
+			{
+				continue;
+			}
+			else if (inData)
+			{
+				data(line, words);
+			}
+			else
+			{
+				Instruction instr = Instruction.parse(line);
+				if (instr.isLabel())
+				{
+					labels.put(instr.getLabel(), text.size());
+				}
+				else
+				{
+					text.add(instr);
+				}
+			}
+		}
+		if (!labels.containsKey("main"))
+		{
+			throw new IllegalArgumentException("No main label");
+		}
+		initial = new int[words.size()];
+		for (int i = 0; i < initial.length; i++)
+		{
+			initial[i] = words.get(i);
+		}
+		decode(model);
+	}
+
+	/**
+	 * Lays out one line of the .data section, such as "x: .word 0".
+	 * @param line
+	 * @param words the words of the section so far.
+	 */
+	private void data(String line, ArrayList<Integer> words)
+	{
+		int colon = line.indexOf(':');
+		if (colon < 0)
+		{
+			throw new IllegalArgumentException("Expected a label: " + line);
+		}
+		symbols.put(line.substring(0, colon).trim(), DATA + 4 * words.size());
+		String directive = line.substring(colon + 1).trim();
+		int space = directive.indexOf(' ');
+		String name = space < 0 ? directive : directive.substring(0, space);
+		String value = space < 0 ? "" : directive.substring(space + 1).trim();
+		if (name.equals(".word"))
+		{
+			for (String item : value.split(","))
+			{
+				words.add(Integer.parseInt(item.trim()));
+			}
+		}
+		else if (name.equals(".float"))
+		{
+			for (String item : value.split(","))
+			{
+				words.add(Float.floatToRawIntBits(Float.parseFloat(item.trim())));
+			}
+		}
+		else if (name.equals(".space"))
+		{
+			for (int i = 0; i < Integer.parseInt(value); i += 4)
+			{
+				words.add(0);
+			}
+		}
+		else if (name.equals(".asciiz"))
+		{
+			byte[] bytes = unquote(value);
+			for (int i = 0; i <= bytes.length; i += 4)
+			{
+				int word = 0;
+				for (int j = 0; j < 4 && i + j < bytes.length; j++)
+				{
+					word |= (bytes[i + j] & 0xff) << (8 * j);
+				}
+				words.add(word);
+			}
+		}
+		else
+		{
+			throw new IllegalArgumentException("Unknown directive: " + line);
+		}
+	}
+
+	/**
+	 * The characters of a quoted string, with its escapes replaced.
+	 * @param quoted
+	 * @return
+	 */
+	private static byte[] unquote(String quoted)
+	{
+		if (quoted.length() < 2 || !quoted.startsWith("\"") || !quoted.endsWith("\""))
+		{
+			throw new IllegalArgumentException("Expected a string: " + quoted);
+		}
+		StringBuilder chars = new StringBuilder();
+		for (int i = 1; i < quoted.length() - 1; i++)
+		{
+			char c = quoted.charAt(i);
+			if (c == '\\')
+			{
+				c = quoted.charAt(++i);
+				if (c == 'n')
+				{
+					c = '\n';
+				}
+				else if (c == 't')
+				{
+					c = '\t';
+				}
+			}
+			chars.append(c);
+		}
+		byte[] bytes = new byte[chars.length()];
+		for (int i = 0; i < bytes.length; i++)
+		{
+			bytes[i] = (byte) chars.charAt(i);
+		}
+		return bytes;
+	}
+
+	/**
+	 * Decodes the instructions in to arrays, resolving the labels, so they
+	 * run quickly.
+	 * @param model
+	 */
+	private void decode(LatencyModel model)
+	{
+		int size = text.size();
+		opcodes = new Opcode[size];
+		first = new int[size];
+		second = new int[size];
+		third = new int[size];
+		constants = new int[size];
+		reads = new int[size][];
+		writes = new int[size][];
+		latencies = new int[size];
+		for (int i = 0; i < size; i++)
+		{
+			Instruction instr = text.get(i);
+			opcodes[i] = instr.getOpcode();
+			int[] regs = {-1, -1, -1};
+			for (int j = 0; j < instr.operandCount(); j++)
+			{
+				Operand operand = instr.getOperand(j);
+				if (operand instanceof Register)
+				{
+					regs[j] = ((Register) operand).ordinal();
+				}
+				else
+				{
+					constants[i] = constant(operand, instr);
+					if (operand instanceof Address && ((Address) operand).getBase() != null)
+					{
+						regs[j] = ((Address) operand).getBase().ordinal();
+					}
+				}
+			}
+			first[i] = regs[0];
+			second[i] = regs[1];
+			third[i] = regs[2];
+			usage(i, instr);
+			latencies[i] = model.latency(instr);
+		}
+	}
+
+	/**
+	 * The value of an operand that is not a register.
+	 * @param operand
+	 * @param instr
+	 * @return
+	 */
+	private int constant(Operand operand, Instruction instr)
+	{
+		if (operand instanceof Immediate)
+		{
+			return ((Immediate) operand).getValue();
+		}
+		if (operand instanceof RealImmediate)
+		{
+			return Float.floatToRawIntBits(((RealImmediate) operand).getValue());
+		}
+		if (operand instanceof Label)
+		{
+			Integer value = instr.is(Opcode.LA) ? symbols.get(operand.toString())
+					: labels.get(operand.toString());
+			if (value == null)
+			{
+				throw new IllegalArgumentException("Undefined label: " + instr);
+			}
+			return value;
+		}
+		Address address = (Address) operand;
+		if (address.getLabel() == null)
+		{
+			return address.getOffset();
+		}
+		Integer value = symbols.get(address.getLabel());
+		if (value == null)
+		{
+			throw new IllegalArgumentException("Undefined label: " + instr);
+		}
+		return value + address.getOffset();
+	}
+
+	/**
+	 * Works out the registers an instruction reads and writes. A call only
+	 * writes $ra, since the registers the routine it calls uses are counted
+	 * as that routine runs.
+	 * @param index
+	 * @param instr
+	 */
+	private void usage(int index, Instruction instr)
+	{
+		if (instr.is(Opcode.JAL))
+		{
+			reads[index] = new int[0];
+			writes[index] = new int[] {Register.RA.ordinal()};
+			return;
+		}
+		ArrayList<Integer> read = new ArrayList<Integer>();
+		ArrayList<Integer> written = new ArrayList<Integer>();
+		for (Register register : Register.values())
+		{
+			if (instr.reads(register))
+			{
+				read.add(register.ordinal());
+			}
+			if (instr.writes(register))
+			{
+				written.add(register.ordinal());
+			}
+		}
+		reads[index] = new int[read.size()];
+		for (int i = 0; i < read.size(); i++)
+		{
+			reads[index][i] = read.get(i);
+		}
+		writes[index] = new int[written.size()];
+		for (int i = 0; i < written.size(); i++)
+		{
+			writes[index][i] = written.get(i);
+		}
+	}
+
+	/**
+	 * Sets the most instructions to run before giving up, to stop a program
+	 * that never ends.
+	 * @param limit
+	 */
+	public void setLimit(long limit)
+	{
+		this.limit = limit;
+	}
+
+	/**
+	 * Runs the program on some input.
+	 * @param input
+	 * @return what the program wrote.
+	 * @throws IllegalStateException if the program fails, or runs for more
+	 * than the limit.
+	 */
+	public String run(String input)
+	{
+		StringWriter out = new StringWriter();
+		try
+		{
+			run(new StringReader(input), out);
+		}
+		catch (IOException e)
+		{
+			// A StringReader and StringWriter do not throw.
+			throw new IllegalStateException(e);
+		}
+		return out.toString();
+	}
+
+	/**
+	 * Runs the program from main until it returns or exits.
+	 * @param input what the program reads.
+	 * @param out where the program writes.
+	 * @throws IOException
+	 * @throws IllegalStateException if the program fails, or runs for more
+	 * than the limit.
+	 */
+	public void run(Reader input, Writer out) throws IOException
+	{
+		in = new BufferedReader(input);
+		tokens = new StringTokenizer("");
+		registers = new int[Register.values().length];
+		data = initial.clone();
+		stack = new int[STACK_WORDS];
+		registers[Register.SP.ordinal()] = STACK;
+		registers[Register.RA.ordinal()] = text.size();
+		instructions = loads = stores = branches = taken = stalls = 0;
+		long[] ready = new long[registers.length];
+		long cycle = -1;
+		int pc = labels.get("main");
+		int next = pc + 1;
+		boolean exit = false;
+		while (pc >= 0 && pc < text.size())
+		{
+			if (++instructions > limit)
+			{
+				throw new IllegalStateException("Ran for more than " + limit + " instructions");
+			}
+			long issue = cycle + 1;
+			for (int register : reads[pc])
+			{
+				issue = Math.max(issue, ready[register]);
+			}
+			stalls += issue - cycle - 1;
+			for (int register : writes[pc])
+			{
+				ready[register] = issue + latencies[pc];
+			}
+			cycle = issue;
+			int a = first[pc];
+			int b = second[pc];
+			int c = third[pc];
+			int k = constants[pc];
+			int target = -1;
+			switch (opcodes[pc])
+			{
+				case LI:
+				case LA:
+					set(a, k);
+					break;
+				case LUI:
+					set(a, k << 16);
+					break;
+				case LW:
+				case LWC1:
+					loads++;
+					set(a, load(k + base(b)));
+					break;
+				case SW:
+				case SWC1:
+					stores++;
+					store(k + base(b), registers[a]);
+					break;
+				case ADD:
+				case ADDU:
+					set(a, registers[b] + registers[c]);
+					break;
+				case ADDI:
+				case ADDIU:
+					set(a, registers[b] + k);
+					break;
+				case SUB:
+				case SUBU:
+					set(a, registers[b] - registers[c]);
+					break;
+				case AND:
+					set(a, registers[b] & registers[c]);
+					break;
+				case OR:
+					set(a, registers[b] | registers[c]);
+					break;
+				case XOR:
+					set(a, registers[b] ^ registers[c]);
+					break;
+				case NOR:
+					set(a, ~(registers[b] | registers[c]));
+					break;
+				case ANDI:
+					set(a, registers[b] & (k & 0xffff));
+					break;
+				case ORI:
+					set(a, registers[b] | (k & 0xffff));
+					break;
+				case XORI:
+					set(a, registers[b] ^ (k & 0xffff));
+					break;
+				case NOT:
+					set(a, ~registers[b]);
+					break;
+				case NEG:
+					set(a, -registers[b]);
+					break;
+				case MOVE:
+					set(a, registers[b]);
+					break;
+				case SLT:
+					set(a, registers[b] < registers[c] ? 1 : 0);
+					break;
+				case SLTU:
+					set(a, registers[b] + Integer.MIN_VALUE < registers[c] + Integer.MIN_VALUE
+							? 1 : 0);
+					break;
+				case SLTI:
+					set(a, registers[b] < k ? 1 : 0);
+					break;
+				case SLTIU:
+					set(a, registers[b] + Integer.MIN_VALUE < k + Integer.MIN_VALUE ? 1 : 0);
+					break;
+				case SLL:
+					set(a, registers[b] << k);
+					break;
+				case SRL:
+					set(a, registers[b] >>> k);
+					break;
+				case SRA:
+					set(a, registers[b] >> k);
+					break;
+				case MULT:
+					long product = (long) registers[a] * registers[b];
+					registers[Register.LO.ordinal()] = (int) product;
+					registers[Register.HI.ordinal()] = (int) (product >> 32);
+					break;
+				case DIV:
+					if (registers[b] == 0)
+					{
+						throw new IllegalStateException("Division by zero at " + text.get(pc));
+					}
+					registers[Register.LO.ordinal()] = registers[a] / registers[b];
+					registers[Register.HI.ordinal()] = registers[a] % registers[b];
+					break;
+				case MFLO:
+					set(a, registers[Register.LO.ordinal()]);
+					break;
+				case MFHI:
+					set(a, registers[Register.HI.ordinal()]);
+					break;
+				case BEQ:
+					target = branch(registers[a] == registers[b], k);
+					break;
+				case BNE:
+					target = branch(registers[a] != registers[b], k);
+					break;
+				case BLTZ:
+					target = branch(registers[a] < 0, k);
+					break;
+				case BLEZ:
+					target = branch(registers[a] <= 0, k);
+					break;
+				case BGTZ:
+					target = branch(registers[a] > 0, k);
+					break;
+				case BGEZ:
+					target = branch(registers[a] >= 0, k);
+					break;
+				case BC1T:
+					target = branch(registers[Register.FCC.ordinal()] != 0, k);
+					break;
+				case BC1F:
+					target = branch(registers[Register.FCC.ordinal()] == 0, k);
+					break;
+				case J:
+					target = k;
+					break;
+				case JAL:
+					registers[Register.RA.ordinal()] = next + (noreorder ? 1 : 0);
+					target = k;
+					break;
+				case JR:
+					target = registers[a];
+					break;
+				case SYSCALL:
+					exit = syscall(out);
+					break;
+				case NOP:
+					break;
+				case LI_S:
+					set(a, k);
+					break;
+				case ADD_S:
+					real(a, real(b) + real(c));
+					break;
+				case SUB_S:
+					real(a, real(b) - real(c));
+					break;
+				case MUL_S:
+					real(a, real(b) * real(c));
+					break;
+				case DIV_S:
+					real(a, real(b) / real(c));
+					break;
+				case NEG_S:
+					real(a, -real(b));
+					break;
+				case MOV_S:
+					set(a, registers[b]);
+					break;
+				case MOVT_S:
+					if (registers[Register.FCC.ordinal()] != 0)
+					{
+						set(a, registers[b]);
+					}
+					break;
+				case MOVF_S:
+					if (registers[Register.FCC.ordinal()] == 0)
+					{
+						set(a, registers[b]);
+					}
+					break;
+				case CVT_S_W:
+					real(a, (float) registers[b]);
+					break;
+				case CVT_W_S:
+					set(a, (int) real(b));
+					break;
+				case MFC1:
+					set(a, registers[b]);
+					break;
+				case MTC1:
+					set(b, registers[a]);
+					break;
+				case C_LT_S:
+					registers[Register.FCC.ordinal()] = real(a) < real(b) ? 1 : 0;
+					break;
+				case C_LE_S:
+					registers[Register.FCC.ordinal()] = real(a) <= real(b) ? 1 : 0;
+					break;
+				case C_EQ_S:
+					registers[Register.FCC.ordinal()] = real(a) == real(b) ? 1 : 0;
+					break;
+				default:
+					throw new IllegalStateException("Cannot run " + text.get(pc));
+			}
+			if (!noreorder && (target >= 0 || text.get(pc).isBranch()))
+			{
+				// The nop the assembler puts in the delay slot.
+				cycle++;
+			}
+			if (exit)
+			{
+				break;
+			}
+			if (target < 0)
+			{
+				pc = next;
+				next = pc + 1;
+			}
+			else if (noreorder)
+			{
+				pc = next;
+				next = target;
+			}
+			else
+			{
+				pc = target;
+				next = pc + 1;
+			}
+		}
+		cycles = cycle + 1;
+		out.flush();
+	}
+
+	/**
+	 * Counts a conditional branch.
+	 * @param condition
+	 * @param label the index the branch goes to.
+	 * @return the index, if the branch is taken, or -1.
+	 */
+	private int branch(boolean condition, int label)
+	{
+		branches++;
+		if (!condition)
+		{
+			return -1;
+		}
+		taken++;
+		return label;
+	}
+
+	/**
+	 * Performs the syscall whose code is in $v0.
+	 * @param out
+	 * @return true if the program exits.
+	 * @throws IOException
+	 */
+	private boolean syscall(Writer out) throws IOException
+	{
+		switch (registers[Register.V0.ordinal()])
+		{
+			case 1:
+				out.write(Integer.toString(registers[Register.A0.ordinal()]));
+				break;
+			case 2:
+				out.write(String.format(Locale.ROOT, "%.8f", real(Register.F12.ordinal())));
+				break;
+			case 4:
+				int address = registers[Register.A0.ordinal()];
+				for (int c = character(address); c != 0; c = character(++address))
+				{
+					out.write(c);
+				}
+				break;
+			case 5:
+				set(Register.V0.ordinal(), Integer.parseInt(token()));
+				break;
+			case 6:
+				real(Register.F0.ordinal(), Float.parseFloat(token()));
+				break;
+			case 10:
+				return true;
+			default:
+				throw new IllegalStateException("Unknown syscall: "
+						+ registers[Register.V0.ordinal()]);
+		}
+		return false;
+	}
+
+	/**
+	 * The next number in the input.
+	 * @return
+	 * @throws IOException
+	 */
+	private String token() throws IOException
+	{
+		while (!tokens.hasMoreTokens())
+		{
+			String line = in.readLine();
+			if (line == null)
+			{
+				throw new IllegalStateException("Read past the end of the input");
+			}
+			tokens = new StringTokenizer(line);
+		}
+		return tokens.nextToken();
+	}
+
+	/**
+	 * Sets a register, unless it is $zero.
+	 * @param register
+	 * @param value
+	 */
+	private void set(int register, int value)
+	{
+		if (register != Register.ZERO.ordinal())
+		{
+			registers[register] = value;
+		}
+	}
+
+	/**
+	 * Get the float in a register.
+	 * @param register
+	 * @return
+	 */
+	private float real(int register)
+	{
+		return Float.intBitsToFloat(registers[register]);
+	}
+
+	/**
+	 * Sets a register to a float.
+	 * @param register
+	 * @param value
+	 */
+	private void real(int register, float value)
+	{
+		registers[register] = Float.floatToRawIntBits(value);
+	}
+
+	/**
+	 * The value of a base register, or 0 if an address has none.
+	 * @param register
+	 * @return
+	 */
+	private int base(int register)
+	{
+		return register < 0 ? 0 : registers[register];
+	}
+
+	/**
+	 * Loads a word.
+	 * @param address
+	 * @return
+	 */
+	private int load(int address)
+	{
+		return segment(address)[index(address)];
+	}
+
+	/**
+	 * Stores a word.
+	 * @param address
+	 * @param value
+	 */
+	private void store(int address, int value)
+	{
+		segment(address)[index(address)] = value;
+	}
+
+	/**
+	 * Loads a byte of a string.
+	 * @param address
+	 * @return
+	 */
+	private int character(int address)
+	{
+		return load(address & ~3) >>> (8 * (address & 3)) & 0xff;
+	}
+
+	/**
+	 * The words of the .data section or the stack, whichever holds an
+	 * address.
+	 * @param address
+	 * @return
+	 * @throws IllegalStateException if the address is in neither, or is not
+	 * a multiple of 4.
+	 */
+	private int[] segment(int address)
+	{
+		if ((address & 3) != 0)
+		{
+			throw new IllegalStateException("Unaligned address: 0x"
+					+ Integer.toHexString(address));
+		}
+		if (address >= DATA && address < DATA + 4 * data.length)
+		{
+			return data;
+		}
+		if (address >= BOTTOM && address <= STACK)
+		{
+			return stack;
+		}
+		throw new IllegalStateException("Address out of range: 0x"
+				+ Integer.toHexString(address));
+	}
+
+	/**
+	 * The index of a word in its segment.
+	 * @param address
+	 * @return
+	 */
+	private int index(int address)
+	{
+		return address >= BOTTOM ? (address - BOTTOM) / 4 : (address - DATA) / 4;
+	}
+
+	/**
+	 * Get the number of instructions the last run executed.
+	 * @return
+	 */
+	public long getInstructions()
+	{
+		return instructions;
+	}
+
+	/**
+	 * Get the number of loads.
+	 * @return
+	 */
+	public long getLoads()
+	{
+		return loads;
+	}
+
+	/**
+	 * Get the number of stores.
+	 * @return
+	 */
+	public long getStores()
+	{
+		return stores;
+	}
+
+	/**
+	 * Get the number of conditional branches.
+	 * @return
+	 */
+	public long getBranches()
+	{
+		return branches;
+	}
+
+	/**
+	 * Get the number of conditional branches taken.
+	 * @return
+	 */
+	public long getTaken()
+	{
+		return taken;
+	}
+
+	/**
+	 * Get the estimated cycles.
+	 * @return
+	 */
+	public long getCycles()
+	{
+		return cycles;
+	}
+
+	/**
+	 * Get the estimated cycles spent waiting for results.
+	 * @return
+	 */
+	public long getStalls()
+	{
+		return stalls;
+	}
+
+	/**
+	 * A report of what the last run counted.
+	 * @return
+	 */
+	public String report()
+	{
+		return "Instructions: " + instructions + "\n"
+				+ "Loads: " + loads + ", stores: " + stores + "\n"
+				+ "Branches: " + branches + ", " + taken + " taken\n"
+				+ "Cycles: " + cycles + ", including " + stalls + " stalls\n";
+	}
+
+	/**
+	 * Runs an assembly file, reading from standard input and writing to
+	 * standard output.
+	 * @param args
+	 * @throws IOException
+	 */
+	public static void main(String[] args) throws IOException
+	{
+		if (args.length < 1)
+		{
+			System.out.println("Usage: mipsim <filename> [-latency=name=cycles,...] "
+					+ "[-limit=instructions] [-stats]");
+			System.exit(-1);
+		}
+		LatencyModel model = new LatencyModel();
+		long limit = Long.MAX_VALUE;
+		boolean stats = false;
+		for (int i = 1; i < args.length; i++)
+		{
+			if (args[i].startsWith("-latency="))
+			{
+				model = LatencyModel.parse(args[i].substring("-latency=".length()));
+			}
+			else if (args[i].startsWith("-limit="))
+			{
+				limit = Long.parseLong(args[i].substring("-limit=".length()));
+			}
+			else if (args[i].equals("-stats"))
+			{
+				stats = true;
+			}
+		}
+		StringBuilder assembly = new StringBuilder();
+		BufferedReader file = new BufferedReader(new FileReader(new File(args[0])));
+		for (String line = file.readLine(); line != null; line = file.readLine())
+		{
+			assembly.append(line).append("\n");
+		}
+		file.close();
+		Simulator simulator = new Simulator(assembly.toString(), model);
+		simulator.setLimit(limit);
+		simulator.run(new InputStreamReader(System.in), new OutputStreamWriter(System.out));
+		if (stats)
+		{
+			System.err.print(simulator.report());
+		}
+	}
+}
@@ -0,0 +1,54 @@
+package mips;
+
+import java.util.List;
+
+/**
+ * Removes a load that directly follows a store to the same address, such as
+ * the sw of an assignment followed by the lw of a write of the same variable.
+ * If the load is in to a different register, it becomes a register move.
+ *
+ * @author ken
+ */
+public class StoreLoadRule extends PeepholeRule
+{
+
+	/**
+	 * Constructor.
+	 */
+	public StoreLoadRule()
+	{
+		super("store-load", 2);
+	}
+
+	@Override
+	public boolean apply(List<Instruction> code, int index)
+	{
+		if (index + 1 >= code.size())
+		{
+			return false;
+		}
+		Instruction store = code.get(index);
+		Instruction load = code.get(index + 1);
+		boolean integer = store.is(Opcode.SW) && load.is(Opcode.LW);
+		boolean real = store.is(Opcode.SWC1) && load.is(Opcode.LWC1);
+		if (!(integer || real) || !store.getOperand(1).equals(load.getOperand(1)))
+		{
+			return false;
+		}
+		Register source = store.getRegister(0);
+		Register destination = load.getRegister(0);
+		if (source.equals(destination))
+		{
+			code.remove(index + 1);
+		}
+		else if (integer)
+		{
+			code.set(index + 1, new Instruction(Opcode.ADDU, destination, Register.ZERO, source));
+		}
+		else
+		{
+			code.set(index + 1, new Instruction(Opcode.MOV_S, destination, source));
+		}
+		return true;
+	}
+}
@@ -0,0 +1,60 @@
+package mips;
+
+import java.util.List;
+
+/**
+ * Removes instructions after an unconditional jump that no branch or jump
+ * can reach, up to the next label that some instruction names. Labels
+ * nothing names are removed along the way.
+ *
+ * @author ken
+ */
+public class UnreachableCodeRule extends PeepholeRule
+{
+
+	/**
+	 * Constructor.
+	 */
+	public UnreachableCodeRule()
+	{
+		super("unreachable-code", 2);
+	}
+
+	@Override
+	public boolean apply(List<Instruction> code, int index)
+	{
+		if (!code.get(index).isJump() || index + 1 >= code.size())
+		{
+			return false;
+		}
+		Instruction next = code.get(index + 1);
+		if (next.isLabel() && (next.getLabel().equals("main") || isTarget(code, next.getLabel())))
+		{
+			return false;
+		}
+		code.remove(index + 1);
+		return true;
+	}
+
+	/**
+	 * Check whether any instruction names a label, as the target of a branch
+	 * or jump, or as a call or an address.
+	 * @param code
+	 * @param label
+	 * @return
+	 */
+	private boolean isTarget(List<Instruction> code, String label)
+	{
+		for (Instruction instr : code)
+		{
+			for (int i = 0; i < instr.operandCount(); i++)
+			{
+				if (instr.getOperand(i).equals(new Label(label)))
+				{
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+}
@@ -0,0 +1,39 @@
+package mips;
+
+import java.util.List;
+
+/**
+ * Removes a move of a register in to itself, such as addi $t0, $t0, 0.
+ *
+ * @author ken
+ */
+public class UselessMoveRule extends PeepholeRule
+{
+
+	/**
+	 * Constructor.
+	 */
+	public UselessMoveRule()
+	{
+		super("useless-move", 1);
+	}
+
+	@Override
+	public boolean apply(List<Instruction> code, int index)
+	{
+		Instruction move = code.get(index);
+		Register source = CopyPropagationRule.source(move);
+		boolean shift = move.is(Opcode.SLL, Opcode.SRL, Opcode.SRA)
+				&& move.getOperand(2).equals(new Immediate(0));
+		if (shift)
+		{
+			source = move.getRegister(1);
+		}
+		if (source == null || source != move.getOperand(0))
+		{
+			return false;
+		}
+		code.remove(index);
+		return true;
+	}
+}
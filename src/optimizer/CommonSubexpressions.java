@@ -0,0 +1,709 @@
+package optimizer;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import parser.SymbolTable;
+import scanner.Token;
+import syntaxtree.*;
+
+/**
+ * Removes common subexpressions from the main program. Every expression is
+ * given a value number: variables get a number when they are assigned, and
+ * operations with the same operation and operand numbers get the same number.
+ * Within a straight run of statements this is local value numbering, so
+ * x := a; y := x * b; z := a * b finds that z is y.
+ *
+ * The numbers are carried across if and while statements as available
+ * expressions: after an if, an operation is available when it was computed
+ * in both branches, and a while loop gives every variable assigned in the
+ * loop a new number, so nothing computed before the loop from those variables
+ * is reused in it. Nothing computed in a loop body is available after it.
+ *
+ * An element of an array gets a new number each time it is read, but the
+ * operations in its index may reuse ones computed before.
+ *
+ * An operation whose value is already held by a variable is replaced by that
+ * variable. Otherwise a temporary is created: it is assigned right before
+ * each statement that computed the operation, on every path, and both those
+ * statements and the reuse read the temporary instead.
+ *
+ * @author ken
+ */
+public class CommonSubexpressions
+{
+
+	/**
+	 * Prefix of the temporaries. Identifiers can not start with it.
+	 */
+	public static final String TEMPORARY = "_cse";
+
+	/**
+	 * A statement that computes an operation, and the list it is in, so an
+	 * assignment to a temporary can be put before it.
+	 */
+	private static class Origin
+	{
+		private ArrayList<StatementNode> list;
+		private StatementNode statement;
+		private ExpressionNode node;
+		private String temporary;
+
+		private Origin(ArrayList<StatementNode> list, StatementNode statement, ExpressionNode node)
+		{
+			this.list = list;
+			this.statement = statement;
+			this.node = node;
+		}
+	}
+
+	/**
+	 * An available operation: its value number, a variable that may hold its
+	 * value, and the statements that compute it.
+	 */
+	private static class Available
+	{
+		private int number;
+		private String home;
+		private ArrayList<Origin> origins = new ArrayList<Origin>();
+
+		private Available(int number)
+		{
+			this.number = number;
+		}
+
+		private Available copy()
+		{
+			Available copy = new Available(number);
+			copy.home = home;
+			copy.origins.addAll(origins);
+			return copy;
+		}
+	}
+
+	/**
+	 * The value numbers of the variables, and the available operations by
+	 * operation and operand numbers, at one point of the program.
+	 */
+	private static class State
+	{
+		private HashMap<String, Integer> variables = new HashMap<String, Integer>();
+		private HashMap<String, Available> expressions = new HashMap<String, Available>();
+
+		private State copy()
+		{
+			State copy = new State();
+			copy.variables.putAll(variables);
+			for (Map.Entry<String, Available> entry : expressions.entrySet())
+			{
+				copy.expressions.put(entry.getKey(), entry.getValue().copy());
+			}
+			return copy;
+		}
+	}
+
+	/**
+	 * An expression after value numbering, which may be a replacement of the
+	 * original, and its value number.
+	 */
+	private static class Value
+	{
+		private ExpressionNode node;
+		private int number;
+
+		private Value(ExpressionNode node, int number)
+		{
+			this.node = node;
+			this.number = number;
+		}
+	}
+
+	/**
+	 * The symbols, used to check types and to add the temporaries.
+	 */
+	private SymbolTable symbols;
+
+	/**
+	 * The declarations of the program, where temporaries are added.
+	 */
+	private DeclarationsNode declarations;
+
+	/**
+	 * The temporaries that were created.
+	 */
+	private ArrayList<VariableNode> temporaries;
+
+	/**
+	 * Every origin found, to update the ones inside an operation that is
+	 * moved in to a temporary.
+	 */
+	private ArrayList<Origin> origins;
+
+	/**
+	 * Value numbers of constants and of nodes with a sign or not, which do
+	 * not depend on where they are.
+	 */
+	private HashMap<String, Integer> numbers;
+
+	/**
+	 * The next free value number.
+	 */
+	private int nextNumber;
+
+	/**
+	 * Constructor.
+	 * @param symbols
+	 */
+	public CommonSubexpressions(SymbolTable symbols)
+	{
+		this.symbols = symbols;
+	}
+
+	/**
+	 * Removes the common subexpressions of the main program.
+	 * @param program
+	 * @return the temporaries that were added to the program.
+	 */
+	public ArrayList<VariableNode> eliminate(ProgramNode program)
+	{
+		declarations = program.getVariables();
+		temporaries = new ArrayList<VariableNode>();
+		origins = new ArrayList<Origin>();
+		numbers = new HashMap<String, Integer>();
+		nextNumber = 0;
+		block(program.getMain().getStatements(), new State());
+		return temporaries;
+	}
+
+	/**
+	 * Numbers the statements of a list in order. Assignments to temporaries
+	 * put in to the list along the way are not visited.
+	 * @param list
+	 * @param state
+	 */
+	private void block(ArrayList<StatementNode> list, State state)
+	{
+		int index = 0;
+		while (index < list.size())
+		{
+			StatementNode stmt = list.get(index);
+			statement(list, stmt, state);
+			index = indexOf(list, stmt) + 1;
+		}
+	}
+
+	/**
+	 * Numbers a statement.
+	 * @param list the list the statement is in.
+	 * @param stmt
+	 * @param state
+	 */
+	private void statement(ArrayList<StatementNode> list, StatementNode stmt, State state)
+	{
+		if (stmt instanceof AssignmentStatementNode)
+		{
+			AssignmentStatementNode assign = (AssignmentStatementNode) stmt;
+			ExpressionNode exp = assign.getExpression();
+			if (assign.getLvalue() instanceof ArrayNode)
+			{
+				index((ArrayNode) assign.getLvalue(), state);
+			}
+			Value value = expression(exp, exp.isReal(symbols), list, stmt, state);
+			assign.setExpression(value.node);
+			if (assign.getLvalue() instanceof ArrayNode)
+			{
+				// An element does not hold a value of its own.
+				return;
+			}
+			String name = assign.getLvalue().getName();
+			state.variables.put(name, value.number);
+			boolean sameType = (symbols.getType(name) == Token.REAL) == value.node.isReal(symbols);
+			for (Available available : state.expressions.values())
+			{
+				if (available.number == value.number && sameType
+						&& validHome(available, state) == null)
+				{
+					available.home = name;
+				}
+			}
+		}
+		else if (stmt instanceof WriteNode)
+		{
+			WriteNode write = (WriteNode) stmt;
+			ExpressionNode exp = write.getOutput();
+			write.setOutput(expression(exp, exp.isReal(symbols), list, stmt, state).node);
+		}
+		else if (stmt instanceof ReadNode)
+		{
+			VariableNode input = ((ReadNode) stmt).getInput();
+			if (input == null)
+			{
+				state.variables.clear();
+			}
+			else
+			{
+				state.variables.put(input.getName(), nextNumber++);
+			}
+		}
+		else if (stmt instanceof ProcedureStatementNode)
+		{
+			arguments(((ProcedureStatementNode) stmt).getArguments(), state);
+		}
+		else if (stmt instanceof CompoundStatementNode)
+		{
+			block(((CompoundStatementNode) stmt).getStatements(), state);
+		}
+		else if (stmt instanceof IfStatementNode)
+		{
+			IfStatementNode ifNode = (IfStatementNode) stmt;
+			ifNode.setCondition(condition(ifNode.getCondition(), list, stmt, state));
+			ifNode.setStatement(compound(ifNode.getStatement()));
+			ifNode.setElseStatement(compound(ifNode.getElseStatement()));
+			State thenState = state.copy();
+			block(((CompoundStatementNode) ifNode.getStatement()).getStatements(), thenState);
+			State elseState = state.copy();
+			block(((CompoundStatementNode) ifNode.getElseStatement()).getStatements(), elseState);
+			merge(thenState, elseState, state);
+		}
+		else if (stmt instanceof WhileStatementNode)
+		{
+			WhileStatementNode whileNode = (WhileStatementNode) stmt;
+			HashMap<String, Integer> assignments = new HashMap<String, Integer>();
+			if (Expressions.assignments(whileNode.getStatement(), assignments))
+			{
+				for (String name : assignments.keySet())
+				{
+					state.variables.put(name, nextNumber++);
+				}
+			}
+			else
+			{
+				state.variables.clear();
+			}
+			// The condition is evaluated on every iteration, so nothing can be
+			// moved in to a temporary before it.
+			whileNode.setCondition(condition(whileNode.getCondition(), null, null, state));
+			whileNode.setStatement(compound(whileNode.getStatement()));
+			block(((CompoundStatementNode) whileNode.getStatement()).getStatements(), state.copy());
+		}
+	}
+
+	/**
+	 * Numbers the condition of an if or while. A comparison is left in
+	 * place so the Generator can branch on it, its operands may be replaced.
+	 * @param cond
+	 * @param list
+	 * @param stmt
+	 * @param state
+	 * @return
+	 */
+	private ExpressionNode condition(ExpressionNode cond, ArrayList<StatementNode> list,
+			StatementNode stmt, State state)
+	{
+		return expression(cond, cond.isReal(symbols), list, stmt, state).node;
+	}
+
+	/**
+	 * Numbers an expression, replacing operations that are available.
+	 * @param exp
+	 * @param context true if the expression is part of a real operation.
+	 * @param list the list the statement is in, or null if the expression
+	 *             can not be moved in to a temporary.
+	 * @param stmt the statement the expression is in.
+	 * @param state
+	 * @return
+	 */
+	private Value expression(ExpressionNode exp, boolean context, ArrayList<StatementNode> list,
+			StatementNode stmt, State state)
+	{
+		boolean real = context || exp.isReal(symbols);
+		if (exp instanceof ValueNode)
+		{
+			return new Value(exp, number(Expressions.key(exp, real)));
+		}
+		if (exp instanceof ArrayNode)
+		{
+			index((ArrayNode) exp, state);
+			return new Value(exp, nextNumber++);
+		}
+		if (exp instanceof VariableNode)
+		{
+			String name = ((VariableNode) exp).getName();
+			if (!state.variables.containsKey(name))
+			{
+				state.variables.put(name, nextNumber++);
+			}
+			return new Value(exp, flagged(exp, state.variables.get(name), real));
+		}
+		if (exp instanceof FunctionCallNode)
+		{
+			arguments(((FunctionCallNode) exp).getArguments(), state);
+			return new Value(exp, nextNumber++);
+		}
+		OperationNode op = (OperationNode) exp;
+		ExpressionNode leftNode = op.getLeft();
+		ExpressionNode rightNode = op.getRight();
+		Value left = expression(leftNode, real, list, stmt, state);
+		Value right = expression(rightNode, real, list, stmt, state);
+		// An operand may have been moved in to a temporary already, when the
+		// other one reused it.
+		if (left.node != leftNode)
+		{
+			op.setLeft(left.node);
+		}
+		if (right.node != rightNode)
+		{
+			op.setRight(right.node);
+		}
+		String key = (real ? "r:" : "i:") + op.getOperation() + "(" + left.number
+				+ "," + right.number + ")" + (op.getSign() == Token.MINUS ? "-" : "")
+				+ (op.isNot() ? "!" : "");
+		boolean candidate = !Expressions.isComparison(op.getOperation())
+				&& real == op.isReal(symbols);
+
+		Available available = state.expressions.get(key);
+		if (available != null)
+		{
+			String home = candidate ? validHome(available, state) : null;
+			if (candidate && home == null)
+			{
+				home = temporary(available, real, state);
+			}
+			if (home != null)
+			{
+				VariableNode var = new VariableNode(home, real ? Token.REAL : Token.INTEGER);
+				return new Value(var, available.number);
+			}
+			return new Value(op, available.number);
+		}
+		available = new Available(nextNumber++);
+		if (candidate && list != null)
+		{
+			Origin origin = new Origin(list, stmt, op);
+			available.origins.add(origin);
+			origins.add(origin);
+		}
+		state.expressions.put(key, available);
+		return new Value(op, available.number);
+	}
+
+	/**
+	 * Numbers the index of an element of an array. An element gets a new
+	 * number each time it is read, since a store through another index may
+	 * have changed it, and nothing in the index is moved in to a temporary.
+	 * @param element
+	 * @param state
+	 */
+	private void index(ArrayNode element, State state)
+	{
+		ExpressionNode index = element.getIndex();
+		element.setIndex(expression(index, false, null, null, state).node);
+	}
+
+	/**
+	 * Numbers the arguments of a call. The subprogram may change any
+	 * variable, so every variable gets a new number after it, like after a
+	 * read in to an unknown variable. The temporaries are only assigned in
+	 * the main program, so the operations they hold stay available.
+	 * @param arguments
+	 * @param state
+	 */
+	private void arguments(ArrayList<ExpressionNode> arguments, State state)
+	{
+		for (int i = 0; i < arguments.size(); i++)
+		{
+			ExpressionNode arg = arguments.get(i);
+			arguments.set(i, expression(arg, arg.isReal(symbols), null, null, state).node);
+		}
+		state.variables.clear();
+	}
+
+	/**
+	 * The variable holding the value of an available operation, or null if
+	 * none does any more. Temporaries are only assigned once.
+	 * @param available
+	 * @param state
+	 * @return
+	 */
+	private String validHome(Available available, State state)
+	{
+		String home = available.home;
+		if (home == null)
+		{
+			return null;
+		}
+		Integer number = state.variables.get(home);
+		if (home.startsWith(TEMPORARY) || number != null && number == available.number)
+		{
+			return home;
+		}
+		return null;
+	}
+
+	/**
+	 * Moves an available operation in to a temporary at every statement that
+	 * computes it. Returns the name of the temporary, or null if it can not
+	 * be done.
+	 * @param available
+	 * @param real
+	 * @param state
+	 * @return
+	 */
+	private String temporary(Available available, boolean real, State state)
+	{
+		if (available.origins.isEmpty())
+		{
+			return null;
+		}
+		String name = null;
+		for (Origin origin : available.origins)
+		{
+			if (origin.temporary != null && name == null)
+			{
+				name = origin.temporary;
+			}
+		}
+		Token type = real ? Token.REAL : Token.INTEGER;
+		if (name == null)
+		{
+			name = TEMPORARY + temporaries.size();
+			temporaries.add(Expressions.declare(declarations, symbols, name, type));
+		}
+		for (Origin origin : available.origins)
+		{
+			if (origin.temporary == null)
+			{
+				AssignmentStatementNode assign = new AssignmentStatementNode(
+						new VariableNode(name, type), origin.node);
+				origin.list.add(indexOf(origin.list, origin.statement), assign);
+				replace(origin.statement, origin.node, new VariableNode(name, type));
+				// Origins inside the moved operation are now in the assignment.
+				for (Origin other : origins)
+				{
+					if (other != origin && other.statement == origin.statement
+							&& contains(origin.node, other.node))
+					{
+						other.statement = assign;
+					}
+				}
+				origin.temporary = name;
+			}
+			else if (!origin.temporary.equals(name))
+			{
+				AssignmentStatementNode copy = new AssignmentStatementNode(
+						new VariableNode(name, type), new VariableNode(origin.temporary, type));
+				origin.list.add(indexOf(origin.list, origin.statement), copy);
+			}
+		}
+		available.home = name;
+		state.variables.put(name, available.number);
+		return name;
+	}
+
+	/**
+	 * Merges the states at the end of the two branches of an if in to the
+	 * state after it. Operations computed in both branches stay available.
+	 * Values that have different numbers in the two branches get one new
+	 * number.
+	 * @param thenState
+	 * @param elseState
+	 * @param state
+	 */
+	private void merge(State thenState, State elseState, State state)
+	{
+		HashMap<String, Integer> pairs = new HashMap<String, Integer>();
+		state.expressions.clear();
+		for (Map.Entry<String, Available> entry : thenState.expressions.entrySet())
+		{
+			Available other = elseState.expressions.get(entry.getKey());
+			if (other == null)
+			{
+				continue;
+			}
+			Available available = new Available(pair(entry.getValue().number, other.number, pairs));
+			available.origins.addAll(entry.getValue().origins);
+			for (Origin origin : other.origins)
+			{
+				if (!available.origins.contains(origin))
+				{
+					available.origins.add(origin);
+				}
+			}
+			String home = validHome(entry.getValue(), thenState);
+			if (home != null && home.equals(validHome(other, elseState)))
+			{
+				available.home = home;
+			}
+			state.expressions.put(entry.getKey(), available);
+		}
+		state.variables.clear();
+		for (Map.Entry<String, Integer> entry : thenState.variables.entrySet())
+		{
+			Integer other = elseState.variables.get(entry.getKey());
+			if (other != null)
+			{
+				state.variables.put(entry.getKey(), pair(entry.getValue(), other, pairs));
+			}
+		}
+	}
+
+	/**
+	 * The number after an if of a value numbered first in the then branch
+	 * and second in the else branch.
+	 * @param first
+	 * @param second
+	 * @param pairs
+	 * @return
+	 */
+	private int pair(int first, int second, HashMap<String, Integer> pairs)
+	{
+		if (first == second)
+		{
+			return first;
+		}
+		String key = first + "," + second;
+		if (!pairs.containsKey(key))
+		{
+			pairs.put(key, nextNumber++);
+		}
+		return pairs.get(key);
+	}
+
+	/**
+	 * The number of a constant or a node with a sign or not.
+	 * @param key
+	 * @return
+	 */
+	private int number(String key)
+	{
+		if (!numbers.containsKey(key))
+		{
+			numbers.put(key, nextNumber++);
+		}
+		return numbers.get(key);
+	}
+
+	/**
+	 * The number of a variable with its sign and not applied.
+	 * @param exp
+	 * @param base the number of the variable itself.
+	 * @param real
+	 * @return
+	 */
+	private int flagged(ExpressionNode exp, int base, boolean real)
+	{
+		if (exp.getSign() != Token.MINUS && !exp.isNot())
+		{
+			return base;
+		}
+		return number((real ? "r:" : "i:") + (exp.getSign() == Token.MINUS ? "-" : "")
+				+ (exp.isNot() ? "!" : "") + base);
+	}
+
+	/**
+	 * Wraps a statement in a compound statement, so assignments can be put
+	 * in front of it.
+	 * @param stmt
+	 * @return
+	 */
+	private CompoundStatementNode compound(StatementNode stmt)
+	{
+		if (stmt instanceof CompoundStatementNode)
+		{
+			return (CompoundStatementNode) stmt;
+		}
+		CompoundStatementNode compound = new CompoundStatementNode();
+		if (stmt != null)
+		{
+			compound.addStatement(stmt);
+		}
+		return compound;
+	}
+
+	/**
+	 * Replaces a node in the expression of a statement.
+	 * @param stmt
+	 * @param target
+	 * @param replacement
+	 */
+	private void replace(StatementNode stmt, ExpressionNode target, ExpressionNode replacement)
+	{
+		if (stmt instanceof AssignmentStatementNode)
+		{
+			AssignmentStatementNode assign = (AssignmentStatementNode) stmt;
+			assign.setExpression(replace(assign.getExpression(), target, replacement));
+		}
+		else if (stmt instanceof WriteNode)
+		{
+			WriteNode write = (WriteNode) stmt;
+			write.setOutput(replace(write.getOutput(), target, replacement));
+		}
+		else if (stmt instanceof IfStatementNode)
+		{
+			IfStatementNode ifNode = (IfStatementNode) stmt;
+			ifNode.setCondition(replace(ifNode.getCondition(), target, replacement));
+		}
+	}
+
+	/**
+	 * Replaces a node in an expression.
+	 * @param exp
+	 * @param target
+	 * @param replacement
+	 * @return
+	 */
+	private ExpressionNode replace(ExpressionNode exp, ExpressionNode target,
+			ExpressionNode replacement)
+	{
+		if (exp == target)
+		{
+			return replacement;
+		}
+		if (exp instanceof OperationNode)
+		{
+			OperationNode op = (OperationNode) exp;
+			op.setLeft(replace(op.getLeft(), target, replacement));
+			op.setRight(replace(op.getRight(), target, replacement));
+		}
+		return exp;
+	}
+
+	/**
+	 * Check whether a node is part of an expression.
+	 * @param exp
+	 * @param node
+	 * @return
+	 */
+	private boolean contains(ExpressionNode exp, ExpressionNode node)
+	{
+		if (exp == node)
+		{
+			return true;
+		}
+		if (exp instanceof OperationNode)
+		{
+			return contains(((OperationNode) exp).getLeft(), node)
+					|| contains(((OperationNode) exp).getRight(), node);
+		}
+		return false;
+	}
+
+	/**
+	 * The index of a statement in a list, by identity.
+	 * @param list
+	 * @param stmt
+	 * @return
+	 */
+	private int indexOf(ArrayList<StatementNode> list, StatementNode stmt)
+	{
+		for (int i = 0; i < list.size(); i++)
+		{
+			if (list.get(i) == stmt)
+			{
+				return i;
+			}
+		}
+		return -1;
+	}
+}
@@ -0,0 +1,491 @@
+package optimizer;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import parser.SymbolTable;
+import scanner.Token;
+import syntaxtree.*;
+
+/**
+ * Folds constant subexpressions in the syntax tree. Operations whose operands
+ * are both values are evaluated at compile time, taking the sign and not
+ * flags of each node in to account. Identities such as x + 0, x * 1, and
+ * x * 0 (integers only) are simplified, and if or while statements whose
+ * condition is constant are replaced by the statement that would run, or by
+ * nothing at all.
+ *
+ * An expression is evaluated the same way the Generator evaluates it: if any
+ * part of an operation is real, the whole operation is done in reals.
+ *
+ * @author ken
+ */
+public class ConstantFolder
+{
+
+	/**
+	 * The symbols, used to check whether expressions are real.
+	 */
+	private SymbolTable symbols;
+
+	/**
+	 * Constructor.
+	 * @param symbols
+	 */
+	public ConstantFolder(SymbolTable symbols)
+	{
+		this.symbols = symbols;
+	}
+
+	/**
+	 * Folds the main compound statement of the program, and the bodies of
+	 * its functions and procedures.
+	 * @param program
+	 */
+	public void fold(ProgramNode program)
+	{
+		statement(program.getMain());
+		fold(program.getFunctions());
+	}
+
+	/**
+	 * Folds the bodies of a list of subprograms, and the ones nested in them.
+	 * @param functions
+	 */
+	private void fold(SubProgramDeclarationsNode functions)
+	{
+		if (functions == null)
+		{
+			return;
+		}
+		for (SubProgramNode sub : functions.getSubPrograms())
+		{
+			statement(sub.getBody());
+			fold(sub.getSubDeclarations());
+		}
+	}
+
+	/**
+	 * Folds a statement. Returns the statement that should replace it, which
+	 * is an empty compound statement if nothing needs to be executed.
+	 * @param stmt
+	 * @return
+	 */
+	private StatementNode statement(StatementNode stmt)
+	{
+		if (stmt instanceof CompoundStatementNode)
+		{
+			ArrayList<StatementNode> statements = ((CompoundStatementNode) stmt).getStatements();
+			ArrayList<StatementNode> folded = new ArrayList<StatementNode>();
+			for (StatementNode current : statements)
+			{
+				StatementNode result = statement(current);
+				if (!isEmpty(result))
+				{
+					folded.add(result);
+				}
+			}
+			statements.clear();
+			statements.addAll(folded);
+		}
+		else if (stmt instanceof AssignmentStatementNode)
+		{
+			AssignmentStatementNode assign = (AssignmentStatementNode) stmt;
+			ExpressionNode exp = assign.getExpression();
+			expression(assign.getLvalue(), false);
+			assign.setExpression(expression(exp, exp.isReal(symbols)));
+		}
+		else if (stmt instanceof WriteNode)
+		{
+			WriteNode write = (WriteNode) stmt;
+			ExpressionNode exp = write.getOutput();
+			write.setOutput(expression(exp, exp.isReal(symbols)));
+		}
+		else if (stmt instanceof ProcedureStatementNode)
+		{
+			arguments(((ProcedureStatementNode) stmt).getArguments());
+		}
+		else if (stmt instanceof IfStatementNode)
+		{
+			IfStatementNode ifNode = (IfStatementNode) stmt;
+			ExpressionNode cond = condition(ifNode.getCondition());
+			if (cond instanceof ValueNode)
+			{
+				if (isTrue((ValueNode) cond))
+				{
+					return statement(ifNode.getStatement());
+				}
+				return statement(ifNode.getElseStatement());
+			}
+			ifNode.setCondition(cond);
+			ifNode.setStatement(statement(ifNode.getStatement()));
+			ifNode.setElseStatement(statement(ifNode.getElseStatement()));
+		}
+		else if (stmt instanceof WhileStatementNode)
+		{
+			WhileStatementNode whileNode = (WhileStatementNode) stmt;
+			ExpressionNode cond = condition(whileNode.getCondition());
+			if (cond instanceof ValueNode && !isTrue((ValueNode) cond))
+			{
+				return new CompoundStatementNode();
+			}
+			whileNode.setCondition(cond);
+			whileNode.setStatement(statement(whileNode.getStatement()));
+		}
+		return stmt;
+	}
+
+	/**
+	 * Folds the arguments of a call.
+	 * @param arguments
+	 */
+	private void arguments(ArrayList<ExpressionNode> arguments)
+	{
+		for (int i = 0; i < arguments.size(); i++)
+		{
+			ExpressionNode arg = arguments.get(i);
+			arguments.set(i, expression(arg, arg.isReal(symbols)));
+		}
+	}
+
+	/**
+	 * Folds the condition of an if or while statement.
+	 * @param cond
+	 * @return
+	 */
+	private ExpressionNode condition(ExpressionNode cond)
+	{
+		return expression(cond, cond.isReal(symbols));
+	}
+
+	/**
+	 * Check whether a statement does nothing.
+	 * @param stmt
+	 * @return
+	 */
+	private boolean isEmpty(StatementNode stmt)
+	{
+		return stmt == null || (stmt instanceof CompoundStatementNode
+				&& ((CompoundStatementNode) stmt).getStatements().isEmpty());
+	}
+
+	/**
+	 * Folds an expression. Returns the expression that should replace it.
+	 * @param exp
+	 * @param real true if the expression is evaluated as a real.
+	 * @return
+	 */
+	public ExpressionNode expression(ExpressionNode exp, boolean real)
+	{
+		if (exp instanceof ValueNode)
+		{
+			return normalize((ValueNode) exp);
+		}
+		if (exp instanceof FunctionCallNode)
+		{
+			arguments(((FunctionCallNode) exp).getArguments());
+		}
+		if (exp instanceof ArrayNode)
+		{
+			ArrayNode element = (ArrayNode) exp;
+			element.setIndex(expression(element.getIndex(), false));
+		}
+		if (!(exp instanceof OperationNode))
+		{
+			return exp;
+		}
+		OperationNode op = (OperationNode) exp;
+		boolean opReal = real || op.isReal(symbols);
+		ExpressionNode left = expression(op.getLeft(), opReal);
+		ExpressionNode right = expression(op.getRight(), opReal);
+		op.setLeft(left);
+		op.setRight(right);
+
+		if (left instanceof ValueNode && right instanceof ValueNode)
+		{
+			ValueNode result = evaluate(op.getOperation(), (ValueNode) left,
+					(ValueNode) right, opReal);
+			if (result != null)
+			{
+				return applyFlags(result, op);
+			}
+			return op;
+		}
+		return simplify(op, left, right, opReal);
+	}
+
+	/**
+	 * Applies algebraic identities to an operation with one constant side.
+	 * The identities are only applied when the remaining side has the same
+	 * type as the operation, so the code generated for it does not change
+	 * between integer and real. Adding 0.0, or taking from 0.0, is kept for
+	 * reals, since it changes -0.0 to 0.0 or back.
+	 * @param op
+	 * @param left
+	 * @param right
+	 * @param real
+	 * @return
+	 */
+	private ExpressionNode simplify(OperationNode op, ExpressionNode left,
+			ExpressionNode right, boolean real)
+	{
+		Token operation = op.getOperation();
+		if (right instanceof ValueNode && left.isReal(symbols) == real)
+		{
+			double value = doubleValue((ValueNode) right);
+			if ((operation == Token.PLUS && !real || operation == Token.MINUS) && value == 0
+					|| (operation == Token.MULTIPLY || operation == Token.DIVIDE) && value == 1)
+			{
+				return merge(left, false, op);
+			}
+			if (operation == Token.MULTIPLY && value == 0 && !real && !hasEffect(left))
+			{
+				return constant(op, right);
+			}
+		}
+		if (left instanceof ValueNode && right.isReal(symbols) == real)
+		{
+			double value = doubleValue((ValueNode) left);
+			if (operation == Token.PLUS && value == 0 && !real
+					|| operation == Token.MULTIPLY && value == 1)
+			{
+				return merge(right, false, op);
+			}
+			if (operation == Token.MINUS && value == 0 && !real)
+			{
+				return merge(right, true, op);
+			}
+			if (operation == Token.MULTIPLY && value == 0 && !real && !hasEffect(right))
+			{
+				return constant(op, left);
+			}
+		}
+		return op;
+	}
+
+	/**
+	 * Check whether evaluating an expression does more than compute its
+	 * value: a call, or an element whose bounds check may fail. Such an
+	 * expression cannot be dropped when multiplied by 0.
+	 * @param exp
+	 * @return
+	 */
+	private boolean hasEffect(ExpressionNode exp)
+	{
+		return Expressions.hasCall(exp) || Expressions.hasArray(exp);
+	}
+
+	/**
+	 * Replaces an operation with one of its operands, moving the sign and not
+	 * of the operation on to the operand. Two signs cancel each other out, as
+	 * do two nots.
+	 * @param operand
+	 * @param negate true if the operand is negated by the operation.
+	 * @param op
+	 * @return
+	 */
+	private ExpressionNode merge(ExpressionNode operand, boolean negate, OperationNode op)
+	{
+		if (op.isNot())
+		{
+			// not -x is the same as not x.
+			operand.setNot(!operand.isNot());
+			operand.setSign(op.getSign());
+		}
+		else
+		{
+			boolean minus = (operand.getSign() == Token.MINUS) ^ negate
+					^ (op.getSign() == Token.MINUS);
+			operand.setSign(minus ? Token.MINUS : Token.PLUS);
+		}
+		if (operand instanceof ValueNode)
+		{
+			return normalize((ValueNode) operand);
+		}
+		return operand;
+	}
+
+	/**
+	 * Replaces an operation with a constant, applying the operation's sign
+	 * and not to it.
+	 * @param op
+	 * @param value
+	 * @return
+	 */
+	private ExpressionNode constant(OperationNode op, ExpressionNode value)
+	{
+		return applyFlags((ValueNode) value, op);
+	}
+
+	/**
+	 * Applies the not and then the sign of a node to a value, returning a new
+	 * value.
+	 * @param val
+	 * @param flags the node whose not and sign are applied.
+	 * @return
+	 */
+	private ValueNode applyFlags(ValueNode val, ExpressionNode flags)
+	{
+		double value = doubleValue(val);
+		if (flags.isNot())
+		{
+			value = value == 0 ? 1 : 0;
+		}
+		if (flags.getSign() == Token.MINUS)
+		{
+			value = -value;
+		}
+		if (val.getType() == Token.REAL)
+		{
+			return realValue((float) value);
+		}
+		return intValue((int) (long) value);
+	}
+
+	/**
+	 * Evaluates an operation on two values. Returns null if the operation
+	 * can not be done at compile time, like a division by zero.
+	 * @param operation
+	 * @param left
+	 * @param right
+	 * @param real
+	 * @return
+	 */
+	private ValueNode evaluate(Token operation, ValueNode left, ValueNode right, boolean real)
+	{
+		if (real)
+		{
+			float l = (float) doubleValue(left);
+			float r = (float) doubleValue(right);
+			switch (operation)
+			{
+				case PLUS:
+					return realValue(l + r);
+				case MINUS:
+					return realValue(l - r);
+				case MULTIPLY:
+					return realValue(l * r);
+				case DIVIDE:
+					return r == 0 ? null : realValue(l / r);
+				case LESS_THAN:
+					return intValue(l < r ? 1 : 0);
+				case LESS_THAN_EQUAL:
+					return intValue(l <= r ? 1 : 0);
+				case GREATER_THAN:
+					return intValue(l > r ? 1 : 0);
+				case GREATER_THAN_EQUAL:
+					return intValue(l >= r ? 1 : 0);
+				case LESS_THAN_GREATER_THAN:
+					return intValue(l != r ? 1 : 0);
+				case EQUALS:
+					return intValue(l == r ? 1 : 0);
+				default:
+					return null;
+			}
+		}
+		int l = (int) doubleValue(left);
+		int r = (int) doubleValue(right);
+		switch (operation)
+		{
+			case PLUS:
+				return intValue(l + r);
+			case MINUS:
+				return intValue(l - r);
+			case MULTIPLY:
+				return intValue(l * r);
+			case DIVIDE:
+				return r == 0 ? null : intValue(l / r);
+			case LESS_THAN:
+				return intValue(l < r ? 1 : 0);
+			case LESS_THAN_EQUAL:
+				return intValue(l <= r ? 1 : 0);
+			case GREATER_THAN:
+				return intValue(l > r ? 1 : 0);
+			case GREATER_THAN_EQUAL:
+				return intValue(l >= r ? 1 : 0);
+			case LESS_THAN_GREATER_THAN:
+				return intValue(l != r ? 1 : 0);
+			case EQUALS:
+				return intValue(l == r ? 1 : 0);
+			default:
+				return null;
+		}
+	}
+
+	/**
+	 * Applies the not flag of a value to the value itself, so the only flag
+	 * left on a value is its sign.
+	 * @param val
+	 * @return
+	 */
+	private ValueNode normalize(ValueNode val)
+	{
+		if (!val.isNot())
+		{
+			return val;
+		}
+		boolean zero = Double.parseDouble(val.getAttribute()) == 0;
+		ValueNode result = val.getType() == Token.REAL
+				? realValue(zero ? 1 : 0) : intValue(zero ? 1 : 0);
+		result.setSign(val.getSign());
+		return result;
+	}
+
+	/**
+	 * Check whether a condition value is true, that is not zero.
+	 * @param val
+	 * @return
+	 */
+	private boolean isTrue(ValueNode val)
+	{
+		return doubleValue(val) != 0;
+	}
+
+	/**
+	 * The value of a value node, including its sign.
+	 * @param val
+	 * @return
+	 */
+	private double doubleValue(ValueNode val)
+	{
+		double value = Double.parseDouble(val.getAttribute());
+		return val.getSign() == Token.MINUS ? -value : value;
+	}
+
+	/**
+	 * Creates an integer value node.
+	 * @param value
+	 * @return
+	 */
+	private ValueNode intValue(int value)
+	{
+		ValueNode val = new ValueNode();
+		val.setType(Token.INTEGER);
+		val.setAttribute(Long.toString(Math.abs((long) value)));
+		val.setSign(value < 0 ? Token.MINUS : Token.PLUS);
+		return val;
+	}
+
+	/**
+	 * Creates a real value node. Returns null if the value can not be written
+	 * as a literal, like infinity.
+	 * @param value
+	 * @return
+	 */
+	private ValueNode realValue(float value)
+	{
+		if (Float.isNaN(value) || Float.isInfinite(value))
+		{
+			return null;
+		}
+		ValueNode val = new ValueNode();
+		val.setType(Token.REAL);
+		String attribute = new BigDecimal(Float.toString(Math.abs(value))).toPlainString();
+		if (attribute.indexOf('.') < 0)
+		{
+			attribute += ".0";
+		}
+		val.setAttribute(attribute);
+		val.setSign(value < 0 ? Token.MINUS : Token.PLUS);
+		return val;
+	}
+}
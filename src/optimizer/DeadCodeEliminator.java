@@ -0,0 +1,389 @@
+package optimizer;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import scanner.Token;
+import syntaxtree.*;
+
+/**
+ * Removes code that has no effect on what the program writes. Liveness is
+ * worked out backwards over the statements, with while loops repeated until
+ * the variables live at their head stop changing:
+ *
+ * - An assignment to a variable that is not read again before it is
+ *   assigned again, or before the program ends, is removed, and so is an
+ *   assignment of a variable to itself.
+ * - Statements after a while loop whose condition is always true are never
+ *   reached, and are removed.
+ * - An if whose branches are both empty is removed.
+ * - Variables no statement uses any more are removed from the declarations.
+ *
+ * Stores to elements of arrays are always kept, since they do not replace
+ * the whole array and may fail their bounds check, and so are assignments
+ * that read an element.
+ *
+ * Reads are always kept, since they take input even when the variable is
+ * not used, and so are calls. A called subprogram may read any global
+ * variable, so they are all live before a call.
+ *
+ * @author ken
+ */
+public class DeadCodeEliminator
+{
+
+	/**
+	 * Number of statements removed.
+	 */
+	private int removed;
+
+	/**
+	 * The names of the global variables.
+	 */
+	private HashSet<String> globals;
+
+	/**
+	 * Removes dead code from the main program, then the declarations of
+	 * variables that are no longer used.
+	 * @param program
+	 */
+	public void eliminate(ProgramNode program)
+	{
+		globals = new HashSet<String>();
+		for (VariableNode var : program.getVariables().getVars())
+		{
+			globals.add(var.getName());
+		}
+		block(program.getMain().getStatements(), new HashSet<String>(), true);
+		HashSet<String> used = new HashSet<String>();
+		used(program.getMain(), used);
+		used(program.getFunctions(), used);
+		Iterator<VariableNode> vars = program.getVariables().getVars().iterator();
+		while (vars.hasNext())
+		{
+			if (!used.contains(vars.next().getName()))
+			{
+				vars.remove();
+			}
+		}
+	}
+
+	/**
+	 * Get the number of statements removed.
+	 * @return
+	 */
+	public int getRemoved()
+	{
+		return removed;
+	}
+
+	/**
+	 * Adds the variables the bodies of subprograms use to a set.
+	 * @param functions
+	 * @param vars
+	 */
+	private void used(SubProgramDeclarationsNode functions, HashSet<String> vars)
+	{
+		if (functions == null)
+		{
+			return;
+		}
+		for (SubProgramNode sub : functions.getSubPrograms())
+		{
+			used(sub.getBody(), vars);
+			used(sub.getSubDeclarations(), vars);
+		}
+	}
+
+	/**
+	 * Works out the variables live before a list of statements.
+	 * @param list
+	 * @param live the variables live after the list.
+	 * @param remove true to remove dead statements, false to only work out
+	 * liveness.
+	 * @return the variables live before the list.
+	 */
+	private HashSet<String> block(ArrayList<StatementNode> list, HashSet<String> live,
+			boolean remove)
+	{
+		int end = list.size();
+		for (int i = 0; i < list.size(); i++)
+		{
+			if (isInfinite(list.get(i)))
+			{
+				end = i + 1;
+				break;
+			}
+		}
+		if (remove && end < list.size())
+		{
+			removed += list.size() - end;
+			list.subList(end, list.size()).clear();
+		}
+		for (int i = end - 1; i >= 0; i--)
+		{
+			StatementNode stmt = list.get(i);
+			if (isInfinite(stmt))
+			{
+				// Nothing after the loop runs.
+				live = new HashSet<String>();
+			}
+			if (remove && stmt instanceof AssignmentStatementNode
+					&& isDead((AssignmentStatementNode) stmt, live))
+			{
+				list.remove(i);
+				removed++;
+				continue;
+			}
+			live = statement(stmt, live, remove);
+			if (remove && isEmpty(stmt))
+			{
+				list.remove(i);
+				removed++;
+			}
+		}
+		return live;
+	}
+
+	/**
+	 * Check whether an assignment can be removed.
+	 * @param assign
+	 * @param live the variables live after the assignment.
+	 * @return
+	 */
+	private boolean isDead(AssignmentStatementNode assign, HashSet<String> live)
+	{
+		String name = assign.getLvalue().getName();
+		ExpressionNode exp = assign.getExpression();
+		if (Expressions.hasCall(assign) || assign.getLvalue() instanceof ArrayNode
+				|| Expressions.hasArray(exp))
+		{
+			return false;
+		}
+		return !live.contains(name) || exp instanceof VariableNode
+				&& ((VariableNode) exp).getName().equals(name)
+				&& exp.getSign() != Token.MINUS && !exp.isNot();
+	}
+
+	/**
+	 * Works out the variables live before a statement.
+	 * @param stmt
+	 * @param live the variables live after the statement. Not changed.
+	 * @param remove
+	 * @return the variables live before the statement.
+	 */
+	private HashSet<String> statement(StatementNode stmt, HashSet<String> live, boolean remove)
+	{
+		HashSet<String> before = new HashSet<String>(live);
+		if (stmt instanceof AssignmentStatementNode)
+		{
+			AssignmentStatementNode assign = (AssignmentStatementNode) stmt;
+			VariableNode lvalue = assign.getLvalue();
+			if (lvalue instanceof ArrayNode)
+			{
+				// Only one element changes, so the array stays live.
+				reads(((ArrayNode) lvalue).getIndex(), before);
+				reads(assign.getExpression(), before);
+			}
+			else if (live.contains(lvalue.getName()) || Expressions.hasCall(assign)
+					|| Expressions.hasArray(assign.getExpression()))
+			{
+				before.remove(lvalue.getName());
+				reads(assign.getExpression(), before);
+			}
+		}
+		else if (stmt instanceof ReadNode)
+		{
+			if (((ReadNode) stmt).getInput() != null)
+			{
+				before.remove(((ReadNode) stmt).getInput().getName());
+			}
+		}
+		else if (stmt instanceof WriteNode)
+		{
+			reads(((WriteNode) stmt).getOutput(), before);
+		}
+		else if (stmt instanceof ProcedureStatementNode)
+		{
+			before.addAll(globals);
+			for (ExpressionNode arg : ((ProcedureStatementNode) stmt).getArguments())
+			{
+				reads(arg, before);
+			}
+		}
+		else if (stmt instanceof CompoundStatementNode)
+		{
+			before = block(((CompoundStatementNode) stmt).getStatements(), live, remove);
+		}
+		else if (stmt instanceof IfStatementNode)
+		{
+			IfStatementNode ifNode = (IfStatementNode) stmt;
+			if (remove)
+			{
+				ifNode.setStatement(compound(ifNode.getStatement()));
+				ifNode.setElseStatement(compound(ifNode.getElseStatement()));
+			}
+			before = statement(ifNode.getStatement(), live, remove);
+			before.addAll(statement(ifNode.getElseStatement(), live, remove));
+			reads(ifNode.getCondition(), before);
+		}
+		else if (stmt instanceof WhileStatementNode)
+		{
+			WhileStatementNode loop = (WhileStatementNode) stmt;
+			// Live at the head: after the loop, in the condition, or before
+			// the body while it repeats.
+			before.clear();
+			if (!isInfinite(loop))
+			{
+				before.addAll(live);
+			}
+			reads(loop.getCondition(), before);
+			int size;
+			do
+			{
+				size = before.size();
+				before.addAll(statement(loop.getStatement(), before, false));
+			} while (before.size() != size);
+			if (remove)
+			{
+				loop.setStatement(compound(loop.getStatement()));
+				statement(loop.getStatement(), before, true);
+			}
+		}
+		return before;
+	}
+
+	/**
+	 * Check whether a statement does nothing: an empty compound statement,
+	 * or an if whose branches are both empty.
+	 * @param stmt
+	 * @return
+	 */
+	private boolean isEmpty(StatementNode stmt)
+	{
+		if (stmt instanceof IfStatementNode)
+		{
+			return isEmpty(((IfStatementNode) stmt).getStatement())
+					&& isEmpty(((IfStatementNode) stmt).getElseStatement());
+		}
+		return stmt == null || (stmt instanceof CompoundStatementNode
+				&& ((CompoundStatementNode) stmt).getStatements().isEmpty());
+	}
+
+	/**
+	 * Check whether a while loop never ends, because its condition is a
+	 * constant that is true.
+	 * @param stmt
+	 * @return
+	 */
+	private boolean isInfinite(StatementNode stmt)
+	{
+		if (!(stmt instanceof WhileStatementNode))
+		{
+			return false;
+		}
+		Integer value = Expressions.intConstant(((WhileStatementNode) stmt).getCondition());
+		return value != null && value != 0;
+	}
+
+	/**
+	 * Adds the variables an expression reads to a set, which are all the
+	 * global variables if it calls a function.
+	 * @param exp
+	 * @param vars
+	 */
+	private void reads(ExpressionNode exp, HashSet<String> vars)
+	{
+		if (exp instanceof VariableNode)
+		{
+			vars.add(((VariableNode) exp).getName());
+		}
+		if (exp instanceof ArrayNode)
+		{
+			reads(((ArrayNode) exp).getIndex(), vars);
+		}
+		else if (exp instanceof OperationNode)
+		{
+			reads(((OperationNode) exp).getLeft(), vars);
+			reads(((OperationNode) exp).getRight(), vars);
+		}
+		else if (exp instanceof FunctionCallNode)
+		{
+			vars.addAll(globals);
+			for (ExpressionNode arg : ((FunctionCallNode) exp).getArguments())
+			{
+				reads(arg, vars);
+			}
+		}
+	}
+
+	/**
+	 * Adds the variables a statement reads or assigns to a set.
+	 * @param stmt
+	 * @param vars
+	 */
+	private void used(StatementNode stmt, HashSet<String> vars)
+	{
+		if (stmt instanceof AssignmentStatementNode)
+		{
+			reads(((AssignmentStatementNode) stmt).getLvalue(), vars);
+			reads(((AssignmentStatementNode) stmt).getExpression(), vars);
+		}
+		else if (stmt instanceof ReadNode)
+		{
+			if (((ReadNode) stmt).getInput() != null)
+			{
+				vars.add(((ReadNode) stmt).getInput().getName());
+			}
+		}
+		else if (stmt instanceof WriteNode)
+		{
+			reads(((WriteNode) stmt).getOutput(), vars);
+		}
+		else if (stmt instanceof ProcedureStatementNode)
+		{
+			for (ExpressionNode arg : ((ProcedureStatementNode) stmt).getArguments())
+			{
+				reads(arg, vars);
+			}
+		}
+		else if (stmt instanceof CompoundStatementNode)
+		{
+			for (StatementNode current : ((CompoundStatementNode) stmt).getStatements())
+			{
+				used(current, vars);
+			}
+		}
+		else if (stmt instanceof IfStatementNode)
+		{
+			reads(((IfStatementNode) stmt).getCondition(), vars);
+			used(((IfStatementNode) stmt).getStatement(), vars);
+			used(((IfStatementNode) stmt).getElseStatement(), vars);
+		}
+		else if (stmt instanceof WhileStatementNode)
+		{
+			reads(((WhileStatementNode) stmt).getCondition(), vars);
+			used(((WhileStatementNode) stmt).getStatement(), vars);
+		}
+	}
+
+	/**
+	 * Wraps a statement in a compound statement, so a dead statement can be
+	 * taken out of it.
+	 * @param stmt
+	 * @return
+	 */
+	private CompoundStatementNode compound(StatementNode stmt)
+	{
+		if (stmt instanceof CompoundStatementNode)
+		{
+			return (CompoundStatementNode) stmt;
+		}
+		CompoundStatementNode compound = new CompoundStatementNode();
+		if (stmt != null)
+		{
+			compound.addStatement(stmt);
+		}
+		return compound;
+	}
+}
@@ -0,0 +1,529 @@
+package optimizer;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import parser.Kind;
+import parser.SymbolTable;
+import scanner.Token;
+import syntaxtree.*;
+
+/**
+ * Helpers for comparing and copying expressions. Two expressions with the
+ * same key compute the same value, as long as none of their variables change
+ * in between. The walkers that count what a statement reads and assigns are
+ * here too, so every pass agrees on what a call or a read does.
+ *
+ * @author ken
+ */
+public class Expressions
+{
+
+	/**
+	 * Builds a key for an expression, including its sign and not, and
+	 * whether it is evaluated as a real.
+	 * @param exp
+	 * @param real
+	 * @return
+	 */
+	public static String key(ExpressionNode exp, boolean real)
+	{
+		return (real ? "r:" : "i:") + key(exp);
+	}
+
+	/**
+	 * Builds a key for the structure of an expression.
+	 * @param exp
+	 * @return
+	 */
+	private static String key(ExpressionNode exp)
+	{
+		StringBuilder key = new StringBuilder();
+		if (exp.getSign() == Token.MINUS)
+		{
+			key.append('-');
+		}
+		if (exp.isNot())
+		{
+			key.append('!');
+		}
+		if (exp instanceof ArrayNode)
+		{
+			ArrayNode element = (ArrayNode) exp;
+			key.append(element.getName()).append(element.isScaled() ? "{4*" : "{");
+			key.append(key(element.getIndex())).append('}');
+		}
+		else if (exp instanceof VariableNode)
+		{
+			key.append(((VariableNode) exp).getName());
+		}
+		else if (exp instanceof ValueNode)
+		{
+			key.append('#').append(((ValueNode) exp).getAttribute());
+		}
+		else if (exp instanceof OperationNode)
+		{
+			OperationNode op = (OperationNode) exp;
+			key.append('(').append(key(op.getLeft())).append(' ');
+			key.append(op.getOperation()).append(' ');
+			key.append(key(op.getRight())).append(')');
+		}
+		else if (exp instanceof FunctionCallNode)
+		{
+			FunctionCallNode call = (FunctionCallNode) exp;
+			key.append(call.getName()).append('[');
+			for (ExpressionNode arg : call.getArguments())
+			{
+				key.append(key(arg)).append(' ');
+			}
+			key.append(']');
+		}
+		return key.toString();
+	}
+
+	/**
+	 * Check whether an expression uses any variable.
+	 * @param exp
+	 * @return
+	 */
+	public static boolean hasVariable(ExpressionNode exp)
+	{
+		if (exp instanceof VariableNode)
+		{
+			return true;
+		}
+		if (exp instanceof OperationNode)
+		{
+			return hasVariable(((OperationNode) exp).getLeft())
+					|| hasVariable(((OperationNode) exp).getRight());
+		}
+		return false;
+	}
+
+	/**
+	 * Check whether an expression reads an element of an array.
+	 * @param exp
+	 * @return
+	 */
+	public static boolean hasArray(ExpressionNode exp)
+	{
+		if (exp instanceof ArrayNode)
+		{
+			return true;
+		}
+		if (exp instanceof OperationNode)
+		{
+			return hasArray(((OperationNode) exp).getLeft())
+					|| hasArray(((OperationNode) exp).getRight());
+		}
+		if (exp instanceof FunctionCallNode)
+		{
+			for (ExpressionNode arg : ((FunctionCallNode) exp).getArguments())
+			{
+				if (hasArray(arg))
+				{
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Check whether an expression calls a function.
+	 * @param exp
+	 * @return
+	 */
+	public static boolean hasCall(ExpressionNode exp)
+	{
+		if (exp instanceof FunctionCallNode)
+		{
+			return true;
+		}
+		if (exp instanceof ArrayNode)
+		{
+			return hasCall(((ArrayNode) exp).getIndex());
+		}
+		if (exp instanceof OperationNode)
+		{
+			return hasCall(((OperationNode) exp).getLeft())
+					|| hasCall(((OperationNode) exp).getRight());
+		}
+		return false;
+	}
+
+	/**
+	 * Check whether a statement calls a function or procedure anywhere in it.
+	 * A called subprogram may read or change any global variable.
+	 * @param stmt
+	 * @return
+	 */
+	public static boolean hasCall(StatementNode stmt)
+	{
+		if (stmt instanceof ProcedureStatementNode)
+		{
+			return true;
+		}
+		if (stmt instanceof AssignmentStatementNode)
+		{
+			return hasCall(((AssignmentStatementNode) stmt).getLvalue())
+					|| hasCall(((AssignmentStatementNode) stmt).getExpression());
+		}
+		if (stmt instanceof WriteNode)
+		{
+			return hasCall(((WriteNode) stmt).getOutput());
+		}
+		if (stmt instanceof CompoundStatementNode)
+		{
+			for (StatementNode current : ((CompoundStatementNode) stmt).getStatements())
+			{
+				if (hasCall(current))
+				{
+					return true;
+				}
+			}
+		}
+		else if (stmt instanceof IfStatementNode)
+		{
+			IfStatementNode ifNode = (IfStatementNode) stmt;
+			return hasCall(ifNode.getCondition()) || hasCall(ifNode.getStatement())
+					|| hasCall(ifNode.getElseStatement());
+		}
+		else if (stmt instanceof WhileStatementNode)
+		{
+			WhileStatementNode whileNode = (WhileStatementNode) stmt;
+			return hasCall(whileNode.getCondition()) || hasCall(whileNode.getStatement());
+		}
+		return false;
+	}
+
+	/**
+	 * Counts the assignments to each variable in a statement. A read counts
+	 * as two, since the value it gives is not known. Returns false if a
+	 * statement changes a variable that is not known, which includes any
+	 * call.
+	 * @param stmt
+	 * @param assignments
+	 * @return
+	 */
+	public static boolean assignments(StatementNode stmt, HashMap<String, Integer> assignments)
+	{
+		if (hasCall(stmt))
+		{
+			return false;
+		}
+		if (stmt instanceof AssignmentStatementNode)
+		{
+			add(assignments, ((AssignmentStatementNode) stmt).getLvalue().getName(), 1);
+		}
+		else if (stmt instanceof ReadNode)
+		{
+			VariableNode input = ((ReadNode) stmt).getInput();
+			if (input == null)
+			{
+				return false;
+			}
+			add(assignments, input.getName(), 2);
+		}
+		else if (stmt instanceof CompoundStatementNode)
+		{
+			for (StatementNode current : ((CompoundStatementNode) stmt).getStatements())
+			{
+				if (!assignments(current, assignments))
+				{
+					return false;
+				}
+			}
+		}
+		else if (stmt instanceof IfStatementNode)
+		{
+			return assignments(((IfStatementNode) stmt).getStatement(), assignments)
+					&& assignments(((IfStatementNode) stmt).getElseStatement(), assignments);
+		}
+		else if (stmt instanceof WhileStatementNode)
+		{
+			return assignments(((WhileStatementNode) stmt).getStatement(), assignments);
+		}
+		return true;
+	}
+
+	/**
+	 * Adds to the count of a variable.
+	 * @param assignments
+	 * @param name
+	 * @param count
+	 */
+	private static void add(HashMap<String, Integer> assignments, String name, int count)
+	{
+		Integer before = assignments.get(name);
+		assignments.put(name, before == null ? count : before + count);
+	}
+
+	/**
+	 * Counts the reads of a variable in a statement, skipping some statements.
+	 * A call counts as a read, since the subprogram may read the variable.
+	 * @param stmt
+	 * @param name
+	 * @param skip statements not to count in, or null.
+	 * @return
+	 */
+	public static int reads(StatementNode stmt, String name, HashSet<StatementNode> skip)
+	{
+		if (stmt == null || skip != null && skip.contains(stmt))
+		{
+			return 0;
+		}
+		if (stmt instanceof AssignmentStatementNode)
+		{
+			VariableNode lvalue = ((AssignmentStatementNode) stmt).getLvalue();
+			int count = reads(((AssignmentStatementNode) stmt).getExpression(), name);
+			if (lvalue instanceof ArrayNode)
+			{
+				count += reads(((ArrayNode) lvalue).getIndex(), name);
+			}
+			return count;
+		}
+		if (stmt instanceof WriteNode)
+		{
+			return reads(((WriteNode) stmt).getOutput(), name);
+		}
+		if (stmt instanceof ProcedureStatementNode)
+		{
+			return 1;
+		}
+		int count = 0;
+		if (stmt instanceof CompoundStatementNode)
+		{
+			for (StatementNode current : ((CompoundStatementNode) stmt).getStatements())
+			{
+				count += reads(current, name, skip);
+			}
+		}
+		else if (stmt instanceof IfStatementNode)
+		{
+			IfStatementNode ifNode = (IfStatementNode) stmt;
+			count = reads(ifNode.getCondition(), name) + reads(ifNode.getStatement(), name, skip)
+					+ reads(ifNode.getElseStatement(), name, skip);
+		}
+		else if (stmt instanceof WhileStatementNode)
+		{
+			WhileStatementNode whileNode = (WhileStatementNode) stmt;
+			count = reads(whileNode.getCondition(), name)
+					+ reads(whileNode.getStatement(), name, skip);
+		}
+		return count;
+	}
+
+	/**
+	 * Counts the reads of a variable in an expression. A call counts as a
+	 * read, since the function may read the variable.
+	 * @param exp
+	 * @param name
+	 * @return
+	 */
+	public static int reads(ExpressionNode exp, String name)
+	{
+		if (exp instanceof ArrayNode)
+		{
+			return reads(((ArrayNode) exp).getIndex(), name);
+		}
+		if (exp instanceof VariableNode)
+		{
+			return ((VariableNode) exp).getName().equals(name) ? 1 : 0;
+		}
+		if (exp instanceof OperationNode)
+		{
+			return reads(((OperationNode) exp).getLeft(), name)
+					+ reads(((OperationNode) exp).getRight(), name);
+		}
+		return exp instanceof FunctionCallNode ? 1 : 0;
+	}
+
+	/**
+	 * The value of an integer constant, or null if the expression is not one.
+	 * @param exp
+	 * @return
+	 */
+	public static Integer intConstant(ExpressionNode exp)
+	{
+		if (!(exp instanceof ValueNode) || ((ValueNode) exp).getType() != Token.INTEGER
+				|| exp.isNot())
+		{
+			return null;
+		}
+		int value = Integer.parseInt(((ValueNode) exp).getAttribute());
+		return exp.getSign() == Token.MINUS ? -value : value;
+	}
+
+	/**
+	 * Creates an integer value node.
+	 * @param value
+	 * @return
+	 */
+	public static ValueNode intValue(int value)
+	{
+		ValueNode val = new ValueNode();
+		val.setType(Token.INTEGER);
+		val.setAttribute(Long.toString(Math.abs((long) value)));
+		val.setSign(value < 0 ? Token.MINUS : Token.PLUS);
+		return val;
+	}
+
+	/**
+	 * Makes a deep copy of an expression, so it can be put in a second place
+	 * in the tree.
+	 * @param exp
+	 * @return
+	 */
+	public static ExpressionNode copy(ExpressionNode exp)
+	{
+		ExpressionNode copy;
+		if (exp instanceof ArrayNode)
+		{
+			ArrayNode element = (ArrayNode) exp;
+			ArrayNode array = new ArrayNode(element.getName(), element.getType(),
+					copy(element.getIndex()));
+			array.setChecked(element.isChecked());
+			array.setScaled(element.isScaled());
+			copy = array;
+		}
+		else if (exp instanceof VariableNode)
+		{
+			VariableNode var = (VariableNode) exp;
+			copy = new VariableNode(var.getName(), var.getType());
+		}
+		else if (exp instanceof ValueNode)
+		{
+			ValueNode val = new ValueNode();
+			val.setType(((ValueNode) exp).getType());
+			val.setAttribute(((ValueNode) exp).getAttribute());
+			copy = val;
+		}
+		else if (exp instanceof OperationNode)
+		{
+			OperationNode op = (OperationNode) exp;
+			copy = new OperationNode(op.getOperation(), copy(op.getLeft()), copy(op.getRight()));
+		}
+		else if (exp instanceof FunctionCallNode)
+		{
+			FunctionCallNode call = (FunctionCallNode) exp;
+			copy = new FunctionCallNode(call.getName(), copies(call.getArguments()),
+					call.getType());
+		}
+		else
+		{
+			return exp;
+		}
+		copy.setSign(exp.getSign());
+		copy.setNot(exp.isNot());
+		return copy;
+	}
+
+	/**
+	 * Makes deep copies of a list of expressions.
+	 * @param list
+	 * @return
+	 */
+	private static ArrayList<ExpressionNode> copies(ArrayList<ExpressionNode> list)
+	{
+		ArrayList<ExpressionNode> copies = new ArrayList<ExpressionNode>();
+		for (ExpressionNode exp : list)
+		{
+			copies.add(copy(exp));
+		}
+		return copies;
+	}
+
+	/**
+	 * Makes a deep copy of a statement.
+	 * @param stmt
+	 * @return
+	 */
+	public static StatementNode copy(StatementNode stmt)
+	{
+		if (stmt instanceof AssignmentStatementNode)
+		{
+			AssignmentStatementNode assign = (AssignmentStatementNode) stmt;
+			AssignmentStatementNode copy = new AssignmentStatementNode(
+					(VariableNode) copy(assign.getLvalue()), copy(assign.getExpression()));
+			copy.setType(assign.getType());
+			return copy;
+		}
+		if (stmt instanceof WriteNode)
+		{
+			WriteNode copy = new WriteNode();
+			copy.setOutput(copy(((WriteNode) stmt).getOutput()));
+			return copy;
+		}
+		if (stmt instanceof ReadNode)
+		{
+			ReadNode copy = new ReadNode();
+			VariableNode input = ((ReadNode) stmt).getInput();
+			copy.setInput(input == null ? null : (VariableNode) copy(input));
+			return copy;
+		}
+		if (stmt instanceof ProcedureStatementNode)
+		{
+			ProcedureStatementNode call = (ProcedureStatementNode) stmt;
+			return new ProcedureStatementNode(call.getName(), copies(call.getArguments()));
+		}
+		if (stmt instanceof CompoundStatementNode)
+		{
+			CompoundStatementNode copy = new CompoundStatementNode();
+			for (StatementNode current : ((CompoundStatementNode) stmt).getStatements())
+			{
+				copy.addStatement(copy(current));
+			}
+			return copy;
+		}
+		if (stmt instanceof IfStatementNode)
+		{
+			IfStatementNode ifNode = (IfStatementNode) stmt;
+			IfStatementNode copy = new IfStatementNode();
+			copy.setCondition(copy(ifNode.getCondition()));
+			copy.setStatement(copy(ifNode.getStatement()));
+			copy.setElseStatement(copy(ifNode.getElseStatement()));
+			return copy;
+		}
+		if (stmt instanceof WhileStatementNode)
+		{
+			WhileStatementNode whileNode = (WhileStatementNode) stmt;
+			WhileStatementNode copy = new WhileStatementNode();
+			copy.setCondition(copy(whileNode.getCondition()));
+			copy.setStatement(copy(whileNode.getStatement()));
+			return copy;
+		}
+		return stmt;
+	}
+
+	/**
+	 * Declares a temporary variable made by an optimization, in the program
+	 * and in the symbol table.
+	 * @param declarations
+	 * @param symbols
+	 * @param name
+	 * @param type
+	 * @return
+	 */
+	public static VariableNode declare(DeclarationsNode declarations, SymbolTable symbols,
+			String name, Token type)
+	{
+		VariableNode var = new VariableNode(name, type);
+		declarations.addVar(var);
+		symbols.add(name, Kind.VAR);
+		symbols.setType(name, type);
+		return var;
+	}
+
+	/**
+	 * Check whether an operation is a comparison.
+	 * @param operation
+	 * @return
+	 */
+	public static boolean isComparison(Token operation)
+	{
+		return operation == Token.LESS_THAN || operation == Token.LESS_THAN_EQUAL
+				|| operation == Token.GREATER_THAN || operation == Token.GREATER_THAN_EQUAL
+				|| operation == Token.LESS_THAN_GREATER_THAN || operation == Token.EQUALS;
+	}
+}
@@ -0,0 +1,757 @@
+package optimizer;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import parser.SymbolTable;
+import scanner.Token;
+import syntaxtree.*;
+
+/**
+ * Strength reduces induction variables in while loops. A basic induction
+ * variable is an integer assigned once in the loop, by a statement of the
+ * loop body itself like i := i + c or i := i - c. An expression i * k,
+ * i * k + e or i * k - e, where k is a constant and e does not change in the
+ * loop, is a derived induction variable: it is kept in a temporary that is
+ * set before the loop and has c * k added right after i is updated, so the
+ * multiply becomes an add.
+ *
+ * The index of an element of an array that is i, i + e, i - e or one of
+ * these derived induction variables is replaced by the offset in bytes of
+ * the element, (index - start) * 4, which is a derived induction variable
+ * too. The element is marked scaled, so the code generators use the offset
+ * as it is, without shifting it. An index far out of the bounds could wrap
+ * around to an offset in them, so only elements range analysis has found
+ * always in the bounds are scaled, unless indexes are not checked at all.
+ *
+ * If i itself is then only used for the exit test, and it is set right
+ * before the loop and not read anywhere else, the test is rewritten to
+ * compare the temporary against the bound times k, and the update of i is
+ * removed. The start, the bound and e must then be constants, so every
+ * value the test sees can be shown to fit in an int both as i and as
+ * i * k + e; otherwise the temporary could wrap around where i does not.
+ *
+ * @author ken
+ */
+public class InductionVariables
+{
+
+	/**
+	 * Prefix of the temporaries. Identifiers can not start with it.
+	 */
+	public static final String TEMPORARY = "_iv";
+
+	/**
+	 * A derived induction variable i * k + e, or i * k - e, and the
+	 * temporary holding it.
+	 */
+	private static class Family
+	{
+		private int factor;
+		private ExpressionNode offset;
+		private Token offsetSign;
+		private VariableNode temporary;
+	}
+
+	/**
+	 * The symbols, used to check types and to add the temporaries.
+	 */
+	private SymbolTable symbols;
+
+	/**
+	 * Used to simplify the new bounds of exit tests.
+	 */
+	private ConstantFolder folder;
+
+	/**
+	 * The program being reduced.
+	 */
+	private ProgramNode program;
+
+	/**
+	 * The temporaries that were created.
+	 */
+	private ArrayList<VariableNode> temporaries;
+
+	/**
+	 * True if indexes are checked against the bounds of their arrays.
+	 */
+	private boolean boundsCheck = true;
+
+	/**
+	 * Constructor.
+	 * @param symbols
+	 */
+	public InductionVariables(SymbolTable symbols)
+	{
+		this.symbols = symbols;
+		folder = new ConstantFolder(symbols);
+	}
+
+	/**
+	 * Sets whether indexes are checked against the bounds of their arrays.
+	 * If they are, only elements whose checks range analysis removed are
+	 * scaled.
+	 * @param boundsCheck
+	 */
+	public void setBoundsCheck(boolean boundsCheck)
+	{
+		this.boundsCheck = boundsCheck;
+	}
+
+	/**
+	 * Strength reduces the induction variables of every while loop in the
+	 * main program, inner loops first.
+	 * @param program
+	 * @return the temporaries that were added to the program.
+	 */
+	public ArrayList<VariableNode> reduce(ProgramNode program)
+	{
+		this.program = program;
+		temporaries = new ArrayList<VariableNode>();
+		block(program.getMain().getStatements());
+		return temporaries;
+	}
+
+	/**
+	 * Looks for while loops in a list of statements.
+	 * @param list
+	 */
+	private void block(ArrayList<StatementNode> list)
+	{
+		for (int i = 0; i < list.size(); i++)
+		{
+			StatementNode stmt = list.get(i);
+			if (stmt instanceof CompoundStatementNode)
+			{
+				block(((CompoundStatementNode) stmt).getStatements());
+			}
+			else if (stmt instanceof IfStatementNode)
+			{
+				IfStatementNode ifNode = (IfStatementNode) stmt;
+				ifNode.setStatement(compound(ifNode.getStatement()));
+				ifNode.setElseStatement(compound(ifNode.getElseStatement()));
+				block(((CompoundStatementNode) ifNode.getStatement()).getStatements());
+				block(((CompoundStatementNode) ifNode.getElseStatement()).getStatements());
+			}
+			else if (stmt instanceof WhileStatementNode)
+			{
+				WhileStatementNode loop = (WhileStatementNode) stmt;
+				loop.setStatement(compound(loop.getStatement()));
+				block(((CompoundStatementNode) loop.getStatement()).getStatements());
+				// Statements put before the loop move it further down the list.
+				i += loop(list, loop);
+			}
+		}
+	}
+
+	/**
+	 * Strength reduces the induction variables of one loop.
+	 * @param list the list the loop is in.
+	 * @param loop
+	 * @return the number of statements put before the loop.
+	 */
+	private int loop(ArrayList<StatementNode> list, WhileStatementNode loop)
+	{
+		ArrayList<StatementNode> body = ((CompoundStatementNode) loop.getStatement()).getStatements();
+		HashMap<String, Integer> assignments = new HashMap<String, Integer>();
+		if (!Expressions.assignments(loop.getStatement(), assignments))
+		{
+			return 0;
+		}
+		int added = 0;
+		for (int u = 0; u < body.size(); u++)
+		{
+			String iv = basic(body.get(u), assignments);
+			if (iv == null)
+			{
+				continue;
+			}
+			int step = step((AssignmentStatementNode) body.get(u));
+			LinkedHashMap<String, Family> families = new LinkedHashMap<String, Family>();
+			loop.setCondition(condition(loop.getCondition(), iv, assignments, families));
+			for (StatementNode stmt : body)
+			{
+				statement(stmt, iv, assignments, families);
+			}
+			ArrayList<StatementNode> preheader = new ArrayList<StatementNode>();
+			int updates = 0;
+			for (Family family : families.values())
+			{
+				preheader.add(new AssignmentStatementNode(family.temporary,
+						derived(new VariableNode(iv, Token.INTEGER), family)));
+				Token sign = step * family.factor < 0 ? Token.MINUS : Token.PLUS;
+				OperationNode increment = new OperationNode(sign,
+						new VariableNode(family.temporary.getName(), Token.INTEGER),
+						Expressions.intValue(Math.abs(step * family.factor)));
+				body.add(u + 1 + updates++, new AssignmentStatementNode(
+						new VariableNode(family.temporary.getName(), Token.INTEGER), increment));
+			}
+			int index = indexOf(list, loop);
+			list.addAll(index, preheader);
+			added += preheader.size();
+			if (!families.isEmpty()
+					&& replaceTest(list, loop, iv, step, families.values().iterator().next(), preheader))
+			{
+				body.remove(u);
+				u--;
+			}
+			u += updates;
+		}
+		return added;
+	}
+
+	/**
+	 * Returns the name of the basic induction variable a statement updates,
+	 * or null if it is not i := i + c or i := i - c with i assigned nowhere
+	 * else in the loop.
+	 * @param stmt
+	 * @param assignments
+	 * @return
+	 */
+	private String basic(StatementNode stmt, HashMap<String, Integer> assignments)
+	{
+		if (!(stmt instanceof AssignmentStatementNode))
+		{
+			return null;
+		}
+		AssignmentStatementNode assign = (AssignmentStatementNode) stmt;
+		String name = assign.getLvalue().getName();
+		if (assign.getLvalue() instanceof ArrayNode || symbols.getType(name) != Token.INTEGER || assignments.get(name) != 1
+				|| name.startsWith(TEMPORARY) || !(assign.getExpression() instanceof OperationNode))
+		{
+			return null;
+		}
+		OperationNode op = (OperationNode) assign.getExpression();
+		if (hasFlags(op) || (op.getOperation() != Token.PLUS && op.getOperation() != Token.MINUS))
+		{
+			return null;
+		}
+		if (isVariable(op.getLeft(), name) && Expressions.intConstant(op.getRight()) != null
+				|| op.getOperation() == Token.PLUS && isVariable(op.getRight(), name)
+				&& Expressions.intConstant(op.getLeft()) != null)
+		{
+			return name;
+		}
+		return null;
+	}
+
+	/**
+	 * The amount a basic induction variable changes by in its update.
+	 * @param assign
+	 * @return
+	 */
+	private int step(AssignmentStatementNode assign)
+	{
+		OperationNode op = (OperationNode) assign.getExpression();
+		Integer constant = Expressions.intConstant(op.getRight());
+		if (constant == null)
+		{
+			constant = Expressions.intConstant(op.getLeft());
+		}
+		return op.getOperation() == Token.MINUS ? -constant : constant;
+	}
+
+	/**
+	 * Replaces the derived induction variables in a statement.
+	 * @param stmt
+	 * @param iv
+	 * @param assignments
+	 * @param families
+	 */
+	private void statement(StatementNode stmt, String iv, HashMap<String, Integer> assignments,
+			LinkedHashMap<String, Family> families)
+	{
+		if (stmt instanceof AssignmentStatementNode)
+		{
+			AssignmentStatementNode assign = (AssignmentStatementNode) stmt;
+			ExpressionNode exp = assign.getExpression();
+			expression(assign.getLvalue(), false, iv, assignments, families);
+			assign.setExpression(expression(exp, exp.isReal(symbols), iv, assignments, families));
+		}
+		else if (stmt instanceof WriteNode)
+		{
+			WriteNode write = (WriteNode) stmt;
+			ExpressionNode exp = write.getOutput();
+			write.setOutput(expression(exp, exp.isReal(symbols), iv, assignments, families));
+		}
+		else if (stmt instanceof CompoundStatementNode)
+		{
+			for (StatementNode current : ((CompoundStatementNode) stmt).getStatements())
+			{
+				statement(current, iv, assignments, families);
+			}
+		}
+		else if (stmt instanceof IfStatementNode)
+		{
+			IfStatementNode ifNode = (IfStatementNode) stmt;
+			ifNode.setCondition(condition(ifNode.getCondition(), iv, assignments, families));
+			statement(ifNode.getStatement(), iv, assignments, families);
+			statement(ifNode.getElseStatement(), iv, assignments, families);
+		}
+		else if (stmt instanceof WhileStatementNode)
+		{
+			WhileStatementNode whileNode = (WhileStatementNode) stmt;
+			whileNode.setCondition(condition(whileNode.getCondition(), iv, assignments, families));
+			statement(whileNode.getStatement(), iv, assignments, families);
+		}
+	}
+
+	/**
+	 * Replaces the derived induction variables in a condition.
+	 * @param cond
+	 * @param iv
+	 * @param assignments
+	 * @param families
+	 * @return
+	 */
+	private ExpressionNode condition(ExpressionNode cond, String iv,
+			HashMap<String, Integer> assignments, LinkedHashMap<String, Family> families)
+	{
+		return expression(cond, cond.isReal(symbols), iv, assignments, families);
+	}
+
+	/**
+	 * Replaces the derived induction variables in an integer expression with
+	 * their temporaries.
+	 * @param exp
+	 * @param context true if the expression is part of a real operation.
+	 * @param iv
+	 * @param assignments
+	 * @param families
+	 * @return
+	 */
+	private ExpressionNode expression(ExpressionNode exp, boolean context, String iv,
+			HashMap<String, Integer> assignments, LinkedHashMap<String, Family> families)
+	{
+		if (exp instanceof ArrayNode)
+		{
+			ArrayNode element = (ArrayNode) exp;
+			Family family = element.isScaled() || boundsCheck && element.isChecked() ? null
+					: subscript(element, iv, assignments);
+			if (family != null)
+			{
+				element.setIndex(temporary(family, families));
+				element.setScaled(true);
+			}
+			else
+			{
+				element.setIndex(expression(element.getIndex(), false, iv, assignments, families));
+			}
+		}
+		if (!(exp instanceof OperationNode))
+		{
+			return exp;
+		}
+		boolean real = context || exp.isReal(symbols);
+		OperationNode op = (OperationNode) exp;
+		Family family = real ? null : family(op, iv, assignments);
+		if (family != null)
+		{
+			return temporary(family, families);
+		}
+		op.setLeft(expression(op.getLeft(), real, iv, assignments, families));
+		op.setRight(expression(op.getRight(), real, iv, assignments, families));
+		return op;
+	}
+
+	/**
+	 * The temporary holding a derived induction variable, made the first
+	 * time the family is seen in the loop.
+	 * @param family
+	 * @param families
+	 * @return a new reference to the temporary.
+	 */
+	private VariableNode temporary(Family family, LinkedHashMap<String, Family> families)
+	{
+		String key = family.factor + " " + family.offsetSign + " "
+				+ (family.offset == null ? "" : Expressions.key(family.offset, false));
+		if (!families.containsKey(key))
+		{
+			String name = TEMPORARY + temporaries.size();
+			family.temporary = Expressions.declare(program.getVariables(), symbols,
+					name, Token.INTEGER);
+			temporaries.add(family.temporary);
+			families.put(key, family);
+		}
+		return new VariableNode(families.get(key).temporary.getName(), Token.INTEGER);
+	}
+
+	/**
+	 * Matches the index of an element that is i, i + e, e + i, i - e or a
+	 * derived induction variable, where e does not change in the loop, and
+	 * returns the family of the offset of the element in bytes, (index -
+	 * start) * 4. Returns null if the index is none of them.
+	 * @param element
+	 * @param iv
+	 * @param assignments
+	 * @return
+	 */
+	private Family subscript(ArrayNode element, String iv, HashMap<String, Integer> assignments)
+	{
+		ExpressionNode index = element.getIndex();
+		Family family = null;
+		if (isVariable(index, iv))
+		{
+			family = new Family();
+			family.factor = 1;
+			family.offsetSign = Token.PLUS;
+		}
+		else if (index instanceof OperationNode)
+		{
+			OperationNode op = (OperationNode) index;
+			family = family(op, iv, assignments);
+			if (family == null && !hasFlags(op)
+					&& (op.getOperation() == Token.PLUS || op.getOperation() == Token.MINUS))
+			{
+				family = new Family();
+				family.factor = 1;
+				family.offsetSign = op.getOperation();
+				if (isVariable(op.getLeft(), iv))
+				{
+					family.offset = op.getRight();
+				}
+				else if (op.getOperation() == Token.PLUS && isVariable(op.getRight(), iv))
+				{
+					family.offset = op.getLeft();
+				}
+				if (family.offset == null || family.offset.isReal(symbols)
+						|| !isInvariant(family.offset, assignments))
+				{
+					family = null;
+				}
+			}
+		}
+		if (family == null || Math.abs(4L * family.factor) > Integer.MAX_VALUE)
+		{
+			return null;
+		}
+		// (i * k + e - start) * 4 is i * 4k + (e - start) * 4, and
+		// (i * k - e - start) * 4 is i * 4k - (e + start) * 4.
+		int start = symbols.getStart(element.getName());
+		Family offset = new Family();
+		offset.factor = 4 * family.factor;
+		offset.offsetSign = family.offsetSign;
+		if (family.offset == null)
+		{
+			offset.offset = start == 0 ? null : Expressions.intValue(-4 * start);
+			offset.offsetSign = Token.PLUS;
+		}
+		else
+		{
+			ExpressionNode shifted = Expressions.copy(family.offset);
+			if (start != 0)
+			{
+				shifted = new OperationNode(family.offsetSign == Token.PLUS ? Token.MINUS
+						: Token.PLUS, shifted, Expressions.intValue(start));
+			}
+			offset.offset = folder.expression(new OperationNode(Token.MULTIPLY, shifted,
+					Expressions.intValue(4)), false);
+		}
+		return offset;
+	}
+
+	/**
+	 * Matches i * k, k * i, i * k + e, e + i * k and i * k - e, where e does
+	 * not change in the loop. Returns null if the operation is none of them.
+	 * @param op
+	 * @param iv
+	 * @param assignments
+	 * @return
+	 */
+	private Family family(OperationNode op, String iv, HashMap<String, Integer> assignments)
+	{
+		if (hasFlags(op))
+		{
+			return null;
+		}
+		Integer factor = factor(op, iv);
+		Family family = new Family();
+		family.offsetSign = Token.PLUS;
+		if (factor != null)
+		{
+			family.factor = factor;
+			return family;
+		}
+		if (op.getOperation() != Token.PLUS && op.getOperation() != Token.MINUS)
+		{
+			return null;
+		}
+		if (op.getLeft() instanceof OperationNode)
+		{
+			factor = factor((OperationNode) op.getLeft(), iv);
+			family.offset = op.getRight();
+		}
+		if (factor == null && op.getOperation() == Token.PLUS
+				&& op.getRight() instanceof OperationNode)
+		{
+			factor = factor((OperationNode) op.getRight(), iv);
+			family.offset = op.getLeft();
+		}
+		if (factor == null || family.offset.isReal(symbols)
+				|| !isInvariant(family.offset, assignments))
+		{
+			return null;
+		}
+		family.factor = factor;
+		family.offsetSign = op.getOperation();
+		return family;
+	}
+
+	/**
+	 * The constant k of i * k or k * i, or null if the operation is neither.
+	 * @param op
+	 * @param iv
+	 * @return
+	 */
+	private Integer factor(OperationNode op, String iv)
+	{
+		if (op.getOperation() != Token.MULTIPLY || hasFlags(op))
+		{
+			return null;
+		}
+		Integer factor = null;
+		if (isVariable(op.getLeft(), iv))
+		{
+			factor = Expressions.intConstant(op.getRight());
+		}
+		else if (isVariable(op.getRight(), iv))
+		{
+			factor = Expressions.intConstant(op.getLeft());
+		}
+		return factor == null || factor == 0 ? null : factor;
+	}
+
+	/**
+	 * Builds the expression of a derived induction variable, base * k + e,
+	 * with a copy of e.
+	 * @param base
+	 * @param family
+	 * @return
+	 */
+	private ExpressionNode derived(ExpressionNode base, Family family)
+	{
+		ExpressionNode exp = new OperationNode(Token.MULTIPLY, base, Expressions.intValue(family.factor));
+		if (family.offset != null)
+		{
+			exp = new OperationNode(family.offsetSign, exp, Expressions.copy(family.offset));
+		}
+		return exp;
+	}
+
+	/**
+	 * Rewrites the exit test i REL b of a loop to compare a derived induction
+	 * variable against b * k + e instead, if i is set right before the loop
+	 * and read nowhere else, and no value it is compared at overflows.
+	 * Returns true if it did.
+	 * @param list
+	 * @param loop
+	 * @param iv
+	 * @param step the amount i changes by each time around the loop.
+	 * @param family
+	 * @param preheader the statements put before the loop, which read i.
+	 * @return
+	 */
+	private boolean replaceTest(ArrayList<StatementNode> list, WhileStatementNode loop,
+			String iv, int step, Family family, ArrayList<StatementNode> preheader)
+	{
+		if (!(loop.getCondition() instanceof OperationNode))
+		{
+			return false;
+		}
+		OperationNode cond = (OperationNode) loop.getCondition();
+		Token relation = cond.getOperation();
+		ExpressionNode bound;
+		if (!Expressions.isComparison(relation) || cond.getSign() == Token.MINUS)
+		{
+			return false;
+		}
+		if (isVariable(cond.getLeft(), iv))
+		{
+			bound = cond.getRight();
+		}
+		else if (isVariable(cond.getRight(), iv))
+		{
+			bound = cond.getLeft();
+			relation = mirror(relation);
+		}
+		else
+		{
+			return false;
+		}
+		HashMap<String, Integer> assignments = new HashMap<String, Integer>();
+		Expressions.assignments(loop.getStatement(), assignments);
+		int before = indexOf(list, loop) - preheader.size() - 1;
+		if (bound.isReal(symbols) || !isInvariant(bound, assignments) || before < 0
+				|| !(list.get(before) instanceof AssignmentStatementNode)
+				|| !((AssignmentStatementNode) list.get(before)).getLvalue().getName().equals(iv))
+		{
+			return false;
+		}
+		// The test and the update are the only reads left in the loop, the
+		// preheader the only ones outside it.
+		HashSet<StatementNode> skip = new HashSet<StatementNode>(preheader);
+		skip.add(loop);
+		if (Expressions.reads(loop, iv, null) != 2
+				|| Expressions.reads(program.getMain(), iv, skip) != 0)
+		{
+			return false;
+		}
+		Integer start = Expressions.intConstant(((AssignmentStatementNode) list.get(before)).getExpression());
+		Integer limit = Expressions.intConstant(bound);
+		if (start == null || limit == null || cond.isNot() || !fits(relation, start, limit, step, family))
+		{
+			return false;
+		}
+		OperationNode test = new OperationNode(family.factor < 0 ? mirror(relation) : relation,
+				new VariableNode(family.temporary.getName(), Token.INTEGER),
+				folder.expression(derived(bound, family), false));
+		test.setNot(cond.isNot());
+		loop.setCondition(test);
+		return true;
+	}
+
+	/**
+	 * Returns true if every value i takes at the test i REL b, from the
+	 * start up to the first one that fails it, fits in an int both as it is
+	 * and as i * k + e. The step must move i towards the bound, or i could
+	 * run all the way around.
+	 * @param relation
+	 * @param start
+	 * @param bound
+	 * @param step
+	 * @param family
+	 * @return
+	 */
+	private boolean fits(Token relation, int start, int bound, int step, Family family)
+	{
+		Integer offset = family.offset == null ? Integer.valueOf(0) : Expressions.intConstant(family.offset);
+		boolean up = relation == Token.LESS_THAN || relation == Token.LESS_THAN_EQUAL;
+		boolean down = relation == Token.GREATER_THAN || relation == Token.GREATER_THAN_EQUAL;
+		if (offset == null || !(up && step > 0 || down && step < 0))
+		{
+			return false;
+		}
+		long e = family.offsetSign == Token.MINUS ? -(long) offset : offset;
+		long[] ends = { Math.min(start, bound) + Math.min(step, 0L), Math.max(start, bound) + Math.max(step, 0L) };
+		for (long value : ends)
+		{
+			long derived = value * family.factor + e;
+			if (value != (int) value || derived != (int) derived)
+			{
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Check whether none of the variables of an expression are assigned in
+	 * the loop.
+	 * @param exp
+	 * @param assignments
+	 * @return
+	 */
+	private boolean isInvariant(ExpressionNode exp, HashMap<String, Integer> assignments)
+	{
+		if (exp instanceof ArrayNode)
+		{
+			// Not loaded before the loop, like in LoopInvariants.
+			return false;
+		}
+		if (exp instanceof VariableNode)
+		{
+			return !assignments.containsKey(((VariableNode) exp).getName());
+		}
+		if (exp instanceof OperationNode)
+		{
+			return isInvariant(((OperationNode) exp).getLeft(), assignments)
+					&& isInvariant(((OperationNode) exp).getRight(), assignments);
+		}
+		return true;
+	}
+
+	/**
+	 * Check whether an expression is the given variable, without a sign or
+	 * not.
+	 * @param exp
+	 * @param name
+	 * @return
+	 */
+	private boolean isVariable(ExpressionNode exp, String name)
+	{
+		return exp instanceof VariableNode && !(exp instanceof ArrayNode) && !hasFlags(exp)
+				&& ((VariableNode) exp).getName().equals(name);
+	}
+
+	/**
+	 * Check whether an expression has a minus sign or a not.
+	 * @param exp
+	 * @return
+	 */
+	private boolean hasFlags(ExpressionNode exp)
+	{
+		return exp.getSign() == Token.MINUS || exp.isNot();
+	}
+
+	/**
+	 * The comparison that holds when the operands are swapped.
+	 * @param operation
+	 * @return
+	 */
+	private Token mirror(Token operation)
+	{
+		switch (operation)
+		{
+			case LESS_THAN:
+				return Token.GREATER_THAN;
+			case LESS_THAN_EQUAL:
+				return Token.GREATER_THAN_EQUAL;
+			case GREATER_THAN:
+				return Token.LESS_THAN;
+			case GREATER_THAN_EQUAL:
+				return Token.LESS_THAN_EQUAL;
+			default:
+				return operation;
+		}
+	}
+
+	/**
+	 * Wraps a statement in a compound statement, so statements can be added
+	 * around it.
+	 * @param stmt
+	 * @return
+	 */
+	private CompoundStatementNode compound(StatementNode stmt)
+	{
+		if (stmt instanceof CompoundStatementNode)
+		{
+			return (CompoundStatementNode) stmt;
+		}
+		CompoundStatementNode compound = new CompoundStatementNode();
+		if (stmt != null)
+		{
+			compound.addStatement(stmt);
+		}
+		return compound;
+	}
+
+	/**
+	 * The index of a statement in a list, by identity.
+	 * @param list
+	 * @param stmt
+	 * @return
+	 */
+	private int indexOf(ArrayList<StatementNode> list, StatementNode stmt)
+	{
+		for (int i = 0; i < list.size(); i++)
+		{
+			if (list.get(i) == stmt)
+			{
+				return i;
+			}
+		}
+		return -1;
+	}
+}
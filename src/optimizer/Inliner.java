@@ -0,0 +1,728 @@
+package optimizer;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import parser.SymbolTable;
+import scanner.Token;
+import syntaxtree.*;
+
+/**
+ * Replaces calls to small functions and procedures with a copy of their
+ * body. A call is inlined when the subprogram can not reach a call to itself
+ * and its body has at most MAX_STATEMENTS statements, counted after the
+ * calls inside it have been inlined, and the subprograms nested in it are
+ * all inlined too.
+ *
+ * Every parameter and variable of a subprogram has a name of its own, so a
+ * call becomes an assignment of each argument to its parameter followed by
+ * the body. A function call is taken out of its expression: the statements
+ * run just before the statement holding the call, and the result is saved in
+ * a temporary the expression reads instead. The operands evaluated before the
+ * call that read a variable it changes, or call a function themselves, are
+ * saved in temporaries first, so they still see the values from before the
+ * call. When the call is in the condition of a while loop, the statements are
+ * also copied to the end of the loop body, so the condition sees a new result
+ * each time round.
+ *
+ * Subprograms whose calls are all inlined are removed from the program, and
+ * their variables are declared where they were inlined.
+ *
+ * @author ken
+ */
+public class Inliner
+{
+
+	/**
+	 * The largest body, in statements, that is inlined.
+	 */
+	public static final int MAX_STATEMENTS = 12;
+
+	/**
+	 * Prefix of the temporaries holding the result of an inlined function.
+	 * Identifiers can not contain an underscore, so these never clash with
+	 * the user's names.
+	 */
+	private static final String TEMPORARY = "_inl";
+
+	/**
+	 * The symbols, where the temporaries are declared.
+	 */
+	private SymbolTable symbols;
+
+	/**
+	 * Every function and procedure in the program, nested ones included, by
+	 * name.
+	 */
+	private LinkedHashMap<String, SubProgramNode> subprograms;
+
+	/**
+	 * The subprograms whose bodies have had their calls inlined.
+	 */
+	private HashSet<String> visited;
+
+	/**
+	 * The subprograms that are inlined.
+	 */
+	private HashSet<String> inlinable;
+
+	/**
+	 * The variables each inlined subprogram changes, or null for one that
+	 * still calls others and so may change any.
+	 */
+	private HashMap<String, HashSet<String>> written;
+
+	/**
+	 * Number of temporaries made so far.
+	 */
+	private int temporaries;
+
+	/**
+	 * Number of calls inlined.
+	 */
+	private int inlined;
+
+	/**
+	 * Constructor.
+	 * @param symbols
+	 */
+	public Inliner(SymbolTable symbols)
+	{
+		this.symbols = symbols;
+	}
+
+	/**
+	 * Inlines the calls to small subprograms, starting with the subprograms
+	 * that call no others, then removes the subprograms that are no longer
+	 * called.
+	 * @param program
+	 */
+	public void inline(ProgramNode program)
+	{
+		subprograms = new LinkedHashMap<String, SubProgramNode>();
+		visited = new HashSet<String>();
+		inlinable = new HashSet<String>();
+		written = new HashMap<String, HashSet<String>>();
+		collect(program.getFunctions());
+		for (String name : subprograms.keySet())
+		{
+			visit(name);
+		}
+		block(program.getMain().getStatements(), program.getVariables());
+		remove(program.getFunctions());
+	}
+
+	/**
+	 * Get the number of calls inlined.
+	 * @return
+	 */
+	public int getInlined()
+	{
+		return inlined;
+	}
+
+	/**
+	 * Adds the subprograms declared in a list, and the ones nested in them,
+	 * to the map of subprograms.
+	 * @param functions
+	 */
+	private void collect(SubProgramDeclarationsNode functions)
+	{
+		if (functions == null)
+		{
+			return;
+		}
+		for (SubProgramNode sub : functions.getSubPrograms())
+		{
+			subprograms.put(sub.getName(), sub);
+			collect(sub.getSubDeclarations());
+		}
+	}
+
+	/**
+	 * Removes the inlined subprograms from a list, and from the lists nested
+	 * in the subprograms left.
+	 * @param functions
+	 */
+	private void remove(SubProgramDeclarationsNode functions)
+	{
+		if (functions == null)
+		{
+			return;
+		}
+		Iterator<SubProgramNode> subs = functions.getSubPrograms().iterator();
+		while (subs.hasNext())
+		{
+			SubProgramNode sub = subs.next();
+			if (inlinable.contains(sub.getName()))
+			{
+				subs.remove();
+			}
+			else
+			{
+				remove(sub.getSubDeclarations());
+			}
+		}
+	}
+
+	/**
+	 * Inlines the calls in the body of a subprogram, after doing the same for
+	 * the subprograms it calls, then decides whether the subprogram itself
+	 * can be inlined.
+	 * @param name
+	 */
+	private void visit(String name)
+	{
+		if (!visited.add(name))
+		{
+			return;
+		}
+		SubProgramNode sub = subprograms.get(name);
+		HashSet<String> callees = new HashSet<String>();
+		calls(sub.getBody(), callees);
+		for (String callee : callees)
+		{
+			if (subprograms.containsKey(callee))
+			{
+				visit(callee);
+			}
+		}
+		block(sub.getBody().getStatements(), sub.getDeclarations());
+		if (!reaches(name, name, new HashSet<String>()) && size(sub.getBody()) <= MAX_STATEMENTS
+				&& nestedInlinable(sub))
+		{
+			inlinable.add(name);
+			written.put(name, writes(sub));
+		}
+	}
+
+	/**
+	 * The variables a subprogram changes: its parameters, its result and the
+	 * variables assigned or read in its body.
+	 * @param sub
+	 * @return the names, or null if it calls a subprogram that is kept.
+	 */
+	private HashSet<String> writes(SubProgramNode sub)
+	{
+		HashSet<String> writes = new HashSet<String>();
+		for (VariableNode param : sub.getParameters())
+		{
+			writes.add(param.getName());
+		}
+		if (sub.getResult() != null)
+		{
+			writes.add(sub.getResult().getName());
+		}
+		HashMap<String, Integer> assignments = new HashMap<String, Integer>();
+		if (!Expressions.assignments(sub.getBody(), assignments))
+		{
+			return null;
+		}
+		writes.addAll(assignments.keySet());
+		return writes;
+	}
+
+	/**
+	 * Check whether the subprograms nested in one are all inlined. One that
+	 * is not still needs the frame of the subprogram it is nested in, so
+	 * that can not be inlined either.
+	 * @param sub
+	 * @return
+	 */
+	private boolean nestedInlinable(SubProgramNode sub)
+	{
+		for (SubProgramNode nested : sub.getSubDeclarations().getSubPrograms())
+		{
+			visit(nested.getName());
+			if (!inlinable.contains(nested.getName()))
+			{
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Check whether a subprogram can end up calling another.
+	 * @param from
+	 * @param to
+	 * @param seen the subprograms already searched.
+	 * @return
+	 */
+	private boolean reaches(String from, String to, HashSet<String> seen)
+	{
+		SubProgramNode sub = subprograms.get(from);
+		if (sub == null || !seen.add(from))
+		{
+			return false;
+		}
+		HashSet<String> callees = new HashSet<String>();
+		calls(sub.getBody(), callees);
+		for (String callee : callees)
+		{
+			if (callee.equals(to) || reaches(callee, to, seen))
+			{
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Adds the names of the subprograms a statement calls to a set.
+	 * @param stmt
+	 * @param names
+	 */
+	private void calls(StatementNode stmt, HashSet<String> names)
+	{
+		if (stmt instanceof AssignmentStatementNode)
+		{
+			calls(((AssignmentStatementNode) stmt).getLvalue(), names);
+			calls(((AssignmentStatementNode) stmt).getExpression(), names);
+		}
+		else if (stmt instanceof WriteNode)
+		{
+			calls(((WriteNode) stmt).getOutput(), names);
+		}
+		else if (stmt instanceof ProcedureStatementNode)
+		{
+			names.add(((ProcedureStatementNode) stmt).getName());
+			for (ExpressionNode arg : ((ProcedureStatementNode) stmt).getArguments())
+			{
+				calls(arg, names);
+			}
+		}
+		else if (stmt instanceof CompoundStatementNode)
+		{
+			for (StatementNode current : ((CompoundStatementNode) stmt).getStatements())
+			{
+				calls(current, names);
+			}
+		}
+		else if (stmt instanceof IfStatementNode)
+		{
+			calls(((IfStatementNode) stmt).getCondition(), names);
+			calls(((IfStatementNode) stmt).getStatement(), names);
+			calls(((IfStatementNode) stmt).getElseStatement(), names);
+		}
+		else if (stmt instanceof WhileStatementNode)
+		{
+			calls(((WhileStatementNode) stmt).getCondition(), names);
+			calls(((WhileStatementNode) stmt).getStatement(), names);
+		}
+	}
+
+	/**
+	 * Adds the names of the functions an expression calls to a set.
+	 * @param exp
+	 * @param names
+	 */
+	private void calls(ExpressionNode exp, HashSet<String> names)
+	{
+		if (exp instanceof OperationNode)
+		{
+			calls(((OperationNode) exp).getLeft(), names);
+			calls(((OperationNode) exp).getRight(), names);
+		}
+		else if (exp instanceof ArrayNode)
+		{
+			calls(((ArrayNode) exp).getIndex(), names);
+		}
+		else if (exp instanceof FunctionCallNode)
+		{
+			names.add(((FunctionCallNode) exp).getName());
+			for (ExpressionNode arg : ((FunctionCallNode) exp).getArguments())
+			{
+				calls(arg, names);
+			}
+		}
+	}
+
+	/**
+	 * Counts the statements in a statement, not counting compound statements
+	 * themselves.
+	 * @param stmt
+	 * @return
+	 */
+	private int size(StatementNode stmt)
+	{
+		if (stmt instanceof CompoundStatementNode)
+		{
+			int size = 0;
+			for (StatementNode current : ((CompoundStatementNode) stmt).getStatements())
+			{
+				size += size(current);
+			}
+			return size;
+		}
+		if (stmt instanceof IfStatementNode)
+		{
+			return 1 + size(((IfStatementNode) stmt).getStatement())
+					+ size(((IfStatementNode) stmt).getElseStatement());
+		}
+		if (stmt instanceof WhileStatementNode)
+		{
+			return 1 + size(((WhileStatementNode) stmt).getStatement());
+		}
+		return stmt == null ? 0 : 1;
+	}
+
+	/**
+	 * Inlines the calls in a list of statements.
+	 * @param list
+	 * @param declarations where the variables of inlined subprograms are
+	 * declared.
+	 */
+	private void block(ArrayList<StatementNode> list, DeclarationsNode declarations)
+	{
+		for (int i = 0; i < list.size(); i++)
+		{
+			StatementNode stmt = list.get(i);
+			ArrayList<StatementNode> before = new ArrayList<StatementNode>();
+			if (stmt instanceof ProcedureStatementNode
+					&& inlinable.contains(((ProcedureStatementNode) stmt).getName()))
+			{
+				ProcedureStatementNode call = (ProcedureStatementNode) stmt;
+				list.remove(i);
+				body(call.getName(), call.getArguments(), before, declarations);
+				list.addAll(i, before);
+				i += before.size() - 1;
+				continue;
+			}
+			statement(stmt, before, declarations);
+			list.addAll(i, before);
+			i += before.size();
+		}
+	}
+
+	/**
+	 * Inlines the calls in a statement.
+	 * @param stmt
+	 * @param before where statements that have to run before this one are
+	 * added.
+	 * @param declarations
+	 */
+	private void statement(StatementNode stmt, ArrayList<StatementNode> before,
+			DeclarationsNode declarations)
+	{
+		if (stmt instanceof AssignmentStatementNode)
+		{
+			AssignmentStatementNode assign = (AssignmentStatementNode) stmt;
+			assign.setExpression(expression(assign.getExpression(), before, declarations));
+			// The index of the element assigned is found after the value.
+			assign.setExpression(save(assign.getExpression(), assign.getLvalue(), before,
+					declarations));
+			expression(assign.getLvalue(), before, declarations);
+		}
+		else if (stmt instanceof WriteNode)
+		{
+			WriteNode write = (WriteNode) stmt;
+			write.setOutput(expression(write.getOutput(), before, declarations));
+		}
+		else if (stmt instanceof ProcedureStatementNode)
+		{
+			arguments(((ProcedureStatementNode) stmt).getArguments(), before, declarations);
+		}
+		else if (stmt instanceof CompoundStatementNode)
+		{
+			block(((CompoundStatementNode) stmt).getStatements(), declarations);
+		}
+		else if (stmt instanceof IfStatementNode)
+		{
+			IfStatementNode ifNode = (IfStatementNode) stmt;
+			ifNode.setCondition(expression(ifNode.getCondition(), before, declarations));
+			ifNode.setStatement(branch(ifNode.getStatement(), declarations));
+			ifNode.setElseStatement(branch(ifNode.getElseStatement(), declarations));
+		}
+		else if (stmt instanceof WhileStatementNode)
+		{
+			WhileStatementNode whileNode = (WhileStatementNode) stmt;
+			whileNode.setStatement(branch(whileNode.getStatement(), declarations));
+			whileNode.setCondition(expression(whileNode.getCondition(), before, declarations));
+			if (!before.isEmpty())
+			{
+				CompoundStatementNode body = compound(whileNode.getStatement());
+				for (StatementNode current : before)
+				{
+					body.addStatement(Expressions.copy(current));
+				}
+				whileNode.setStatement(body);
+			}
+		}
+	}
+
+	/**
+	 * Inlines the calls in the branch of an if, or the body of a while. A
+	 * branch that is a single call becomes a compound statement.
+	 * @param stmt
+	 * @param declarations
+	 * @return the statement that replaces the branch.
+	 */
+	private StatementNode branch(StatementNode stmt, DeclarationsNode declarations)
+	{
+		if (stmt == null)
+		{
+			return null;
+		}
+		if (stmt instanceof CompoundStatementNode)
+		{
+			block(((CompoundStatementNode) stmt).getStatements(), declarations);
+			return stmt;
+		}
+		CompoundStatementNode compound = compound(stmt);
+		block(compound.getStatements(), declarations);
+		if (compound.getStatements().size() == 1)
+		{
+			return compound.getStatements().get(0);
+		}
+		return compound;
+	}
+
+	/**
+	 * Inlines the calls in an expression.
+	 * @param exp
+	 * @param before where the bodies of inlined functions are added.
+	 * @param declarations
+	 * @return the expression that replaces it.
+	 */
+	private ExpressionNode expression(ExpressionNode exp, ArrayList<StatementNode> before,
+			DeclarationsNode declarations)
+	{
+		if (exp instanceof OperationNode)
+		{
+			OperationNode op = (OperationNode) exp;
+			op.setLeft(expression(op.getLeft(), before, declarations));
+			op.setLeft(save(op.getLeft(), op.getRight(), before, declarations));
+			op.setRight(expression(op.getRight(), before, declarations));
+		}
+		else if (exp instanceof ArrayNode)
+		{
+			ArrayNode element = (ArrayNode) exp;
+			element.setIndex(expression(element.getIndex(), before, declarations));
+		}
+		else if (exp instanceof FunctionCallNode)
+		{
+			FunctionCallNode call = (FunctionCallNode) exp;
+			if (!inlinable.contains(call.getName()))
+			{
+				arguments(call.getArguments(), before, declarations);
+				return exp;
+			}
+			VariableNode result = body(call.getName(), call.getArguments(), before, declarations);
+			VariableNode temp = Expressions.declare(declarations, symbols,
+					TEMPORARY + ++temporaries, result.getType());
+			before.add(assignment(temp, result));
+			VariableNode value = (VariableNode) Expressions.copy(temp);
+			value.setSign(call.getSign());
+			value.setNot(call.isNot());
+			return value;
+		}
+		return exp;
+	}
+
+	/**
+	 * Inlines the calls in the arguments of a call that is kept.
+	 * @param arguments
+	 * @param before
+	 * @param declarations
+	 */
+	private void arguments(ArrayList<ExpressionNode> arguments, ArrayList<StatementNode> before,
+			DeclarationsNode declarations)
+	{
+		for (int i = 0; i < arguments.size(); i++)
+		{
+			for (int j = 0; j < i; j++)
+			{
+				arguments.set(j, save(arguments.get(j), arguments.get(i), before, declarations));
+			}
+			arguments.set(i, expression(arguments.get(i), before, declarations));
+		}
+	}
+
+	/**
+	 * Saves an operand in a temporary when the calls inlined out of an
+	 * expression evaluated after it could change what it reads, or when it
+	 * calls a function that could change what they read. The parts of a
+	 * comparison are saved instead of the comparison.
+	 * @param earlier the operand, with its calls already inlined.
+	 * @param later the expression evaluated after it.
+	 * @param before where the assignment to the temporary is added.
+	 * @param declarations
+	 * @return the expression that replaces the operand.
+	 */
+	private ExpressionNode save(ExpressionNode earlier, ExpressionNode later,
+			ArrayList<StatementNode> before, DeclarationsNode declarations)
+	{
+		HashSet<String> callees = new HashSet<String>();
+		calls(later, callees);
+		callees.retainAll(inlinable);
+		if (callees.isEmpty() || !conflicts(earlier, callees))
+		{
+			return earlier;
+		}
+		if (earlier instanceof OperationNode
+				&& Expressions.isComparison(((OperationNode) earlier).getOperation()))
+		{
+			OperationNode op = (OperationNode) earlier;
+			op.setLeft(save(op.getLeft(), later, before, declarations));
+			op.setRight(save(op.getRight(), later, before, declarations));
+			return op;
+		}
+		VariableNode temp = Expressions.declare(declarations, symbols, TEMPORARY + ++temporaries,
+				earlier.isReal(symbols) ? Token.REAL : Token.INTEGER);
+		VariableNode value = (VariableNode) Expressions.copy(temp);
+		value.setSign(earlier.getSign());
+		value.setNot(earlier.isNot());
+		earlier.setSign(Token.PLUS);
+		earlier.setNot(false);
+		before.add(assignment(temp, earlier));
+		return value;
+	}
+
+	/**
+	 * Check whether running the bodies of some subprograms first could
+	 * change the value of an expression.
+	 * @param exp
+	 * @param callees
+	 * @return
+	 */
+	private boolean conflicts(ExpressionNode exp, HashSet<String> callees)
+	{
+		if (Expressions.hasCall(exp))
+		{
+			return true;
+		}
+		HashSet<String> reads = new HashSet<String>();
+		reads(exp, reads);
+		for (String callee : callees)
+		{
+			HashSet<String> writes = written.get(callee);
+			if (writes == null)
+			{
+				return true;
+			}
+			for (String var : reads)
+			{
+				if (writes.contains(var))
+				{
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Adds the variables an expression reads to a set.
+	 * @param exp
+	 * @param vars
+	 */
+	private void reads(ExpressionNode exp, HashSet<String> vars)
+	{
+		if (exp instanceof VariableNode)
+		{
+			vars.add(((VariableNode) exp).getName());
+		}
+		if (exp instanceof ArrayNode)
+		{
+			reads(((ArrayNode) exp).getIndex(), vars);
+		}
+		else if (exp instanceof OperationNode)
+		{
+			reads(((OperationNode) exp).getLeft(), vars);
+			reads(((OperationNode) exp).getRight(), vars);
+		}
+	}
+
+	/**
+	 * Adds the statements that replace a call: the arguments assigned to the
+	 * parameters, then a copy of the body.
+	 * @param name
+	 * @param arguments
+	 * @param before where the statements are added.
+	 * @param declarations where the variables of the subprogram are declared.
+	 * @return the variable holding the result, for a function.
+	 */
+	private VariableNode body(String name, ArrayList<ExpressionNode> arguments,
+			ArrayList<StatementNode> before, DeclarationsNode declarations)
+	{
+		SubProgramNode sub = subprograms.get(name);
+		inlined++;
+		arguments(arguments, before, declarations);
+		ArrayList<VariableNode> parameters = sub.getParameters();
+		for (int i = 0; i < parameters.size() && i < arguments.size(); i++)
+		{
+			before.add(assignment(parameters.get(i), arguments.get(i)));
+		}
+		for (StatementNode stmt : sub.getBody().getStatements())
+		{
+			before.add(Expressions.copy(stmt));
+		}
+		declare(declarations, parameters);
+		declare(declarations, sub.getDeclarations().getVars());
+		if (sub.getResult() != null)
+		{
+			ArrayList<VariableNode> result = new ArrayList<VariableNode>();
+			result.add(sub.getResult());
+			declare(declarations, result);
+		}
+		return sub.getResult();
+	}
+
+	/**
+	 * Adds variables to declarations that do not have them yet.
+	 * @param declarations
+	 * @param vars
+	 */
+	private void declare(DeclarationsNode declarations, ArrayList<VariableNode> vars)
+	{
+		HashSet<String> names = new HashSet<String>();
+		for (VariableNode var : declarations.getVars())
+		{
+			names.add(var.getName());
+		}
+		for (VariableNode var : vars)
+		{
+			if (names.add(var.getName()))
+			{
+				declarations.addVar(new VariableNode(var.getName(), var.getType()));
+			}
+		}
+	}
+
+	/**
+	 * Makes an assignment of an expression to a variable.
+	 * @param var
+	 * @param exp
+	 * @return
+	 */
+	private AssignmentStatementNode assignment(VariableNode var, ExpressionNode exp)
+	{
+		AssignmentStatementNode assign = new AssignmentStatementNode(
+				new VariableNode(var.getName(), var.getType()), exp);
+		assign.setType(var.getType());
+		return assign;
+	}
+
+	/**
+	 * Wraps a statement in a compound statement, so statements can be added
+	 * after it.
+	 * @param stmt
+	 * @return
+	 */
+	private CompoundStatementNode compound(StatementNode stmt)
+	{
+		if (stmt instanceof CompoundStatementNode)
+		{
+			return (CompoundStatementNode) stmt;
+		}
+		CompoundStatementNode compound = new CompoundStatementNode();
+		if (stmt != null)
+		{
+			compound.addStatement(stmt);
+		}
+		return compound;
+	}
+}
@@ -0,0 +1,463 @@
+package optimizer;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import parser.SymbolTable;
+import scanner.Token;
+import syntaxtree.*;
+
+/**
+ * Finds the expressions in a while loop that compute the same value on every
+ * iteration, because none of their variables are assigned anywhere in the
+ * loop, including nested loops. Only the largest such expressions are
+ * returned, and each expression once, so the Generator can evaluate them
+ * before the loop and keep them in registers. That evaluates them even when
+ * the loop does not run, so a division is only invariant when it is by a
+ * constant other than zero, and elements of arrays never are.
+ *
+ * Comparisons and lone constants are not returned, since there is nothing to
+ * gain from computing them early, but the operands of a comparison may be,
+ * and so may the indexes of elements and the operands of a division.
+ *
+ * The invariants of the loops of the main program can also be hoisted in
+ * the tree, for backends that do not hoist them themselves: each is
+ * assigned to a temporary right before its loop, and the loop reads the
+ * temporary instead.
+ *
+ * @author ken
+ */
+public class LoopInvariants
+{
+
+	/**
+	 * Prefix of the temporaries. Identifiers can not start with it.
+	 */
+	public static final String TEMPORARY = "_li";
+
+	/**
+	 * An expression that does not change in a loop, and whether it is
+	 * evaluated as a real.
+	 */
+	public static class Invariant
+	{
+
+		/**
+		 * The expression.
+		 */
+		private ExpressionNode expression;
+
+		/**
+		 * True if the expression is evaluated as a real.
+		 */
+		private boolean real;
+
+		/**
+		 * Constructor.
+		 * @param expression
+		 * @param real
+		 */
+		public Invariant(ExpressionNode expression, boolean real)
+		{
+			this.expression = expression;
+			this.real = real;
+		}
+
+		/**
+		 * Get the expression.
+		 * @return
+		 */
+		public ExpressionNode getExpression()
+		{
+			return expression;
+		}
+
+		/**
+		 * Returns true if the expression is evaluated as a real.
+		 * @return
+		 */
+		public boolean isReal()
+		{
+			return real;
+		}
+
+		/**
+		 * Get the key of the expression, as built by Expressions.key.
+		 * @return
+		 */
+		public String getKey()
+		{
+			return Expressions.key(expression, real);
+		}
+	}
+
+	/**
+	 * The symbols, used to check whether expressions are real.
+	 */
+	private SymbolTable symbols;
+
+	/**
+	 * The program being hoisted, and the temporaries that were created.
+	 */
+	private ProgramNode program;
+	private ArrayList<VariableNode> temporaries;
+
+	/**
+	 * Constructor.
+	 * @param symbols
+	 */
+	public LoopInvariants(SymbolTable symbols)
+	{
+		this.symbols = symbols;
+	}
+
+	/**
+	 * Finds the invariant expressions of a loop. Variables come first, so
+	 * that the operations after them can use them once they are loaded, then
+	 * operations in the order they appear.
+	 * @param loop
+	 * @return
+	 */
+	public ArrayList<Invariant> find(WhileStatementNode loop)
+	{
+		HashMap<String, Integer> assignments = new HashMap<String, Integer>();
+		LinkedHashMap<String, Invariant> found = new LinkedHashMap<String, Invariant>();
+		if (Expressions.assignments(loop, assignments))
+		{
+			HashSet<String> assigned = new HashSet<String>(assignments.keySet());
+			condition(loop.getCondition(), assigned, found);
+			statement(loop.getStatement(), assigned, found);
+		}
+		ArrayList<Invariant> invariants = new ArrayList<Invariant>();
+		for (Invariant invariant : found.values())
+		{
+			if (invariant.getExpression() instanceof VariableNode)
+			{
+				invariants.add(invariant);
+			}
+		}
+		for (Invariant invariant : found.values())
+		{
+			if (!(invariant.getExpression() instanceof VariableNode))
+			{
+				invariants.add(invariant);
+			}
+		}
+		return invariants;
+	}
+
+	/**
+	 * Hoists the invariant expressions of every while loop in the main
+	 * program in to temporaries set before the loop, outer loops first.
+	 * @param program
+	 * @return the temporaries that were added to the program.
+	 */
+	public ArrayList<VariableNode> hoist(ProgramNode program)
+	{
+		this.program = program;
+		temporaries = new ArrayList<VariableNode>();
+		block(program.getMain().getStatements());
+		return temporaries;
+	}
+
+	/**
+	 * Hoists the invariants of the while loops in a list of statements.
+	 * @param list
+	 */
+	private void block(ArrayList<StatementNode> list)
+	{
+		for (int i = 0; i < list.size(); i++)
+		{
+			StatementNode stmt = list.get(i);
+			if (stmt instanceof CompoundStatementNode)
+			{
+				block(((CompoundStatementNode) stmt).getStatements());
+			}
+			else if (stmt instanceof IfStatementNode)
+			{
+				IfStatementNode ifNode = (IfStatementNode) stmt;
+				ifNode.setStatement(compound(ifNode.getStatement()));
+				ifNode.setElseStatement(compound(ifNode.getElseStatement()));
+				block(((CompoundStatementNode) ifNode.getStatement()).getStatements());
+				block(((CompoundStatementNode) ifNode.getElseStatement()).getStatements());
+			}
+			else if (stmt instanceof WhileStatementNode)
+			{
+				WhileStatementNode loop = (WhileStatementNode) stmt;
+				// Statements put before the loop move it further down the list.
+				i += hoist(list, i, loop);
+				loop.setStatement(compound(loop.getStatement()));
+				block(((CompoundStatementNode) loop.getStatement()).getStatements());
+			}
+		}
+	}
+
+	/**
+	 * Hoists the invariants of one loop. Variables are left alone, and so
+	 * are expressions with a not, or evaluated as a real when they are not
+	 * one, which a temporary would not hold as they are.
+	 * @param list the list the loop is in.
+	 * @param index the index of the loop in the list.
+	 * @param loop
+	 * @return the number of statements put before the loop.
+	 */
+	private int hoist(ArrayList<StatementNode> list, int index, WhileStatementNode loop)
+	{
+		HashMap<String, VariableNode> hoisted = new HashMap<String, VariableNode>();
+		for (Invariant invariant : find(loop))
+		{
+			ExpressionNode exp = invariant.getExpression();
+			if (exp instanceof VariableNode || exp.isNot()
+					|| invariant.isReal() != exp.isReal(symbols))
+			{
+				continue;
+			}
+			String name = TEMPORARY + temporaries.size();
+			VariableNode temporary = Expressions.declare(program.getVariables(), symbols,
+					name, invariant.isReal() ? Token.REAL : Token.INTEGER);
+			temporaries.add(temporary);
+			AssignmentStatementNode assign = new AssignmentStatementNode(
+					new VariableNode(name, temporary.getType()), Expressions.copy(exp));
+			assign.setType(temporary.getType());
+			list.add(index + hoisted.size(), assign);
+			hoisted.put(invariant.getKey(), temporary);
+		}
+		if (!hoisted.isEmpty())
+		{
+			loop.setCondition(replace(loop.getCondition(), false, hoisted));
+			replace(loop.getStatement(), hoisted);
+		}
+		return hoisted.size();
+	}
+
+	/**
+	 * Replaces the hoisted expressions in a statement by their temporaries.
+	 * @param stmt
+	 * @param hoisted the temporaries, by the keys of their expressions.
+	 */
+	private void replace(StatementNode stmt, HashMap<String, VariableNode> hoisted)
+	{
+		if (stmt instanceof AssignmentStatementNode)
+		{
+			AssignmentStatementNode assign = (AssignmentStatementNode) stmt;
+			if (assign.getLvalue() instanceof ArrayNode)
+			{
+				ArrayNode element = (ArrayNode) assign.getLvalue();
+				element.setIndex(replace(element.getIndex(), false, hoisted));
+			}
+			ExpressionNode exp = assign.getExpression();
+			assign.setExpression(replace(exp, exp.isReal(symbols), hoisted));
+		}
+		else if (stmt instanceof WriteNode)
+		{
+			WriteNode write = (WriteNode) stmt;
+			write.setOutput(replace(write.getOutput(), write.getOutput().isReal(symbols), hoisted));
+		}
+		else if (stmt instanceof CompoundStatementNode)
+		{
+			for (StatementNode current : ((CompoundStatementNode) stmt).getStatements())
+			{
+				replace(current, hoisted);
+			}
+		}
+		else if (stmt instanceof IfStatementNode)
+		{
+			IfStatementNode ifNode = (IfStatementNode) stmt;
+			ifNode.setCondition(replace(ifNode.getCondition(), false, hoisted));
+			replace(ifNode.getStatement(), hoisted);
+			replace(ifNode.getElseStatement(), hoisted);
+		}
+		else if (stmt instanceof WhileStatementNode)
+		{
+			WhileStatementNode whileNode = (WhileStatementNode) stmt;
+			whileNode.setCondition(replace(whileNode.getCondition(), false, hoisted));
+			replace(whileNode.getStatement(), hoisted);
+		}
+	}
+
+	/**
+	 * Replaces the hoisted expressions in an expression by their
+	 * temporaries, matching them in the same context find saw them in.
+	 * @param exp
+	 * @param context true if the expression is part of a real operation.
+	 * @param hoisted
+	 * @return the expression, or the temporary that replaces it.
+	 */
+	private ExpressionNode replace(ExpressionNode exp, boolean context,
+			HashMap<String, VariableNode> hoisted)
+	{
+		boolean real = context || exp.isReal(symbols);
+		VariableNode temporary = hoisted.get(Expressions.key(exp, real));
+		if (temporary != null)
+		{
+			return new VariableNode(temporary.getName(), temporary.getType());
+		}
+		if (exp instanceof OperationNode)
+		{
+			OperationNode op = (OperationNode) exp;
+			op.setLeft(replace(op.getLeft(), real, hoisted));
+			op.setRight(replace(op.getRight(), real, hoisted));
+		}
+		else if (exp instanceof ArrayNode)
+		{
+			ArrayNode element = (ArrayNode) exp;
+			element.setIndex(replace(element.getIndex(), false, hoisted));
+		}
+		return exp;
+	}
+
+	/**
+	 * Wraps a statement in a compound statement, so loops in it can have
+	 * assignments put in front of them.
+	 * @param stmt
+	 * @return
+	 */
+	private CompoundStatementNode compound(StatementNode stmt)
+	{
+		if (stmt instanceof CompoundStatementNode)
+		{
+			return (CompoundStatementNode) stmt;
+		}
+		CompoundStatementNode compound = new CompoundStatementNode();
+		if (stmt != null)
+		{
+			compound.addStatement(stmt);
+		}
+		return compound;
+	}
+
+	/**
+	 * Looks for invariant expressions in a statement.
+	 * @param stmt
+	 * @param assigned
+	 * @param found
+	 */
+	private void statement(StatementNode stmt, HashSet<String> assigned,
+			LinkedHashMap<String, Invariant> found)
+	{
+		if (stmt instanceof AssignmentStatementNode)
+		{
+			VariableNode lvalue = ((AssignmentStatementNode) stmt).getLvalue();
+			if (lvalue instanceof ArrayNode)
+			{
+				expression(((ArrayNode) lvalue).getIndex(), false, assigned, found);
+			}
+			ExpressionNode exp = ((AssignmentStatementNode) stmt).getExpression();
+			expression(exp, exp.isReal(symbols), assigned, found);
+		}
+		else if (stmt instanceof WriteNode)
+		{
+			ExpressionNode exp = ((WriteNode) stmt).getOutput();
+			expression(exp, exp.isReal(symbols), assigned, found);
+		}
+		else if (stmt instanceof CompoundStatementNode)
+		{
+			for (StatementNode current : ((CompoundStatementNode) stmt).getStatements())
+			{
+				statement(current, assigned, found);
+			}
+		}
+		else if (stmt instanceof IfStatementNode)
+		{
+			IfStatementNode ifNode = (IfStatementNode) stmt;
+			condition(ifNode.getCondition(), assigned, found);
+			statement(ifNode.getStatement(), assigned, found);
+			statement(ifNode.getElseStatement(), assigned, found);
+		}
+		else if (stmt instanceof WhileStatementNode)
+		{
+			WhileStatementNode whileNode = (WhileStatementNode) stmt;
+			condition(whileNode.getCondition(), assigned, found);
+			statement(whileNode.getStatement(), assigned, found);
+		}
+	}
+
+	/**
+	 * Looks for invariant expressions in the condition of an if or while.
+	 * The comparison itself is not hoisted, its operands may be.
+	 * @param cond
+	 * @param assigned
+	 * @param found
+	 */
+	private void condition(ExpressionNode cond, HashSet<String> assigned,
+			LinkedHashMap<String, Invariant> found)
+	{
+		boolean real = cond.isReal(symbols);
+		if (cond instanceof OperationNode
+				&& Expressions.isComparison(((OperationNode) cond).getOperation()))
+		{
+			expression(((OperationNode) cond).getLeft(), real, assigned, found);
+			expression(((OperationNode) cond).getRight(), real, assigned, found);
+			return;
+		}
+		expression(cond, real, assigned, found);
+	}
+
+	/**
+	 * Looks for the largest invariant parts of an expression.
+	 * @param exp
+	 * @param context true if the expression is part of a real operation.
+	 * @param assigned
+	 * @param found
+	 */
+	private void expression(ExpressionNode exp, boolean context, HashSet<String> assigned,
+			LinkedHashMap<String, Invariant> found)
+	{
+		boolean real = context || exp.isReal(symbols);
+		boolean comparison = exp instanceof OperationNode
+				&& Expressions.isComparison(((OperationNode) exp).getOperation());
+		if (!comparison && Expressions.hasVariable(exp) && isInvariant(exp, assigned))
+		{
+			Invariant invariant = new Invariant(exp, real);
+			if (!found.containsKey(invariant.getKey()))
+			{
+				found.put(invariant.getKey(), invariant);
+			}
+			return;
+		}
+		if (exp instanceof OperationNode)
+		{
+			expression(((OperationNode) exp).getLeft(), real, assigned, found);
+			expression(((OperationNode) exp).getRight(), real, assigned, found);
+		}
+		else if (exp instanceof ArrayNode)
+		{
+			expression(((ArrayNode) exp).getIndex(), false, assigned, found);
+		}
+	}
+
+	/**
+	 * Check whether none of the variables of an expression are assigned, it
+	 * reads no element of an array, and it only divides by constants other
+	 * than zero, so evaluating it before the loop can not stop the program.
+	 * @param exp
+	 * @param assigned
+	 * @return
+	 */
+	private boolean isInvariant(ExpressionNode exp, HashSet<String> assigned)
+	{
+		if (exp instanceof ArrayNode)
+		{
+			// Loading it before the loop could fail its bounds check when
+			// the loop does not run.
+			return false;
+		}
+		if (exp instanceof VariableNode)
+		{
+			return !assigned.contains(((VariableNode) exp).getName());
+		}
+		if (exp instanceof OperationNode)
+		{
+			OperationNode op = (OperationNode) exp;
+			if (op.getOperation() == Token.DIVIDE && !(op.getRight() instanceof ValueNode
+					&& Float.parseFloat(((ValueNode) op.getRight()).getAttribute()) != 0))
+			{
+				return false;
+			}
+			return isInvariant(op.getLeft(), assigned)
+					&& isInvariant(op.getRight(), assigned);
+		}
+		return true;
+	}
+}
@@ -0,0 +1,412 @@
+package optimizer;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import scanner.Token;
+import syntaxtree.*;
+
+/**
+ * Unrolls while loops with a known trip count. The loop must test a counter
+ * against a constant, the counter must be set to a constant before the loop,
+ * with only statements that do not use it and make no calls in between, and
+ * the body must change it only by a statement like i := i + c at the top
+ * level of the body.
+ *
+ * A loop small enough is replaced by that many copies of its body. A larger
+ * one keeps a loop whose body is copied factor times, after the iterations
+ * left over are run as straight code, so the test and the jump back run once
+ * every factor iterations.
+ *
+ * @author ken
+ */
+public class LoopUnroller
+{
+
+	/**
+	 * Most statements a fully unrolled loop may grow to.
+	 */
+	private static final int FULL_UNROLL_STATEMENTS = 16;
+
+	/**
+	 * Most statements the copies of a partly unrolled body, with the
+	 * iterations left over, may grow to.
+	 */
+	private static final int PARTIAL_UNROLL_STATEMENTS = 64;
+
+	/**
+	 * Most iterations counted when working out the trip count.
+	 */
+	private static final int MAX_TRIP_COUNT = 1 << 16;
+
+	/**
+	 * The number of copies of the body in a partly unrolled loop.
+	 */
+	private int factor;
+
+	/**
+	 * Constructor.
+	 * @param factor the number of copies of the body in a partly unrolled
+	 * loop. 1 only unrolls loops fully.
+	 */
+	public LoopUnroller(int factor)
+	{
+		if (factor < 1)
+		{
+			throw new IllegalArgumentException("Unroll factor must be at least 1: " + factor);
+		}
+		this.factor = factor;
+	}
+
+	/**
+	 * Unrolls the while loops of the main program, inner loops first.
+	 * @param program
+	 */
+	public void unroll(ProgramNode program)
+	{
+		block(program.getMain().getStatements());
+	}
+
+	/**
+	 * Looks for while loops in a list of statements.
+	 * @param list
+	 */
+	private void block(ArrayList<StatementNode> list)
+	{
+		for (int i = 0; i < list.size(); i++)
+		{
+			StatementNode stmt = list.get(i);
+			if (stmt instanceof CompoundStatementNode)
+			{
+				block(((CompoundStatementNode) stmt).getStatements());
+			}
+			else if (stmt instanceof IfStatementNode)
+			{
+				IfStatementNode ifNode = (IfStatementNode) stmt;
+				ifNode.setStatement(compound(ifNode.getStatement()));
+				ifNode.setElseStatement(compound(ifNode.getElseStatement()));
+				block(((CompoundStatementNode) ifNode.getStatement()).getStatements());
+				block(((CompoundStatementNode) ifNode.getElseStatement()).getStatements());
+			}
+			else if (stmt instanceof WhileStatementNode)
+			{
+				WhileStatementNode loop = (WhileStatementNode) stmt;
+				loop.setStatement(compound(loop.getStatement()));
+				block(((CompoundStatementNode) loop.getStatement()).getStatements());
+				StatementNode unrolled = loop(list, i, loop);
+				if (unrolled != null)
+				{
+					list.set(i, unrolled);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Unrolls one loop. Returns the statement to put in its place, or null
+	 * if it is left as it is.
+	 * @param list the list the loop is in.
+	 * @param index the index of the loop in the list.
+	 * @param loop
+	 * @return
+	 */
+	private StatementNode loop(ArrayList<StatementNode> list, int index, WhileStatementNode loop)
+	{
+		if (!(loop.getCondition() instanceof OperationNode))
+		{
+			return null;
+		}
+		OperationNode cond = (OperationNode) loop.getCondition();
+		AssignmentStatementNode before = initial(list, index, cond.getLeft());
+		if (before == null)
+		{
+			before = initial(list, index, cond.getRight());
+		}
+		if (before == null)
+		{
+			return null;
+		}
+		String counter = before.getLvalue().getName();
+		Integer start = Expressions.intConstant(before.getExpression());
+		ArrayList<StatementNode> body = ((CompoundStatementNode) loop.getStatement()).getStatements();
+		Integer step = null;
+		for (StatementNode stmt : body)
+		{
+			if (step == null)
+			{
+				step = step(stmt, counter);
+			}
+		}
+		if (start == null || step == null || assignments(loop.getStatement(), counter) != 1)
+		{
+			return null;
+		}
+		int trips = trips((OperationNode) loop.getCondition(), counter, start, step);
+		int size = size(loop.getStatement());
+		if (trips < 0)
+		{
+			return null;
+		}
+		if (trips * size <= FULL_UNROLL_STATEMENTS)
+		{
+			return copies(body, trips);
+		}
+		if (factor == 1 || trips < factor
+				|| (factor + trips % factor) * size > PARTIAL_UNROLL_STATEMENTS)
+		{
+			return null;
+		}
+		// The iterations left over go first, so the loop test is reached
+		// right when the counter runs out.
+		CompoundStatementNode unrolled = copies(body, trips % factor);
+		loop.setStatement(copies(body, factor));
+		unrolled.addStatement(loop);
+		return unrolled;
+	}
+
+	/**
+	 * Finds the assignment that sets a variable of the test of a loop before
+	 * the loop, looking back past the statements that do not use it and make
+	 * no calls. Returns null if there is none.
+	 * @param list the list the loop is in.
+	 * @param index the index of the loop in the list.
+	 * @param exp a side of the test.
+	 * @return
+	 */
+	private AssignmentStatementNode initial(ArrayList<StatementNode> list, int index,
+			ExpressionNode exp)
+	{
+		if (!(exp instanceof VariableNode) || exp instanceof ArrayNode)
+		{
+			return null;
+		}
+		String name = ((VariableNode) exp).getName();
+		for (int i = index - 1; i >= 0; i--)
+		{
+			StatementNode stmt = list.get(i);
+			if (stmt instanceof AssignmentStatementNode
+					&& !(((AssignmentStatementNode) stmt).getLvalue() instanceof ArrayNode)
+					&& ((AssignmentStatementNode) stmt).getLvalue().getName().equals(name))
+			{
+				return (AssignmentStatementNode) stmt;
+			}
+			if (assignments(stmt, name) > 0 || Expressions.reads(stmt, name, null) > 0)
+			{
+				return null;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * The amount a statement i := i + c or i := i - c changes the counter
+	 * by, or null if it is something else.
+	 * @param stmt
+	 * @param counter
+	 * @return
+	 */
+	private Integer step(StatementNode stmt, String counter)
+	{
+		if (!(stmt instanceof AssignmentStatementNode)
+				|| !((AssignmentStatementNode) stmt).getLvalue().getName().equals(counter)
+				|| !(((AssignmentStatementNode) stmt).getExpression() instanceof OperationNode))
+		{
+			return null;
+		}
+		OperationNode op = (OperationNode) ((AssignmentStatementNode) stmt).getExpression();
+		if (op.getSign() == Token.MINUS || op.isNot())
+		{
+			return null;
+		}
+		if (isCounter(op.getLeft(), counter) && Expressions.intConstant(op.getRight()) != null)
+		{
+			int constant = Expressions.intConstant(op.getRight());
+			if (op.getOperation() == Token.PLUS)
+			{
+				return constant;
+			}
+			return op.getOperation() == Token.MINUS ? -constant : null;
+		}
+		if (op.getOperation() == Token.PLUS && isCounter(op.getRight(), counter))
+		{
+			return Expressions.intConstant(op.getLeft());
+		}
+		return null;
+	}
+
+	/**
+	 * Works out how many times a loop runs, by stepping the counter until
+	 * the test fails. Returns -1 if the test is not the counter against a
+	 * constant, or the loop runs too long.
+	 * @param cond
+	 * @param counter
+	 * @param start
+	 * @param step
+	 * @return
+	 */
+	private int trips(OperationNode cond, String counter, long start, long step)
+	{
+		Token relation = cond.getOperation();
+		Integer bound;
+		boolean counterLeft = isCounter(cond.getLeft(), counter);
+		if (cond.getSign() == Token.MINUS || !Expressions.isComparison(relation))
+		{
+			return -1;
+		}
+		if (counterLeft)
+		{
+			bound = Expressions.intConstant(cond.getRight());
+		}
+		else if (isCounter(cond.getRight(), counter))
+		{
+			bound = Expressions.intConstant(cond.getLeft());
+		}
+		else
+		{
+			return -1;
+		}
+		if (bound == null)
+		{
+			return -1;
+		}
+		long value = start;
+		for (int trips = 0; trips <= MAX_TRIP_COUNT; trips++)
+		{
+			boolean holds = counterLeft ? compare(relation, value, bound)
+					: compare(relation, bound, value);
+			if (holds == cond.isNot())
+			{
+				return trips;
+			}
+			value += step;
+			if (value != (int) value)
+			{
+				return -1;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Evaluates a comparison.
+	 * @param relation
+	 * @param left
+	 * @param right
+	 * @return
+	 */
+	private boolean compare(Token relation, long left, long right)
+	{
+		switch (relation)
+		{
+			case LESS_THAN:
+				return left < right;
+			case LESS_THAN_EQUAL:
+				return left <= right;
+			case GREATER_THAN:
+				return left > right;
+			case GREATER_THAN_EQUAL:
+				return left >= right;
+			case EQUALS:
+				return left == right;
+			default:
+				return left != right;
+		}
+	}
+
+	/**
+	 * Counts the assignments to a variable in a statement. A read into it
+	 * counts as two, and so does anything that changes a variable that is
+	 * not known, such as a call.
+	 * @param stmt
+	 * @param name
+	 * @return
+	 */
+	private int assignments(StatementNode stmt, String name)
+	{
+		HashMap<String, Integer> assignments = new HashMap<String, Integer>();
+		if (!Expressions.assignments(stmt, assignments))
+		{
+			return 2;
+		}
+		Integer count = assignments.get(name);
+		return count == null ? 0 : count;
+	}
+
+	/**
+	 * Counts the simple statements in a statement.
+	 * @param stmt
+	 * @return
+	 */
+	private int size(StatementNode stmt)
+	{
+		int size = 1;
+		if (stmt instanceof CompoundStatementNode)
+		{
+			size = 0;
+			for (StatementNode current : ((CompoundStatementNode) stmt).getStatements())
+			{
+				size += size(current);
+			}
+		}
+		else if (stmt instanceof IfStatementNode)
+		{
+			size += size(((IfStatementNode) stmt).getStatement())
+					+ size(((IfStatementNode) stmt).getElseStatement());
+		}
+		else if (stmt instanceof WhileStatementNode)
+		{
+			size += size(((WhileStatementNode) stmt).getStatement());
+		}
+		return size;
+	}
+
+	/**
+	 * Check whether an expression is the counter, without a sign or not.
+	 * @param exp
+	 * @param counter
+	 * @return
+	 */
+	private boolean isCounter(ExpressionNode exp, String counter)
+	{
+		return exp instanceof VariableNode && !(exp instanceof ArrayNode) && exp.getSign() != Token.MINUS && !exp.isNot()
+				&& ((VariableNode) exp).getName().equals(counter);
+	}
+
+	/**
+	 * Makes a compound statement holding some copies of a body.
+	 * @param body
+	 * @param times
+	 * @return
+	 */
+	private CompoundStatementNode copies(ArrayList<StatementNode> body, int times)
+	{
+		CompoundStatementNode compound = new CompoundStatementNode();
+		for (int i = 0; i < times; i++)
+		{
+			for (StatementNode stmt : body)
+			{
+				compound.addStatement(Expressions.copy(stmt));
+			}
+		}
+		return compound;
+	}
+
+	/**
+	 * Wraps a statement in a compound statement, so it can be treated as a
+	 * list.
+	 * @param stmt
+	 * @return
+	 */
+	private CompoundStatementNode compound(StatementNode stmt)
+	{
+		if (stmt instanceof CompoundStatementNode)
+		{
+			return (CompoundStatementNode) stmt;
+		}
+		CompoundStatementNode compound = new CompoundStatementNode();
+		if (stmt != null)
+		{
+			compound.addStatement(stmt);
+		}
+		return compound;
+	}
+}
@@ -0,0 +1,836 @@
+package optimizer;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import parser.SymbolTable;
+import scanner.Token;
+import syntaxtree.*;
+
+/**
+ * Removes the bounds checks on elements of arrays whose index is always in
+ * the bounds. The range of values each integer variable may hold is worked
+ * out forwards over the statements:
+ *
+ * - An assignment gives the variable the range of its expression, worked
+ *   out from the ranges of constants and variables through +, -, * and /.
+ * - The branches of an if, and the body of a while loop and the code after
+ *   it, narrow the variables in the condition, so while i <= 10 gives
+ *   i <= 10 in the body. The ranges after an if are those of both branches
+ *   joined.
+ * - The ranges at the head of a loop are repeated until they stop changing.
+ *   A bound that keeps moving is widened to the end of the integers, and the
+ *   body is run over once more to narrow it back down.
+ * - After an element is reached, its index was in the bounds, or the program
+ *   would have stopped.
+ *
+ * A call may change any variable a subprogram assigns, so those are
+ * forgotten around a statement with a call in it.
+ *
+ * @author ken
+ */
+public class RangeAnalysis
+{
+
+	/**
+	 * The symbol table, for the bounds of the arrays.
+	 */
+	private SymbolTable symbols;
+
+	/**
+	 * The variables a call may change.
+	 */
+	private HashSet<String> clobbered = new HashSet<String>();
+
+	/**
+	 * Number of elements reached.
+	 */
+	private int checks;
+
+	/**
+	 * Number of bounds checks removed.
+	 */
+	private int removed;
+
+	/**
+	 * Constructor.
+	 * @param symbols
+	 */
+	public RangeAnalysis(SymbolTable symbols)
+	{
+		this.symbols = symbols;
+	}
+
+	/**
+	 * Removes the bounds checks that always pass from the main program and
+	 * the subprograms.
+	 * @param program
+	 */
+	public void analyze(ProgramNode program)
+	{
+		clobbered(program.getFunctions());
+		statement(program.getMain(), new HashMap<String, Range>(), true);
+		analyze(program.getFunctions());
+	}
+
+	/**
+	 * Get the number of elements reached.
+	 * @return
+	 */
+	public int getChecks()
+	{
+		return checks;
+	}
+
+	/**
+	 * Get the number of bounds checks removed.
+	 * @return
+	 */
+	public int getRemoved()
+	{
+		return removed;
+	}
+
+	/**
+	 * A report of how many bounds checks were removed.
+	 * @return
+	 */
+	public String report()
+	{
+		return "Bounds checks removed: " + removed + " of " + checks + "\n";
+	}
+
+	/**
+	 * Analyzes the bodies of subprograms, with nothing known about their
+	 * variables at the start.
+	 * @param functions
+	 */
+	private void analyze(SubProgramDeclarationsNode functions)
+	{
+		if (functions == null)
+		{
+			return;
+		}
+		for (SubProgramNode sub : functions.getSubPrograms())
+		{
+			statement(sub.getBody(), new HashMap<String, Range>(), true);
+			analyze(sub.getSubDeclarations());
+		}
+	}
+
+	/**
+	 * Adds the variables subprograms assign or read in to the set a call
+	 * may change.
+	 * @param functions
+	 */
+	private void clobbered(SubProgramDeclarationsNode functions)
+	{
+		if (functions == null)
+		{
+			return;
+		}
+		for (SubProgramNode sub : functions.getSubPrograms())
+		{
+			clobbered(sub.getBody());
+			clobbered(sub.getSubDeclarations());
+		}
+	}
+
+	/**
+	 * Adds the variables a statement assigns or reads in to the set a call
+	 * may change.
+	 * @param stmt
+	 */
+	private void clobbered(StatementNode stmt)
+	{
+		if (stmt instanceof AssignmentStatementNode)
+		{
+			clobbered.add(((AssignmentStatementNode) stmt).getLvalue().getName());
+		}
+		else if (stmt instanceof ReadNode)
+		{
+			if (((ReadNode) stmt).getInput() != null)
+			{
+				clobbered.add(((ReadNode) stmt).getInput().getName());
+			}
+		}
+		else if (stmt instanceof CompoundStatementNode)
+		{
+			for (StatementNode current : ((CompoundStatementNode) stmt).getStatements())
+			{
+				clobbered(current);
+			}
+		}
+		else if (stmt instanceof IfStatementNode)
+		{
+			clobbered(((IfStatementNode) stmt).getStatement());
+			clobbered(((IfStatementNode) stmt).getElseStatement());
+		}
+		else if (stmt instanceof WhileStatementNode)
+		{
+			clobbered(((WhileStatementNode) stmt).getStatement());
+		}
+	}
+
+	/**
+	 * Works out the ranges after a statement.
+	 * @param stmt
+	 * @param state the ranges before the statement, or null if it is never
+	 * reached. Not changed.
+	 * @param mark true to remove the checks that always pass, false to only
+	 * work out the ranges.
+	 * @return the ranges after the statement, or null if the end is never
+	 * reached.
+	 */
+	private HashMap<String, Range> statement(StatementNode stmt, HashMap<String, Range> state,
+			boolean mark)
+	{
+		if (state == null || stmt == null)
+		{
+			return state;
+		}
+		HashMap<String, Range> after = new HashMap<String, Range>(state);
+		if (stmt instanceof AssignmentStatementNode)
+		{
+			AssignmentStatementNode assign = (AssignmentStatementNode) stmt;
+			VariableNode lvalue = assign.getLvalue();
+			boolean calls = Expressions.hasCall(assign);
+			if (calls)
+			{
+				after.keySet().removeAll(clobbered);
+			}
+			elements(assign.getExpression(), after, mark);
+			elements(lvalue, after, mark);
+			Range value = range(assign.getExpression(), after);
+			reached(assign.getExpression(), after, calls);
+			reached(lvalue, after, calls);
+			if (lvalue instanceof ArrayNode)
+			{
+				return after;
+			}
+			if (value != null && lvalue.getType() == Token.INTEGER)
+			{
+				after.put(lvalue.getName(), value);
+			}
+			else
+			{
+				after.remove(lvalue.getName());
+			}
+		}
+		else if (stmt instanceof ReadNode)
+		{
+			VariableNode input = ((ReadNode) stmt).getInput();
+			if (input != null)
+			{
+				elements(input, after, mark);
+				reached(input, after, false);
+				if (!(input instanceof ArrayNode))
+				{
+					after.remove(input.getName());
+				}
+			}
+		}
+		else if (stmt instanceof WriteNode)
+		{
+			ExpressionNode out = ((WriteNode) stmt).getOutput();
+			boolean calls = Expressions.hasCall(out);
+			if (calls)
+			{
+				after.keySet().removeAll(clobbered);
+			}
+			elements(out, after, mark);
+			reached(out, after, calls);
+		}
+		else if (stmt instanceof ProcedureStatementNode)
+		{
+			after.keySet().removeAll(clobbered);
+			for (ExpressionNode arg : ((ProcedureStatementNode) stmt).getArguments())
+			{
+				elements(arg, after, mark);
+			}
+			for (ExpressionNode arg : ((ProcedureStatementNode) stmt).getArguments())
+			{
+				reached(arg, after, true);
+			}
+		}
+		else if (stmt instanceof CompoundStatementNode)
+		{
+			for (StatementNode current : ((CompoundStatementNode) stmt).getStatements())
+			{
+				after = statement(current, after, mark);
+			}
+		}
+		else if (stmt instanceof IfStatementNode)
+		{
+			IfStatementNode ifNode = (IfStatementNode) stmt;
+			ExpressionNode cond = ifNode.getCondition();
+			after = condition(cond, after, mark);
+			HashMap<String, Range> then = statement(ifNode.getStatement(),
+					narrow(cond, after, true), mark);
+			after = join(then, statement(ifNode.getElseStatement(),
+					narrow(cond, after, false), mark));
+		}
+		else if (stmt instanceof WhileStatementNode)
+		{
+			after = loop((WhileStatementNode) stmt, after, mark);
+		}
+		return after;
+	}
+
+	/**
+	 * Works out the ranges after a while loop. The ranges at the head are
+	 * widened until they hold for every time around the loop, then narrowed
+	 * by running over the body once more.
+	 * @param loop
+	 * @param entry the ranges before the loop.
+	 * @param mark
+	 * @return
+	 */
+	private HashMap<String, Range> loop(WhileStatementNode loop, HashMap<String, Range> entry,
+			boolean mark)
+	{
+		ExpressionNode cond = loop.getCondition();
+		HashMap<String, Range> head = entry;
+		while (true)
+		{
+			HashMap<String, Range> next = join(entry, around(loop, head, false));
+			if (contains(head, next))
+			{
+				break;
+			}
+			head = widen(head, next);
+		}
+		head = join(entry, around(loop, head, false));
+		around(loop, head, mark);
+		return narrow(cond, condition(cond, head, false), false);
+	}
+
+	/**
+	 * Works out the ranges after going around a loop once.
+	 * @param loop
+	 * @param head the ranges at the head of the loop.
+	 * @param mark
+	 * @return the ranges back at the head.
+	 */
+	private HashMap<String, Range> around(WhileStatementNode loop, HashMap<String, Range> head,
+			boolean mark)
+	{
+		HashMap<String, Range> body = narrow(loop.getCondition(),
+				condition(loop.getCondition(), head, mark), true);
+		return statement(loop.getStatement(), body, mark);
+	}
+
+	/**
+	 * Works out the ranges after evaluating a condition, for its elements
+	 * and calls.
+	 * @param cond
+	 * @param state
+	 * @param mark
+	 * @return
+	 */
+	private HashMap<String, Range> condition(ExpressionNode cond, HashMap<String, Range> state,
+			boolean mark)
+	{
+		if (state == null)
+		{
+			return null;
+		}
+		HashMap<String, Range> after = new HashMap<String, Range>(state);
+		boolean calls = Expressions.hasCall(cond);
+		if (calls)
+		{
+			after.keySet().removeAll(clobbered);
+		}
+		elements(cond, after, mark);
+		reached(cond, after, calls);
+		return after;
+	}
+
+	/**
+	 * Removes the checks on the elements in an expression whose index is
+	 * always in the bounds.
+	 * @param exp
+	 * @param state the ranges when the expression is evaluated.
+	 * @param mark false to do nothing.
+	 */
+	private void elements(ExpressionNode exp, HashMap<String, Range> state, boolean mark)
+	{
+		if (!mark)
+		{
+			return;
+		}
+		if (exp instanceof ArrayNode)
+		{
+			ArrayNode element = (ArrayNode) exp;
+			Range index = range(element.getIndex(), state);
+			Range bounds = bounds(element);
+			checks++;
+			if (index != null && index.low >= bounds.low && index.high <= bounds.high)
+			{
+				element.setChecked(false);
+				removed++;
+			}
+			elements(element.getIndex(), state, mark);
+		}
+		else if (exp instanceof OperationNode)
+		{
+			elements(((OperationNode) exp).getLeft(), state, mark);
+			elements(((OperationNode) exp).getRight(), state, mark);
+		}
+		else if (exp instanceof FunctionCallNode)
+		{
+			for (ExpressionNode arg : ((FunctionCallNode) exp).getArguments())
+			{
+				elements(arg, state, mark);
+			}
+		}
+	}
+
+	/**
+	 * The values the index of an element can take in the bounds of its
+	 * array. A scaled index is the offset in bytes, a multiple of 4.
+	 * @param element
+	 * @return
+	 */
+	private Range bounds(ArrayNode element)
+	{
+		long start = symbols.getStart(element.getName());
+		long end = symbols.getEnd(element.getName());
+		if (element.isScaled())
+		{
+			return new Range(0, 4 * (end - start));
+		}
+		return new Range(start, end);
+	}
+
+	/**
+	 * Narrows the variables used as the index of an element to the bounds
+	 * of its array, once the element has been reached. When there is a call,
+	 * a variable it may change could have been changed since.
+	 * @param exp
+	 * @param state changed.
+	 * @param calls
+	 */
+	private void reached(ExpressionNode exp, HashMap<String, Range> state, boolean calls)
+	{
+		if (exp instanceof ArrayNode)
+		{
+			ArrayNode element = (ArrayNode) exp;
+			ExpressionNode index = element.getIndex();
+			if (isVariable(index) && !(calls && clobbered.contains(name(index))))
+			{
+				Range bounds = bounds(element);
+				Range known = state.get(name(index));
+				state.put(name(index), known == null ? bounds : known.meet(bounds));
+			}
+			reached(index, state, calls);
+		}
+		else if (exp instanceof OperationNode)
+		{
+			reached(((OperationNode) exp).getLeft(), state, calls);
+			reached(((OperationNode) exp).getRight(), state, calls);
+		}
+		else if (exp instanceof FunctionCallNode)
+		{
+			for (ExpressionNode arg : ((FunctionCallNode) exp).getArguments())
+			{
+				reached(arg, state, calls);
+			}
+		}
+	}
+
+	/**
+	 * The range of an integer expression, or null if nothing is known.
+	 * @param exp
+	 * @param state
+	 * @return
+	 */
+	private Range range(ExpressionNode exp, HashMap<String, Range> state)
+	{
+		Range range = null;
+		if (exp instanceof ValueNode)
+		{
+			if (((ValueNode) exp).getType() == Token.INTEGER)
+			{
+				long value = Long.parseLong(((ValueNode) exp).getAttribute());
+				range = new Range(value, value);
+			}
+		}
+		else if (exp instanceof ArrayNode || exp instanceof FunctionCallNode)
+		{
+			range = null;
+		}
+		else if (exp instanceof VariableNode)
+		{
+			range = state.get(((VariableNode) exp).getName());
+		}
+		else if (exp instanceof OperationNode)
+		{
+			range = operation((OperationNode) exp, state);
+		}
+		if (exp.isNot())
+		{
+			range = range != null && (range.low > 0 || range.high < 0) ? new Range(0, 0)
+					: range != null && range.low == 0 && range.high == 0 ? new Range(1, 1)
+					: new Range(0, 1);
+		}
+		if (range != null && exp.getSign() == Token.MINUS)
+		{
+			range = Range.of(-range.high, -range.low);
+		}
+		return range;
+	}
+
+	/**
+	 * The range of an operation, without its sign or not.
+	 * @param op
+	 * @param state
+	 * @return
+	 */
+	private Range operation(OperationNode op, HashMap<String, Range> state)
+	{
+		if (Expressions.isComparison(op.getOperation()))
+		{
+			return new Range(0, 1);
+		}
+		Range left = range(op.getLeft(), state);
+		Range right = range(op.getRight(), state);
+		if (left == null || right == null)
+		{
+			return null;
+		}
+		switch (op.getOperation())
+		{
+			case PLUS:
+				return Range.of(left.low + right.low, left.high + right.high);
+			case MINUS:
+				return Range.of(left.low - right.high, left.high - right.low);
+			case MULTIPLY:
+				return Range.of(left.low * right.low, left.low * right.high,
+						left.high * right.low, left.high * right.high);
+			case DIVIDE:
+				if (right.low <= 0 && right.high >= 0)
+				{
+					return null;
+				}
+				return Range.of(left.low / right.low, left.low / right.high,
+						left.high / right.low, left.high / right.high);
+			default:
+				return null;
+		}
+	}
+
+	/**
+	 * Narrows the ranges of the variables in a comparison, for when it is
+	 * true or false.
+	 * @param cond
+	 * @param state not changed.
+	 * @param truth
+	 * @return the narrowed ranges, or null if the condition can never come
+	 * out that way.
+	 */
+	private HashMap<String, Range> narrow(ExpressionNode cond, HashMap<String, Range> state,
+			boolean truth)
+	{
+		if (state == null || !(cond instanceof OperationNode)
+				|| !Expressions.isComparison(((OperationNode) cond).getOperation()))
+		{
+			return state;
+		}
+		OperationNode op = (OperationNode) cond;
+		Token relation = op.getOperation();
+		if (truth == op.isNot())
+		{
+			relation = negate(relation);
+		}
+		HashMap<String, Range> narrowed = new HashMap<String, Range>(state);
+		Range left = range(op.getLeft(), state);
+		Range right = range(op.getRight(), state);
+		if (isVariable(op.getLeft()) && right != null)
+		{
+			if (!narrow(narrowed, name(op.getLeft()), relation, right))
+			{
+				return null;
+			}
+		}
+		if (isVariable(op.getRight()) && left != null)
+		{
+			if (!narrow(narrowed, name(op.getRight()), flip(relation), left))
+			{
+				return null;
+			}
+		}
+		return narrowed;
+	}
+
+	/**
+	 * Narrows the range of a variable to the values that satisfy
+	 * variable relation other.
+	 * @param state changed.
+	 * @param name
+	 * @param relation
+	 * @param other
+	 * @return false if no value satisfies it.
+	 */
+	private boolean narrow(HashMap<String, Range> state, String name, Token relation,
+			Range other)
+	{
+		Range known = state.get(name);
+		long low = known == null ? Integer.MIN_VALUE : known.low;
+		long high = known == null ? Integer.MAX_VALUE : known.high;
+		switch (relation)
+		{
+			case LESS_THAN:
+				high = Math.min(high, other.high - 1);
+				break;
+			case LESS_THAN_EQUAL:
+				high = Math.min(high, other.high);
+				break;
+			case GREATER_THAN:
+				low = Math.max(low, other.low + 1);
+				break;
+			case GREATER_THAN_EQUAL:
+				low = Math.max(low, other.low);
+				break;
+			case EQUALS:
+				low = Math.max(low, other.low);
+				high = Math.min(high, other.high);
+				break;
+			default:
+				if (other.low == other.high && low == other.low)
+				{
+					low++;
+				}
+				else if (other.low == other.high && high == other.low)
+				{
+					high--;
+				}
+		}
+		if (low > high)
+		{
+			return false;
+		}
+		state.put(name, new Range(low, high));
+		return true;
+	}
+
+	/**
+	 * The relation that holds when one does not.
+	 * @param relation
+	 * @return
+	 */
+	private Token negate(Token relation)
+	{
+		switch (relation)
+		{
+			case LESS_THAN:
+				return Token.GREATER_THAN_EQUAL;
+			case LESS_THAN_EQUAL:
+				return Token.GREATER_THAN;
+			case GREATER_THAN:
+				return Token.LESS_THAN_EQUAL;
+			case GREATER_THAN_EQUAL:
+				return Token.LESS_THAN;
+			case EQUALS:
+				return Token.LESS_THAN_GREATER_THAN;
+			default:
+				return Token.EQUALS;
+		}
+	}
+
+	/**
+	 * The relation with its sides swapped, so a < b becomes b > a.
+	 * @param relation
+	 * @return
+	 */
+	private Token flip(Token relation)
+	{
+		switch (relation)
+		{
+			case LESS_THAN:
+				return Token.GREATER_THAN;
+			case LESS_THAN_EQUAL:
+				return Token.GREATER_THAN_EQUAL;
+			case GREATER_THAN:
+				return Token.LESS_THAN;
+			case GREATER_THAN_EQUAL:
+				return Token.LESS_THAN_EQUAL;
+			default:
+				return relation;
+		}
+	}
+
+	/**
+	 * Joins the ranges from two paths that meet. A variable is only known
+	 * if it is known on both.
+	 * @param first
+	 * @param second
+	 * @return
+	 */
+	private HashMap<String, Range> join(HashMap<String, Range> first,
+			HashMap<String, Range> second)
+	{
+		if (first == null || second == null)
+		{
+			return first == null ? second : first;
+		}
+		HashMap<String, Range> joined = new HashMap<String, Range>();
+		for (Map.Entry<String, Range> entry : first.entrySet())
+		{
+			Range other = second.get(entry.getKey());
+			if (other != null)
+			{
+				joined.put(entry.getKey(), entry.getValue().join(other));
+			}
+		}
+		return joined;
+	}
+
+	/**
+	 * Widens the ranges at the head of a loop: a bound that moved goes to
+	 * the end of the integers, so the loop is only gone around a few times.
+	 * @param head
+	 * @param next
+	 * @return
+	 */
+	private HashMap<String, Range> widen(HashMap<String, Range> head,
+			HashMap<String, Range> next)
+	{
+		if (head == null)
+		{
+			return next;
+		}
+		HashMap<String, Range> widened = new HashMap<String, Range>();
+		for (Map.Entry<String, Range> entry : next.entrySet())
+		{
+			Range old = head.get(entry.getKey());
+			Range range = entry.getValue();
+			if (old != null)
+			{
+				widened.put(entry.getKey(),
+						new Range(range.low < old.low ? Integer.MIN_VALUE : old.low,
+						range.high > old.high ? Integer.MAX_VALUE : old.high));
+			}
+		}
+		return widened;
+	}
+
+	/**
+	 * Check whether one set of ranges holds every value another does.
+	 * @param outer
+	 * @param inner
+	 * @return
+	 */
+	private boolean contains(HashMap<String, Range> outer, HashMap<String, Range> inner)
+	{
+		if (inner == null)
+		{
+			return true;
+		}
+		if (outer == null)
+		{
+			return false;
+		}
+		for (Map.Entry<String, Range> entry : outer.entrySet())
+		{
+			Range range = inner.get(entry.getKey());
+			if (range == null || range.low < entry.getValue().low
+					|| range.high > entry.getValue().high)
+			{
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Check whether an expression is a variable, without a sign or not.
+	 * @param exp
+	 * @return
+	 */
+	private boolean isVariable(ExpressionNode exp)
+	{
+		return exp instanceof VariableNode && !(exp instanceof ArrayNode)
+				&& exp.getSign() != Token.MINUS && !exp.isNot();
+	}
+
+	/**
+	 * The name of a variable.
+	 * @param exp
+	 * @return
+	 */
+	private String name(ExpressionNode exp)
+	{
+		return ((VariableNode) exp).getName();
+	}
+
+	/**
+	 * The values an integer may hold, from low to high.
+	 */
+	private static class Range
+	{
+
+		/**
+		 * The lowest value.
+		 */
+		private final long low;
+
+		/**
+		 * The highest value.
+		 */
+		private final long high;
+
+		/**
+		 * Constructor.
+		 * @param low
+		 * @param high
+		 */
+		Range(long low, long high)
+		{
+			this.low = low;
+			this.high = high;
+		}
+
+		/**
+		 * The range from the lowest to the highest of some values, or null
+		 * if one does not fit in an integer, since the arithmetic wraps.
+		 * @param values
+		 * @return
+		 */
+		static Range of(long... values)
+		{
+			long low = values[0];
+			long high = values[0];
+			for (long value : values)
+			{
+				if (value < Integer.MIN_VALUE || value > Integer.MAX_VALUE)
+				{
+					return null;
+				}
+				low = Math.min(low, value);
+				high = Math.max(high, value);
+			}
+			return new Range(low, high);
+		}
+
+		/**
+		 * The range holding the values of both.
+		 * @param other
+		 * @return
+		 */
+		Range join(Range other)
+		{
+			return new Range(Math.min(low, other.low), Math.max(high, other.high));
+		}
+
+		/**
+		 * The range holding the values in both.
+		 * @param other
+		 * @return
+		 */
+		Range meet(Range other)
+		{
+			return new Range(Math.max(low, other.low), Math.min(high, other.high));
+		}
+	}
+}
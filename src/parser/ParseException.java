@@ -0,0 +1,37 @@
+package parser;
+
+/**
+ * An error in a program, thrown by a parser that does not exit on errors.
+ *
+ * @author ken
+ */
+public class ParseException extends RuntimeException
+{
+
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * The error code the parser would have exited with.
+	 */
+	private final int errorCode;
+
+	/**
+	 * Constructor.
+	 * @param errorCode
+	 * @param message what the parser would have written.
+	 */
+	public ParseException(int errorCode, String message)
+	{
+		super(message);
+		this.errorCode = errorCode;
+	}
+
+	/**
+	 * Get the error code the parser would have exited with.
+	 * @return
+	 */
+	public int getErrorCode()
+	{
+		return errorCode;
+	}
+}
@@ -5,6 +5,7 @@ import scanner.NextTokenReturnValue;
 import scanner.Scanner;
 import scanner.Token;
 import java.io.File;
+import java.io.PrintStream;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Hashtable;
@@ -56,7 +57,32 @@ public class Parser
 	/**
 	 * String to hold the name of the current scope.
 	 */
-	private static Stack<String> currentScope;
+	private Stack<String> currentScope;
+
+	/**
+	 * The names visible only inside the function or procedure being parsed,
+	 * mapped to the names they are stored under in the symbol table. Its
+	 * parameters and variables are stored under the prefix of the function,
+	 * and the name of a function under the prefix alone, as the variable
+	 * holding its return value. Empty in the main program.
+	 */
+	private Hashtable<String, String> locals;
+
+	/**
+	 * The functions and procedures visible where the parser is, mapped to
+	 * the names they are stored under in the symbol table. One declared
+	 * inside another is stored under the prefix of the one it is in and an
+	 * underscore, like _f__g, so two subprograms can each declare their own
+	 * g. The others keep their names.
+	 */
+	private Hashtable<String, String> routines;
+
+	/**
+	 * The prefix of the names declared in the function or procedure being
+	 * parsed, like _f_, or empty in the main program. Identifiers can not
+	 * contain an underscore, so these never clash with the user's names.
+	 */
+	private String prefix;
 
 	/**
 	 * The currentToken that will be used for lookahead.
@@ -131,11 +157,45 @@ public class Parser
 	 */
 	private SymbolTable symbolTable;
 
+	/**
+	 * Where the parser reports that it parsed the file, and its errors when
+	 * they exit.
+	 */
+	private PrintStream messages = System.out;
+
+	/**
+	 * True if an error exits with its error code, and false if it throws a
+	 * ParseException, so that one file can fail among many.
+	 */
+	private boolean exitOnError = true;
+
 	public SymbolTable getSymbolTable()
 	{
 		return symbolTable;
 	}
 
+	/**
+	 * Sets where the parser reports that it parsed the file, and its errors
+	 * when they exit.
+	 *
+	 * @param messages
+	 */
+	public void setMessages(PrintStream messages)
+	{
+		this.messages = messages;
+	}
+
+	/**
+	 * Sets whether an error exits with its error code, or throws a
+	 * ParseException.
+	 *
+	 * @param exitOnError
+	 */
+	public void setExitOnError(boolean exitOnError)
+	{
+		this.exitOnError = exitOnError;
+	}
+
 
 	
 
@@ -159,6 +219,9 @@ public class Parser
 		symbolsBackstack = new Stack<String>();
 		argStack = new Stack<String>();
 		argTable = new Hashtable<String, Token>();
+		locals = new Hashtable<String, String>();
+		routines = new Hashtable<String, String>();
+		prefix = "";
 	}
 
 	/**
@@ -188,7 +251,7 @@ public class Parser
 		}
 		match(Token.SEMICOLON);
 		thisProg.setVariables(declarations());
-		subprogramDeclarations();
+		thisProg.setFunctions(subprogramDeclarations());
 		thisProg.setMain(compoundStatement());
 		match(Token.PERIOD);
 		checkInput();
@@ -233,9 +296,15 @@ public class Parser
 
 		while (currentToken == Token.ID)
 		{
-			currentSymbols.push(scanner.getAttribute().toString());
-			symbolTable.add(scanner.getAttribute().toString());
-			ids.add(scanner.getAttribute().toString());
+			String id = scanner.getAttribute().toString();
+			String name = prefix + id;
+			if (!prefix.isEmpty())
+			{
+				locals.put(id, name);
+			}
+			currentSymbols.push(name);
+			symbolTable.add(name);
+			ids.add(name);
 			match(Token.ID);
 			if (currentToken == Token.COMMA)
 			{
@@ -249,11 +318,17 @@ public class Parser
 		return ids;
 	}
 
-	private void argIdentifierList()
+	/**
+	 * List of parameter identifiers that share a type.
+	 *
+	 * @return the identifiers, in order.
+	 */
+	private ArrayList<String> argIdentifierList()
 	{
+		ArrayList<String> ids = new ArrayList<String>();
 		while (currentToken == Token.ID)
 		{
-			argStack.push(scanner.getAttribute().toString());
+			ids.add(scanner.getAttribute().toString());
 			match(Token.ID);
 			if (currentToken == Token.COMMA)
 			{
@@ -264,6 +339,7 @@ public class Parser
 				break;
 			}
 		}
+		return ids;
 	}
 
 	/**
@@ -330,12 +406,12 @@ public class Parser
 	}
 
 	/**
-	 * Used for the types of arguments. Not currently implemented. May implement
-	 * later.
+	 * Used for the types of arguments. Only standard types are supported.
 	 *
 	 * @param name
+	 * @param ids the parameters that have this type.
 	 */
-	private void argType(String name)
+	private void argType(String name, ArrayList<String> ids)
 	{
 		if (currentToken == Token.ARRAY)
 		{
@@ -379,7 +455,7 @@ public class Parser
 			 match(Token.OF);
 			 */
 		}
-		argStandardType(name);
+		argStandardType(name, ids);
 	}
 
 	/**
@@ -420,25 +496,22 @@ public class Parser
 	}
 
 	/**
-	 * Not currently used, but may be implemented further for function/
-	 * procedure.
+	 * The standard type of a group of parameters. Records the type of each
+	 * parameter of the function or procedure, and queues the parameters to be
+	 * declared once its head is parsed.
 	 *
 	 * @param name
+	 * @param ids the parameters that have this type.
 	 */
-	private void argStandardType(String name)
+	private void argStandardType(String name, ArrayList<String> ids)
 	{
 		if (currentToken == Token.INTEGER || currentToken == Token.REAL)
 		{
-			Stack<String> argBack = new Stack<String>();
-			while (!argStack.isEmpty())
+			for (String id : ids)
 			{
 				symbolTable.addParamType(name, currentToken);
-				argTable.put(argStack.peek(), currentToken);
-				argBack.push(argStack.pop());
-			}
-			while (!argBack.isEmpty())
-			{
-				argStack.push(argBack.pop());
+				argTable.put(id, currentToken);
+				argStack.push(id);
 			}
 			match(currentToken);
 		}
@@ -446,88 +519,115 @@ public class Parser
 
 	/**
 	 * Subprogram Declarations. Declarations of functions and procedures.
-	 * Currently parses, but does not create a syntax tree node. This may be
-	 * implemented if I choose to support functions calls/ procedures.
 	 *
-	 * @return SubProgramDeclarationsNode that should contain the function /
-	 * procedure declarations. Only returns a skeleton of this node now.
+	 * @return SubProgramDeclarationsNode containing the function and
+	 * procedure declarations, in order.
 	 */
 	private SubProgramDeclarationsNode subprogramDeclarations()
 	{
 		SubProgramDeclarationsNode funcs = new SubProgramDeclarationsNode();
 		while (currentToken == Token.FUNCTION || currentToken == Token.PROCEDURE)
 		{
-			subprogramDeclaration();
+			funcs.addSubProgram(subprogramDeclaration());
 			match(Token.SEMICOLON);
-			subprogramDeclarations();
 		}
 		return funcs;
 	}
 
 	/**
-	 * A single subprogram declaration. Called from subprogramDeclarations. This
-	 * currently parses, but does not produce nodes. If support is made it will
-	 * create and return a SubProgramNode.
+	 * A single subprogram declaration. Called from subprogramDeclarations.
+	 * The names declared in it are only visible until it ends, except to the
+	 * subprograms declared inside it.
+	 *
+	 * @return SubProgramNode with the parameters, variables, nested
+	 * subprograms, and body.
 	 */
-	private void subprogramDeclaration()
+	private SubProgramNode subprogramDeclaration()
 	{
-		subprogramHead();
-
-		declarations();
-		subprogramDeclarations();
-		compoundStatement();
-		symbolTable.popScope();
+		Hashtable<String, String> outerLocals = locals;
+		Hashtable<String, String> outerRoutines = routines;
+		String outerPrefix = prefix;
+		locals = new Hashtable<String, String>(outerLocals);
+		// The head declares the subprogram where it is declared, so the
+		// subprograms after it and its own body can call it.
+		SubProgramNode sub = subprogramHead();
+		routines = new Hashtable<String, String>(outerRoutines);
+		sub.setDeclarations(declarations());
+		sub.setSubDeclarations(subprogramDeclarations());
+		sub.setBody(compoundStatement());
+		locals = outerLocals;
+		routines = outerRoutines;
+		prefix = outerPrefix;
+		return sub;
 	}
 
 	/**
 	 * The signature of the method/function. Consists of function id: arguments
-	 * standard type; or procedure id: arguments. No tree building support yet.
+	 * standard type; or procedure id: arguments. Declares the parameters, and
+	 * for a function the variable holding its return value, under the prefix
+	 * of the function. A subprogram inside another is stored under a name of
+	 * its own, which is the name of its node.
+	 *
+	 * @return FunctionNode or ProcedureNode with its name and parameters.
 	 */
-	private void subprogramHead()
+	private SubProgramNode subprogramHead()
 	{
+		SubProgramNode sub;
+		String name;
+		String stored;
 		if (currentToken == Token.FUNCTION)
 		{
 			match(Token.FUNCTION);
-			String functionName = scanner.getAttribute().toString();
-			currentSymbols.push(functionName);
-			symbolTable.add(functionName, Kind.FUNCTION);
+			name = scanner.getAttribute().toString();
+			stored = prefix + (prefix.isEmpty() ? "" : "_") + name;
+			sub = new FunctionNode();
+			currentSymbols.push(stored);
+			symbolTable.add(stored, Kind.FUNCTION);
 			match(Token.ID);
-			arguments(functionName);
+			arguments(stored);
 			match(Token.COLON);
 			standardType();
 			match(Token.SEMICOLON);
-			symbolTable.pushScope(functionName);
-			while (!argStack.isEmpty())
-			{
-				System.out.println("Adding to next scope");
-				String current = argStack.pop();
-				symbolTable.add(current, Kind.VAR);
-				symbolTable.setType(current, argTable.get(current));
-			}
 		}
-		else if (currentToken == Token.PROCEDURE)
+		else
 		{
 			match(Token.PROCEDURE);
-			String procedureName = scanner.getAttribute().toString();
-			symbolTable.add(procedureName, Kind.PROCEDURE);
+			name = scanner.getAttribute().toString();
+			stored = prefix + (prefix.isEmpty() ? "" : "_") + name;
+			sub = new ProcedureNode();
+			symbolTable.add(stored, Kind.PROCEDURE);
 			match(Token.ID);
-			arguments(procedureName);
+			arguments(stored);
 			match(Token.SEMICOLON);
-			symbolTable.pushScope(procedureName);
-			while (!argStack.isEmpty())
-			{
-				System.out.println("Adding to next scope");
-				String current = argStack.pop();
-				symbolTable.add(current, Kind.VAR);
-				symbolTable.setType(current, argTable.get(current));
-			}
 		}
-
+		sub.setName(stored);
+		routines.put(name, stored);
+		prefix = (prefix.isEmpty() ? "_" : prefix) + name + "_";
+		ArrayList<Token> types = new ArrayList<Token>();
+		for (String arg : argStack)
+		{
+			String param = prefix + arg;
+			symbolTable.add(param, Kind.VAR);
+			symbolTable.setType(param, argTable.get(arg));
+			locals.put(arg, param);
+			sub.addParameter(new VariableNode(param, argTable.get(arg)));
+			types.add(argTable.get(arg));
+		}
+		sub.setArgs(types);
+		argStack.clear();
+		argTable.clear();
+		if (sub instanceof FunctionNode)
+		{
+			symbolTable.add(prefix, Kind.VAR);
+			symbolTable.setType(prefix, symbolTable.getReturnType(stored));
+			locals.put(name, prefix);
+			sub.setResult(new VariableNode(prefix, symbolTable.getReturnType(stored)));
+		}
+		return sub;
 	}
 
 	/**
 	 * Parses the arguments of a function, or a procedure. ( parameters )
-	 * Parses, but does not create tree nodes yet.
 	 */
 	private void arguments(String name)
 	{
@@ -542,17 +642,17 @@ public class Parser
 
 	/**
 	 * List of the parameters for a function/procedure arguments. identifier
-	 * list : type or identifier list : type; parameter list; No tree node
-	 * creation.
+	 * list : type or identifier list : type; parameter list;
 	 */
 	private void parameterList(String name)
 	{
-		argIdentifierList();
+		ArrayList<String> ids = argIdentifierList();
 		match(Token.COLON);
-		argType(name);
+		argType(name, ids);
 
 		if (currentToken == Token.SEMICOLON)
 		{
+			match(Token.SEMICOLON);
 			parameterList(name);
 		}
 	}
@@ -646,21 +746,23 @@ public class Parser
 		}
 		else if (currentToken == Token.ID)
 		{
-			String tokenAtt = scanner.getAttribute().toString();
+			String id = scanner.getAttribute().toString();
+			String tokenAtt = resolve(id);
 			if (symbolTable.exists(tokenAtt))
 			{
 				Kind idKind = symbolTable.getKind(tokenAtt);
 				match(Token.ID);
-				if (idKind == Kind.ARRAY)
-				{
-					match(Token.LEFT_SQUARE_BRACKET);
-					expression();
-					match(Token.RIGHT_SQUARE_BRACKET);
-				}
-				else if (idKind == Kind.VAR)
+				if (idKind == Kind.ARRAY || idKind == Kind.VAR)
 				{
 					stmt = new AssignmentStatementNode();
 					VariableNode varNode = new VariableNode(tokenAtt);
+					if (idKind == Kind.ARRAY)
+					{
+						match(Token.LEFT_SQUARE_BRACKET);
+						varNode = new ArrayNode(tokenAtt, symbolTable.getType(tokenAtt),
+								expression());
+						match(Token.RIGHT_SQUARE_BRACKET);
+					}
 					((AssignmentStatementNode) stmt).setLvalue(varNode);
 					((AssignmentStatementNode) stmt).setType(
 							symbolTable.getType(tokenAtt));
@@ -674,9 +776,14 @@ public class Parser
 				else if (idKind == Kind.PROCEDURE
 						 || idKind == Kind.FUNCTION)
 				{
-					match(Token.LEFT_PARENTHESIS);
-					expressionList();
-					match(Token.RIGHT_PARENTHESIS);
+					ArrayList<ExpressionNode> args = new ArrayList<ExpressionNode>();
+					if (currentToken == Token.LEFT_PARENTHESIS)
+					{
+						match(Token.LEFT_PARENTHESIS);
+						args = expressionList();
+						match(Token.RIGHT_PARENTHESIS);
+					}
+					stmt = new ProcedureStatementNode(tokenAtt, args);
 				}
 			}
 			else if (tokenAtt.equals("read"))
@@ -685,10 +792,11 @@ public class Parser
 				match(Token.ID);
 				match(Token.LEFT_PARENTHESIS);
 				VariableNode readNode = new VariableNode();
-				readNode.setName(scanner.getAttribute().toString());
-				readNode.setType(symbolTable.getType(
-						scanner.getAttribute().toString()));
-				((ReadNode) stmt).setInput(null);
+				String input = resolve(scanner.getAttribute().toString());
+				readNode.setName(input);
+				readNode.setType(symbolTable.getType(input));
+				((ReadNode) stmt).setInput(readNode);
+				match(Token.ID);
 				match(Token.RIGHT_PARENTHESIS);
 			}
 			else if (tokenAtt.equals("write"))
@@ -791,13 +899,11 @@ public class Parser
 	{
 		Token expSign = sign();
 		ExpressionNode trmPart = term();
-        if(expSign != null)
+        if(expSign == Token.MINUS)
         {
-            trmPart.setSign(expSign);
-        }
-        else
-        {
-            trmPart.setSign(Token.PLUS);
+            // The term may already be negative, e.g. - ( - foo ).
+            trmPart.setSign(trmPart.getSign() == Token.MINUS
+                    ? Token.PLUS : Token.MINUS);
         }
 		ExpressionNode smpPart = simplePart();
 		if (smpPart == null)
@@ -851,9 +957,8 @@ public class Parser
 
 	/**
 	 * The factor portion of an expression. ID ID [ expression ] ID (
-	 * expressionList ) NUMBER ( expression ) NOT factor. Currently only creates
-	 * a tree for variable or values. Need to implement either arrays, or
-	 * function/procedures here. FIRST implement NOT and parenthesis.
+	 * expressionList ) NUMBER ( expression ) NOT factor. An element of an
+	 * array is an ArrayNode holding its index.
 	 *
 	 * @return ExpressionNode
 	 */
@@ -862,23 +967,33 @@ public class Parser
 		ExpressionNode fac = null;
 		if (currentToken == Token.ID)
 		{
-			if (symbolTable.exists(scanner.getAttribute().toString()))
+			String id = scanner.getAttribute().toString();
+			if (symbolTable.exists(resolve(id)))
 			{
 
-				String att = scanner.getAttribute().toString();
+				String att = resolve(id);
 				match(Token.ID);
 				if (currentToken == Token.LEFT_SQUARE_BRACKET)
 				{
 					match(Token.LEFT_SQUARE_BRACKET);
-					expression();
+					fac = new ArrayNode(att, symbolTable.getType(att), expression());
 					match(Token.RIGHT_SQUARE_BRACKET);
 				}
 				else if (currentToken == Token.LEFT_PARENTHESIS)
 				{
+					// Inside a function its name is the result, except when
+					// it calls itself.
 					match(Token.LEFT_PARENTHESIS);
-					expressionList();
+					String function = resolveRoutine(id);
+					fac = new FunctionCallNode(function, expressionList(),
+							symbolTable.getReturnType(function));
 					match(Token.RIGHT_PARENTHESIS);
 				}
+				else if (symbolTable.getKind(att) == Kind.FUNCTION)
+				{
+					fac = new FunctionCallNode(att, new ArrayList<ExpressionNode>(),
+							symbolTable.getReturnType(att));
+				}
 				else
 				{
 					fac = new VariableNode();
@@ -915,7 +1030,7 @@ public class Parser
 		{
 			match(Token.NOT);
 			fac = factor();
-			fac.setNot(true);
+			fac.setNot(!fac.isNot());
 		}
 		return fac;
 	}
@@ -987,11 +1102,39 @@ public class Parser
 		expressions.add(expression());
 		if (currentToken == Token.COMMA)
 		{
+			match(Token.COMMA);
 			expressions.addAll(expressionList());
 		}
 		return expressions;
 	}
 
+	/**
+	 * Finds the name an identifier is stored under in the symbol table, which
+	 * is different for the parameters and variables of a function or
+	 * procedure, and for a subprogram declared inside another.
+	 *
+	 * @param id
+	 * @return the name of the identifier in the symbol table.
+	 */
+	private String resolve(String id)
+	{
+		String name = locals.get(id);
+		return name == null ? resolveRoutine(id) : name;
+	}
+
+	/**
+	 * Finds the name a function or procedure is stored under in the symbol
+	 * table, which is different for one declared inside another.
+	 *
+	 * @param id
+	 * @return the name of the subprogram in the symbol table.
+	 */
+	private String resolveRoutine(String id)
+	{
+		String name = routines.get(id);
+		return name == null ? id : name;
+	}
+
 	/**
 	 * Matches the current token the the expected token to be matched. If there
 	 * is a match, match gets the next token return value. If the return value
@@ -1015,7 +1158,7 @@ public class Parser
 					error(TOKEN_NOT_AVAILABLE_ERROR, matchToken);
 					break;
 				case INPUT_COMPLETE:
-					System.out.println("Parsed successfully!");
+					messages.println("Parsed successfully!");
 					break;
 			}
 		}
@@ -1037,68 +1180,86 @@ public class Parser
 	}
 
 	/**
-	 * Handles errors in the parsing.
+	 * Handles errors in the parsing: writes it and exits with its error
+	 * code, or throws it.
 	 *
 	 * @param errorCode
 	 * @param expected
 	 */
 	public void error(int errorCode, Token expected)
 	{
+		StringBuilder message = new StringBuilder();
 		switch (errorCode)
 		{
 			case TOKEN_NOT_AVAILABLE_ERROR:
 				// Implement verbose debugging later.
-				System.out.print("Error, invalid token found on line ");
+				message.append("Error, invalid token found on line ");
 				break;
 			case TOKEN_MISMATCH:
 				// Implement more verbose debugging.
-				System.out.print("Error, token mismatch on token "
+				message.append("Error, token mismatch on token "
 								 + currentToken + " : " + scanner.getAttribute()
 								 + " expected " + expected + " on line ");
 				break;
 			case AFTER_PROGRAM:
 				// Better debugging (line found error on?)
-				System.out.println("Error found after the program match"
-								   + ". Check the first line of the program.");
+				message.append("Error found after the program match"
+								   + ". Check the first line of the program.\n");
 				break;
 			case PROGRAM_NOT_FOUND:
-				System.out.println("\"Program\" not found at beginning of "
-								   + "file.");
+				message.append("\"Program\" not found at beginning of "
+								   + "file.\n");
 				break;
 			case KEYWORD_MISMATCH:
-				System.out.print("Keyword mismatch on: "
+				message.append("Keyword mismatch on: "
 								 + currentAttribute + " found on line ");
 				break;
 			case UNRECOGNIZED_DATA_TYPE:
-				System.out.println("Unrecognized data type: "
-								   + currentAttribute + " should be real, or integer");
+				message.append("Unrecognized data type: "
+								   + currentAttribute + " should be real, or integer\n");
 				break;
 			case EXPECTED_EOF:
-				System.out.print("EOF expected, but not found, found: "
+				message.append("EOF expected, but not found, found: "
 								 + currentToken + ", with value: " + currentAttribute
 								 + " on line ");
-				System.exit(EXPECTED_EOF);
+				exit(errorCode, message.toString());
 				break;
 			case COMPOUND_STMT_SEMICOLON:
-				System.out.print("END token found after statement"
+				message.append("END token found after statement"
 								 + " caused by extra semicolon. Unexpected "
 								 + "END on line ");
 				break;
 			case VARIABLE_NOT_DEC:
-				System.out.print("Variable "
+				message.append("Variable "
 								 + scanner.getAttribute().toString()
 								 + " used before" + " declaration, on line ");
 				break;
 			case ASSIGN_REAL_TO_INT:
-				System.out.print("An attempt was made to assign a real number"
+				message.append("An attempt was made to assign a real number"
 						+ " in to an integer variable on line ");
 				break;
 			case REAL_INT_COMPARISON:
-				System.out.print("An attempt was madde to compare a real number "
+				message.append("An attempt was madde to compare a real number "
 						+ "with an integer on line ");
 
 		}
-		System.out.print(scanner.getLine() + "\n");
+		message.append(scanner.getLine() + "\n");
+		exit(errorCode, message.toString());
+	}
+
+	/**
+	 * Writes an error and exits, or throws it.
+	 *
+	 * @param errorCode
+	 * @param message
+	 */
+	private void exit(int errorCode, String message)
+	{
+		if (!exitOnError)
+		{
+			throw new ParseException(errorCode, message.trim());
+		}
+		messages.print(message);
 		System.exit(errorCode);
 	}
 }
@@ -2,6 +2,7 @@ package scanner;
 
 import java.io.BufferedWriter;
 import java.io.File;
+import java.io.FileNotFoundException;
 import java.io.FileReader;
 import java.io.FileWriter;
 import java.io.IOException;
@@ -86,6 +87,13 @@ public class Scanner
 	 */
 	private PushbackReader inputReader;
 
+	/**
+	 * Opens a file to scan.
+	 *
+	 * @param input
+	 * @param symbolTable the keywords and symbols, by their text.
+	 * @throws IllegalArgumentException if the file can not be read.
+	 */
 	public Scanner(File input, Hashtable symbolTable)
 	{
 		this.input = input;
@@ -94,10 +102,9 @@ public class Scanner
 		{
 			this.inputReader = new PushbackReader(new FileReader(input));
 		}
-		catch (Exception e)
+		catch (FileNotFoundException e)
 		{
-			e.printStackTrace();
-			System.exit(1);
+			throw new IllegalArgumentException("Cannot read " + e.getMessage(), e);
 		}
 		this.transitionTable = createTransitionTable();
 		this.line = 1;
@@ -205,10 +212,8 @@ public class Scanner
 					break;
 				case NUMBER_ACCEPTANCE:
 
-					if (currentChar == ')' || currentChar == '/' || currentChar == '*')
-					{
-						unread(currentChar);
-					}
+					// The char after the number is the start of the next token.
+					unread(currentChar);
 					token = Token.INTEGER;
 					attribute = workingAttribute.toString();
 					break;
@@ -231,10 +236,8 @@ public class Scanner
 
 					return NextTokenReturnValue.TOKEN_NOT_AVAILABLE;
 				case REAL_ACCEPTANCE:
-					if (currentChar == ')' || currentChar == '/' || currentChar == '*')
-					{
-						unread(currentChar);
-					}
+					// The char after the number is the start of the next token.
+					unread(currentChar);
 					token = Token.REAL;
 					attribute = workingAttribute.toString();
 					break;
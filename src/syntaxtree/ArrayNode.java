@@ -0,0 +1,119 @@
+package syntaxtree;
+
+import scanner.Token;
+
+/**
+ * An element of an array, a[index]. The name and type are those of the
+ * array and its elements.
+ *
+ * @author ken
+ */
+public class ArrayNode extends VariableNode
+{
+    /**
+     * The expression that picks the element.
+     */
+	private ExpressionNode index;
+
+    /**
+     * True if the index is checked against the bounds of the array when the
+     * program runs.
+     */
+	private boolean checked = true;
+
+    /**
+     * True if the index is the offset in bytes of the element from the
+     * first one, (index - start) * 4, rather than the index itself.
+     */
+	private boolean scaled;
+
+    /**
+     * Constructor.
+     * @param name
+     * @param type
+     * @param index
+     */
+	public ArrayNode(String name, Token type, ExpressionNode index)
+	{
+		super(name, type);
+		this.index = index;
+	}
+
+    /**
+     * Get the index.
+     * @return
+     */
+	public ExpressionNode getIndex()
+	{
+		return index;
+	}
+
+    /**
+     * Set the index.
+     * @param index
+     */
+	public void setIndex(ExpressionNode index)
+	{
+		this.index = index;
+	}
+
+    /**
+     * Returns true if the index is checked against the bounds.
+     * @return
+     */
+	public boolean isChecked()
+	{
+		return checked;
+	}
+
+    /**
+     * Sets whether the index is checked against the bounds.
+     * @param checked
+     */
+	public void setChecked(boolean checked)
+	{
+		this.checked = checked;
+	}
+
+    /**
+     * Returns true if the index is the offset in bytes of the element.
+     * @return
+     */
+	public boolean isScaled()
+	{
+		return scaled;
+	}
+
+    /**
+     * Sets whether the index is the offset in bytes of the element.
+     * @param scaled
+     */
+	public void setScaled(boolean scaled)
+	{
+		this.scaled = scaled;
+	}
+
+    /**
+     * The index is evaluated in the register the element is loaded in.
+     * @return
+     */
+	@Override
+	public int registersNeeded()
+	{
+		return index.registersNeeded();
+	}
+
+    /**
+     * Used for printing the tree. Indents with --- per level of
+     * depth in the tree.
+     * @param level
+     * @return
+     */
+	@Override
+	public String indentedToString(int level)
+	{
+		String answer = super.indentedToString(level);
+		answer += index.indentedToString(level + 1);
+		return answer;
+	}
+}
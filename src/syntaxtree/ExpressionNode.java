@@ -63,6 +63,16 @@ public abstract class ExpressionNode extends SyntaxTreeNode
      */
 	abstract public boolean isReal(SymbolTable symbols);
 
+    /**
+     * The number of registers needed to evaluate the expression without
+     * spilling, i.e. its Sethi-Ullman number. A leaf needs one register.
+     * @return 
+     */
+	public int registersNeeded()
+	{
+		return 1;
+	}
+
     
     /**
      * Used for printing the tree. Indents with --- per level of 
@@ -0,0 +1,97 @@
+package syntaxtree;
+
+import java.util.ArrayList;
+import parser.SymbolTable;
+import scanner.Token;
+
+/**
+ * A call to a function inside an expression.
+ *
+ * @author ken
+ */
+public class FunctionCallNode extends ExpressionNode
+{
+    /**
+     * The name of the function.
+     */
+	private String name;
+
+    /**
+     * The expressions passed to the function.
+     */
+	private ArrayList<ExpressionNode> arguments;
+
+    /**
+     * The type the function returns.
+     */
+	private Token type;
+
+    /**
+     * Constructor.
+     * @param name
+     * @param arguments
+     * @param type 
+     */
+	public FunctionCallNode(String name, ArrayList<ExpressionNode> arguments, Token type)
+	{
+		this.name = name;
+		this.arguments = arguments;
+		this.type = type;
+	}
+
+    /**
+     * Get the name of the function.
+     * @return 
+     */
+	public String getName()
+	{
+		return name;
+	}
+
+    /**
+     * Get the expressions passed to the function.
+     * @return 
+     */
+	public ArrayList<ExpressionNode> getArguments()
+	{
+		return arguments;
+	}
+
+    /**
+     * Get the type the function returns.
+     * @return 
+     */
+	public Token getType()
+	{
+		return type;
+	}
+
+    /**
+     * Returns true if the function returns a real.
+     * @param symbols
+     * @return 
+     */
+	@Override
+	public boolean isReal(SymbolTable symbols)
+	{
+		return type == Token.REAL;
+	}
+
+    /**
+     * Used for printing the tree. Indents with --- per level of 
+     * depth in the tree.
+     * @param level
+     * @return 
+     */
+	@Override
+	public String indentedToString(int level)
+	{
+		String answer = super.indentedToString(level);
+		answer += "FunctionCall: " + name + "\n";
+		for (ExpressionNode argument : arguments)
+		{
+			answer += argument.indentedToString(level + 1);
+		}
+		return answer;
+	}
+}
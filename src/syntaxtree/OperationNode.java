@@ -147,6 +147,25 @@ public class OperationNode extends ExpressionNode
 	{
 		return right.isReal(symbols) || left.isReal(symbols);
 	}
+
+    /**
+     * Sethi-Ullman number of the operation. If both sides need the same
+     * number of registers one more is needed to hold the first result while
+     * the second is evaluated, otherwise the larger side is evaluated first
+     * and its registers are reused.
+     * @return 
+     */
+	@Override
+	public int registersNeeded()
+	{
+		int leftNeed = left.registersNeeded();
+		int rightNeed = right.registersNeeded();
+		if (leftNeed == rightNeed)
+		{
+			return leftNeed + 1;
+		}
+		return Math.max(leftNeed, rightNeed);
+	}
 	
     /**
      * Used for printing the tree. Indents with --- per level of 
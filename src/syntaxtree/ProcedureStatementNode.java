@@ -0,0 +1,68 @@
+package syntaxtree;
+
+import java.util.ArrayList;
+
+/**
+ * A call to a procedure.
+ *
+ * @author ken
+ */
+public class ProcedureStatementNode extends StatementNode
+{
+    /**
+     * The name of the procedure.
+     */
+	private String name;
+
+    /**
+     * The expressions passed to the procedure.
+     */
+	private ArrayList<ExpressionNode> arguments;
+
+    /**
+     * Constructor.
+     * @param name
+     * @param arguments 
+     */
+	public ProcedureStatementNode(String name, ArrayList<ExpressionNode> arguments)
+	{
+		this.name = name;
+		this.arguments = arguments;
+	}
+
+    /**
+     * Get the name of the procedure.
+     * @return 
+     */
+	public String getName()
+	{
+		return name;
+	}
+
+    /**
+     * Get the expressions passed to the procedure.
+     * @return 
+     */
+	public ArrayList<ExpressionNode> getArguments()
+	{
+		return arguments;
+	}
+
+    /**
+     * Used for printing the tree. Indents with --- per level of 
+     * depth in the tree.
+     * @param level
+     * @return 
+     */
+	@Override
+	public String indentedToString(int level)
+	{
+		String answer = super.indentedToString(level);
+		answer += "ProcedureCall: " + name + "\n";
+		for (ExpressionNode argument : arguments)
+		{
+			answer += argument.indentedToString(level + 1);
+		}
+		return answer;
+	}
+}
@@ -107,7 +107,6 @@ public class ProgramNode extends SyntaxTreeNode
 
     /**
      * Get the function and procedure declarations.
-     *  Never used.
      * @return 
      */
 	public SubProgramDeclarationsNode getFunctions()
@@ -117,7 +116,6 @@ public class ProgramNode extends SyntaxTreeNode
 
     /**
      * Set the function and procedure declarations.
-     * Never used.
      * @param functions 
      */
 	public void setFunctions(SubProgramDeclarationsNode functions)
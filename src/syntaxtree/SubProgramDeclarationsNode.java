@@ -26,6 +26,24 @@ public class SubProgramDeclarationsNode extends SyntaxTreeNode
 		procs = new ArrayList<SubProgramNode>();
 	}
 
+    /**
+     * Add a function or procedure.
+     * @param proc 
+     */
+	public void addSubProgram(SubProgramNode proc)
+	{
+		procs.add(proc);
+	}
+
+    /**
+     * Get the functions and procedures.
+     * @return 
+     */
+	public ArrayList<SubProgramNode> getSubPrograms()
+	{
+		return procs;
+	}
+
     /**
      * Used for printing the tree. Indents with --- per level of 
      * depth in the tree.
@@ -9,6 +9,22 @@ import scanner.Token;
  */
 public class SubProgramNode extends SyntaxTreeNode
 {
+    /**
+     * The name of the function.
+     */
+    private String name;
+
+    /**
+     * The parameters, in order, as the variables that hold them in the body.
+     */
+    private ArrayList<VariableNode> parameters;
+
+    /**
+     * The variable a function's body assigns its return value to. Null for a
+     * procedure.
+     */
+    private VariableNode result;
+
     /**
      * Arguments to the function.
      */
@@ -34,6 +50,61 @@ public class SubProgramNode extends SyntaxTreeNode
      */
     public SubProgramNode()
     {
+        parameters = new ArrayList<VariableNode>();
+    }
+
+    /**
+     * Get the name of the function.
+     * @return 
+     */
+    public String getName()
+    {
+        return name;
+    }
+
+    /**
+     * Set the name of the function.
+     * @param name 
+     */
+    public void setName(String name)
+    {
+        this.name = name;
+    }
+
+    /**
+     * Get the parameters, in order.
+     * @return 
+     */
+    public ArrayList<VariableNode> getParameters()
+    {
+        return parameters;
+    }
+
+    /**
+     * Add a parameter after the others.
+     * @param parameter 
+     */
+    public void addParameter(VariableNode parameter)
+    {
+        parameters.add(parameter);
+    }
+
+    /**
+     * Get the variable holding the return value, or null for a procedure.
+     * @return 
+     */
+    public VariableNode getResult()
+    {
+        return result;
+    }
+
+    /**
+     * Set the variable holding the return value.
+     * @param result 
+     */
+    public void setResult(VariableNode result)
+    {
+        this.result = result;
     }
 
     /**
@@ -0,0 +1,72 @@
+package x86;
+
+/**
+ * The text of GNU as assembly the generator emits in to, in order: an
+ * instruction or directive on each line, in AT&T syntax.
+ *
+ * @author ken
+ */
+public class Code
+{
+
+	/**
+	 * The lines so far.
+	 */
+	private final StringBuilder text = new StringBuilder();
+
+	/**
+	 * The instructions and directives so far.
+	 */
+	private int size;
+
+	/**
+	 * Adds an instruction or directive, with its operands in AT&T order,
+	 * sources before the destination.
+	 * @param mnemonic
+	 * @param operands
+	 */
+	public void emit(String mnemonic, Object... operands)
+	{
+		text.append('\t').append(mnemonic);
+		for (int i = 0; i < operands.length; i++)
+		{
+			text.append(i == 0 ? "\t" : ", ").append(operands[i]);
+		}
+		text.append('\n');
+		size++;
+	}
+
+	/**
+	 * Adds a label.
+	 * @param name
+	 */
+	public void label(String name)
+	{
+		text.append(name).append(":\n");
+	}
+
+	/**
+	 * Adds the code of another.
+	 * @param other
+	 */
+	public void append(Code other)
+	{
+		text.append(other.text);
+		size += other.size;
+	}
+
+	/**
+	 * Get the number of instructions and directives.
+	 * @return
+	 */
+	public int size()
+	{
+		return size;
+	}
+
+	@Override
+	public String toString()
+	{
+		return text.toString();
+	}
+}
@@ -0,0 +1,300 @@
+package x86;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.nio.file.Files;
+
+/**
+ * A compiled program, assembled with as, linked with ld against the runtime
+ * in runtime.s, and run as a process of its own. It needs binutils on
+ * x86-64 Linux.
+ *
+ * The runtime writes an index out of bounds to the output as the generated
+ * MIPS does, and a failure, such as a division by zero, to standard error
+ * with exit status 1, which is thrown here.
+ *
+ * @author ken
+ */
+public class Program
+{
+
+	/**
+	 * The resource of the runtime, next to this class.
+	 */
+	private static final String RUNTIME = "runtime.s";
+
+	/**
+	 * The runtime assembled, once for every program.
+	 */
+	private static File runtime;
+
+	/**
+	 * The directory the program is assembled in, and the executable.
+	 */
+	private final File directory;
+	private final File executable;
+
+	/**
+	 * Assembles and links a compiled program.
+	 * @param name the name of the program.
+	 * @param assembly
+	 * @throws IOException
+	 * @throws UnsupportedOperationException if programs cannot be run here.
+	 * @throws IllegalStateException if the program does not assemble or
+	 * link.
+	 */
+	public Program(String name, String assembly) throws IOException
+	{
+		if (!isSupported())
+		{
+			throw new UnsupportedOperationException("Native programs run on x86-64 Linux only");
+		}
+		File object = runtime();
+		directory = Files.createTempDirectory("pascal").toFile();
+		File source = new File(directory, name + ".s");
+		write(source, assembly.getBytes("US-ASCII"));
+		File program = new File(directory, name + ".o");
+		tool("as", "-o", program.getPath(), source.getPath());
+		executable = new File(directory, name);
+		tool("ld", "-o", executable.getPath(), program.getPath(), object.getPath());
+	}
+
+	/**
+	 * Check whether programs can be run here: whether this is x86-64 Linux.
+	 * Whether binutils is installed is only found out by running it.
+	 * @return
+	 */
+	public static boolean isSupported()
+	{
+		String arch = System.getProperty("os.arch");
+		return System.getProperty("os.name").equals("Linux")
+				&& (arch.equals("amd64") || arch.equals("x86_64"));
+	}
+
+	/**
+	 * Get the runtime, assembling it the first time.
+	 * @return
+	 * @throws IOException
+	 * @throws UnsupportedOperationException if the runtime is not on the
+	 * class path.
+	 */
+	private static synchronized File runtime() throws IOException
+	{
+		if (runtime != null)
+		{
+			return runtime;
+		}
+		File source = File.createTempFile("runtime", ".s");
+		source.deleteOnExit();
+		write(source, runtimeSource());
+		File object = File.createTempFile("runtime", ".o");
+		object.deleteOnExit();
+		tool("as", "-o", object.getPath(), source.getPath());
+		runtime = object;
+		return runtime;
+	}
+
+	/**
+	 * Get the assembly of the runtime, which a compiled program is linked
+	 * against.
+	 * @return
+	 * @throws IOException
+	 * @throws UnsupportedOperationException if the runtime is not on the
+	 * class path.
+	 */
+	public static byte[] runtimeSource() throws IOException
+	{
+		InputStream in = Program.class.getResourceAsStream(RUNTIME);
+		if (in == null)
+		{
+			throw new UnsupportedOperationException("No " + RUNTIME + " next to " + Program.class.getName());
+		}
+		try
+		{
+			return readAll(in);
+		}
+		finally
+		{
+			in.close();
+		}
+	}
+
+	/**
+	 * Runs a tool of binutils.
+	 * @param command
+	 * @throws IOException
+	 * @throws UnsupportedOperationException if the tool is not installed.
+	 * @throws IllegalStateException if the tool fails.
+	 */
+	private static void tool(String... command) throws IOException
+	{
+		Process process;
+		try
+		{
+			process = new ProcessBuilder(command).redirectErrorStream(true).start();
+		}
+		catch (IOException e)
+		{
+			throw new UnsupportedOperationException(command[0] + " is not installed", e);
+		}
+		process.getOutputStream().close();
+		String messages = new String(readAll(process.getInputStream()));
+		if (waitFor(process) != 0)
+		{
+			throw new IllegalStateException(command[0] + " failed: " + messages.trim());
+		}
+	}
+
+	/**
+	 * Runs the program on some input.
+	 * @param input
+	 * @return what the program wrote.
+	 * @throws IllegalStateException if the program fails.
+	 */
+	public String run(String input)
+	{
+		StringWriter output = new StringWriter();
+		try
+		{
+			run(new StringReader(input), output);
+		}
+		catch (IOException e)
+		{
+			throw new IllegalStateException(e);
+		}
+		return output.toString();
+	}
+
+	/**
+	 * Runs the program. What it reads is fed to it by a thread of its own,
+	 * while what it writes is copied here.
+	 * @param input what the program reads.
+	 * @param output where the program writes.
+	 * @throws IOException
+	 * @throws IllegalStateException if the program fails.
+	 */
+	public void run(final Reader input, Writer output) throws IOException
+	{
+		Process process = new ProcessBuilder(executable.getPath()).start();
+		final OutputStream stdin = process.getOutputStream();
+		Thread feeder = new Thread()
+		{
+			@Override
+			public void run()
+			{
+				try
+				{
+					Writer writer = new OutputStreamWriter(stdin, "US-ASCII");
+					char[] buffer = new char[4096];
+					for (int n = input.read(buffer); n >= 0; n = input.read(buffer))
+					{
+						writer.write(buffer, 0, n);
+					}
+					writer.close();
+				}
+				catch (IOException e)
+				{
+					// The program ended without reading all of it.
+				}
+			}
+		};
+		feeder.setDaemon(true);
+		feeder.start();
+		Reader stdout = new InputStreamReader(process.getInputStream(), "US-ASCII");
+		char[] buffer = new char[4096];
+		for (int n = stdout.read(buffer); n >= 0; n = stdout.read(buffer))
+		{
+			output.write(buffer, 0, n);
+		}
+		output.flush();
+		String errors = new String(readAll(process.getErrorStream()), "US-ASCII");
+		int status = waitFor(process);
+		if (status == 1)
+		{
+			throw new IllegalStateException(errors.trim());
+		}
+		else if (status != 0)
+		{
+			throw new IllegalStateException("Program failed with exit status " + status);
+		}
+	}
+
+	/**
+	 * Deletes the files of the program.
+	 */
+	public void delete()
+	{
+		for (File file : directory.listFiles())
+		{
+			file.delete();
+		}
+		directory.delete();
+	}
+
+	/**
+	 * Waits for a process to end.
+	 * @param process
+	 * @return its exit status.
+	 * @throws IOException if interrupted.
+	 */
+	private static int waitFor(Process process) throws IOException
+	{
+		try
+		{
+			return process.waitFor();
+		}
+		catch (InterruptedException e)
+		{
+			process.destroy();
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while running " + process);
+		}
+	}
+
+	/**
+	 * Reads a stream to its end.
+	 * @param in
+	 * @return
+	 * @throws IOException
+	 */
+	private static byte[] readAll(InputStream in) throws IOException
+	{
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		byte[] buffer = new byte[4096];
+		for (int n = in.read(buffer); n >= 0; n = in.read(buffer))
+		{
+			bytes.write(buffer, 0, n);
+		}
+		return bytes.toByteArray();
+	}
+
+	/**
+	 * Writes a file.
+	 * @param file
+	 * @param bytes
+	 * @throws IOException
+	 */
+	private static void write(File file, byte[] bytes) throws IOException
+	{
+		OutputStream out = new FileOutputStream(file);
+		try
+		{
+			out.write(bytes);
+		}
+		finally
+		{
+			out.close();
+		}
+	}
+}
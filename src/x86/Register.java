@@ -0,0 +1,76 @@
+package x86;
+
+/**
+ * The x86-64 registers the generated code names: the general purpose
+ * registers, by their 64 bit names, and the SSE registers.
+ *
+ * @author ken
+ */
+public enum Register
+{
+	RAX("rax", "eax"), RBX("rbx", "ebx"), RCX("rcx", "ecx"), RDX("rdx", "edx"),
+	RSI("rsi", "esi"), RDI("rdi", "edi"), RBP("rbp", "ebp"), RSP("rsp", "esp"),
+	R8("r8", "r8d"), R9("r9", "r9d"), R10("r10", "r10d"), R11("r11", "r11d"),
+	R12("r12", "r12d"), R13("r13", "r13d"), R14("r14", "r14d"), R15("r15", "r15d"),
+	XMM0("xmm0", null), XMM1("xmm1", null), XMM2("xmm2", null), XMM3("xmm3", null),
+	XMM4("xmm4", null), XMM5("xmm5", null), XMM6("xmm6", null), XMM7("xmm7", null),
+	XMM8("xmm8", null), XMM9("xmm9", null), XMM10("xmm10", null), XMM11("xmm11", null),
+	XMM12("xmm12", null), XMM13("xmm13", null), XMM14("xmm14", null), XMM15("xmm15", null);
+
+	/**
+	 * The name in assembly, and the name of the low 32 bits, or null for an
+	 * SSE register.
+	 */
+	private final String name;
+	private final String low;
+
+	/**
+	 * Constructor.
+	 * @param name
+	 * @param low
+	 */
+	private Register(String name, String low)
+	{
+		this.name = "%" + name;
+		this.low = low == null ? null : "%" + low;
+	}
+
+	/**
+	 * SSE register %xmmn.
+	 * @param n
+	 * @return
+	 */
+	public static Register xmm(int n)
+	{
+		return valueOf("XMM" + n);
+	}
+
+	/**
+	 * Returns true if this is an SSE register.
+	 * @return
+	 */
+	public boolean isReal()
+	{
+		return low == null;
+	}
+
+	/**
+	 * The name of the low 32 bits of a general purpose register, such as
+	 * %eax, which integers are worked out in.
+	 * @return
+	 */
+	public String l()
+	{
+		if (low == null)
+		{
+			throw new IllegalStateException(name + " has no 32 bit name");
+		}
+		return low;
+	}
+
+	@Override
+	public String toString()
+	{
+		return name;
+	}
+}
@@ -0,0 +1,1000 @@
+# The runtime of a program compiled for x86-64 Linux: the entry point, the
+# reads and writes of numbers, and the errors that stop a program. It makes
+# system calls itself, so a program is linked with ld alone.
+#
+# The compiled program is the routine pascal.main. Numbers are read and
+# written as the other backends read and write them: a read takes the next
+# token between white space, and a real is written as Java's %.8f writes
+# it. Output is buffered until the program ends or fails. A failure writes
+# its message to standard error and exits with status 1; an index out of
+# bounds writes its message to the output and ends the program normally.
+#
+# The routines called by compiled code follow the System V ABI, and keep
+# rbx, rbp and r12 - r15.
+#
+# @author ken
+
+	.set OUT_SIZE, 65536
+	.set IN_SIZE, 65536
+	.set TOKEN_SIZE, 256
+
+	.set SYS_READ, 0
+	.set SYS_WRITE, 1
+	.set SYS_EXIT, 60
+
+	.bss
+	.align 16
+out:	.skip OUT_SIZE
+out_len:
+	.skip 8
+in:	.skip IN_SIZE
+in_pos:	.skip 8
+in_len:	.skip 8
+token:	.skip TOKEN_SIZE
+token_len:
+	.skip 8
+# A line being written, and the digits of a number in it.
+text:	.skip 64
+number:	.skip 32
+# The digits of a large real, and its decimal exponent.
+digits:	.skip 32
+exponent:
+	.skip 8
+
+	.section .rodata
+	.align 8
+# The estimate of the decimal exponent of a double, from Java's dtoa.
+ONE_AND_A_HALF:
+	.quad 0x3ff8000000000000	# 1.5
+LOG_SLOPE:
+	.quad 0x3fd287a762c9bd93	# 0.289529654
+LOG_OFFSET:
+	.quad 0x3fc68a288b421b8c	# 0.176091259
+LOG10_2:
+	.quad 0x3fd34413509f79fb	# 0.301029995663981
+ONE:	.quad 0x3ff0000000000000	# 1.0
+TEN:	.quad 0x4024000000000000	# 10.0
+# About the bits of 5^n, as Java's dtoa has them.
+N_5_BITS:
+	.byte 0, 3, 5, 7, 10, 12, 14, 17, 19, 21, 24, 26, 28, 31, 33, 35
+	.byte 38, 40, 42, 45, 47, 49, 52, 54, 56, 59, 61
+	.set N_5_BITS_LENGTH, . - N_5_BITS
+
+bounds_msg:
+	.ascii "Array index out of bounds\n"
+	.set BOUNDS_LEN, . - bounds_msg
+divide_msg:
+	.ascii "Division by zero\n"
+	.set DIVIDE_LEN, . - divide_msg
+past_end_msg:
+	.ascii "Read past the end of the input\n"
+	.set PAST_END_LEN, . - past_end_msg
+number_msg:
+	.ascii "For input string: \""
+	.set NUMBER_LEN, . - number_msg
+quote_msg:
+	.ascii "\"\n"
+	.set QUOTE_LEN, . - quote_msg
+nan_text:
+	.ascii "NaN"
+infinity_text:
+	.ascii "Infinity"
+
+	.text
+	.globl _start
+_start:
+	xorl %ebp, %ebp
+	call pascal.main
+	call flush
+	xorl %edi, %edi
+	movl $SYS_EXIT, %eax
+	syscall
+
+# Stops the program when an index is out of the bounds of its array.
+	.globl rt.bounds
+rt.bounds:
+	leaq bounds_msg(%rip), %rsi
+	movl $BOUNDS_LEN, %edx
+	call put
+	call flush
+	xorl %edi, %edi
+	movl $SYS_EXIT, %eax
+	syscall
+
+# Stops the program when an integer is divided by zero.
+	.globl rt.divide_by_zero
+rt.divide_by_zero:
+	leaq divide_msg(%rip), %rsi
+	movl $DIVIDE_LEN, %edx
+	jmp fail
+
+# Writes out what is written, then the rdx bytes at rsi to standard error,
+# and exits with status 1.
+fail:
+	pushq %rsi
+	pushq %rdx
+	call flush
+	popq %rdx
+	popq %rsi
+	call error
+exit_failed:
+	movl $1, %edi
+	movl $SYS_EXIT, %eax
+	syscall
+
+# Writes the rdx bytes at rsi to standard error.
+error:
+	movl $2, %edi
+	movl $SYS_WRITE, %eax
+	syscall
+	ret
+
+# Writes out what is buffered. Clobbers rax, rcx, rdx, rsi, rdi and r11.
+flush:
+	leaq out(%rip), %rsi
+	movq out_len(%rip), %rdx
+1:	testq %rdx, %rdx
+	jz 2f
+	movl $1, %edi
+	movl $SYS_WRITE, %eax
+	syscall
+	testq %rax, %rax
+	js exit_failed
+	addq %rax, %rsi
+	subq %rax, %rdx
+	jmp 1b
+2:	movq $0, out_len(%rip)
+	ret
+
+# Buffers the rdx bytes at rsi. Clobbers rax, rcx, rdx, rsi, rdi and r11.
+put:
+	testq %rdx, %rdx
+	jz 2f
+	movq out_len(%rip), %rax
+	cmpq $OUT_SIZE, %rax
+	jb 1f
+	pushq %rsi
+	pushq %rdx
+	call flush
+	popq %rdx
+	popq %rsi
+	xorl %eax, %eax
+1:	leaq out(%rip), %rdi
+	movb (%rsi), %cl
+	movb %cl, (%rdi,%rax)
+	incq %rax
+	movq %rax, out_len(%rip)
+	incq %rsi
+	decq %rdx
+	jmp put
+2:	ret
+
+# Buffers the line in text, which ends at r9.
+put_text:
+	leaq text(%rip), %rsi
+	movq %r9, %rdx
+	subq %rsi, %rdx
+	jmp put
+
+# Appends rax in decimal at r9. Clobbers rax, rcx, rdx, rsi and rdi.
+append_unsigned:
+	leaq number+32(%rip), %rsi
+	movq %rsi, %rdi
+	movl $10, %ecx
+1:	xorl %edx, %edx
+	divq %rcx
+	addb $48, %dl
+	decq %rsi
+	movb %dl, (%rsi)
+	testq %rax, %rax
+	jnz 1b
+2:	movb (%rsi), %al
+	movb %al, (%r9)
+	incq %r9
+	incq %rsi
+	cmpq %rdi, %rsi
+	jb 2b
+	ret
+
+# Appends rax, less than 10^8, as eight digits at r9. Clobbers rax, rcx,
+# rdx and rsi.
+append_fraction:
+	leaq 8(%r9), %rsi
+	movl $10, %ecx
+1:	xorl %edx, %edx
+	divq %rcx
+	addb $48, %dl
+	decq %rsi
+	movb %dl, (%rsi)
+	cmpq %r9, %rsi
+	ja 1b
+	addq $8, %r9
+	ret
+
+# Appends ecx zeros at r9.
+append_zeros:
+	testl %ecx, %ecx
+	jle 2f
+1:	movb $48, (%r9)
+	incq %r9
+	decl %ecx
+	jnz 1b
+2:	ret
+
+# Appends the rcx bytes at rsi at r9. Clobbers al.
+append_bytes:
+	testq %rcx, %rcx
+	jz 2f
+1:	movb (%rsi), %al
+	movb %al, (%r9)
+	incq %rsi
+	incq %r9
+	decq %rcx
+	jnz 1b
+2:	ret
+
+# Writes the integer in edi and a newline.
+	.globl rt.write_int
+rt.write_int:
+	leaq text(%rip), %r9
+	movslq %edi, %rax
+	testq %rax, %rax
+	jns 1f
+	movb $45, (%r9)
+	incq %r9
+	negq %rax
+1:	call append_unsigned
+	movb $10, (%r9)
+	incq %r9
+	jmp put_text
+
+# Writes the real in xmm0 and a newline, as String.format("%.8f") writes
+# the float widened to a double: the digits Java's dtoa gives the double,
+# rounded half up to eight places. A real below 2^24 is rounded from its
+# exact value, which those digits always round the same way, and one below
+# 2^63 is an integer with the digits past the seventeenth rounded off. A
+# larger real has Java's dtoa run on it, in 64 bits where Java uses longs
+# and in 128 where it uses big integers, which they are always big enough
+# for.
+	.globl rt.write_real
+rt.write_real:
+	pushq %rbx
+	pushq %rbp
+	pushq %r12
+	pushq %r13
+	pushq %r14
+	pushq %r15
+	leaq text(%rip), %r9
+	movd %xmm0, %eax
+	movl %eax, %ecx
+	shrl $23, %ecx
+	andl $0xff, %ecx
+	movl %eax, %edx
+	andl $0x7fffff, %edx
+	cmpl $0xff, %ecx
+	jne .Lfinite
+	testl %edx, %edx
+	jz 1f
+	leaq nan_text(%rip), %rsi
+	movl $3, %ecx
+	call append_bytes
+	jmp .Lline
+1:	testl %eax, %eax
+	jns 2f
+	movb $45, (%r9)
+	incq %r9
+2:	leaq infinity_text(%rip), %rsi
+	movl $8, %ecx
+	call append_bytes
+	jmp .Lline
+
+	# The significand m in edx and the binary exponent e2 in r8d, so the
+	# real is m * 2^e2.
+.Lfinite:
+	testl %eax, %eax
+	jns 1f
+	movb $45, (%r9)
+	incq %r9
+1:	movl $-149, %r8d
+	testl %ecx, %ecx
+	jz 2f
+	orl $0x800000, %edx
+	leal -150(%rcx), %r8d
+2:	testl %r8d, %r8d
+	jns .Linteger
+
+	# A fraction: the integer part ip in r10, and the fraction rounded
+	# half up to eight places in rax.
+	movl %r8d, %ecx
+	negl %ecx
+	movl %edx, %esi
+	xorl %eax, %eax
+	cmpl $24, %ecx
+	jae 1f
+	movl %esi, %eax
+	shrl %cl, %eax
+	movl $1, %edi
+	shll %cl, %edi
+	decl %edi
+	andl %edi, %esi
+1:	movq %rax, %r10
+	xorl %eax, %eax
+	cmpl $52, %ecx
+	jae 2f
+	imulq $100000000, %rsi, %rsi
+	movq %rsi, %rax
+	shrq %cl, %rax
+	movl $1, %edi
+	shlq %cl, %rdi
+	leaq -1(%rdi), %rdx
+	andq %rsi, %rdx
+	shrq $1, %rdi
+	cmpq %rdi, %rdx
+	jb 2f
+	incq %rax
+2:	cmpq $100000000, %rax
+	jne 3f
+	incq %r10
+	xorl %eax, %eax
+3:	movq %rax, %r11
+	movq %r10, %rax
+	call append_unsigned
+	movb $46, (%r9)
+	incq %r9
+	movq %r11, %rax
+	call append_fraction
+	jmp .Lline
+
+	# An integer: below 2^63 it is m << e2, with Java's insignificant
+	# digits past the seventeenth rounded off.
+.Linteger:
+	bsrl %edx, %eax
+	leal (%r8,%rax), %r10d
+	cmpl $62, %r10d
+	jg .Lbig
+	movl %edx, %eax
+	movl %r8d, %ecx
+	shlq %cl, %rax
+	xorl %r11d, %r11d
+	movl $1, %esi
+	subl $54, %r10d
+	jl 1f
+	cmpl $3, %r10d
+	jle 1f
+	movl $1, %r11d
+	movl $10, %esi
+	cmpl $6, %r10d
+	jle 1f
+	movl $2, %r11d
+	movl $100, %esi
+1:	xorl %edx, %edx
+	divq %rsi
+	testl %r11d, %r11d
+	jz 2f
+	shrq $1, %rsi
+	cmpq %rsi, %rdx
+	jb 2f
+	incq %rax
+2:	call append_unsigned
+	movl %r11d, %ecx
+	call append_zeros
+	jmp .Lpoint
+
+	# A large real, with binary exponent binExp in r10d: Java's dtoa finds
+	# the shortest digits within half an ulp of the double. The number of
+	# bits nf of the significand goes in ebx and the significand f without
+	# its trailing zeros in r12.
+.Lbig:
+	bsfl %edx, %ecx
+	movl %eax, %ebx
+	subl %ecx, %ebx
+	incl %ebx
+	movl %edx, %r12d
+	shrl %cl, %r12d
+	# decExp, in r13d, estimated from the double 1.fraction.
+	movl %edx, %esi
+	movl $52, %ecx
+	subl %eax, %ecx
+	shlq %cl, %rsi
+	movabsq $0x000fffffffffffff, %rax
+	andq %rax, %rsi
+	movabsq $0x3ff0000000000000, %rax
+	orq %rax, %rsi
+	movq %rsi, %xmm0
+	subsd ONE_AND_A_HALF(%rip), %xmm0
+	mulsd LOG_SLOPE(%rip), %xmm0
+	addsd LOG_OFFSET(%rip), %xmm0
+	cvtsi2sdl %r10d, %xmm1
+	mulsd LOG10_2(%rip), %xmm1
+	addsd %xmm1, %xmm0
+	cvttsd2si %xmm0, %r13d
+	# The powers of two of B = f * 2^B2 in r14d, S = 5^decExp * 2^S2 in
+	# r15d, and M, half an ulp, = 2^M2 in ebp, less their common factor.
+	movl %r10d, %r14d
+	subl %ebx, %r14d
+	incl %r14d
+	movl %r13d, %r15d
+	leal -53(%r10), %ebp
+	movl %r14d, %eax
+	cmpl %r15d, %eax
+	cmovg %r15d, %eax
+	subl %eax, %r14d
+	subl %eax, %r15d
+	subl %eax, %ebp
+	cmpl $1, %ebx
+	jne 1f
+	decl %ebp
+1:	testl %ebp, %ebp
+	jns 2f
+	subl %ebp, %r14d
+	subl %ebp, %r15d
+	xorl %ebp, %ebp
+	# Longs if B and 10 S fit, by Java's count of their bits.
+2:	leal (%rbx,%r14), %eax
+	cmpl $64, %eax
+	jge .Lwide
+	leal 1(%r13), %ecx
+	cmpl $N_5_BITS_LENGTH, %ecx
+	jge .Lwide
+	leaq N_5_BITS(%rip), %rax
+	movzbl (%rax,%rcx), %eax
+	leal 1(%r15,%rax), %eax
+	cmpl $64, %eax
+	jge .Lwide
+
+	# b in r10, s in r11, m in rsi and 10 s in r12, with Java's long
+	# arithmetic, overflow and all. The digits go at r8.
+	movq %r12, %r10
+	movl %r14d, %ecx
+	shlq %cl, %r10
+	movl $1, %eax
+	movl %r13d, %ecx
+1:	testl %ecx, %ecx
+	jz 2f
+	imulq $5, %rax, %rax
+	decl %ecx
+	jmp 1b
+2:	movl %r15d, %ecx
+	shlq %cl, %rax
+	movq %rax, %r11
+	movl $1, %esi
+	movl %ebp, %ecx
+	shlq %cl, %rsi
+	imulq $10, %r11, %r12
+	leaq digits(%rip), %r8
+	movq %r10, %rax
+	cqto
+	idivq %r11
+	imulq $10, %rdx, %r10
+	imulq $10, %rsi, %rsi
+	leaq (%r10,%rsi), %rdx
+	cmpq %r12, %rdx
+	setg %bl
+	testq %rax, %rax
+	jnz 3f
+	testb %bl, %bl
+	jnz 3f
+	decl %r13d
+	jmp 4f
+3:	addb $48, %al
+	movb %al, (%r8)
+	incq %r8
+	# low, in r14b, once the remainder is below half an ulp, and high, in
+	# r15b, once it is above 10 s less half an ulp.
+4:	movq %r10, %rax
+	cqto
+	idivq %r11
+	imulq $10, %rdx, %r10
+	imulq $10, %rsi, %rsi
+	addb $48, %al
+	movb %al, (%r8)
+	incq %r8
+	testq %rsi, %rsi
+	jle 5f
+	cmpq %rsi, %r10
+	setl %r14b
+	leaq (%r10,%rsi), %rdx
+	cmpq %r12, %rdx
+	setg %r15b
+	jmp 6f
+5:	movb $1, %r14b
+	movb $1, %r15b
+6:	movb %r14b, %al
+	orb %r15b, %al
+	jz 4b
+	leaq (%r10,%r10), %rbp
+	subq %r12, %rbp
+	jmp .Lround
+
+	# B in r11:r10, M in rdi:rsi, S in r13:r12 and 10 S in r15:r14, as
+	# big integers.
+.Lwide:
+	movl %r13d, exponent(%rip)
+	movq %r12, %rax
+	xorl %edx, %edx
+	movl %r14d, %ecx
+	call shl128
+	movq %rax, %r10
+	movq %rdx, %r11
+	movl $10, %eax
+	xorl %edx, %edx
+	movl %ebp, %ecx
+	call shl128
+	movq %rax, %rsi
+	movq %rdx, %rdi
+	movl %r13d, %ecx
+	movl $1, %r12d
+	xorl %r13d, %r13d
+1:	testl %ecx, %ecx
+	jz 2f
+	movq %r12, %rax
+	movl $5, %edx
+	mulq %rdx
+	movq %rax, %r12
+	imulq $5, %r13, %r13
+	addq %rdx, %r13
+	decl %ecx
+	jmp 1b
+2:	movq %r12, %rax
+	movq %r13, %rdx
+	movl %r15d, %ecx
+	call shl128
+	movq %rax, %r12
+	movq %rdx, %r13
+	movl $10, %edx
+	mulq %rdx
+	movq %rax, %r14
+	imulq $10, %r13, %r15
+	addq %rdx, %r15
+	leaq digits(%rip), %r8
+	call quotient
+	call bounds
+	testl %eax, %eax
+	jnz 3f
+	testb %bpl, %bpl
+	jnz 3f
+	decl exponent(%rip)
+	jmp 4f
+3:	addb $48, %al
+	movb %al, (%r8)
+	incq %r8
+4:	call quotient
+	movl %eax, %ecx
+	movq %rsi, %rax
+	movl $10, %edx
+	mulq %rdx
+	movq %rax, %rsi
+	imulq $10, %rdi, %rdi
+	addq %rdx, %rdi
+	call bounds
+	addb $48, %cl
+	movb %cl, (%r8)
+	incq %r8
+	movb %bl, %al
+	orb %bpl, %al
+	jz 4b
+	# How 2 B compares with 10 S, in rbp.
+	movq %r10, %rax
+	movq %r11, %rdx
+	shldq $1, %rax, %rdx
+	shlq $1, %rax
+	subq %r14, %rax
+	sbbq %r15, %rdx
+	movq $-1, %rcx
+	jb 5f
+	orq %rdx, %rax
+	setnz %cl
+	movzbl %cl, %ecx
+5:	movzbl %bl, %r14d
+	movzbl %bpl, %r15d
+	movq %rcx, %rbp
+	movl exponent(%rip), %r13d
+
+	# The last digit is rounded up when the remainder is nearer 10 S than
+	# zero, or nearer neither and the digit is odd.
+.Lround:
+	testb %r15b, %r15b
+	jz .Ldigits
+	testb %r14b, %r14b
+	jz .Lup
+	testq %rbp, %rbp
+	jg .Lup
+	jl .Ldigits
+	testb $1, -1(%r8)
+	jz .Ldigits
+.Lup:
+	leaq digits(%rip), %rax
+	movq %r8, %rcx
+1:	decq %rcx
+	cmpb $57, (%rcx)
+	jne 2f
+	cmpq %rax, %rcx
+	je 3f
+	movb $48, (%rcx)
+	jmp 1b
+2:	incb (%rcx)
+	jmp .Ldigits
+3:	movb $49, (%rcx)
+	incl %r13d
+	# The digits, then zeros up to the point.
+.Ldigits:
+	leaq digits(%rip), %rsi
+	movq %r8, %rcx
+	subq %rsi, %rcx
+	leal 1(%r13), %edx
+	subl %ecx, %edx
+	call append_bytes
+	movl %edx, %ecx
+	call append_zeros
+
+.Lpoint:
+	movb $46, (%r9)
+	incq %r9
+	xorl %eax, %eax
+	call append_fraction
+.Lline:
+	movb $10, (%r9)
+	incq %r9
+	popq %r15
+	popq %r14
+	popq %r13
+	popq %r12
+	popq %rbp
+	popq %rbx
+	jmp put_text
+
+# Shifts rdx:rax left by cl, less than 128.
+shl128:
+	cmpl $64, %ecx
+	jb 1f
+	movq %rax, %rdx
+	xorl %eax, %eax
+	subl $64, %ecx
+	shlq %cl, %rdx
+	ret
+1:	shldq %cl, %rax, %rdx
+	shlq %cl, %rax
+	ret
+
+# The next digit of a large real in eax: B / S, which is less than 10,
+# leaving B = 10 (B mod S). Clobbers rcx and rdx.
+quotient:
+	xorl %ecx, %ecx
+1:	movq %r10, %rax
+	movq %r11, %rdx
+	subq %r12, %rax
+	sbbq %r13, %rdx
+	jb 2f
+	movq %rax, %r10
+	movq %rdx, %r11
+	incl %ecx
+	jmp 1b
+2:	movq %r10, %rax
+	movl $10, %edx
+	mulq %rdx
+	movq %rax, %r10
+	imulq $10, %r11, %r11
+	addq %rdx, %r11
+	movl %ecx, %eax
+	ret
+
+# Whether a large real has digits enough: low, in bl, if B < M, and high,
+# in bpl, if B + M >= 10 S. Keeps rcx.
+bounds:
+	pushq %rax
+	movq %r10, %rax
+	movq %r11, %rdx
+	subq %rsi, %rax
+	sbbq %rdi, %rdx
+	setb %bl
+	movq %r10, %rax
+	movq %r11, %rdx
+	addq %rsi, %rax
+	adcq %rdi, %rdx
+	subq %r14, %rax
+	sbbq %r15, %rdx
+	setae %bpl
+	popq %rax
+	ret
+
+# The next byte of the input in eax, or -1 at its end. Clobbers rcx, rdx,
+# rsi, rdi and r11.
+getc:
+	movq in_pos(%rip), %rax
+	cmpq in_len(%rip), %rax
+	jb 1f
+	xorl %edi, %edi
+	leaq in(%rip), %rsi
+	movl $IN_SIZE, %edx
+	movl $SYS_READ, %eax
+	syscall
+	testq %rax, %rax
+	jle 2f
+	movq %rax, in_len(%rip)
+	xorl %eax, %eax
+1:	leaq in(%rip), %rdx
+	movzbl (%rdx,%rax), %edx
+	incq %rax
+	movq %rax, in_pos(%rip)
+	movl %edx, %eax
+	ret
+2:	movl $-1, %eax
+	ret
+
+# Sets ZF if eax is white space between tokens, as StringTokenizer has it.
+space:
+	cmpl $32, %eax
+	je 1f
+	cmpl $9, %eax
+	je 1f
+	cmpl $10, %eax
+	je 1f
+	cmpl $13, %eax
+	je 1f
+	cmpl $12, %eax
+1:	ret
+
+# Reads the next token in to token, with its length in r8 and token_len.
+# A token longer than the buffer keeps its length, but not its end.
+next_token:
+1:	call getc
+	cmpl $-1, %eax
+	je 4f
+	call space
+	je 1b
+	xorl %r8d, %r8d
+2:	cmpq $TOKEN_SIZE, %r8
+	jae 3f
+	leaq token(%rip), %rdx
+	movb %al, (%rdx,%r8)
+3:	incq %r8
+	call getc
+	cmpl $-1, %eax
+	je 5f
+	call space
+	jne 2b
+5:	movq %r8, token_len(%rip)
+	ret
+4:	leaq past_end_msg(%rip), %rsi
+	movl $PAST_END_LEN, %edx
+	jmp fail
+
+# Stops the program on a token that is not a number, as Java's
+# NumberFormatException says.
+bad_number:
+	call flush
+	leaq number_msg(%rip), %rsi
+	movl $NUMBER_LEN, %edx
+	call error
+	leaq token(%rip), %rsi
+	movq token_len(%rip), %rdx
+	cmpq $TOKEN_SIZE, %rdx
+	jbe 1f
+	movl $TOKEN_SIZE, %edx
+1:	call error
+	leaq quote_msg(%rip), %rsi
+	movl $QUOTE_LEN, %edx
+	call error
+	jmp exit_failed
+
+# Reads an integer in to eax, as Integer.parseInt does.
+	.globl rt.read_int
+rt.read_int:
+	call next_token
+	cmpq $TOKEN_SIZE, %r8
+	ja bad_number
+	leaq token(%rip), %rsi
+	leaq (%rsi,%r8), %rdi
+	xorl %ecx, %ecx
+	movzbl (%rsi), %eax
+	cmpl $45, %eax
+	jne 1f
+	movl $1, %ecx
+	incq %rsi
+	jmp 2f
+1:	cmpl $43, %eax
+	jne 2f
+	incq %rsi
+2:	cmpq %rdi, %rsi
+	jae bad_number
+	movl $0x80000000, %r10d
+	xorl %eax, %eax
+3:	movzbl (%rsi), %edx
+	subl $48, %edx
+	cmpl $9, %edx
+	ja bad_number
+	imulq $10, %rax, %rax
+	addq %rdx, %rax
+	cmpq %r10, %rax
+	ja bad_number
+	incq %rsi
+	cmpq %rdi, %rsi
+	jb 3b
+	testl %ecx, %ecx
+	jz 4f
+	negq %rax
+	ret
+4:	cmpq %r10, %rax
+	jae bad_number
+	ret
+
+# Reads a real in to xmm0, as Float.parseFloat does for a decimal number,
+# NaN or Infinity. The decimal is made a double, to at most 18 significant
+# digits, then rounded to a float, which may round differently from Java
+# by one ulp in the rare case rounding twice does.
+	.globl rt.read_real
+rt.read_real:
+	call next_token
+	cmpq $TOKEN_SIZE, %r8
+	ja bad_number
+	leaq token(%rip), %rsi
+	leaq (%rsi,%r8), %rdi
+	xorl %r10d, %r10d
+	movzbl (%rsi), %eax
+	cmpl $45, %eax
+	jne 1f
+	movl $1, %r10d
+	incq %rsi
+	jmp 2f
+1:	cmpl $43, %eax
+	jne 2f
+	incq %rsi
+	# NaN and Infinity.
+2:	movq %rdi, %rcx
+	subq %rsi, %rcx
+	cmpq $3, %rcx
+	jne 3f
+	movzwl (%rsi), %eax
+	cmpl $0x614e, %eax
+	jne 3f
+	cmpb $78, 2(%rsi)
+	jne 3f
+	movl $0x7fc00000, %eax
+	movd %eax, %xmm0
+	ret
+3:	cmpq $8, %rcx
+	jne 4f
+	movabsq $0x7974696e69666e49, %rax
+	cmpq %rax, (%rsi)
+	jne 4f
+	movl $0x7f800000, %eax
+	jmp .Lsign
+	# The significant digits in rax, their count in r11d, the power of ten
+	# to scale them by in ecx, and the count of digits in r8. The sign of
+	# the exponent goes in r9d.
+4:	xorl %eax, %eax
+	xorl %ecx, %ecx
+	xorl %r11d, %r11d
+	xorl %r8d, %r8d
+5:	cmpq %rdi, %rsi
+	jae .Lscale
+	movzbl (%rsi), %edx
+	subl $48, %edx
+	cmpl $9, %edx
+	ja 6f
+	incq %r8
+	incq %rsi
+	cmpl $18, %r11d
+	jae 51f
+	imulq $10, %rax, %rax
+	addq %rdx, %rax
+	testq %rax, %rax
+	jz 5b
+	incl %r11d
+	jmp 5b
+51:	incl %ecx
+	jmp 5b
+6:	cmpl $-2, %edx
+	jne .Lexponent
+	incq %rsi
+7:	cmpq %rdi, %rsi
+	jae .Lscale
+	movzbl (%rsi), %edx
+	subl $48, %edx
+	cmpl $9, %edx
+	ja .Lexponent
+	incq %r8
+	incq %rsi
+	cmpl $18, %r11d
+	jae 7b
+	imulq $10, %rax, %rax
+	addq %rdx, %rax
+	decl %ecx
+	testq %rax, %rax
+	jz 7b
+	incl %r11d
+	jmp 7b
+	# An exponent, then an f or d, and nothing else.
+.Lexponent:
+	testq %r8, %r8
+	jz bad_number
+	movzbl (%rsi), %edx
+	orl $32, %edx
+	cmpl $101, %edx
+	jne 11f
+	incq %rsi
+	xorl %r9d, %r9d
+	xorl %r11d, %r11d
+	cmpq %rdi, %rsi
+	jae bad_number
+	movzbl (%rsi), %edx
+	cmpl $45, %edx
+	jne 8f
+	movl $1, %r9d
+	incq %rsi
+	jmp 9f
+8:	cmpl $43, %edx
+	jne 9f
+	incq %rsi
+9:	cmpq %rdi, %rsi
+	jae bad_number
+	pushq %rax
+	xorl %eax, %eax
+10:	movzbl (%rsi), %edx
+	subl $48, %edx
+	cmpl $9, %edx
+	ja 101f
+	imull $10, %eax, %eax
+	addl %edx, %eax
+	cmpl $100000, %eax
+	jb 102f
+	movl $100000, %eax
+102:	incq %rsi
+	movl $1, %r11d
+	cmpq %rdi, %rsi
+	jb 10b
+101:	testl %r11d, %r11d
+	jz 103f
+	testl %r9d, %r9d
+	jz 104f
+	negl %eax
+104:	addl %eax, %ecx
+	popq %rax
+	jmp 11f
+103:	popq %rax
+	jmp bad_number
+11:	cmpq %rdi, %rsi
+	jae .Lscale
+	movzbl (%rsi), %edx
+	orl $32, %edx
+	cmpl $102, %edx
+	je 12f
+	cmpl $100, %edx
+	jne bad_number
+12:	incq %rsi
+	cmpq %rdi, %rsi
+	jne bad_number
+	# The digits times ten to the ecx, as a double rounded to a float.
+.Lscale:
+	testq %r8, %r8
+	jz bad_number
+	cvtsi2sdq %rax, %xmm0
+	movsd ONE(%rip), %xmm1
+	movsd TEN(%rip), %xmm2
+	movl %ecx, %edx
+	testl %edx, %edx
+	jns 13f
+	negl %edx
+13:	testl %edx, %edx
+	jz 15f
+	testl $1, %edx
+	jz 14f
+	mulsd %xmm2, %xmm1
+14:	mulsd %xmm2, %xmm2
+	shrl $1, %edx
+	jmp 13b
+15:	testl %ecx, %ecx
+	js 16f
+	mulsd %xmm1, %xmm0
+	jmp 17f
+16:	divsd %xmm1, %xmm0
+17:	cvtsd2ss %xmm0, %xmm0
+	movd %xmm0, %eax
+.Lsign:
+	testl %r10d, %r10d
+	jz 18f
+	xorl $0x80000000, %eax
+18:	movd %eax, %xmm0
+	ret
+
+	.section .note.GNU-stack,"",@progbits